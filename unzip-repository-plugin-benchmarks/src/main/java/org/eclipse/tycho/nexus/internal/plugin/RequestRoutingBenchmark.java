@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.nexus.internal.plugin.benchmark.P2ArchiveGenerator;
+import org.eclipse.tycho.nexus.internal.plugin.benchmark.UnzipRepositoryFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+/**
+ * Measures the routing of requests for archive content which is already cached, i.e. the path
+ * classification, the conversion, the lookup of the cached archive and the lookup of the entry.
+ * The benchmark is in the package of the {@link DefaultUnzipRepository}, because it calls the
+ * protected <code>doRetrieveItem()</code>: the public <code>retrieveItem()</code> adds the request
+ * processing of Nexus and needs a repository configuration, which the test fixtures do not
+ * provide. The path classification alone is measured by the <code>PathClassifierBenchmark</code>.
+ * The requests are reused, so that only the allocations of the unzip repository are measured. Run
+ * it with the GC profiler to see them, e.g.
+ * 
+ * <pre>
+ * java -jar benchmarks.jar RequestRoutingBenchmark -prof gc
+ * </pre>
+ * 
+ * and compare <code>gc.alloc.rate.norm</code> (bytes per request). What remains is mostly the
+ * result items and, depending on the JDK, opening the archive.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestRoutingBenchmark {
+
+    private static final String ARCHIVE_PATH = "/org/example/p2repo/1.0.0/p2repo-1.0.0-assembly.zip";
+
+    @Param({ "100", "10000" })
+    public int entries;
+
+    private File masterRepositoryDir;
+    private UnzipRepositoryFixture fixture;
+    private DefaultUnzipRepository repository;
+    private ResourceStoreRequest entryRequest;
+    private ResourceStoreRequest folderRequest;
+
+    @Setup
+    public void setup() throws Exception {
+        masterRepositoryDir = FileUtils.createTempFile("unzip-benchmark", "", null);
+        final String lastBundle = P2ArchiveGenerator.generate(new File(masterRepositoryDir, ARCHIVE_PATH), entries,
+                ZipEntry.DEFLATED);
+
+        fixture = new UnzipRepositoryFixture();
+        repository = fixture.start(masterRepositoryDir);
+
+        entryRequest = new ResourceStoreRequest(ARCHIVE_PATH + "-unzip/" + lastBundle);
+        folderRequest = new ResourceStoreRequest(ARCHIVE_PATH + "-unzip/" + P2ArchiveGenerator.PLUGINS_FOLDER);
+        // caches the archive in the local storage of the unzip repository
+        repository.doRetrieveItem(entryRequest);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.stop();
+        FileUtils.forceDelete(masterRepositoryDir);
+    }
+
+    @Benchmark
+    public StorageItem retrieveEntry() throws Exception {
+        return repository.doRetrieveItem(entryRequest);
+    }
+
+    @Benchmark
+    public StorageItem retrieveFolder() throws Exception {
+        return repository.doRetrieveItem(folderRequest);
+    }
+}
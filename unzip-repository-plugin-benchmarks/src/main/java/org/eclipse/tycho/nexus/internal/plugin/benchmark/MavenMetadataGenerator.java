@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Generates the <code>maven-metadata.xml</code> files of an artifact with many versions, like the
+ * ones of a p2 repository deployed by every build of a project. Every fourth version and the
+ * highest version are SNAPSHOTs. The metadata of the highest version lists one
+ * <code>snapshotVersion</code> per build and deployed file.
+ */
+public final class MavenMetadataGenerator {
+
+    public static final String GROUP_ID = "org.example";
+    public static final String ARTIFACT_ID = "p2repo";
+    /**
+     * The path of the artifact folder, without trailing slash.
+     */
+    public static final String GROUP_ARTIFACT_PATH = "/org/example/p2repo";
+
+    private static final String TIMESTAMP = "20140101.120000";
+    private static final String[][] DEPLOYED_FILES = { { "", "pom" }, { "assembly", "zip" } };
+
+    private final String[] versions;
+    private final String latestRelease;
+    private final int snapshotBuilds;
+
+    /**
+     * @param versionCount
+     *            the number of versions of the artifact, at least <code>2</code>
+     * @param snapshotBuilds
+     *            the number of builds of the highest SNAPSHOT version
+     */
+    public MavenMetadataGenerator(final int versionCount, final int snapshotBuilds) {
+        if (versionCount < 2) {
+            throw new IllegalArgumentException("At least 2 versions required");
+        }
+        this.versions = new String[versionCount];
+        String release = null;
+        for (int i = 0; i < versionCount; i++) {
+            final String version = (1 + i / 1000) + "." + (i / 10 % 100) + "." + (i % 10);
+            if (i % 4 == 3 || i == versionCount - 1) {
+                versions[i] = version + "-SNAPSHOT";
+            } else {
+                versions[i] = version;
+                release = version;
+            }
+        }
+        this.latestRelease = release;
+        this.snapshotBuilds = snapshotBuilds;
+    }
+
+    /**
+     * @return the versions in ascending order
+     */
+    public String[] getVersions() {
+        return versions.clone();
+    }
+
+    /**
+     * @return the highest version, a SNAPSHOT
+     */
+    public String getLatestVersion() {
+        return versions[versions.length - 1];
+    }
+
+    /**
+     * @return the highest version which is not a SNAPSHOT
+     */
+    public String getLatestRelease() {
+        return latestRelease;
+    }
+
+    /**
+     * @return the timestamp version of the last build of the highest SNAPSHOT version
+     */
+    public String getLatestSnapshotTimestampVersion() {
+        return getBaseVersion(getLatestVersion()) + "-" + TIMESTAMP + "-" + snapshotBuilds;
+    }
+
+    /**
+     * Writes the metadata of the artifact folder and of the folder of the highest SNAPSHOT version.
+     *
+     * @param repositoryDir
+     *            the base directory of the repository
+     */
+    public void generate(final File repositoryDir) throws IOException {
+        final File artifactDir = new File(repositoryDir, GROUP_ARTIFACT_PATH);
+        write(new File(artifactDir, "maven-metadata.xml"), createArtifactMetadata());
+        write(new File(artifactDir, getLatestVersion() + "/maven-metadata.xml"), createSnapshotMetadata());
+    }
+
+    private String createArtifactMetadata() {
+        final StringBuilder xml = header().append("  <versioning>\n");
+        xml.append("    <latest>").append(getLatestVersion()).append("</latest>\n");
+        xml.append("    <release>").append(latestRelease).append("</release>\n");
+        xml.append("    <versions>\n");
+        for (final String version : versions) {
+            xml.append("      <version>").append(version).append("</version>\n");
+        }
+        xml.append("    </versions>\n");
+        xml.append("    <lastUpdated>").append(TIMESTAMP.replace(".", "")).append("</lastUpdated>\n");
+        return xml.append("  </versioning>\n</metadata>\n").toString();
+    }
+
+    private String createSnapshotMetadata() {
+        final String baseVersion = getBaseVersion(getLatestVersion());
+        final StringBuilder xml = header();
+        xml.append("  <version>").append(getLatestVersion()).append("</version>\n");
+        xml.append("  <versioning>\n");
+        xml.append("    <snapshot>\n");
+        xml.append("      <timestamp>").append(TIMESTAMP).append("</timestamp>\n");
+        xml.append("      <buildNumber>").append(snapshotBuilds).append("</buildNumber>\n");
+        xml.append("    </snapshot>\n");
+        xml.append("    <lastUpdated>").append(TIMESTAMP.replace(".", "")).append("</lastUpdated>\n");
+        xml.append("    <snapshotVersions>\n");
+        for (int build = 1; build <= snapshotBuilds; build++) {
+            for (final String[] file : DEPLOYED_FILES) {
+                xml.append("      <snapshotVersion>\n");
+                if (file[0].length() > 0) {
+                    xml.append("        <classifier>").append(file[0]).append("</classifier>\n");
+                }
+                xml.append("        <extension>").append(file[1]).append("</extension>\n");
+                xml.append("        <value>").append(baseVersion).append('-').append(TIMESTAMP).append('-')
+                        .append(build).append("</value>\n");
+                xml.append("        <updated>").append(TIMESTAMP.replace(".", "")).append("</updated>\n");
+                xml.append("      </snapshotVersion>\n");
+            }
+        }
+        xml.append("    </snapshotVersions>\n");
+        return xml.append("  </versioning>\n</metadata>\n").toString();
+    }
+
+    private static StringBuilder header() {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<metadata modelVersion=\"1.1.0\">\n");
+        xml.append("  <groupId>").append(GROUP_ID).append("</groupId>\n");
+        xml.append("  <artifactId>").append(ARTIFACT_ID).append("</artifactId>\n");
+        return xml;
+    }
+
+    private static String getBaseVersion(final String snapshotVersion) {
+        return snapshotVersion.substring(0, snapshotVersion.length() - "-SNAPSHOT".length());
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
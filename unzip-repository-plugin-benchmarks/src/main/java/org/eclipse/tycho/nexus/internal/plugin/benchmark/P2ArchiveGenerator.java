@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates archives with the layout of a p2 repository built by Tycho: the p2 metadata files in
+ * the root folder, followed by the <code>features</code> and <code>plugins</code> folders. The
+ * content is pseudo-random text, so that it compresses similar to real metadata and bundles.
+ */
+public final class P2ArchiveGenerator {
+
+    /**
+     * The number of entries other than bundles, i.e. metadata files and folders.
+     */
+    static final int FIXED_ENTRIES = 5;
+
+    static final String ARTIFACTS_JAR = "artifacts.jar";
+    static final String CONTENT_JAR = "content.jar";
+    public static final String PLUGINS_FOLDER = "plugins";
+
+    private static final int BUNDLE_SIZE = 256;
+    private static final int CONTENT_JAR_SIZE = 1024 * 1024;
+    private static final int FEATURE_RATIO = 50;
+
+    private P2ArchiveGenerator() {
+    }
+
+    /**
+     * Writes a p2 repository archive.
+     *
+     * @param file
+     *            the archive to be written
+     * @param entries
+     *            the total number of entries, at least {@link #FIXED_ENTRIES} + 1
+     * @param method
+     *            the compression method of the entries, {@link ZipEntry#STORED} or
+     *            {@link ZipEntry#DEFLATED}
+     * @return the path in the archive of the last bundle, i.e. the last entry
+     */
+    public static String generate(final File file, final int entries, final int method) throws IOException {
+        if (entries <= FIXED_ENTRIES) {
+            throw new IllegalArgumentException("At least " + (FIXED_ENTRIES + 1) + " entries required");
+        }
+        file.getParentFile().mkdirs();
+        final Random random = new Random(entries);
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.setMethod(method);
+            putEntry(out, method, ARTIFACTS_JAR, randomText(random, CONTENT_JAR_SIZE / 8));
+            putEntry(out, method, CONTENT_JAR, randomText(random, CONTENT_JAR_SIZE));
+            putEntry(out, method, "p2.index", "version=1\nmetadata.repository.factory.order=content.xml,!\n"
+                    .getBytes("UTF-8"));
+            putEntry(out, method, "features/", null);
+            putEntry(out, method, PLUGINS_FOLDER + "/", null);
+
+            final int bundles = entries - FIXED_ENTRIES;
+            String lastBundle = null;
+            for (int i = 0; i < bundles; i++) {
+                final String folder = i % FEATURE_RATIO == 0 ? "features/" : PLUGINS_FOLDER + "/";
+                lastBundle = folder + "org.example.bundle" + i + "_1.0.0.v20140101-1200.jar";
+                putEntry(out, method, lastBundle, randomText(random, BUNDLE_SIZE));
+            }
+            return lastBundle;
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void putEntry(final ZipOutputStream out, final int method, final String name, final byte[] content)
+            throws IOException {
+        final byte[] data = content == null ? new byte[0] : content;
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            // stored entries need the size and checksum before the data is written
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static byte[] randomText(final Random random, final int size) {
+        final byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            final int next = random.nextInt(32);
+            text[i] = (byte) (next < 26 ? 'a' + next : ' ');
+        }
+        return text;
+    }
+}
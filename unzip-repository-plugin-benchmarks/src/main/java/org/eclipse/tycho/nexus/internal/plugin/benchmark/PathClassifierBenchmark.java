@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.tycho.nexus.internal.plugin.cache.ClassifiedPath;
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the classification of request paths by the {@link PathClassifier} with the regular
+ * expression cascade and path splitting it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathClassifierBenchmark {
+
+    private static final Pattern SNAPSHOT_PATTERN = Pattern
+            .compile("^(.*/(?:\\d*\\.?)+(?:-\\w+)*-SNAPSHOT/)([^/]*-)SNAPSHOT[^/]");
+    private static final Pattern LATESTVERSION_PATTERN = Pattern.compile("/SNAPSHOT/([^/]*)-SNAPSHOT[^/]");
+    private static final Pattern RELEASE_PATTERN = Pattern.compile("/RELEASE/([^/]*)-RELEASE[^/]");
+
+    @Param({ "unchanged", "snapshot", "latest", "release", "deep" })
+    public String pathType;
+
+    private String path;
+
+    @Setup
+    public void setup() {
+        final String ga = "/org/eclipse/tycho/example/org.eclipse.tycho.example.p2repo/";
+        if ("unchanged".equals(pathType)) {
+            path = ga + "1.0.0/org.eclipse.tycho.example.p2repo-1.0.0-assembly.zip-unzip/plugins/a_1.0.0.jar";
+        } else if ("snapshot".equals(pathType)) {
+            path = ga + "1.0.0-SNAPSHOT/org.eclipse.tycho.example.p2repo-1.0.0-SNAPSHOT-assembly.zip-unzip/"
+                    + "plugins/a_1.0.0.jar";
+        } else if ("latest".equals(pathType)) {
+            path = ga + "SNAPSHOT/org.eclipse.tycho.example.p2repo-SNAPSHOT-assembly.zip-unzip/plugins/a_1.0.0.jar";
+        } else if ("release".equals(pathType)) {
+            path = ga + "RELEASE/org.eclipse.tycho.example.p2repo-RELEASE-assembly.zip-unzip/plugins/a_1.0.0.jar";
+        } else {
+            final StringBuilder deepPath = new StringBuilder(ga).append("1.0.0/a-1.0.0.zip-unzip");
+            for (int i = 0; i < 40; i++) {
+                deepPath.append("/1.2.3.4.5.6.7.8.9.10.11.12");
+            }
+            path = deepPath.append("/file.txt").toString();
+        }
+    }
+
+    @Benchmark
+    public void classify(final Blackhole blackhole) {
+        final ClassifiedPath classifiedPath = PathClassifier.classify(path);
+        blackhole.consume(classifiedPath.getKind());
+        blackhole.consume(classifiedPath.getArchivePath());
+        blackhole.consume(classifiedPath.getPathInArchive());
+    }
+
+    @Benchmark
+    public void regularExpressionsAndSplit(final Blackhole blackhole) {
+        final Matcher snapshotMatcher = SNAPSHOT_PATTERN.matcher(path);
+        if (snapshotMatcher.find()) {
+            blackhole.consume(snapshotMatcher.group(1));
+        } else {
+            final Matcher latestVersionMatcher = LATESTVERSION_PATTERN.matcher(path);
+            if (latestVersionMatcher.find()) {
+                blackhole.consume(latestVersionMatcher.group(1));
+            } else {
+                final Matcher releaseMatcher = RELEASE_PATTERN.matcher(path);
+                blackhole.consume(releaseMatcher.find());
+            }
+        }
+
+        final StringBuilder pathInZip = new StringBuilder();
+        String zipFilePath = "";
+        String zipItemPath = null;
+        for (final String pathSegment : path.split("/")) {
+            if (zipItemPath == null) {
+                if (!zipFilePath.endsWith("/")) {
+                    zipFilePath = zipFilePath + "/";
+                }
+                zipFilePath = zipFilePath + pathSegment;
+                if (zipFilePath.endsWith("-unzip")) {
+                    zipItemPath = zipFilePath.substring(0, zipFilePath.length() - "-unzip".length());
+                }
+            } else {
+                if (pathInZip.length() > 0) {
+                    pathInZip.append("/");
+                }
+                pathInZip.append(pathSegment);
+            }
+        }
+        blackhole.consume(zipItemPath);
+        blackhole.consume(pathInZip.toString());
+    }
+}
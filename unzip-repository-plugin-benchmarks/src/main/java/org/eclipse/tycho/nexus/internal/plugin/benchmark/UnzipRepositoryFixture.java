@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.benchmark;
+
+import java.io.File;
+
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidFactory;
+import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
+
+/**
+ * Creates repositories for benchmarks with the test fixtures of the plugin. The Plexus
+ * container of the test support is started and stopped explicitly, because the benchmarks are not
+ * run by JUnit.
+ */
+public class UnzipRepositoryFixture extends UnzipPluginTestSupport {
+
+    /**
+     * Starts the Plexus container and creates an unzip repository shadowing a master repository
+     * with the content of the given directory.
+     *
+     * @param masterRepositoryDir
+     *            the content of the master repository
+     * @return the unzip repository
+     */
+    public DefaultUnzipRepository start(final File masterRepositoryDir) throws Exception {
+        setUpJunit();
+        return createUnzipRepo(createMasterRepository(masterRepositoryDir));
+    }
+
+    /**
+     * Starts the Plexus container and creates a master repository with the content of the given
+     * directory.
+     *
+     * @param masterRepositoryDir
+     *            the content of the master repository
+     * @return the master repository
+     */
+    public RepositoryMock startMasterRepository(final File masterRepositoryDir) throws Exception {
+        setUpJunit();
+        return createMasterRepository(masterRepositoryDir);
+    }
+
+    private RepositoryMock createMasterRepository(final File masterRepositoryDir) throws Exception {
+        return RepositoryMock.createRepo("masterRepo", masterRepositoryDir, lookup(RepositoryItemUidFactory.class),
+                lookup(RepositoryItemUidAttributeManager.class));
+    }
+
+    /**
+     * Stops the Plexus container.
+     */
+    public void stop() throws Exception {
+        tearDownJunit();
+    }
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+/**
+ * Measures the lookup, listing and streaming of entries in p2 repository archives of different
+ * sizes and compression methods. The archive is fetched into the local storage of the unzip
+ * repository during the setup, so the benchmarks only measure the access to the cached archive.
+ * Entries are looked up at the end of the archive, which was the worst case for the former linear
+ * scan of the entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZippedItemBenchmark {
+
+    private static final String ARCHIVE_PATH = "/org/example/p2repo/1.0.0/p2repo-1.0.0-assembly.zip";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZippedItemBenchmark.class);
+
+    @Param({ "100", "10000", "100000" })
+    public int entries;
+
+    @Param({ "STORED", "DEFLATED" })
+    public String compression;
+
+    private File masterRepositoryDir;
+    private UnzipRepositoryFixture fixture;
+    private DefaultUnzipRepository repository;
+    private long lastModified;
+    private String lastBundle;
+    private ZippedItem archiveRoot;
+    private ZippedItem pluginsFolder;
+    private ZippedItem lastBundleItem;
+    private ZippedItem contentJarItem;
+    private final byte[] buffer = new byte[8192];
+
+    @Setup
+    public void setup() throws Exception {
+        masterRepositoryDir = FileUtils.createTempFile("unzip-benchmark", "", null);
+        final File archive = new File(masterRepositoryDir, ARCHIVE_PATH);
+        lastBundle = P2ArchiveGenerator.generate(archive, entries, "STORED".equals(compression) ? ZipEntry.STORED
+                : ZipEntry.DEFLATED);
+        lastModified = archive.lastModified();
+
+        fixture = new UnzipRepositoryFixture();
+        repository = fixture.start(masterRepositoryDir);
+
+        // also copies the archive into the local storage of the unzip repository
+        archiveRoot = newZippedItem("");
+        pluginsFolder = newZippedItem(P2ArchiveGenerator.PLUGINS_FOLDER);
+        lastBundleItem = newZippedItem(lastBundle);
+        contentJarItem = newZippedItem(P2ArchiveGenerator.CONTENT_JAR);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.stop();
+        FileUtils.forceDelete(masterRepositoryDir);
+    }
+
+    @Benchmark
+    public StorageItem newZippedItem() throws Exception {
+        return newZippedItem(lastBundle).getZippedStorageItem();
+    }
+
+    @Benchmark
+    public StorageItem[] listArchiveRoot() throws Exception {
+        return archiveRoot.listMembers();
+    }
+
+    @Benchmark
+    public StorageItem[] listPluginsFolder() throws Exception {
+        return pluginsFolder.listMembers();
+    }
+
+    @Benchmark
+    public List<StorageItem> listPluginsFolderPage() throws Exception {
+        return pluginsFolder.listMembers(0, 100);
+    }
+
+    @Benchmark
+    public void iteratePluginsFolder(final Blackhole blackhole) throws Exception {
+        for (final StorageItem member : pluginsFolder.listMembers(0, Integer.MAX_VALUE)) {
+            blackhole.consume(member);
+        }
+    }
+
+    @Benchmark
+    public void streamSmallEntry(final Blackhole blackhole) throws Exception {
+        blackhole.consume(readFully(lastBundleItem));
+    }
+
+    @Benchmark
+    public void streamLargeEntry(final Blackhole blackhole) throws Exception {
+        blackhole.consume(readFully(contentJarItem));
+    }
+
+    private ZippedItem newZippedItem(final String pathInZip) throws Exception {
+        final String path = ARCHIVE_PATH + "-unzip" + (pathInZip.length() == 0 ? "" : "/" + pathInZip);
+        return ZippedItem.newZippedItem(repository, new ResourceStoreRequest(path), ARCHIVE_PATH, pathInZip,
+                lastModified, LOGGER);
+    }
+
+    private long readFully(final ZippedItem item) throws IOException {
+        final InputStream stream = ((StorageFileItem) item.getZippedStorageItem()).getInputStream();
+        try {
+            long total = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                total += read;
+            }
+            return total;
+        } finally {
+            stream.close();
+        }
+    }
+}
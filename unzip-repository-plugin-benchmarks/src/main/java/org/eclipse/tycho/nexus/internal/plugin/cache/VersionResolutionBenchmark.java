@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.eclipse.tycho.nexus.internal.plugin.benchmark.MavenMetadataGenerator.ARTIFACT_ID;
+import static org.eclipse.tycho.nexus.internal.plugin.benchmark.MavenMetadataGenerator.GROUP_ARTIFACT_PATH;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.nexus.internal.plugin.benchmark.MavenMetadataGenerator;
+import org.eclipse.tycho.nexus.internal.plugin.benchmark.UnzipRepositoryFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Measures the resolution of virtual versions from <code>maven-metadata.xml</code> files with many
+ * versions and SNAPSHOT builds. The conversions are not cached, i.e. every invocation reads and
+ * parses the metadata, as for the first request of a virtual version. The benchmark is in the
+ * package of the {@link ParsedRequest}s to measure reading and evaluating the metadata separately.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VersionResolutionBenchmark {
+
+    private static final String PATH_IN_ARCHIVE = "-assembly.zip-unzip/plugins/org.example.bundle_1.0.0.jar";
+
+    /**
+     * The number of versions in the metadata of the artifact, which is also the number of builds in
+     * the metadata of the latest SNAPSHOT version.
+     */
+    @Param({ "10", "100", "1000", "20000" })
+    public int versions;
+
+    private File repositoryDir;
+    private UnzipRepositoryFixture fixture;
+    private Repository repository;
+    private PathLock pathLock;
+
+    private ResourceStoreRequest unchangedRequest;
+    private ResourceStoreRequest snapshotRequest;
+    private ResourceStoreRequest latestVersionRequest;
+    private ResourceStoreRequest releaseRequest;
+
+    private ParsedRequest parsedRequest;
+    private String artifactMetadataPath;
+    private String snapshotMetadataPath;
+    private Versioning versioning;
+    private VersionRange rangeBelowLatest;
+
+    @Setup
+    public void setup() throws Exception {
+        final MavenMetadataGenerator generator = new MavenMetadataGenerator(versions, versions);
+        repositoryDir = FileUtils.createTempFile("unzip-benchmark", "", null);
+        generator.generate(repositoryDir);
+
+        fixture = new UnzipRepositoryFixture();
+        repository = fixture.startMasterRepository(repositoryDir);
+        pathLock = new PathLock();
+
+        final String latestVersion = generator.getLatestVersion();
+        final String release = generator.getLatestRelease();
+        unchangedRequest = new ResourceStoreRequest(GROUP_ARTIFACT_PATH + "/" + release + "/" + ARTIFACT_ID + "-"
+                + release + PATH_IN_ARCHIVE);
+        snapshotRequest = new ResourceStoreRequest(GROUP_ARTIFACT_PATH + "/" + latestVersion + "/" + ARTIFACT_ID
+                + "-" + latestVersion + PATH_IN_ARCHIVE);
+        latestVersionRequest = new ResourceStoreRequest(GROUP_ARTIFACT_PATH + "/SNAPSHOT/" + ARTIFACT_ID
+                + "-SNAPSHOT" + PATH_IN_ARCHIVE);
+        releaseRequest = new ResourceStoreRequest(GROUP_ARTIFACT_PATH + "/RELEASE/" + ARTIFACT_ID + "-RELEASE"
+                + PATH_IN_ARCHIVE);
+
+        // getVersioning and selectVersion do not depend on the type of request
+        parsedRequest = new UnchangedRequest(unchangedRequest.getRequestPath());
+        artifactMetadataPath = parsedRequest.metadataPath(GROUP_ARTIFACT_PATH + "/");
+        snapshotMetadataPath = parsedRequest.metadataPath(GROUP_ARTIFACT_PATH + "/" + latestVersion + "/");
+        versioning = parsedRequest.getVersioning(repository, pathLock, artifactMetadataPath);
+        // excludes the latest version, so that all versions are matched against the range
+        rangeBelowLatest = VersionRange.createFromVersionSpec("[1.0.0," + release + "]");
+
+        final ConversionResult result = RequestPathConverter.convert(repository, latestVersionRequest, true);
+        if (!result.getConvertedPath().contains(generator.getLatestSnapshotTimestampVersion())) {
+            throw new IllegalStateException("Unexpected conversion result " + result.getConvertedPath());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.stop();
+        FileUtils.forceDelete(repositoryDir);
+    }
+
+    @Benchmark
+    public ConversionResult convertUnchanged() throws Exception {
+        return RequestPathConverter.convert(repository, unchangedRequest, true);
+    }
+
+    @Benchmark
+    public ConversionResult convertSnapshot() throws Exception {
+        return RequestPathConverter.convert(repository, snapshotRequest, true);
+    }
+
+    @Benchmark
+    public ConversionResult convertLatestVersion() throws Exception {
+        return RequestPathConverter.convert(repository, latestVersionRequest, true);
+    }
+
+    @Benchmark
+    public ConversionResult convertRelease() throws Exception {
+        return RequestPathConverter.convert(repository, releaseRequest, true);
+    }
+
+    @Benchmark
+    public Versioning getArtifactVersioning() throws Exception {
+        return parsedRequest.getVersioning(repository, pathLock, artifactMetadataPath);
+    }
+
+    @Benchmark
+    public Versioning getSnapshotVersioning() throws Exception {
+        return parsedRequest.getVersioning(repository, pathLock, snapshotMetadataPath);
+    }
+
+    @Benchmark
+    public String selectLatestVersion() throws Exception {
+        return parsedRequest.selectVersion(latestVersionRequest, versioning, null, true);
+    }
+
+    @Benchmark
+    public String selectLatestRelease() throws Exception {
+        return parsedRequest.selectVersion(releaseRequest, versioning, null, false);
+    }
+
+    @Benchmark
+    public String selectVersionInRange() throws Exception {
+        return parsedRequest.selectVersion(latestVersionRequest, versioning, rangeBelowLatest, true);
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013 SAP AG and others.
+ * Copyright (c) 2013, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,9 +17,12 @@ import static org.sonatype.nexus.client.core.subsystem.content.Location.reposito
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
 
 import javax.inject.Inject;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.sonatype.nexus.bundle.launcher.NexusBundleConfiguration;
 import org.sonatype.nexus.client.core.subsystem.artifact.ArtifactMaven;
@@ -61,6 +64,19 @@ public abstract class AbstractUnzipRepositoryPluginITCase extends NexusRunningPa
         return configuration;
     }
 
+    protected static String getTestProperty(String key) {
+        Properties testProps = new Properties();
+        InputStream stream = AbstractUnzipRepositoryPluginITCase.class.getResourceAsStream("/test.properties");
+        try {
+            testProps.load(stream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+        return testProps.getProperty(key);
+    }
+
     protected void uploadToRepository(String testDataPathPrefix, final String artifactPath, String repositoryId)
             throws IOException {
         final File resolveFile = testData().resolveFile(testDataPathPrefix + artifactPath);
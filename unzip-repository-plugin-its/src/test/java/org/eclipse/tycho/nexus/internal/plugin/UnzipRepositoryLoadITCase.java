@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.sonatype.nexus.client.core.subsystem.content.Location.repositoryLocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.tycho.nexus.internal.plugin.load.LoadClient;
+import org.eclipse.tycho.nexus.internal.plugin.load.LoadOperation;
+import org.eclipse.tycho.nexus.internal.plugin.load.LoadStatistics;
+import org.eclipse.tycho.nexus.internal.plugin.load.LoadTestArtifacts;
+import org.eclipse.tycho.nexus.internal.plugin.load.MasterStandIn;
+import org.eclipse.tycho.nexus.unzip.internal.jersey.UnzipVirtualRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runners.Parameterized.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.client.core.subsystem.repository.Repositories;
+import org.sonatype.nexus.client.core.subsystem.repository.maven.MavenProxyRepository;
+import org.sonatype.nexus.testsuite.support.NexusStartAndStopStrategy;
+import org.sonatype.nexus.testsuite.support.NexusStartAndStopStrategy.Strategy;
+
+/**
+ * Load test of the unzip repository with many concurrent clients, which send the requests of Tycho
+ * builds to p2 repositories in unzip repositories. New SNAPSHOT builds are deployed during the test,
+ * so that the clients resolve changing virtual versions while outdated SNAPSHOT builds are cleaned
+ * up. The test fails if any request fails or returns wrong content, and reports the throughput and
+ * latency percentiles per operation.
+ * <p>
+ * The load test is only run with the Maven profile <code>load-test</code>, which also passes the
+ * following system properties:
+ * <ul>
+ * <li><code>unzip.load.clients</code>: the number of concurrent clients</li>
+ * <li><code>unzip.load.durationSeconds</code>: the duration of the load test</li>
+ * <li><code>unzip.load.smallBundles</code>: the number of small bundles in each archive</li>
+ * <li><code>unzip.load.largeBundleMegabytes</code>: the size of the large bundle in each archive</li>
+ * <li><code>unzip.load.deployIntervalMillis</code>: the interval in which new SNAPSHOT builds are
+ * deployed, <code>0</code> to deploy no builds during the test</li>
+ * <li><code>unzip.load.proxyMaster</code>: if <code>true</code>, the SNAPSHOT builds are served by
+ * a local HTTP server and the unzip repository shadows a proxy repository of this server</li>
+ * </ul>
+ */
+@NexusStartAndStopStrategy(Strategy.EACH_TEST)
+public class UnzipRepositoryLoadITCase extends AbstractUnzipRepositoryPluginITCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnzipRepositoryLoadITCase.class);
+
+    private static final String RELEASES = "releases";
+    private static final String SNAPSHOTS = "snapshots";
+    private static final String PROXY = "load.proxy";
+    private static final int INITIAL_BUILDS = 3;
+
+    private final int clients = Integer.getInteger("unzip.load.clients", 16);
+    private final long durationSeconds = Long.getLong("unzip.load.durationSeconds", 60);
+    private final long deployIntervalMillis = Long.getLong("unzip.load.deployIntervalMillis", 2000);
+    private final boolean proxyMaster = Boolean.getBoolean("unzip.load.proxyMaster");
+    private final LoadTestArtifacts artifacts = new LoadTestArtifacts(Integer.getInteger("unzip.load.smallBundles",
+            500), Integer.getInteger("unzip.load.largeBundleMegabytes", 16) * 1024 * 1024);
+
+    private File artifactsDir;
+    private MasterStandIn masterStandIn;
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        // the load test is only run against one nexus version
+        return asList(new Object[] { getTestProperty("nexus.min.coords") });
+    }
+
+    public UnzipRepositoryLoadITCase(String nexusBundleCoordinates) {
+        super(nexusBundleCoordinates);
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        if (masterStandIn != null) {
+            masterStandIn.stop();
+        }
+        if (artifactsDir != null) {
+            FileUtils.deleteDirectory(artifactsDir);
+        }
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        artifactsDir = util.resolveFile("target/load-test-artifacts");
+        FileUtils.deleteDirectory(artifactsDir);
+        artifacts.writeReleaseArchive(artifactsDir);
+        upload(RELEASES, LoadTestArtifacts.getReleaseArchivePath());
+        final String snapshotRepositoryId = createSnapshotMasterRepository();
+        for (int build = 1; build <= INITIAL_BUILDS; build++) {
+            deploySnapshotBuild(build);
+        }
+
+        final LoadStatistics statistics = new LoadStatistics();
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        final ExecutorService executor = Executors.newFixedThreadPool(clients + 1);
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(new LoadClient(getContentUrl(RELEASES + ".unzip"),
+                        getContentUrl(snapshotRepositoryId + ".unzip"), artifacts, statistics, end, i)));
+            }
+            final Future<?> deployer = executor.submit(new SnapshotDeployer(end));
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            deployer.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        LOG.info("Load test with " + clients + " clients for " + duration + " ms:\n"
+                + statistics.createReport(duration));
+        FileUtils.writeStringToFile(util.resolveFile("target/load-test-results.json"),
+                statistics.createJsonReport(duration, clients), "UTF-8");
+
+        assertEquals("Errors under load: " + statistics.getErrorMessages(), 0, statistics.getTotalErrorCount());
+        for (final LoadOperation operation : LoadOperation.values()) {
+            assertTrue("No successful " + operation, statistics.getCount(operation) > 0);
+        }
+    }
+
+    private String createSnapshotMasterRepository() throws IOException {
+        final String masterRepositoryId;
+        if (proxyMaster) {
+            masterStandIn = new MasterStandIn(artifactsDir);
+            repositories().create(MavenProxyRepository.class, PROXY).asProxyOf(masterStandIn.start())
+                    .withRepoPolicy("SNAPSHOT").save();
+            masterRepositoryId = PROXY;
+            repositories().create(UnzipVirtualRepository.class, PROXY + ".unzip").ofRepository(PROXY).save();
+        } else {
+            masterRepositoryId = SNAPSHOTS;
+        }
+        return masterRepositoryId;
+    }
+
+    private void deploySnapshotBuild(final int build) throws IOException {
+        artifacts.writeSnapshotArchive(artifactsDir, build);
+        artifacts.writeMetadata(artifactsDir, build);
+        if (!proxyMaster) {
+            // the metadata is uploaded after the archive, as by Maven
+            upload(SNAPSHOTS, LoadTestArtifacts.getSnapshotArchivePath(build));
+            upload(SNAPSHOTS, LoadTestArtifacts.getSnapshotMetadataPath());
+            upload(SNAPSHOTS, LoadTestArtifacts.getArtifactMetadataPath());
+        }
+    }
+
+    private void upload(final String repositoryId, final String path) throws IOException {
+        getNexusContentService().upload(repositoryLocation(repositoryId, path), new File(artifactsDir, path));
+    }
+
+    private URL getContentUrl(final String repositoryId) throws IOException {
+        return new URL(nexus().getUrl(), "content/repositories/" + repositoryId + "/");
+    }
+
+    private Repositories repositories() {
+        return client().getSubsystem(Repositories.class);
+    }
+
+    /**
+     * Deploys a new SNAPSHOT build in regular intervals until the end of the load test.
+     */
+    private class SnapshotDeployer implements Runnable {
+        private final long endNanos;
+
+        SnapshotDeployer(final long endNanos) {
+            this.endNanos = endNanos;
+        }
+
+        @Override
+        public void run() {
+            if (deployIntervalMillis <= 0) {
+                return;
+            }
+            int build = INITIAL_BUILDS;
+            try {
+                while (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deployIntervalMillis) - endNanos < 0) {
+                    Thread.sleep(deployIntervalMillis);
+                    deploySnapshotBuild(++build);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException e) {
+                throw new RuntimeException("Deployment of SNAPSHOT build " + build + " failed", e);
+            }
+            LOG.info("Deployed " + (build - INITIAL_BUILDS) + " SNAPSHOT builds during the load test");
+        }
+    }
+}
@@ -24,10 +24,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Properties;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -61,19 +59,6 @@ public class UnzipRepositoryPluginITCase extends AbstractUnzipRepositoryPluginIT
                 new Object[] { getTestProperty("nexus.max.coords") });
     }
 
-    private static String getTestProperty(String key) {
-        Properties testProps = new Properties();
-        InputStream stream = UnzipRepositoryPluginITCase.class.getResourceAsStream("/test.properties");
-        try {
-            testProps.load(stream);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            IOUtils.closeQuietly(stream);
-        }
-        return testProps.getProperty(key);
-    }
-
     public UnzipRepositoryPluginITCase(String nexusBundleCoordinates) {
         super(nexusBundleCoordinates);
     }
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * A client which sends the requests of Tycho builds to an unzip repository until the end of the
+ * load test and verifies the responses. Failed requests, unexpected status codes and wrong content
+ * (e.g. a bundle truncated because the SNAPSHOT build was cleaned up while it was streamed) are
+ * recorded as errors.
+ */
+public class LoadClient implements Runnable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final URL releaseRepositoryUrl;
+    private final URL snapshotRepositoryUrl;
+    private final LoadTestArtifacts artifacts;
+    private final LoadStatistics statistics;
+    private final long endNanos;
+    private final Random random;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private String lastPath;
+
+    /**
+     * @param releaseRepositoryUrl
+     *            the content URL of the unzip repository with the released archive, ending with a
+     *            slash
+     * @param snapshotRepositoryUrl
+     *            the content URL of the unzip repository with the SNAPSHOT builds, ending with a
+     *            slash
+     * @param artifacts
+     *            the artifacts deployed to the master repository
+     * @param statistics
+     *            the statistics in which the requests are recorded
+     * @param endNanos
+     *            the {@link System#nanoTime()} at which the client stops
+     * @param seed
+     *            the seed for the random selection of requests
+     */
+    public LoadClient(final URL releaseRepositoryUrl, final URL snapshotRepositoryUrl,
+            final LoadTestArtifacts artifacts, final LoadStatistics statistics, final long endNanos, final long seed) {
+        this.releaseRepositoryUrl = releaseRepositoryUrl;
+        this.snapshotRepositoryUrl = snapshotRepositoryUrl;
+        this.artifacts = artifacts;
+        this.statistics = statistics;
+        this.endNanos = endNanos;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() - endNanos < 0 && !Thread.currentThread().isInterrupted()) {
+            final LoadOperation operation = LoadOperation.select(random.nextDouble());
+            final long start = System.nanoTime();
+            try {
+                execute(operation);
+                statistics.record(operation, System.nanoTime() - start);
+            } catch (final IOException e) {
+                statistics.recordError(operation, lastPath, e);
+            } catch (final IllegalStateException e) {
+                statistics.recordError(operation, lastPath, e);
+            }
+        }
+    }
+
+    private void execute(final LoadOperation operation) throws IOException {
+        final String snapshotArchive = LoadTestArtifacts.getVirtualSnapshotArchivePath() + "-unzip/";
+        switch (operation) {
+        case METADATA_PROBE:
+            final String releaseArchive = LoadTestArtifacts.getReleaseArchivePath() + "-unzip/";
+            get(releaseRepositoryUrl, releaseArchive + LoadTestArtifacts.P2_INDEX, HttpURLConnection.HTTP_OK);
+            get(releaseRepositoryUrl, releaseArchive + "compositeContent.xml", HttpURLConnection.HTTP_NOT_FOUND);
+            break;
+        case SNAPSHOT_RESOLUTION:
+            get(snapshotRepositoryUrl, snapshotArchive + LoadTestArtifacts.CONTENT_JAR, HttpURLConnection.HTTP_OK);
+            break;
+        case FOLDER_LISTING:
+            final String listing = new String(get(snapshotRepositoryUrl, snapshotArchive
+                    + LoadTestArtifacts.PLUGINS_FOLDER, HttpURLConnection.HTTP_OK), "UTF-8");
+            if (!listing.contains(LoadTestArtifacts.LARGE_BUNDLE.substring(LoadTestArtifacts.PLUGINS_FOLDER
+                    .length()))) {
+                throw new IllegalStateException("Listing does not contain the large bundle");
+            }
+            break;
+        case SMALL_ENTRY:
+            final int bundle = random.nextInt(artifacts.getSmallBundles());
+            final byte[] content = get(snapshotRepositoryUrl, snapshotArchive
+                    + LoadTestArtifacts.getSmallBundle(bundle), HttpURLConnection.HTTP_OK);
+            if (!Arrays.equals(LoadTestArtifacts.getSmallBundleContent(bundle), content)) {
+                throw new IllegalStateException("Wrong content of bundle " + bundle);
+            }
+            break;
+        case LARGE_BUNDLE:
+            downloadLargeBundle(snapshotRepositoryUrl, snapshotArchive + LoadTestArtifacts.LARGE_BUNDLE);
+            break;
+        default:
+            throw new IllegalArgumentException(operation.toString());
+        }
+    }
+
+    private byte[] get(final URL repositoryUrl, final String path, final int expectedStatus) throws IOException {
+        final HttpURLConnection connection = open(repositoryUrl, path);
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            discardErrorStream(connection);
+        }
+        if (status != expectedStatus) {
+            throw new IllegalStateException("Status " + status + " instead of " + expectedStatus);
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            return new byte[0];
+        }
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final InputStream stream = connection.getInputStream();
+        try {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+        } finally {
+            stream.close();
+        }
+        return content.toByteArray();
+    }
+
+    private void downloadLargeBundle(final URL repositoryUrl, final String path) throws IOException {
+        final HttpURLConnection connection = open(repositoryUrl, path);
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            discardErrorStream(connection);
+            throw new IllegalStateException("Status " + status);
+        }
+        final CRC32 crc = new CRC32();
+        long size = 0;
+        final InputStream stream = connection.getInputStream();
+        try {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        } finally {
+            stream.close();
+        }
+        if (size != artifacts.getLargeBundleSize() || crc.getValue() != artifacts.getLargeBundleChecksum()) {
+            throw new IllegalStateException("Large bundle truncated or corrupted: " + size + " bytes");
+        }
+    }
+
+    /**
+     * Reads the error response completely, so that the connection can be reused like the
+     * connections of a Tycho build.
+     */
+    private void discardErrorStream(final HttpURLConnection connection) throws IOException {
+        final InputStream stream = connection.getErrorStream();
+        if (stream != null) {
+            try {
+                while (stream.read(buffer) != -1) {
+                    // discard
+                }
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    private HttpURLConnection open(final URL repositoryUrl, final String path) throws IOException {
+        lastPath = path;
+        final HttpURLConnection connection = (HttpURLConnection) new URL(repositoryUrl, path).openConnection();
+        connection.setConnectTimeout(30000);
+        connection.setReadTimeout(60000);
+        return connection;
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.load;
+
+/**
+ * The requests of a Tycho build to a p2 repository in an unzip repository, with their share of
+ * all requests of a load test client.
+ */
+public enum LoadOperation {
+
+    /**
+     * Probing for the p2 metadata files of a released p2 repository, which includes requests for
+     * files that do not exist (e.g. <code>compositeContent.xml</code>).
+     */
+    METADATA_PROBE("metadataProbe", 20),
+
+    /**
+     * Downloading the p2 metadata of the latest SNAPSHOT build, which resolves the virtual version
+     * <code>SNAPSHOT</code>.
+     */
+    SNAPSHOT_RESOLUTION("snapshotResolution", 20),
+
+    /**
+     * Listing the bundles of the latest SNAPSHOT build.
+     */
+    FOLDER_LISTING("folderListing", 10),
+
+    /**
+     * Downloading a small bundle of the latest SNAPSHOT build.
+     */
+    SMALL_ENTRY("smallEntry", 40),
+
+    /**
+     * Downloading the large bundle of the latest SNAPSHOT build.
+     */
+    LARGE_BUNDLE("largeBundle", 10);
+
+    private static final int TOTAL_WEIGHT;
+    static {
+        int total = 0;
+        for (final LoadOperation operation : values()) {
+            total += operation.weight;
+        }
+        TOTAL_WEIGHT = total;
+    }
+
+    private final String id;
+    private final int weight;
+
+    private LoadOperation(final String id, final int weight) {
+        this.id = id;
+        this.weight = weight;
+    }
+
+    /**
+     * @return the name of the operation in the JSON report
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Selects an operation according to the weights of the operations.
+     *
+     * @param random
+     *            a random number in <code>[0, 1)</code>
+     */
+    public static LoadOperation select(final double random) {
+        int remaining = (int) (random * TOTAL_WEIGHT);
+        for (final LoadOperation operation : values()) {
+            remaining -= operation.weight;
+            if (remaining < 0) {
+                return operation;
+            }
+        }
+        return LARGE_BUNDLE;
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.load;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the latencies and errors of the operations of all load test clients and reports the
+ * throughput and latency percentiles per operation.
+ */
+public class LoadStatistics {
+
+    private static final int MAX_ERROR_MESSAGES = 20;
+    private static final double[] PERCENTILES = { 50, 95, 99 };
+
+    private final Map<LoadOperation, long[]> latencies = new EnumMap<LoadOperation, long[]>(LoadOperation.class);
+    private final Map<LoadOperation, Integer> counts = new EnumMap<LoadOperation, Integer>(LoadOperation.class);
+    private final Map<LoadOperation, Integer> errors = new EnumMap<LoadOperation, Integer>(LoadOperation.class);
+    private final List<String> errorMessages = new ArrayList<String>();
+
+    /**
+     * Records a successful operation.
+     */
+    public synchronized void record(final LoadOperation operation, final long nanos) {
+        final int count = getCount(operation);
+        long[] values = latencies.get(operation);
+        if (values == null) {
+            values = new long[1024];
+        } else if (values.length == count) {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        values[count] = nanos;
+        latencies.put(operation, values);
+        counts.put(operation, count + 1);
+    }
+
+    /**
+     * Records a failed operation.
+     */
+    public synchronized void recordError(final LoadOperation operation, final String path, final Throwable error) {
+        errors.put(operation, getErrorCount(operation) + 1);
+        if (errorMessages.size() < MAX_ERROR_MESSAGES) {
+            errorMessages.add(operation + " " + path + ": " + error);
+        }
+    }
+
+    public synchronized int getCount(final LoadOperation operation) {
+        final Integer count = counts.get(operation);
+        return count == null ? 0 : count;
+    }
+
+    public synchronized int getErrorCount(final LoadOperation operation) {
+        final Integer count = errors.get(operation);
+        return count == null ? 0 : count;
+    }
+
+    public synchronized int getTotalErrorCount() {
+        int total = 0;
+        for (final LoadOperation operation : LoadOperation.values()) {
+            total += getErrorCount(operation);
+        }
+        return total;
+    }
+
+    /**
+     * @return the first error messages, for the failure message of the test
+     */
+    public synchronized List<String> getErrorMessages() {
+        return new ArrayList<String>(errorMessages);
+    }
+
+    /**
+     * Returns the latency below or at which the given percentage of the successful operations
+     * were.
+     *
+     * @return the percentile in nanoseconds, <code>0</code> if no operation succeeded
+     */
+    public synchronized long getPercentile(final LoadOperation operation, final double percentile) {
+        final int count = getCount(operation);
+        if (count == 0) {
+            return 0;
+        }
+        final long[] sorted = Arrays.copyOf(latencies.get(operation), count);
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Creates a human readable report of the throughput and latencies.
+     *
+     * @param duration
+     *            the duration of the load test in milliseconds
+     */
+    public synchronized String createReport(final long duration) {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ENGLISH, "%-20s %8s %8s %8s %10s %10s %10s %10s%n", "operation", "count",
+                "errors", "ops/s", "p50 [ms]", "p95 [ms]", "p99 [ms]", "max [ms]"));
+        for (final LoadOperation operation : LoadOperation.values()) {
+            report.append(String.format(Locale.ENGLISH, "%-20s %8d %8d %8.1f", operation, getCount(operation),
+                    getErrorCount(operation), getCount(operation) * 1000.0 / duration));
+            for (final double percentile : PERCENTILES) {
+                report.append(String.format(Locale.ENGLISH, " %10.1f", toMillis(getPercentile(operation,
+                        percentile))));
+            }
+            report.append(String.format(Locale.ENGLISH, " %10.1f%n", toMillis(getPercentile(operation, 100))));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Creates a JSON report of the throughput and latencies, so that the results of different
+     * plugin versions can be compared.
+     *
+     * @param duration
+     *            the duration of the load test in milliseconds
+     */
+    public synchronized String createJsonReport(final long duration, final int clients) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"durationMillis\":").append(duration).append(",\"clients\":").append(clients);
+        json.append(",\"operations\":{");
+        for (final LoadOperation operation : LoadOperation.values()) {
+            if (operation.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(operation.getId()).append("\":{");
+            json.append("\"count\":").append(getCount(operation));
+            json.append(",\"errors\":").append(getErrorCount(operation));
+            json.append(",\"p50Nanos\":").append(getPercentile(operation, 50));
+            json.append(",\"p95Nanos\":").append(getPercentile(operation, 95));
+            json.append(",\"p99Nanos\":").append(getPercentile(operation, 99));
+            json.append(",\"maxNanos\":").append(getPercentile(operation, 100));
+            json.append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates the artifacts deployed for the load test: a released p2 repository archive and a
+ * series of SNAPSHOT builds of another one, together with their <code>maven-metadata.xml</code>
+ * files. All builds have the same content, so that clients can verify downloaded entries
+ * independent of the build the virtual version <code>SNAPSHOT</code> was resolved to.
+ */
+public final class LoadTestArtifacts {
+
+    public static final String GROUP_PATH = "org/example/load";
+    public static final String ARTIFACT_ID = "p2repo";
+    public static final String RELEASE_VERSION = "1.0.0";
+    public static final String SNAPSHOT_VERSION = "1.1.0-SNAPSHOT";
+    public static final String CLASSIFIER_AND_EXTENSION = "-assembly.zip";
+
+    public static final String P2_INDEX = "p2.index";
+    public static final String CONTENT_JAR = "content.jar";
+    public static final String PLUGINS_FOLDER = "plugins/";
+    public static final String LARGE_BUNDLE = "plugins/org.example.large_1.0.0.jar";
+
+    private static final String TIMESTAMP = "20140101.120000";
+    private static final int CONTENT_JAR_SIZE = 64 * 1024;
+    private static final int SMALL_BUNDLE_SIZE = 4 * 1024;
+
+    private final int smallBundles;
+    private final int largeBundleSize;
+    private final long largeBundleChecksum;
+
+    /**
+     * @param smallBundles
+     *            the number of small bundles in each archive
+     * @param largeBundleSize
+     *            the size of the one large bundle in each archive in bytes
+     */
+    public LoadTestArtifacts(final int smallBundles, final int largeBundleSize) {
+        this.smallBundles = smallBundles;
+        this.largeBundleSize = largeBundleSize;
+        final CRC32 crc = new CRC32();
+        crc.update(getLargeBundleContent());
+        this.largeBundleChecksum = crc.getValue();
+    }
+
+    public int getSmallBundles() {
+        return smallBundles;
+    }
+
+    /**
+     * @return the path in the archive of the small bundle with the given index
+     */
+    public static String getSmallBundle(final int index) {
+        return PLUGINS_FOLDER + "org.example.bundle" + index + "_1.0.0.jar";
+    }
+
+    /**
+     * @return the expected content of the small bundle with the given index
+     */
+    public static byte[] getSmallBundleContent(final int index) {
+        return randomContent(index, SMALL_BUNDLE_SIZE);
+    }
+
+    public int getLargeBundleSize() {
+        return largeBundleSize;
+    }
+
+    /**
+     * @return the CRC-32 checksum of the large bundle
+     */
+    public long getLargeBundleChecksum() {
+        return largeBundleChecksum;
+    }
+
+    private byte[] getLargeBundleContent() {
+        return randomContent(-1, largeBundleSize);
+    }
+
+    /**
+     * @return the repository path of the artifact folder, without leading and trailing slash
+     */
+    public static String getArtifactPath() {
+        return GROUP_PATH + "/" + ARTIFACT_ID;
+    }
+
+    /**
+     * @return the repository path of the released archive, without leading slash
+     */
+    public static String getReleaseArchivePath() {
+        return getArtifactPath() + "/" + RELEASE_VERSION + "/" + ARTIFACT_ID + "-" + RELEASE_VERSION
+                + CLASSIFIER_AND_EXTENSION;
+    }
+
+    /**
+     * @return the repository path of the archive of the given SNAPSHOT build, without leading slash
+     */
+    public static String getSnapshotArchivePath(final int build) {
+        return getArtifactPath() + "/" + SNAPSHOT_VERSION + "/" + ARTIFACT_ID + "-" + getTimestampVersion(build)
+                + CLASSIFIER_AND_EXTENSION;
+    }
+
+    /**
+     * @return the repository path of the latest SNAPSHOT archive with the virtual version
+     *         <code>SNAPSHOT</code>, without leading slash
+     */
+    public static String getVirtualSnapshotArchivePath() {
+        return getArtifactPath() + "/SNAPSHOT/" + ARTIFACT_ID + "-SNAPSHOT" + CLASSIFIER_AND_EXTENSION;
+    }
+
+    /**
+     * @return the repository path of the <code>maven-metadata.xml</code> of the artifact folder
+     */
+    public static String getArtifactMetadataPath() {
+        return getArtifactPath() + "/maven-metadata.xml";
+    }
+
+    /**
+     * @return the repository path of the <code>maven-metadata.xml</code> of the SNAPSHOT version
+     */
+    public static String getSnapshotMetadataPath() {
+        return getArtifactPath() + "/" + SNAPSHOT_VERSION + "/maven-metadata.xml";
+    }
+
+    private static String getTimestampVersion(final int build) {
+        return SNAPSHOT_VERSION.substring(0, SNAPSHOT_VERSION.length() - "-SNAPSHOT".length()) + "-" + TIMESTAMP + "-"
+                + build;
+    }
+
+    /**
+     * Writes the released archive into a directory with the layout of a Maven repository.
+     *
+     * @param repositoryDir
+     *            the base directory of the repository
+     * @return the written archive
+     */
+    public File writeReleaseArchive(final File repositoryDir) throws IOException {
+        final File archive = new File(repositoryDir, getReleaseArchivePath());
+        writeArchive(archive);
+        return archive;
+    }
+
+    /**
+     * Writes the archive of a SNAPSHOT build into a directory with the layout of a Maven
+     * repository.
+     *
+     * @param repositoryDir
+     *            the base directory of the repository
+     * @param build
+     *            the build number
+     * @return the written archive
+     */
+    public File writeSnapshotArchive(final File repositoryDir, final int build) throws IOException {
+        final File archive = new File(repositoryDir, getSnapshotArchivePath(build));
+        writeArchive(archive);
+        return archive;
+    }
+
+    /**
+     * Writes the <code>maven-metadata.xml</code> files of the artifact folder and the SNAPSHOT
+     * version, listing the builds up to the given one.
+     *
+     * @param repositoryDir
+     *            the base directory of the repository
+     * @param latestBuild
+     *            the build number of the latest SNAPSHOT build
+     */
+    public void writeMetadata(final File repositoryDir, final int latestBuild) throws IOException {
+        final StringBuilder artifactMetadata = header();
+        artifactMetadata.append("  <versioning>\n");
+        artifactMetadata.append("    <latest>").append(SNAPSHOT_VERSION).append("</latest>\n");
+        artifactMetadata.append("    <release>").append(RELEASE_VERSION).append("</release>\n");
+        artifactMetadata.append("    <versions>\n");
+        artifactMetadata.append("      <version>").append(RELEASE_VERSION).append("</version>\n");
+        artifactMetadata.append("      <version>").append(SNAPSHOT_VERSION).append("</version>\n");
+        artifactMetadata.append("    </versions>\n");
+        artifactMetadata.append("  </versioning>\n</metadata>\n");
+        write(new File(repositoryDir, getArtifactMetadataPath()), artifactMetadata.toString());
+
+        final StringBuilder snapshotMetadata = header();
+        snapshotMetadata.append("  <version>").append(SNAPSHOT_VERSION).append("</version>\n");
+        snapshotMetadata.append("  <versioning>\n");
+        snapshotMetadata.append("    <snapshot>\n");
+        snapshotMetadata.append("      <timestamp>").append(TIMESTAMP).append("</timestamp>\n");
+        snapshotMetadata.append("      <buildNumber>").append(latestBuild).append("</buildNumber>\n");
+        snapshotMetadata.append("    </snapshot>\n");
+        snapshotMetadata.append("    <snapshotVersions>\n");
+        for (int build = 1; build <= latestBuild; build++) {
+            snapshotMetadata.append("      <snapshotVersion>\n");
+            snapshotMetadata.append("        <classifier>assembly</classifier>\n");
+            snapshotMetadata.append("        <extension>zip</extension>\n");
+            snapshotMetadata.append("        <value>").append(getTimestampVersion(build)).append("</value>\n");
+            snapshotMetadata.append("      </snapshotVersion>\n");
+        }
+        snapshotMetadata.append("    </snapshotVersions>\n");
+        snapshotMetadata.append("  </versioning>\n</metadata>\n");
+        write(new File(repositoryDir, getSnapshotMetadataPath()), snapshotMetadata.toString());
+    }
+
+    private static StringBuilder header() {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<metadata>\n");
+        xml.append("  <groupId>").append(GROUP_PATH.replace('/', '.')).append("</groupId>\n");
+        xml.append("  <artifactId>").append(ARTIFACT_ID).append("</artifactId>\n");
+        return xml;
+    }
+
+    private void writeArchive(final File archive) throws IOException {
+        archive.getParentFile().mkdirs();
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            putEntry(out, P2_INDEX, "version=1\nmetadata.repository.factory.order=content.xml,!\n"
+                    .getBytes("UTF-8"));
+            putEntry(out, "artifacts.jar", randomContent(-2, CONTENT_JAR_SIZE / 4));
+            putEntry(out, CONTENT_JAR, randomContent(-3, CONTENT_JAR_SIZE));
+            putEntry(out, PLUGINS_FOLDER, new byte[0]);
+            for (int i = 0; i < smallBundles; i++) {
+                putEntry(out, getSmallBundle(i), getSmallBundleContent(i));
+            }
+            putEntry(out, LARGE_BUNDLE, getLargeBundleContent());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void putEntry(final ZipOutputStream out, final String name, final byte[] content)
+            throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static byte[] randomContent(final long seed, final int size) {
+        final Random random = new Random(seed);
+        final byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            // text with the compression ratio of typical class files
+            final int next = random.nextInt(40);
+            content[i] = (byte) (next < 26 ? 'a' + next : next < 36 ? '0' + next - 26 : ' ');
+        }
+        return content;
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
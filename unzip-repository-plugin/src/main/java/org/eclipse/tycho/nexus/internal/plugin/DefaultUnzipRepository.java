@@ -11,14 +11,40 @@
 package org.eclipse.tycho.nexus.internal.plugin;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ClassifiedPath;
 import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResult;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResultCache;
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock;
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathClassifier;
 import org.eclipse.tycho.nexus.internal.plugin.cache.RequestPathConverter;
 import org.eclipse.tycho.nexus.internal.plugin.cache.UnzipCache;
+import org.eclipse.tycho.nexus.internal.plugin.p2.CompositeRepositoryCache;
+import org.eclipse.tycho.nexus.internal.plugin.p2.CompositeRepositoryResource;
+import org.eclipse.tycho.nexus.internal.plugin.p2.P2ArtifactIndexStore;
+import org.eclipse.tycho.nexus.internal.plugin.p2.P2ArtifactLookupResource;
+import org.eclipse.tycho.nexus.internal.plugin.resolve.BatchResolveResource;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.HotItems;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.RequestTimings;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.StatisticsResource;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ArchiveTreeResource;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ChecksumStore;
+import org.eclipse.tycho.nexus.internal.plugin.storage.FolderListingCache;
 import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
 import org.eclipse.tycho.nexus.internal.plugin.storage.ZipAwareStorageCollectionItem;
 import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedItem;
@@ -33,7 +59,14 @@ import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.events.NexusStartedEvent;
+import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventCache;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventDelete;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStore;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventAdd;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
+import org.sonatype.nexus.proxy.item.DefaultStorageLinkItem;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.item.StorageLinkItem;
@@ -75,6 +108,13 @@ import com.google.common.eventbus.Subscribe;
 @Component(role = UnzipRepository.class, hint = DefaultUnzipRepository.REPOSITORY_HINT, instantiationStrategy = "per-lookup", description = "Unzip Repository")
 public class DefaultUnzipRepository extends AbstractShadowRepository implements UnzipRepository {
     static final String REPOSITORY_HINT = "org.eclipse.tycho.nexus.plugin.DefaultUnzipRepository";
+    private static final String MAVEN_METADATA_XML = "/maven-metadata.xml";
+    static final int RESOLVER_THREADS = 4;
+    static final int SLOW_REQUEST_LOG_QUEUE_SIZE = 1000;
+    static final int INDEX_QUEUE_SIZE = 100;
+    static final long HOT_ITEMS_STORE_INTERVAL_MINUTES = 5;
+    private static final String HOT_ITEMS_FOLDER = "unzip";
+    static final long WARM_UP_PAUSE_MILLIS = 50;
 
     @Requirement
     private UnzipRepositoryConfigurator configurator;
@@ -90,6 +130,28 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
 
     private RepositoryKind repositoryKind;
     private UnzipCache cache;
+    private volatile ChecksumStore checksumStore;
+    private P2ArtifactIndexStore p2ArtifactIndexStore;
+    // locks and caches are owned by the repository, so that repositories never wait for each other
+    private final PathLock pathLock = new PathLock();
+    private final RequestTimings requestTimings = new RequestTimings();
+    private final ConversionResultCache conversionResultCache = new ConversionResultCache(
+            ConversionResultCache.DEFAULT_TIME_TO_LIVE, pathLock, requestTimings);
+    private final SlowRequestLog slowRequestLog = new SlowRequestLog(new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            getSlowRequestLogExecutor().execute(command);
+        }
+    });
+    private final HotItems hotItems = new HotItems();
+    private final FolderListingCache folderListingCache = new FolderListingCache(FolderListingCache.DEFAULT_CAPACITY);
+    private final CompositeRepositoryCache compositeRepositoryCache = new CompositeRepositoryCache(
+            CompositeRepositoryCache.DEFAULT_CAPACITY);
+    private ExecutorService resolverExecutor;
+    private ExecutorService slowRequestLogExecutor;
+    private ScheduledExecutorService hotItemsExecutor;
+    private ExecutorService warmUpExecutor;
+    private ExecutorService indexExecutor;
     private boolean processedNexusStartedEvent = false;
     private boolean isMasterAvailable = false;
 
@@ -227,10 +289,19 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
             }
         }
         processedNexusStartedEvent = true;
+        if (isMasterAvailable) {
+            startWarmUp();
+        }
     }
 
     @Subscribe
     public void onRepositoryRegistryEventAdd(RepositoryRegistryEventAdd evt) {
+        if (evt.getRepository() == this) {
+            requestTimings.registerMBean(getId(), getLogger());
+            pathLock.setRepositoryId(getId());
+            loadHotItems();
+            scheduleHotItemsStore();
+        }
         final String eventRepositoryId = evt.getRepository().getId();
         if (super.getMasterRepository() != null && eventRepositoryId.equals(super.getMasterRepository().getId())) {
             try {
@@ -243,6 +314,41 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
         }
     }
 
+    @Subscribe
+    public void onRepositoryRegistryEventRemove(final RepositoryRegistryEventRemove evt) {
+        if (evt.getRepository() == this) {
+            shutdownExecutors();
+            requestTimings.unregisterMBean(getLogger());
+            slowRequestLog.setThreshold(0);
+            getHotItemsFile().delete();
+        }
+    }
+
+    @Subscribe
+    public void onNexusStoppedEvent(final NexusStoppedEvent evt) {
+        shutdownExecutors();
+        storeHotItems();
+        requestTimings.unregisterMBean(getLogger());
+    }
+
+    /**
+     * Drops cached resolutions of virtual versions as soon as a <code>maven-metadata.xml</code>
+     * changes, and the memoized listings of the folders of changed items. The master repository may
+     * be a group, so events of all repositories are considered.
+     */
+    @Subscribe
+    public void onMetadataChange(final RepositoryItemEvent evt) {
+        if (evt instanceof RepositoryItemEventStore || evt instanceof RepositoryItemEventCache
+                || evt instanceof RepositoryItemEventDelete) {
+            final String path = evt.getItem().getPath();
+            folderListingCache.invalidate(path);
+            if (path.endsWith(MAVEN_METADATA_XML)) {
+                conversionResultCache.invalidate(path);
+                compositeRepositoryCache.invalidate(path);
+            }
+        }
+    }
+
     /**
      * Retrieves an item from the master repository.
      * 
@@ -279,26 +385,90 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
     protected StorageItem doRetrieveItem(final ResourceStoreRequest request) throws IllegalOperationException,
             ItemNotFoundException, LocalStorageException {
 
-        final RequestTimeTrace timeTrace = new RequestTimeTrace(request.getRequestPath());
+        if (StatisticsResource.isStatisticsPath(request.getRequestPath())) {
+            return StatisticsResource.createItem(this, request,
+                    pathLock.getStatistics(StatisticsResource.TOP_CONTENDED_PATHS), requestTimings, hotItems);
+        }
+        if (BatchResolveResource.isResolvePath(request.getRequestPath())) {
+            return BatchResolveResource.createItem(this, request, getResolverExecutor());
+        }
+        if (ArchiveTreeResource.isTreePath(request.getRequestPath())) {
+            return ArchiveTreeResource.createItem(this, request);
+        }
+        if (P2ArtifactLookupResource.isLookupPath(request.getRequestPath())) {
+            return P2ArtifactLookupResource.createItem(this, request);
+        }
+        if (CompositeRepositoryResource.isCompositePath(request.getRequestPath())) {
+            return CompositeRepositoryResource.createItem(this, request);
+        }
+
+        final RequestTimeTrace timeTrace = new RequestTimeTrace(request.getRequestPath(), requestTimings,
+                slowRequestLog);
+        try {
+            return retrieveConvertedItem(request, timeTrace);
+        } finally {
+            timeTrace.finish();
+        }
+    }
+
+    /**
+     * Creates a link to the resolved version of a virtual version. Unless Nexus is configured to
+     * resolve links itself, it answers the request with a temporary redirect to the link target.
+     * The content of the resolved path never changes, so that it can be cached by proxies in front
+     * of Nexus, while only the redirect has to be requested again for each build.
+     */
+    private StorageLinkItem createRedirect(final ResourceStoreRequest request, final String resolvedPath) {
+        return new DefaultStorageLinkItem(this, request, true, false, createUid(resolvedPath));
+    }
 
-        final ConversionResult conversionResult = RequestPathConverter.convert(getMasterRepository(), request,
-                isUseVirtualVersion());
+    private StorageItem retrieveConvertedItem(final ResourceStoreRequest request, final RequestTimeTrace timeTrace)
+            throws IllegalOperationException, ItemNotFoundException, LocalStorageException {
+        final long conversionStart = RequestTimings.start();
+        // the path is only classified once, unless the conversion changes it
+        final ClassifiedPath requestedPath = PathClassifier.classify(request.getRequestPath());
+        final ConversionResult conversionResult;
+        if (isUseVirtualVersion()) {
+            conversionResult = RequestPathConverter.convert(getMasterRepository(), request, requestedPath,
+                    conversionResultCache);
+        } else {
+            conversionResult = new ConversionResult(request.getRequestPath());
+        }
+        requestTimings.record(Phase.CONVERSION, conversionStart);
+        if (timeTrace.getSlowRequestRecord() != null) {
+            timeTrace.getSlowRequestRecord().setConvertedPath(conversionResult.getConvertedPath());
+        }
 
+        final boolean debug = getLogger().isDebugEnabled();
         if (conversionResult.isPathConverted()) {
+            // for archives the path of the archive, so that all requests into it are counted together
+            hotItems.recordVirtualVersion(requestedPath.isArchivePath() ? requestedPath.getArchivePath()
+                    + Util.UNZIP_TYPE_EXTENSION : request.getRequestPath());
+        }
+        if (conversionResult.isPathConverted() && debug) {
             getLogger().debug(
                     "Resolved dynamic request: " + request.getRequestUrl() + ". Resolved request path: "
                             + conversionResult.getConvertedPath());
         }
+        if (conversionResult.isPathConverted() && isRedirectToResolvedVersion()) {
+            if (debug) {
+                getLogger().debug(timeTrace.getMessage());
+            }
+            return createRedirect(request, conversionResult.getConvertedPath());
+        }
+        final ClassifiedPath classifiedPath = conversionResult.isPathConverted() ? PathClassifier
+                .classify(conversionResult.getConvertedPath()) : requestedPath;
 
         // First check for zip content to avoid unnecessary and expensive backend calls for zip content requests.
         // Due to naming conventions zippedItem creation will normally only call the backend in case it is a zip content request.
         // a) path does not point to zip content (-> null)
         // b) a path to a file/folder inside a zip file (-> ZippedItem is created and returned)
         // c) a non-existing path under an existing zip file (-> retrieving ZippedItem fails with ItemNotFoundException)
-        final ZippedItem zippedItem = getZippedItem(conversionResult, request);
+        final ZippedItem zippedItem = getZippedItem(conversionResult, classifiedPath, request);
         if (zippedItem != null) {
             final StorageItem zippedStorageItem = zippedItem.getZippedStorageItem();
-            getLogger().debug(timeTrace.getMessage());
+            if (debug) {
+                getLogger().debug(timeTrace.getMessage());
+            }
             return zippedStorageItem;
         }
 
@@ -310,10 +480,14 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
             // item is non-zip folder
             final ZipAwareStorageCollectionItem zipAwareStorageCollectionItem = new ZipAwareStorageCollectionItem(this,
                     (StorageCollectionItem) masterItem, getLogger());
-            getLogger().debug(timeTrace.getMessage());
+            if (debug) {
+                getLogger().debug(timeTrace.getMessage());
+            }
             return zipAwareStorageCollectionItem;
         } else {
-            getLogger().debug(timeTrace.getMessage());
+            if (debug) {
+                getLogger().debug(timeTrace.getMessage());
+            }
             // if item is a non-zip file we simply return it as it is
             return masterItem;
         }
@@ -327,6 +501,8 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
      * 
      * @param conversionResult
      *            the result of the snapshot path conversion, containing the converted path
+     * @param classifiedPath
+     *            the classification of the converted path
      * @param request
      *            the {@link ResourceStoreRequest} for the item. The request is included in the
      *            {@link StorageItem} returned by the repository.
@@ -336,46 +512,22 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
      * @throws ItemNotFoundException
      *             is thrown if for non-existing or invalid request path
      */
-    private ZippedItem getZippedItem(final ConversionResult conversionResult, ResourceStoreRequest request)
-            throws LocalStorageException, ItemNotFoundException {
-        final StringBuilder pathInZip = new StringBuilder();
-        final String[] pathSegments = conversionResult.getConvertedPath().split("/");
-        String zipFilePath = "";
-        String zipItemPath = null;
-        long zipLastModified = 0L;
-
-        for (final String pathSegment : pathSegments) {
-            if (zipItemPath == null) {
-                if (!zipFilePath.toString().endsWith("/")) {
-                    zipFilePath = zipFilePath + "/";
-                }
-                zipFilePath = zipFilePath + pathSegment;
-                if (zipFilePath.endsWith(Util.UNZIP_TYPE_EXTENSION)) {
-                    final String zipFilePathWithoutExtension = zipFilePath.substring(0, zipFilePath.length()
-                            - Util.UNZIP_TYPE_EXTENSION.length());
-                    getCache().cleanSnapshots(conversionResult);
-                    final File zipFile = getCache().getArchive(zipFilePathWithoutExtension);
-                    if (zipFile != null) {
-                        zipLastModified = zipFile.lastModified();
-                        zipItemPath = zipFilePathWithoutExtension;
-                    }
-                }
-            } else {
-                if (pathInZip.length() > 0) {
-                    pathInZip.append("/");
-                }
-                pathInZip.append(pathSegment);
-            }
+    private ZippedItem getZippedItem(final ConversionResult conversionResult, final ClassifiedPath classifiedPath,
+            final ResourceStoreRequest request) throws LocalStorageException, ItemNotFoundException {
+        if (!classifiedPath.isArchivePath()) {
+            return null;
         }
-        if (zipItemPath != null) {
-            // creating a new ZippedItem fails with ItemNotFoundException if a non-existing file or folder
-            // inside the (existing) zip file is accessed
+        final String zipItemPath = classifiedPath.getArchivePath();
+        getCache().cleanSnapshots(conversionResult);
+        final File zipFile = getCache().getArchive(zipItemPath);
+
+        // creating a new ZippedItem fails with ItemNotFoundException if a non-existing file or folder
+        // inside the (existing) zip file is accessed
+        if (getLogger().isDebugEnabled()) {
             getLogger().debug(conversionResult.getConvertedPath() + " points into a zip file.");
-            final ZippedItem zippedItem = ZippedItem.newZippedItem(this, request, zipItemPath, pathInZip.toString(),
-                    zipLastModified, getLogger());
-            return zippedItem;
         }
-        return null;
+        return ZippedItem.newZippedItem(this, request, zipItemPath, classifiedPath.getPathInArchive(),
+                zipFile.lastModified(), getLogger());
     }
 
     public synchronized UnzipCache getCache() {
@@ -385,6 +537,192 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
         return cache;
     }
 
+    public ChecksumStore getChecksumStore() {
+        // looked up for every entry, so only the creation locks the repository
+        ChecksumStore store = checksumStore;
+        if (store == null) {
+            synchronized (this) {
+                store = checksumStore;
+                if (store == null) {
+                    store = new ChecksumStore(ChecksumStore.DEFAULT_CAPACITY, getLogger());
+                    checksumStore = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    public synchronized P2ArtifactIndexStore getP2ArtifactIndexStore() {
+        if (p2ArtifactIndexStore == null) {
+            p2ArtifactIndexStore = new P2ArtifactIndexStore(P2ArtifactIndexStore.DEFAULT_CAPACITY, new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    getIndexExecutor().execute(command);
+                }
+            }, getLogger());
+        }
+        return p2ArtifactIndexStore;
+    }
+
+    public PathLock getPathLock() {
+        return pathLock;
+    }
+
+    public RequestTimings getRequestTimings() {
+        return requestTimings;
+    }
+
+    public ConversionResultCache getConversionResultCache() {
+        return conversionResultCache;
+    }
+
+    public SlowRequestLog getSlowRequestLog() {
+        return slowRequestLog;
+    }
+
+    public HotItems getHotItems() {
+        return hotItems;
+    }
+
+    public FolderListingCache getFolderListingCache() {
+        return folderListingCache;
+    }
+
+    public CompositeRepositoryCache getCompositeRepositoryCache() {
+        return compositeRepositoryCache;
+    }
+
+    /**
+     * @return the file in the working directory of Nexus in which the hot items are kept across
+     *         restarts
+     */
+    File getHotItemsFile() {
+        return new File(getApplicationConfiguration().getWorkingDirectory(HOT_ITEMS_FOLDER), getId()
+                + "-hot-items.txt");
+    }
+
+    private void loadHotItems() {
+        try {
+            hotItems.load(getHotItemsFile());
+        } catch (final IOException e) {
+            getLogger().warn("Unable to load the hot items of repository " + getId(), e);
+        }
+    }
+
+    void storeHotItems() {
+        try {
+            hotItems.store(getHotItemsFile());
+        } catch (final IOException e) {
+            getLogger().warn("Unable to store the hot items of repository " + getId(), e);
+        }
+    }
+
+    /**
+     * Stores the hot items periodically on a low priority thread, so that they survive a crash.
+     */
+    private synchronized void scheduleHotItemsStore() {
+        if (hotItemsExecutor == null) {
+            hotItemsExecutor = new ScheduledThreadPoolExecutor(1, new RepositoryThreadFactory(getId(), "hot-items",
+                    Thread.MIN_PRIORITY));
+            hotItemsExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    storeHotItems();
+                }
+            }, HOT_ITEMS_STORE_INTERVAL_MINUTES, HOT_ITEMS_STORE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return the bounded pool resolving the virtual versions of batch requests, created on first
+     *         use
+     */
+    synchronized ExecutorService getResolverExecutor() {
+        if (resolverExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new RepositoryThreadFactory(getId(),
+                            "resolver", Thread.NORM_PRIORITY));
+            executor.allowCoreThreadTimeOut(true);
+            resolverExecutor = executor;
+        }
+        return resolverExecutor;
+    }
+
+    /**
+     * @return the single low priority thread writing the slow-request log, created on first use.
+     *         Records are rejected while its queue is full.
+     */
+    synchronized ExecutorService getSlowRequestLogExecutor() {
+        if (slowRequestLogExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(SLOW_REQUEST_LOG_QUEUE_SIZE), new RepositoryThreadFactory(getId(),
+                            "slow-request-log", Thread.MIN_PRIORITY));
+            executor.allowCoreThreadTimeOut(true);
+            slowRequestLogExecutor = executor;
+        }
+        return slowRequestLogExecutor;
+    }
+
+    /**
+     * @return the single low priority thread indexing newly cached archives, created on first use.
+     *         Archives are rejected while its queue is full.
+     */
+    synchronized ExecutorService getIndexExecutor() {
+        if (indexExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(INDEX_QUEUE_SIZE), new RepositoryThreadFactory(getId(),
+                            "index", Thread.MIN_PRIORITY));
+            executor.allowCoreThreadTimeOut(true);
+            indexExecutor = executor;
+        }
+        return indexExecutor;
+    }
+
+    /**
+     * Replays the hot items restored from the previous run on a single low priority thread, which
+     * pauses after each item so that it yields to the requests of clients.
+     */
+    synchronized void startWarmUp() {
+        if (warmUpExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new RepositoryThreadFactory(getId(), "warm-up",
+                            Thread.MIN_PRIORITY));
+            executor.allowCoreThreadTimeOut(true);
+            warmUpExecutor = executor;
+            warmUpExecutor.execute(new HotItemsWarmUp(this, WARM_UP_PAUSE_MILLIS, getLogger()));
+        }
+    }
+
+    /**
+     * Stops the executors of the repository. The executors created on first use are created again
+     * if the repository is used afterwards.
+     */
+    synchronized void shutdownExecutors() {
+        if (resolverExecutor != null) {
+            resolverExecutor.shutdownNow();
+            resolverExecutor = null;
+        }
+        if (slowRequestLogExecutor != null) {
+            // pending records are still written
+            slowRequestLogExecutor.shutdown();
+            slowRequestLogExecutor = null;
+        }
+        if (hotItemsExecutor != null) {
+            hotItemsExecutor.shutdownNow();
+            hotItemsExecutor = null;
+        }
+        if (warmUpExecutor != null) {
+            // cancels a running warm-up
+            warmUpExecutor.shutdownNow();
+            warmUpExecutor = null;
+        }
+        if (indexExecutor != null) {
+            // archives which are not indexed yet are indexed on demand
+            indexExecutor.shutdownNow();
+            indexExecutor = null;
+        }
+    }
+
     @Override
     protected StorageLinkItem createLink(final StorageItem item) throws UnsupportedStorageOperationException,
             IllegalOperationException, LocalStorageException {
@@ -419,4 +757,58 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
     public void setUseVirtualVersion(final boolean val) {
         ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setUseVirtualVersion(val);
     }
+
+    @Override
+    public long getVirtualVersionCacheTimeToLive() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getVirtualVersionCacheTimeToLive();
+    }
+
+    @Override
+    public void setVirtualVersionCacheTimeToLive(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setVirtualVersionCacheTimeToLive(val);
+        conversionResultCache.setTimeToLive(val);
+    }
+
+    @Override
+    public long getSlowRequestThreshold() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getSlowRequestThreshold();
+    }
+
+    @Override
+    public void setSlowRequestThreshold(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setSlowRequestThreshold(val);
+        slowRequestLog.setThreshold(val);
+    }
+
+    @Override
+    public int getSlowRequestSamplePercentage() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getSlowRequestSamplePercentage();
+    }
+
+    @Override
+    public void setSlowRequestSamplePercentage(final int val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setSlowRequestSamplePercentage(val);
+        slowRequestLog.setSamplePercentage(val);
+    }
+
+    @Override
+    public boolean isRedirectToResolvedVersion() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).isRedirectToResolvedVersion();
+    }
+
+    @Override
+    public void setRedirectToResolvedVersion(final boolean val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setRedirectToResolvedVersion(val);
+    }
+
+    @Override
+    public long getSessionIdleTimeout() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getSessionIdleTimeout();
+    }
+
+    @Override
+    public void setSessionIdleTimeout(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setSessionIdleTimeout(val);
+        conversionResultCache.getSessionPins().setIdleTimeout(val);
+    }
 }
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResult;
+import org.eclipse.tycho.nexus.internal.plugin.cache.RequestPathConverter;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.HeavyHitters;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.HotItems.Kind;
+import org.slf4j.Logger;
+import org.sonatype.nexus.proxy.IllegalOperationException;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+/**
+ * Replays the hot items of an unzip repository which were restored from a previous run, so that
+ * the virtual versions are resolved, the archives are cached and the entries were read once, which
+ * also computes their checksums, before the first builds arrive. The virtual versions are replayed
+ * first, then the archives and the entries, each starting with the most requested one. After each
+ * item the warm-up pauses, so that it yields to the requests of clients. Interrupting the thread
+ * cancels the warm-up.
+ * <p>
+ * The replay is not recorded in the hot items, so that it does not inflate the counts which are
+ * halved on each restart.
+ */
+class HotItemsWarmUp implements Runnable {
+
+    // resolved virtual versions determine which archives are needed
+    private static final Kind[] REPLAY_ORDER = { Kind.VIRTUAL_VERSION, Kind.ARCHIVE, Kind.ENTRY };
+
+    private final DefaultUnzipRepository repository;
+    private final long pauseMillis;
+    private final Logger logger;
+
+    /**
+     * @param repository
+     *            the repository to be warmed up
+     * @param pauseMillis
+     *            the pause after each item in milliseconds
+     * @param logger
+     *            the logger for the summary of the warm-up
+     */
+    HotItemsWarmUp(final DefaultUnzipRepository repository, final long pauseMillis, final Logger logger) {
+        this.repository = repository;
+        this.pauseMillis = pauseMillis;
+        this.logger = logger;
+    }
+
+    @Override
+    public void run() {
+        final long start = System.currentTimeMillis();
+        int replayed = 0;
+        int missing = 0;
+        repository.getHotItems().setRecording(false);
+        try {
+            for (final Kind kind : REPLAY_ORDER) {
+                if (kind == Kind.VIRTUAL_VERSION && !repository.isUseVirtualVersion()) {
+                    continue;
+                }
+                final HeavyHitters hotItems = repository.getHotItems().get(kind);
+                // a snapshot, the items requested during the warm-up are not replayed
+                final List<HeavyHitters.Entry> entries = hotItems.top(hotItems.getCapacity());
+                for (final HeavyHitters.Entry entry : entries) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (!replay(kind, entry.getKey())) {
+                        missing++;
+                    }
+                    replayed++;
+                    Thread.sleep(pauseMillis);
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.debug("Cancelled warm-up of repository {} after {} items", repository.getId(), replayed);
+            return;
+        } finally {
+            repository.getHotItems().setRecording(true);
+        }
+        if (replayed > 0) {
+            logger.info("Warmed up repository {} with {} hot items ({} no longer available) in {} ms",
+                    repository.getId(), replayed, missing, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the item does not exist (anymore)
+     */
+    private boolean replay(final Kind kind, final String path) {
+        try {
+            switch (kind) {
+            case VIRTUAL_VERSION:
+                // only resolved, also if clients are redirected to the resolved version
+                final ConversionResult result = RequestPathConverter.convert(repository.getMasterRepository(),
+                        new ResourceStoreRequest(path), true, repository.getConversionResultCache());
+                return result.isPathConverted();
+            case ARCHIVE:
+                repository.getCache().getArchive(path);
+                return true;
+            default:
+                // served like a client request, including the clean up of snapshots
+                final StorageItem item = repository.doRetrieveItem(new ResourceStoreRequest(path));
+                if (item instanceof StorageFileItem) {
+                    read((StorageFileItem) item);
+                }
+                return true;
+            }
+        } catch (final ItemNotFoundException e) {
+            logger.debug("Skipped warm-up of {}: {}", path, e.getMessage());
+            return false;
+        } catch (final LocalStorageException e) {
+            logger.warn("Unable to warm up " + path + " in repository " + repository.getId(), e);
+            return false;
+        } catch (final IllegalOperationException e) {
+            logger.debug("Skipped warm-up of {}: {}", path, e.getMessage());
+            return false;
+        } catch (final IOException e) {
+            logger.warn("Unable to warm up " + path + " in repository " + repository.getId(), e);
+            return false;
+        }
+    }
+
+    private static void read(final StorageFileItem item) throws IOException {
+        final InputStream stream = item.getInputStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            while (stream.read(buffer) >= 0) {
+                // only read
+            }
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+
+/**
+ * The query parameters of a request, taken from the request URL. Nexus only passes the request
+ * path to the repository, so the parameters are parsed from the URL the request was received with.
+ */
+public final class RequestParameters {
+
+    private static final RequestParameters NONE = new RequestParameters(new LinkedHashMap<String, List<String>>());
+
+    private final Map<String, List<String>> parameters;
+
+    private RequestParameters(final Map<String, List<String>> parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * @param request
+     *            the request
+     * @return the query parameters of the request URL, empty if the request has no URL or the URL
+     *         has no query
+     */
+    public static RequestParameters of(final ResourceStoreRequest request) {
+        return parse(request.getRequestUrl());
+    }
+
+    /**
+     * @param url
+     *            a URL, may be <code>null</code>
+     * @return the query parameters of the URL
+     */
+    public static RequestParameters parse(final String url) {
+        if (url == null) {
+            return NONE;
+        }
+        final int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            return NONE;
+        }
+        int end = url.indexOf('#', queryStart);
+        if (end < 0) {
+            end = url.length();
+        }
+        final Map<String, List<String>> parameters = new LinkedHashMap<String, List<String>>();
+        int start = queryStart + 1;
+        while (start < end) {
+            int next = url.indexOf('&', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            if (next > start) {
+                final int equals = url.indexOf('=', start);
+                final String name;
+                final String value;
+                if (equals < 0 || equals > next) {
+                    name = decode(url.substring(start, next));
+                    value = "";
+                } else {
+                    name = decode(url.substring(start, equals));
+                    value = decode(url.substring(equals + 1, next));
+                }
+                List<String> values = parameters.get(name);
+                if (values == null) {
+                    values = new ArrayList<String>(1);
+                    parameters.put(name, values);
+                }
+                values.add(value);
+            }
+            start = next + 1;
+        }
+        return new RequestParameters(parameters);
+    }
+
+    /**
+     * @return the first value of the parameter or <code>null</code> if the parameter is not set
+     */
+    public String get(final String name) {
+        final List<String> values = parameters.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    /**
+     * @return all values of the parameter in the order of the query, empty if the parameter is not
+     *         set
+     */
+    public List<String> getAll(final String name) {
+        final List<String> values = parameters.get(name);
+        return values == null ? Collections.<String> emptyList() : Collections.unmodifiableList(values);
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (final IllegalArgumentException e) {
+            // malformed escape sequence, take the value as it is
+            return value;
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,22 +10,61 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin;
 
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.RequestTimings;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog;
+
 public class RequestTimeTrace {
 
     private final long startTime;
 
     private final String requestPath;
 
-    public RequestTimeTrace(final String requestPath) {
-        this.startTime = System.currentTimeMillis();
+    private final RequestTimings requestTimings;
+
+    private final SlowRequestLog slowRequestLog;
+
+    private final SlowRequestLog.Record slowRequestRecord;
+
+    public RequestTimeTrace(final String requestPath, final RequestTimings requestTimings) {
+        this(requestPath, requestTimings, null);
+    }
+
+    public RequestTimeTrace(final String requestPath, final RequestTimings requestTimings,
+            final SlowRequestLog slowRequestLog) {
+        this.startTime = RequestTimings.start();
         this.requestPath = requestPath;
+        this.requestTimings = requestTimings;
+        this.slowRequestLog = slowRequestLog;
+        this.slowRequestRecord = slowRequestLog == null ? null : slowRequestLog.begin(requestPath);
+    }
+
+    /**
+     * @return the record of the traced request in the slow-request log, <code>null</code> if the
+     *         log is disabled
+     */
+    public SlowRequestLog.Record getSlowRequestRecord() {
+        return slowRequestRecord;
     }
 
     public long getTimeSpent() {
-        return System.currentTimeMillis() - startTime;
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
     }
 
     public String getMessage() {
         return "Served request in " + getTimeSpent() + "ms: " + requestPath;
     }
+
+    /**
+     * Records the time spent since the start of the request as {@link Phase#REQUEST} and passes
+     * the request to the slow-request log.
+     */
+    public void finish() {
+        if (slowRequestRecord != null) {
+            slowRequestLog.finish(slowRequestRecord, System.nanoTime() - startTime);
+        }
+        requestTimings.record(Phase.REQUEST, startTime);
+    }
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,4 +20,43 @@ public interface UnzipRepository extends ShadowRepository {
 
     void setUseVirtualVersion(boolean useVirtualVersion);
 
+    /**
+     * @return the time in milliseconds for which resolved virtual versions are cached,
+     *         <code>0</code> if they are not cached
+     */
+    long getVirtualVersionCacheTimeToLive();
+
+    void setVirtualVersionCacheTimeToLive(long timeToLive);
+
+    /**
+     * @return the minimum duration in milliseconds of the requests written to the slow-request
+     *         log, <code>0</code> if the log is disabled
+     */
+    long getSlowRequestThreshold();
+
+    void setSlowRequestThreshold(long threshold);
+
+    /**
+     * @return the percentage of the slow requests which are written to the slow-request log
+     */
+    int getSlowRequestSamplePercentage();
+
+    void setSlowRequestSamplePercentage(int samplePercentage);
+
+    /**
+     * @return <code>true</code> if requests for virtual versions are answered with a redirect to
+     *         the resolved version instead of the content of the resolved version
+     */
+    boolean isRedirectToResolvedVersion();
+
+    void setRedirectToResolvedVersion(boolean redirect);
+
+    /**
+     * @return the time in milliseconds after which the virtual versions pinned by an unused build
+     *         session are released, <code>0</code> if build sessions are disabled
+     */
+    long getSessionIdleTimeout();
+
+    void setSessionIdleTimeout(long idleTimeout);
+
 }
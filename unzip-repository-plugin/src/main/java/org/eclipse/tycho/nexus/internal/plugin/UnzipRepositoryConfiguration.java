@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,11 +11,18 @@
 package org.eclipse.tycho.nexus.internal.plugin;
 
 import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResultCache;
+import org.eclipse.tycho.nexus.internal.plugin.cache.SessionPins;
 import org.sonatype.nexus.proxy.repository.AbstractShadowRepositoryConfiguration;
 
 public class UnzipRepositoryConfiguration extends AbstractShadowRepositoryConfiguration {
 
     private static final String USE_VIRTUAL_VERSION = "useVirtualVersion";
+    private static final String VIRTUAL_VERSION_CACHE_TIME_TO_LIVE = "virtualVersionCacheTimeToLive";
+    private static final String SLOW_REQUEST_THRESHOLD = "slowRequestThreshold";
+    private static final String SLOW_REQUEST_SAMPLE_PERCENTAGE = "slowRequestSamplePercentage";
+    private static final String REDIRECT_TO_RESOLVED_VERSION = "redirectToResolvedVersion";
+    private static final String SESSION_IDLE_TIMEOUT = "sessionIdleTimeout";
 
     public UnzipRepositoryConfiguration(final Xpp3Dom configuration) {
         super(configuration);
@@ -28,4 +35,47 @@ public class UnzipRepositoryConfiguration extends AbstractShadowRepositoryConfig
     public void setUseVirtualVersion(final boolean val) {
         setNodeValue(getRootNode(), USE_VIRTUAL_VERSION, Boolean.toString(val));
     }
+
+    public long getVirtualVersionCacheTimeToLive() {
+        return Long.parseLong(getNodeValue(getRootNode(), VIRTUAL_VERSION_CACHE_TIME_TO_LIVE,
+                Long.toString(ConversionResultCache.DEFAULT_TIME_TO_LIVE)));
+    }
+
+    public void setVirtualVersionCacheTimeToLive(final long val) {
+        setNodeValue(getRootNode(), VIRTUAL_VERSION_CACHE_TIME_TO_LIVE, Long.toString(val));
+    }
+
+    public long getSlowRequestThreshold() {
+        return Long.parseLong(getNodeValue(getRootNode(), SLOW_REQUEST_THRESHOLD, "0"));
+    }
+
+    public void setSlowRequestThreshold(final long val) {
+        setNodeValue(getRootNode(), SLOW_REQUEST_THRESHOLD, Long.toString(val));
+    }
+
+    public int getSlowRequestSamplePercentage() {
+        return Integer.parseInt(getNodeValue(getRootNode(), SLOW_REQUEST_SAMPLE_PERCENTAGE, "100"));
+    }
+
+    public void setSlowRequestSamplePercentage(final int val) {
+        setNodeValue(getRootNode(), SLOW_REQUEST_SAMPLE_PERCENTAGE, Integer.toString(val));
+    }
+
+    public boolean isRedirectToResolvedVersion() {
+        return Boolean.parseBoolean(getNodeValue(getRootNode(), REDIRECT_TO_RESOLVED_VERSION,
+                Boolean.FALSE.toString()));
+    }
+
+    public void setRedirectToResolvedVersion(final boolean val) {
+        setNodeValue(getRootNode(), REDIRECT_TO_RESOLVED_VERSION, Boolean.toString(val));
+    }
+
+    public long getSessionIdleTimeout() {
+        return Long.parseLong(getNodeValue(getRootNode(), SESSION_IDLE_TIMEOUT,
+                Long.toString(SessionPins.DEFAULT_IDLE_TIMEOUT)));
+    }
+
+    public void setSessionIdleTimeout(final long val) {
+        setNodeValue(getRootNode(), SESSION_IDLE_TIMEOUT, Long.toString(val));
+    }
 }
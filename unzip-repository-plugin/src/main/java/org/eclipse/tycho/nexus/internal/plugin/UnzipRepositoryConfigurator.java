@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -30,6 +30,12 @@ public class UnzipRepositoryConfigurator extends AbstractShadowRepositoryConfigu
         final UnzipRepositoryConfiguration unzipRepoConfig = (UnzipRepositoryConfiguration) externalConfiguration
                 .getConfiguration(false);
 
-        repository.adaptToFacet(UnzipRepository.class).setUseVirtualVersion(unzipRepoConfig.isUseVirtualVersion());
+        final UnzipRepository unzipRepository = repository.adaptToFacet(UnzipRepository.class);
+        unzipRepository.setUseVirtualVersion(unzipRepoConfig.isUseVirtualVersion());
+        unzipRepository.setVirtualVersionCacheTimeToLive(unzipRepoConfig.getVirtualVersionCacheTimeToLive());
+        unzipRepository.setSlowRequestThreshold(unzipRepoConfig.getSlowRequestThreshold());
+        unzipRepository.setSlowRequestSamplePercentage(unzipRepoConfig.getSlowRequestSamplePercentage());
+        unzipRepository.setRedirectToResolvedVersion(unzipRepoConfig.isRedirectToResolvedVersion());
+        unzipRepository.setSessionIdleTimeout(unzipRepoConfig.getSessionIdleTimeout());
     }
 }
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+/**
+ * Outcome of {@link PathClassifier#classify(String)}. Only the indexes found during the scan are
+ * kept, the path parts are cut out of the original path on demand.
+ */
+public final class ClassifiedPath {
+
+    /**
+     * The kind of virtual version found in a request path.
+     */
+    public enum Kind {
+        /**
+         * <code>.../x.y.z-SNAPSHOT/artifact-x.y.z-SNAPSHOT...</code>, resolved to the latest
+         * timestamp of that snapshot version
+         */
+        SNAPSHOT,
+        /**
+         * <code>.../SNAPSHOT/artifact-SNAPSHOT...</code>, resolved to the latest version
+         * (including snapshots)
+         */
+        LATEST_VERSION,
+        /**
+         * <code>.../RELEASE/artifact-RELEASE...</code>, resolved to the latest released version
+         */
+        LATEST_RELEASE,
+        /**
+         * no virtual version
+         */
+        UNCHANGED
+    }
+
+    private final String path;
+    private final Kind kind;
+    private final int groupArtifactEnd;
+    private final int nameStart;
+    private final int tokenStart;
+    private final int tokenEnd;
+    private final int archiveEnd;
+    private final boolean collapseSlashes;
+
+    ClassifiedPath(final String path, final Kind kind, final int groupArtifactEnd, final int nameStart,
+            final int tokenStart, final int tokenEnd, final int archiveEnd, final boolean collapseSlashes) {
+        this.path = path;
+        this.kind = kind;
+        this.groupArtifactEnd = groupArtifactEnd;
+        this.nameStart = nameStart;
+        this.tokenStart = tokenStart;
+        this.tokenEnd = tokenEnd;
+        this.archiveEnd = archiveEnd;
+        this.collapseSlashes = collapseSlashes;
+    }
+
+    /**
+     * @return the classified path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the kind of virtual version contained in the path
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the path up to the folder of the virtual version keyword, without trailing slash
+     *         (e.g. <code>/org/example/artifact</code>); only for {@link Kind#LATEST_VERSION} and
+     *         {@link Kind#LATEST_RELEASE}
+     */
+    public String getGroupArtifactPath() {
+        return path.substring(0, groupArtifactEnd);
+    }
+
+    /**
+     * @return the path up to and including the version folder (e.g.
+     *         <code>/org/example/artifact/1.0.0-SNAPSHOT/</code>); only for {@link Kind#SNAPSHOT}
+     */
+    public String getVersionFolderPath() {
+        return path.substring(0, nameStart);
+    }
+
+    /**
+     * @return the path up to the index where the version in the artifact name starts (e.g.
+     *         <code>/org/example/artifact/1.0.0-SNAPSHOT/artifact-1.0.0-</code>); only for
+     *         {@link Kind#SNAPSHOT}
+     */
+    public String getPathUpToVersion() {
+        return path.substring(0, tokenStart + 1);
+    }
+
+    /**
+     * @return the artifact name before the virtual version keyword (e.g. <code>artifact</code>);
+     *         only for {@link Kind#LATEST_VERSION} and {@link Kind#LATEST_RELEASE}
+     */
+    public String getArtifactNameStart() {
+        return path.substring(nameStart, tokenStart);
+    }
+
+    /**
+     * @return the rest of the path after the virtual version keyword in the artifact name (e.g.
+     *         <code>-assembly.zip-unzip/plugins</code>); not for {@link Kind#UNCHANGED}
+     */
+    public String getArtifactNameEnd() {
+        return path.substring(tokenEnd);
+    }
+
+    /**
+     * @return <code>true</code> if a path segment ends with
+     *         {@link org.eclipse.tycho.nexus.internal.plugin.storage.Util#UNZIP_TYPE_EXTENSION}
+     */
+    public boolean isArchivePath() {
+        return archiveEnd >= 0;
+    }
+
+    /**
+     * @return the absolute path of the archive, i.e. the path up to the first segment ending with
+     *         <code>-unzip</code> without that extension, or <code>null</code> if this is not an
+     *         archive path
+     */
+    public String getArchivePath() {
+        if (archiveEnd < 0) {
+            return null;
+        }
+        if (collapseSlashes) {
+            final String collapsedPath = PathClassifier.collapseSlashes(path, archiveEnd);
+            return collapsedPath.substring(0, collapsedPath.length() - PathClassifier.UNZIP_SUFFIX_LENGTH);
+        }
+        final int end = archiveEnd - PathClassifier.UNZIP_SUFFIX_LENGTH;
+        if (path.length() > 0 && path.charAt(0) == '/') {
+            return path.substring(0, end);
+        }
+        return "/" + path.substring(0, end);
+    }
+
+    /**
+     * @return the path within the archive without leading and trailing slashes (empty for the
+     *         archive root), or <code>null</code> if this is not an archive path
+     */
+    public String getPathInArchive() {
+        if (archiveEnd < 0) {
+            return null;
+        }
+        int start = archiveEnd;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,15 +22,18 @@ public class ConversionResult {
     private final String pathUpToVersion;
     private final boolean pathConverted;
     private final boolean snapshotAvailable;
+    private final boolean pinned;
 
     private ConversionResult(final String originalPath, final String convertedPath, final String latestVersion,
-            final String pathUpToVersion, final boolean pathConverted, final boolean snapshotAvailable) {
+            final String pathUpToVersion, final boolean pathConverted, final boolean snapshotAvailable,
+            final boolean pinned) {
         this.originalPath = originalPath;
         this.convertedPath = convertedPath;
         this.latestVersion = latestVersion;
         this.pathUpToVersion = pathUpToVersion;
         this.pathConverted = pathConverted;
         this.snapshotAvailable = snapshotAvailable;
+        this.pinned = pinned;
     }
 
     /**
@@ -47,7 +50,8 @@ public class ConversionResult {
      */
     public ConversionResult(final String originalPath, final String convertedPath, final String latestVersion,
             final String pathUpToVersion) {
-        this(originalPath, convertedPath, latestVersion, pathUpToVersion, !originalPath.equals(convertedPath), true);
+        this(originalPath, convertedPath, latestVersion, pathUpToVersion, !originalPath.equals(convertedPath), true,
+                false);
     }
 
     /**
@@ -63,7 +67,7 @@ public class ConversionResult {
      *            the path that was requested
      */
     public ConversionResult(final String originalPath) {
-        this(originalPath, originalPath, null, null, false, true);
+        this(originalPath, originalPath, null, null, false, true, false);
     }
 
     /**
@@ -82,7 +86,48 @@ public class ConversionResult {
      *            let us assume if there are any snapshots at all
      */
     public ConversionResult(final String originalPath, final String pathUpToVersion, final boolean snapshotAvailable) {
-        this(originalPath, originalPath, null, pathUpToVersion, false, snapshotAvailable);
+        this(originalPath, originalPath, null, pathUpToVersion, false, snapshotAvailable, false);
+    }
+
+    /**
+     * Returns the result of the same conversion for a path which continues the original path of
+     * this result with the given suffix.
+     * 
+     * @param originalPath
+     *            the path that was requested, i.e. the original path of this result followed by
+     *            <code>pathSuffix</code>
+     * @param pathSuffix
+     *            the rest of the requested path
+     * @return the conversion result for <code>originalPath</code>
+     */
+    ConversionResult appendPath(final String originalPath, final String pathSuffix) {
+        if (latestVersion != null) {
+            final String appendedPath = convertedPath + pathSuffix;
+            return new ConversionResult(originalPath, appendedPath, latestVersion, pathUpToVersion,
+                    !originalPath.equals(appendedPath), true, pinned);
+        } else if (pathUpToVersion != null) {
+            return new ConversionResult(originalPath, originalPath, null, pathUpToVersion, false, snapshotAvailable,
+                    pinned);
+        }
+        return new ConversionResult(originalPath, originalPath, null, null, false, true, pinned);
+    }
+
+    /**
+     * @return the same result, taken from the pins of a build session
+     */
+    ConversionResult asPinned() {
+        return new ConversionResult(originalPath, convertedPath, latestVersion, pathUpToVersion, pathConverted,
+                snapshotAvailable, true);
+    }
+
+    /**
+     * 
+     * @return <code>true</code> if the result was pinned by an earlier request of the same build
+     *         session, so that it may be older than the latest version
+     * @see SessionPins
+     */
+    public boolean isPinned() {
+        return pinned;
     }
 
     /**
@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents.Type;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.RequestTimings;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog.Layer;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Short living cache for the resolution of virtual versions. Many builds request the same virtual
+ * version paths (e.g. <code>.../SNAPSHOT/artifact-SNAPSHOT-assembly.zip-unzip/...</code>) at
+ * about the same time and each of them would read and evaluate the same
+ * <code>maven-metadata.xml</code> files.
+ * <p>
+ * The results are cached per repository, virtual path prefix (i.e. the requested path up to and
+ * including the virtual version in the artifact name) and version range. Concurrent requests for
+ * the same key are collapsed, i.e. only the first one resolves the virtual version while the
+ * others wait for its result. Results expire after the configured time to live and are removed as
+ * soon as a <code>maven-metadata.xml</code> of the artifact changes.
+ * <p>
+ * Requests of a build session get the results pinned by the session instead, see
+ * {@link SessionPins}.
+ */
+public class ConversionResultCache {
+
+    /**
+     * The default time to live of cached results in milliseconds.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 5000;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private final SessionPins sessionPins = new SessionPins(SessionPins.DEFAULT_IDLE_TIMEOUT,
+            SessionPins.DEFAULT_CAPACITY);
+    private final PathLock pathLock;
+    private final RequestTimings requestTimings;
+    private volatile long timeToLiveNanos;
+    private volatile long lastPurge = System.nanoTime();
+
+    /**
+     * Creates a cache with the given time to live.
+     *
+     * @param timeToLive
+     *            the time to live of cached results in milliseconds, <code>0</code> disables the
+     *            cache
+     * @param pathLock
+     *            the locks used when reading <code>maven-metadata.xml</code> files to resolve
+     *            virtual versions
+     */
+    public ConversionResultCache(final long timeToLive, final PathLock pathLock) {
+        this(timeToLive, pathLock, new RequestTimings());
+    }
+
+    /**
+     * Creates a cache with the given time to live, which records the latency of the resolutions.
+     *
+     * @param timeToLive
+     *            the time to live of cached results in milliseconds, <code>0</code> disables the
+     *            cache
+     * @param pathLock
+     *            the locks used when reading <code>maven-metadata.xml</code> files to resolve
+     *            virtual versions
+     * @param requestTimings
+     *            the timings in which the resolutions are recorded as
+     *            {@link Phase#METADATA_RETRIEVAL}
+     */
+    public ConversionResultCache(final long timeToLive, final PathLock pathLock,
+            final RequestTimings requestTimings) {
+        this.pathLock = pathLock;
+        this.requestTimings = requestTimings;
+        setTimeToLive(timeToLive);
+    }
+
+    PathLock getPathLock() {
+        return pathLock;
+    }
+
+    /**
+     * @return the resolutions pinned by build sessions, which take precedence over the cached
+     *         results
+     */
+    public SessionPins getSessionPins() {
+        return sessionPins;
+    }
+
+    /**
+     * @param timeToLive
+     *            the time to live of cached results in milliseconds, <code>0</code> disables the
+     *            cache
+     */
+    public void setTimeToLive(final long timeToLive) {
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Negative time to live: " + timeToLive);
+        }
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+        if (timeToLive == 0) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the time to live of cached results in milliseconds
+     */
+    public long getTimeToLive() {
+        return TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos);
+    }
+
+    /**
+     * Reads the versions of an artifact from its <code>maven-metadata.xml</code> in the same way as
+     * virtual versions are resolved, i.e. the master is not asked concurrently for the same
+     * metadata.
+     *
+     * @param repository
+     *            the repository in which the virtual versions are resolved
+     * @param artifactFolder
+     *            the artifact folder with trailing slash
+     * @return the versioning of the <code>maven-metadata.xml</code> of the artifact folder, may be
+     *         <code>null</code>
+     * @throws ItemNotFoundException
+     *             if the artifact folder has no <code>maven-metadata.xml</code>
+     * @throws LocalStorageException
+     *             if the <code>maven-metadata.xml</code> cannot be read
+     */
+    public Versioning getVersioning(final Repository repository, final String artifactFolder)
+            throws ItemNotFoundException, LocalStorageException {
+        final long start = RequestTimings.start();
+        try {
+            return ParsedRequest.getVersioning(repository, pathLock, ParsedRequest.metadataPath(artifactFolder));
+        } finally {
+            requestTimings.record(Phase.METADATA_RETRIEVAL, start);
+        }
+    }
+
+    /**
+     * Returns the cached conversion result for the given virtual path prefix or resolves it with
+     * the given request, if there is no valid result in the cache.
+     *
+     * @param repository
+     *            the repository in which the virtual version is resolved
+     * @param virtualPathPrefix
+     *            the requested path up to and including the virtual version in the artifact name
+     * @param versionRange
+     *            the version range of the request, may be <code>null</code>
+     * @param parsedRequest
+     *            the request for <code>virtualPathPrefix</code>, used to resolve the virtual
+     *            version
+     * @return the conversion result for <code>virtualPathPrefix</code>
+     * @throws LocalStorageException
+     *             if resolving the virtual version fails
+     */
+    ConversionResult get(final Repository repository, final String virtualPathPrefix,
+            final VersionRange versionRange, final ParsedRequest parsedRequest) throws LocalStorageException {
+        return get(repository, virtualPathPrefix, versionRange, parsedRequest, null);
+    }
+
+    /**
+     * Same as {@link #get(Repository, String, VersionRange, ParsedRequest)}, but returns the result
+     * pinned by the given build session, if there is one. Otherwise the result is pinned for all
+     * later requests of the session.
+     *
+     * @param session
+     *            the session token of the request, may be <code>null</code> if the request does
+     *            not belong to a session
+     * @see SessionPins
+     */
+    ConversionResult get(final Repository repository, final String virtualPathPrefix,
+            final VersionRange versionRange, final ParsedRequest parsedRequest, final String session)
+            throws LocalStorageException {
+        if (session == null) {
+            return getCached(repository, virtualPathPrefix, versionRange, parsedRequest);
+        }
+        final Key key = new Key(repository.getId(), virtualPathPrefix, versionRange);
+        final ConversionResult pinned = sessionPins.get(session, key);
+        if (pinned != null) {
+            final SlowRequestLog.Record slowRequestRecord = SlowRequestLog.current();
+            if (slowRequestRecord != null) {
+                slowRequestRecord.setCacheHit(Layer.CONVERSION, true);
+            }
+            return pinned;
+        }
+        return sessionPins.pin(session, key, getCached(repository, virtualPathPrefix, versionRange, parsedRequest));
+    }
+
+    private ConversionResult getCached(final Repository repository, final String virtualPathPrefix,
+            final VersionRange versionRange, final ParsedRequest parsedRequest) throws LocalStorageException {
+        final long ttl = timeToLiveNanos;
+        if (ttl == 0) {
+            return resolve(repository, virtualPathPrefix, parsedRequest);
+        }
+        final Key key = new Key(repository.getId(), virtualPathPrefix, versionRange);
+        final SlowRequestLog.Record slowRequestRecord = SlowRequestLog.current();
+        while (true) {
+            final long now = System.nanoTime();
+            Entry entry = entries.get(key);
+            if (entry == null || entry.isExpired(now, ttl)) {
+                final Entry newEntry = new Entry(getArtifactFolder(virtualPathPrefix),
+                        new Callable<ConversionResult>() {
+                    @Override
+                    public ConversionResult call() throws Exception {
+                        return resolve(repository, virtualPathPrefix, parsedRequest);
+                    }
+                });
+                if (entry == null ? entries.putIfAbsent(key, newEntry) != null : !entries.replace(key, entry,
+                        newEntry)) {
+                    // another thread just started to resolve the same key
+                    continue;
+                }
+                entry = newEntry;
+                purgeExpired(now, ttl);
+                if (slowRequestRecord != null) {
+                    slowRequestRecord.setCacheHit(Layer.CONVERSION, false);
+                }
+                entry.resolve();
+            } else if (slowRequestRecord != null) {
+                // also a hit if another request is still resolving the entry
+                slowRequestRecord.setCacheHit(Layer.CONVERSION, true);
+            }
+            try {
+                return entry.get();
+            } finally {
+                // do not cache failures, but keep the entry if only this thread was interrupted while waiting
+                if (entry.isFailed()) {
+                    entries.remove(key, entry);
+                }
+            }
+        }
+    }
+
+    private ConversionResult resolve(final Repository repository, final String virtualPathPrefix,
+            final ParsedRequest parsedRequest) throws LocalStorageException {
+        final long start = RequestTimings.start();
+        final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.METADATA_RESOLUTION,
+                pathLock.getRepositoryId(), virtualPathPrefix);
+        try {
+            final ConversionResult result = parsedRequest.resolve(repository, pathLock);
+            if (event != null) {
+                event.set("resolvedPath", result.getConvertedPath());
+            }
+            return result;
+        } finally {
+            requestTimings.record(Phase.METADATA_RETRIEVAL, start);
+            if (event != null) {
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results which depend on the given <code>maven-metadata.xml</code>.
+     *
+     * @param metadataPath
+     *            the path of the changed <code>maven-metadata.xml</code>, either in the artifact
+     *            folder or in a version folder
+     */
+    public void invalidate(final String metadataPath) {
+        final String folder = metadataPath.substring(0, metadataPath.lastIndexOf('/') + 1);
+        final String parentFolder = getParentFolder(folder);
+        final String normalizedFolder = stripLeadingSlash(folder);
+        final String normalizedParentFolder = stripLeadingSlash(parentFolder);
+        for (final Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+            final String artifactFolder = iterator.next().artifactFolder;
+            if (artifactFolder.equals(normalizedFolder) || artifactFolder.equals(normalizedParentFolder)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void purgeExpired(final long now, final long ttl) {
+        if (now - lastPurge < ttl) {
+            return;
+        }
+        lastPurge = now;
+        for (final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext();) {
+            if (iterator.next().getValue().isExpired(now, ttl)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The virtual path prefix always ends with <code>.../versionFolder/artifactNamePrefix</code>,
+     * so the artifact folder is the path up to the second last slash.
+     */
+    private static String getArtifactFolder(final String virtualPathPrefix) {
+        return stripLeadingSlash(getParentFolder(virtualPathPrefix.substring(0,
+                virtualPathPrefix.lastIndexOf('/') + 1)));
+    }
+
+    private static String getParentFolder(final String folder) {
+        if (folder.length() < 2) {
+            return "";
+        }
+        return folder.substring(0, folder.lastIndexOf('/', folder.length() - 2) + 1);
+    }
+
+    private static String stripLeadingSlash(final String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private static final class Entry {
+        final String artifactFolder;
+        private final FutureTask<ConversionResult> task;
+        private volatile long resolvedAt;
+        private volatile boolean failed;
+
+        Entry(final String artifactFolder, final Callable<ConversionResult> resolver) {
+            this.artifactFolder = artifactFolder;
+            this.task = new FutureTask<ConversionResult>(resolver) {
+                @Override
+                protected void setException(final Throwable t) {
+                    // set before the waiting threads are released
+                    failed = true;
+                    super.setException(t);
+                }
+            };
+        }
+
+        void resolve() {
+            task.run();
+            resolvedAt = System.nanoTime();
+        }
+
+        /**
+         * @return <code>true</code> if the resolution failed with any exception or error
+         */
+        boolean isFailed() {
+            return failed;
+        }
+
+        boolean isExpired(final long now, final long ttl) {
+            return task.isDone() && resolvedAt != 0 && now - resolvedAt >= ttl;
+        }
+
+        ConversionResult get() throws LocalStorageException {
+            try {
+                return task.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LocalStorageException(e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof LocalStorageException) {
+                    throw (LocalStorageException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new LocalStorageException(cause);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String repositoryId;
+        private final String virtualPathPrefix;
+        private final String versionRange;
+
+        Key(final String repositoryId, final String virtualPathPrefix, final VersionRange versionRange) {
+            this.repositoryId = repositoryId;
+            this.virtualPathPrefix = virtualPathPrefix;
+            this.versionRange = versionRange == null ? null : versionRange.toString();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = repositoryId == null ? 0 : repositoryId.hashCode();
+            result = 31 * result + virtualPathPrefix.hashCode();
+            result = 31 * result + (versionRange == null ? 0 : versionRange.hashCode());
+            return result;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return equal(repositoryId, other.repositoryId) && virtualPathPrefix.equals(other.virtualPathPrefix)
+                    && equal(versionRange, other.versionRange);
+        }
+
+        private static boolean equal(final String a, final String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
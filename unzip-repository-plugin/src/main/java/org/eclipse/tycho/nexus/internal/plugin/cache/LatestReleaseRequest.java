@@ -35,10 +35,10 @@ public class LatestReleaseRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final PathLock pathLock) throws LocalStorageException {
         final String requestPath = request.getRequestPath();
         try {
-            final Versioning versioning = getVersioning(repository, metadataPath(groupArtifactPath + "/"));
+            final Versioning versioning = getVersioning(repository, pathLock, metadataPath(groupArtifactPath + "/"));
             final String releaseVersion = versioning.getRelease();
             if (releaseVersion == null) {
                 return new ConversionResult(requestPath);
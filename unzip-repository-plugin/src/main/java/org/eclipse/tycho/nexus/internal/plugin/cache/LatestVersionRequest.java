@@ -53,16 +53,16 @@ public class LatestVersionRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final PathLock pathLock) throws LocalStorageException {
         final String requestPath = request.getRequestPath();
         try {
-            final Versioning versioning = getVersioning(repository, metadataPath(groupArtifactPath + "/"));
+            final Versioning versioning = getVersioning(repository, pathLock, metadataPath(groupArtifactPath + "/"));
 
             final String selectedVersion = selectVersion(request, versioning, versionRange, true);
             final String latestVersionDirectory = groupArtifactPath + "/" + selectedVersion + "/";
 
             if (selectedVersion.endsWith("-SNAPSHOT")) {
-                return resolveSnapshot(repository, selectedVersion, latestVersionDirectory);
+                return resolveSnapshot(repository, pathLock, selectedVersion, latestVersionDirectory);
             }
 
             final String pathUpToVersion = latestVersionDirectory + artifactNameStart + "-" + selectedVersion;
@@ -73,9 +73,11 @@ public class LatestVersionRequest extends ParsedRequest {
         }
     }
 
-    private ConversionResult resolveSnapshot(final Repository repository, final String latestVersion,
-            final String latestVersionDirectory) throws LocalStorageException, ItemNotFoundException {
-        final Versioning snapshotVersioning = getVersioning(repository, metadataPath(latestVersionDirectory));
+    private ConversionResult resolveSnapshot(final Repository repository, final PathLock pathLock,
+            final String latestVersion, final String latestVersionDirectory) throws LocalStorageException,
+            ItemNotFoundException {
+        final Versioning snapshotVersioning = getVersioning(repository, pathLock,
+                metadataPath(latestVersionDirectory));
         final Snapshot current = snapshotVersioning.getSnapshot();
         final String latestTimestampVersion;
         if (current != null) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -31,27 +31,27 @@ import org.sonatype.nexus.proxy.repository.Repository;
 abstract class ParsedRequest {
     private static final String MAVEN_METADATA_XML = "maven-metadata.xml";
 
-    abstract ConversionResult resolve(final Repository repository) throws LocalStorageException;
+    abstract ConversionResult resolve(final Repository repository, final PathLock pathLock)
+            throws LocalStorageException;
 
-    Versioning getVersioning(final Repository repository, final String mdPath) throws LocalStorageException,
-            ItemNotFoundException {
+    static Versioning getVersioning(final Repository repository, final PathLock pathLock, final String mdPath)
+            throws LocalStorageException, ItemNotFoundException {
         final ResourceStoreRequest request = new ResourceStoreRequest(mdPath);
-        final PathLock.PathLockMonitor pathLock = PathLock.getLock(mdPath);
+        // the master must not be asked concurrently for the same metadata, see NEXUS-3622
+        final PathLock.PathLockMonitor monitor = pathLock.lock(mdPath, PathLock.Mode.WRITE);
         try {
-            synchronized (pathLock) {
-                final StorageItem mdItem = repository.retrieveItem(request);
-                if (mdItem instanceof StorageFileItem) {
-                    final InputStream is = ((StorageFileItem) mdItem).getInputStream();
-                    try {
-                        final Metadata md = MetadataBuilder.read(is);
-                        return md.getVersioning();
-                    } finally {
-                        is.close();
-                    }
-                } else {
-                    throw new LocalStorageException(mdPath + " is not an StorageFileItem in repository "
-                            + repository.getId());
+            final StorageItem mdItem = repository.retrieveItem(request);
+            if (mdItem instanceof StorageFileItem) {
+                final InputStream is = ((StorageFileItem) mdItem).getInputStream();
+                try {
+                    final Metadata md = MetadataBuilder.read(is);
+                    return md.getVersioning();
+                } finally {
+                    is.close();
                 }
+            } else {
+                throw new LocalStorageException(mdPath + " is not an StorageFileItem in repository "
+                        + repository.getId());
             }
         } catch (final ItemNotFoundException e) {
             /*
@@ -62,7 +62,7 @@ abstract class ParsedRequest {
         } catch (final Exception e) {
             throw new LocalStorageException(e);
         } finally {
-            PathLock.releaseLock(pathLock);
+            pathLock.unlock(monitor);
         }
     }
 
@@ -110,7 +110,7 @@ abstract class ParsedRequest {
         return ((DefaultArtifactVersion) maxVersion).toString();
     }
 
-    String metadataPath(final String path) {
+    static String metadataPath(final String path) {
         return path + MAVEN_METADATA_XML;
     }
 }
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import org.eclipse.tycho.nexus.internal.plugin.cache.ClassifiedPath.Kind;
+import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+
+/**
+ * Classifies request paths in a single left-to-right pass over the path segments. This replaces
+ * the regular expressions formerly used by {@link RequestPathConverter} and the splitting of the
+ * path in {@link org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository} and matches their
+ * behaviour:
+ * <ul>
+ * <li>{@link Kind#SNAPSHOT}: the <b>last</b> version folder <code>[0-9.]*(-\w+)*-SNAPSHOT</code>
+ * which is followed by a file name containing <code>-SNAPSHOT</code> and at least one more
+ * character. The <b>last</b> such occurrence in the file name is the one replaced.</li>
+ * <li>{@link Kind#LATEST_VERSION}/{@link Kind#LATEST_RELEASE}: the <b>first</b> folder
+ * <code>SNAPSHOT</code>/<code>RELEASE</code> followed by a file name containing
+ * <code>-SNAPSHOT</code>/<code>-RELEASE</code> and at least one more character.</li>
+ * <li>The archive of a path is given by the first segment ending with
+ * {@link Util#UNZIP_TYPE_EXTENSION}.</li>
+ * </ul>
+ * The precedence of the kinds is the order given above.
+ */
+public final class PathClassifier {
+
+    static final int UNZIP_SUFFIX_LENGTH = Util.UNZIP_TYPE_EXTENSION.length();
+
+    private static final String SNAPSHOT = "SNAPSHOT";
+    private static final String RELEASE = "RELEASE";
+    private static final String SNAPSHOT_TOKEN = "-SNAPSHOT";
+    private static final String RELEASE_TOKEN = "-RELEASE";
+
+    private PathClassifier() {
+    }
+
+    /**
+     * Classifies the given request path.
+     *
+     * @param path
+     *            the request path
+     * @return the classification, never <code>null</code>
+     */
+    public static ClassifiedPath classify(final String path) {
+        final int length = path.length();
+
+        // kind of the previous segment: 0 = none, 1 = snapshot version folder, 2 = SNAPSHOT, 3 = RELEASE
+        int previousSegment = 0;
+        int previousSegmentStart = -1;
+
+        int snapshotNameStart = -1;
+        int snapshotTokenStart = -1;
+
+        int latestGroupArtifactEnd = -1;
+        int latestNameStart = -1;
+        int latestTokenStart = -1;
+
+        int releaseGroupArtifactEnd = -1;
+        int releaseNameStart = -1;
+        int releaseTokenStart = -1;
+
+        int archiveEnd = -1;
+        boolean collapseSlashes = false;
+
+        int segmentStart = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && path.charAt(i) != '/') {
+                continue;
+            }
+            final int segmentEnd = i;
+
+            if (previousSegment == 1) {
+                final int token = lastTokenIndex(path, segmentStart, segmentEnd, SNAPSHOT_TOKEN);
+                if (token >= 0) {
+                    snapshotNameStart = segmentStart;
+                    snapshotTokenStart = token;
+                }
+            } else if (previousSegment == 2 && latestNameStart < 0) {
+                final int token = lastTokenIndex(path, segmentStart, segmentEnd, SNAPSHOT_TOKEN);
+                if (token >= 0) {
+                    latestGroupArtifactEnd = previousSegmentStart - 1;
+                    latestNameStart = segmentStart;
+                    latestTokenStart = token;
+                }
+            } else if (previousSegment == 3 && releaseNameStart < 0) {
+                final int token = lastTokenIndex(path, segmentStart, segmentEnd, RELEASE_TOKEN);
+                if (token >= 0) {
+                    releaseGroupArtifactEnd = previousSegmentStart - 1;
+                    releaseNameStart = segmentStart;
+                    releaseTokenStart = token;
+                }
+            }
+
+            if (archiveEnd < 0) {
+                if (segmentEnd - segmentStart >= UNZIP_SUFFIX_LENGTH
+                        && path.startsWith(Util.UNZIP_TYPE_EXTENSION, segmentEnd - UNZIP_SUFFIX_LENGTH)) {
+                    archiveEnd = segmentEnd;
+                } else if (segmentStart == segmentEnd && segmentStart > 0 && segmentEnd < length) {
+                    collapseSlashes = true;
+                }
+            }
+
+            previousSegment = 0;
+            // the virtual version folders must be preceded and followed by a slash
+            if (segmentStart > 0 && segmentEnd < length) {
+                if (isKeyword(path, segmentStart, segmentEnd, SNAPSHOT)) {
+                    previousSegment = 2;
+                } else if (isKeyword(path, segmentStart, segmentEnd, RELEASE)) {
+                    previousSegment = 3;
+                } else if (isSnapshotVersion(path, segmentStart, segmentEnd)) {
+                    previousSegment = 1;
+                }
+            }
+            previousSegmentStart = segmentStart;
+            segmentStart = i + 1;
+        }
+
+        if (snapshotNameStart >= 0) {
+            return new ClassifiedPath(path, Kind.SNAPSHOT, -1, snapshotNameStart, snapshotTokenStart,
+                    snapshotTokenStart + SNAPSHOT_TOKEN.length(), archiveEnd, collapseSlashes);
+        } else if (latestNameStart >= 0) {
+            return new ClassifiedPath(path, Kind.LATEST_VERSION, latestGroupArtifactEnd, latestNameStart,
+                    latestTokenStart, latestTokenStart + SNAPSHOT_TOKEN.length(), archiveEnd, collapseSlashes);
+        } else if (releaseNameStart >= 0) {
+            return new ClassifiedPath(path, Kind.LATEST_RELEASE, releaseGroupArtifactEnd, releaseNameStart,
+                    releaseTokenStart, releaseTokenStart + RELEASE_TOKEN.length(), archiveEnd, collapseSlashes);
+        }
+        return new ClassifiedPath(path, Kind.UNCHANGED, -1, -1, -1, -1, archiveEnd, collapseSlashes);
+    }
+
+    /**
+     * Returns the index of the last occurrence of the token within the segment which is followed
+     * by at least one more character of the segment, or <code>-1</code>.
+     */
+    private static int lastTokenIndex(final String path, final int segmentStart, final int segmentEnd,
+            final String token) {
+        for (int index = segmentEnd - token.length() - 1; index >= segmentStart; index--) {
+            if (path.startsWith(token, index)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isKeyword(final String path, final int segmentStart, final int segmentEnd,
+            final String keyword) {
+        return segmentEnd - segmentStart == keyword.length() && path.startsWith(keyword, segmentStart);
+    }
+
+    /**
+     * Checks whether the segment is a snapshot version, i.e. matches
+     * <code>[0-9.]*(-[a-zA-Z_0-9]+)*-SNAPSHOT</code>.
+     */
+    private static boolean isSnapshotVersion(final String path, final int segmentStart, final int segmentEnd) {
+        final int versionEnd = segmentEnd - SNAPSHOT_TOKEN.length();
+        if (versionEnd < segmentStart || !path.startsWith(SNAPSHOT_TOKEN, versionEnd)) {
+            return false;
+        }
+        int i = segmentStart;
+        while (i < versionEnd && isDigitOrDot(path.charAt(i))) {
+            i++;
+        }
+        while (i < versionEnd) {
+            if (path.charAt(i) != '-') {
+                return false;
+            }
+            i++;
+            final int wordStart = i;
+            while (i < versionEnd && isWordCharacter(path.charAt(i))) {
+                i++;
+            }
+            if (i == wordStart) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigitOrDot(final char c) {
+        return (c >= '0' && c <= '9') || c == '.';
+    }
+
+    private static boolean isWordCharacter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Joins the segments of the path up to <code>end</code> with single slashes and a leading
+     * slash, in the same way the path to an archive was formerly concatenated segment by segment.
+     */
+    static String collapseSlashes(final String path, final int end) {
+        final StringBuilder result = new StringBuilder(end + 1);
+        int segmentStart = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i == end || path.charAt(i) == '/') {
+                if (result.length() == 0 || result.charAt(result.length() - 1) != '/') {
+                    result.append('/');
+                }
+                result.append(path, segmentStart, i);
+                segmentStart = i + 1;
+            }
+        }
+        return result.toString();
+    }
+}
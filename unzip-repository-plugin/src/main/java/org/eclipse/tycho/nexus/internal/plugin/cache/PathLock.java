@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,82 +10,335 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
-import java.util.HashMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents.Type;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog;
 
 /**
- * Lock utility class to work around https://issues.sonatype.org/browse/NEXUS-3622
+ * Registry of read/write locks per path. The <code>maven-metadata.xml</code> files are read from
+ * the master repository under an exclusive lock to work around
+ * https://issues.sonatype.org/browse/NEXUS-3622, while cached archive folders are shared by
+ * readers and only locked exclusively to cache or delete archives.
+ * <p>
+ * Every unzip repository has its own registry, so requests to different repositories never wait
+ * for each other, even if they access the same paths.
+ * <p>
+ * The locks are kept in a {@link ConcurrentHashMap} and are reference counted, so a lock only
+ * exists as long as it is held or waited for. Acquiring and releasing the lock of one path does
+ * not synchronize with other paths. For every lock the time spent waiting for and holding it is
+ * recorded, as well as the paths for which threads had to wait most often.
  */
-class PathLock {
-    private static final Map<String, PathLock> lockMap = new HashMap<String, PathLock>();
-
-    static PathLockMonitor getLock(final String mdPath) {
-        PathLock ret = null;
-        synchronized (lockMap) {
-            ret = lockMap.get(mdPath);
-            if (ret == null) {
-                ret = new PathLock(mdPath);
-                lockMap.put(mdPath, ret);
+public final class PathLock {
+
+    /**
+     * The mode in which a path is locked.
+     */
+    enum Mode {
+        /**
+         * shared with other readers, excludes writers
+         */
+        READ,
+        /**
+         * excludes readers and writers
+         */
+        WRITE
+    }
+
+    static final int MAX_TRACKED_CONTENDED_PATHS = 256;
+
+    private final ConcurrentMap<String, Entry> locks = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentMap<String, AtomicLong> contendedPaths = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contendedAcquisitions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalHoldNanos = new AtomicLong();
+    private final AtomicLong maxHoldNanos = new AtomicLong();
+    private volatile String repositoryId;
+
+    /**
+     * @return the id of the repository owning the locks, may be <code>null</code>
+     */
+    public String getRepositoryId() {
+        return repositoryId;
+    }
+
+    /**
+     * Sets the id of the repository owning the locks, which is reported in the flight recorder
+     * events of lock waits.
+     */
+    public void setRepositoryId(final String repositoryId) {
+        this.repositoryId = repositoryId;
+    }
+
+    /**
+     * Locks the given path, waiting as long as necessary.
+     *
+     * @param path
+     *            the path to lock
+     * @param mode
+     *            the lock mode
+     * @return the monitor to be passed to {@link #unlock(PathLockMonitor)}
+     */
+    PathLockMonitor lock(final String path, final Mode mode) {
+        final Entry entry = retain(path);
+        final Lock lock = entry.getLock(mode);
+        if (lock.tryLock()) {
+            return acquired(entry, lock, false, 0);
+        }
+        recordContention(path);
+        final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.LOCK_WAIT, repositoryId, path);
+        final long start = System.nanoTime();
+        lock.lock();
+        final long waitNanos = System.nanoTime() - start;
+        recordWait(waitNanos);
+        if (event != null) {
+            event.set("mode", mode.name()).set("acquired", true).commit();
+        }
+        return acquired(entry, lock, true, waitNanos);
+    }
+
+    /**
+     * Locks the given path, waiting at most the given time.
+     *
+     * @param path
+     *            the path to lock
+     * @param mode
+     *            the lock mode
+     * @param timeout
+     *            the maximum time to wait for the lock
+     * @param unit
+     *            the unit of <code>timeout</code>
+     * @return the monitor to be passed to {@link #unlock(PathLockMonitor)}, or <code>null</code>
+     *         if the lock could not be acquired in time
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting
+     */
+    PathLockMonitor tryLock(final String path, final Mode mode, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final Entry entry = retain(path);
+        final Lock lock = entry.getLock(mode);
+        boolean locked = false;
+        try {
+            if (lock.tryLock()) {
+                locked = true;
+                return acquired(entry, lock, false, 0);
+            }
+            recordContention(path);
+            final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.LOCK_WAIT, repositoryId, path);
+            final long start = System.nanoTime();
+            locked = lock.tryLock(timeout, unit);
+            final long waitNanos = System.nanoTime() - start;
+            recordWait(waitNanos);
+            if (event != null) {
+                event.set("mode", mode.name()).set("acquired", locked).commit();
+            }
+            if (locked) {
+                return acquired(entry, lock, true, waitNanos);
+            }
+            timeouts.incrementAndGet();
+            return null;
+        } finally {
+            if (!locked) {
+                release(entry);
             }
-            ret.inc();
         }
-        return ret.getLock();
     }
 
-    private static boolean releaseLock(final String mdPath) {
-        synchronized (lockMap) {
-            final PathLock lock = lockMap.get(mdPath);
-            if (lock != null) {
-                lock.dec();
-                if (lock.getCount() <= 0) {
-                    lockMap.remove(mdPath);
-                }
-            } else {
-                return false;
+    /**
+     * Releases a lock acquired with {@link #lock(String, Mode)} or
+     * {@link #tryLock(String, Mode, long, TimeUnit)}.
+     *
+     * @param monitor
+     *            the monitor returned when the lock was acquired
+     */
+    void unlock(final PathLockMonitor monitor) {
+        final long holdNanos = System.nanoTime() - monitor.acquiredAt;
+        monitor.lock.unlock();
+        release(monitor.entry);
+        totalHoldNanos.addAndGet(holdNanos);
+        updateMax(maxHoldNanos, holdNanos);
+    }
+
+    /**
+     * @return the number of paths which are currently locked or waited for
+     */
+    int getLockedPathCount() {
+        return locks.size();
+    }
+
+    /**
+     * Returns a snapshot of the lock statistics.
+     *
+     * @param topContendedPaths
+     *            the maximum number of most contended paths to include
+     * @return the statistics
+     */
+    public PathLockStatistics getStatistics(final int topContendedPaths) {
+        final List<Map.Entry<String, Long>> contended = new ArrayList<Map.Entry<String, Long>>();
+        for (final Map.Entry<String, AtomicLong> entry : contendedPaths.entrySet()) {
+            contended.add(new SimpleImmutableEntry<String, Long>(entry.getKey(), entry.getValue().get()));
+        }
+        Collections.sort(contended, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(final Map.Entry<String, Long> a, final Map.Entry<String, Long> b) {
+                return b.getValue().compareTo(a.getValue());
             }
+        });
+        final Map<String, Long> top = new LinkedHashMap<String, Long>();
+        for (final Map.Entry<String, Long> entry : contended.subList(0, Math.min(topContendedPaths,
+                contended.size()))) {
+            top.put(entry.getKey(), entry.getValue());
         }
-        return true;
+        return new PathLockStatistics(acquisitions.get(), contendedAcquisitions.get(), timeouts.get(),
+                totalWaitNanos.get(), maxWaitNanos.get(), totalHoldNanos.get(), maxHoldNanos.get(), locks.size(), top);
     }
 
-    static boolean releaseLock(final PathLockMonitor lock) {
-        return releaseLock(lock.getPath());
+    private PathLockMonitor acquired(final Entry entry, final Lock lock, final boolean contended,
+            final long waitNanos) {
+        acquisitions.incrementAndGet();
+        if (contended) {
+            contendedAcquisitions.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            updateMax(maxWaitNanos, waitNanos);
+        }
+        return new PathLockMonitor(entry, lock);
     }
 
-    PathLock(final String path) {
-        this.lock = new PathLockMonitor(path);
+    private Entry retain(final String path) {
+        while (true) {
+            Entry entry = locks.get(path);
+            if (entry == null) {
+                final Entry newEntry = new Entry(path);
+                entry = locks.putIfAbsent(path, newEntry);
+                if (entry == null) {
+                    return newEntry;
+                }
+            }
+            if (entry.retain()) {
+                return entry;
+            }
+            // the entry is released concurrently; make sure it is gone before creating a new one
+            locks.remove(path, entry);
+        }
     }
 
-    PathLockMonitor lock;
-    int count = 0;
+    private void release(final Entry entry) {
+        if (entry.release()) {
+            locks.remove(entry.path, entry);
+        }
+    }
 
-    private PathLockMonitor getLock() {
-        return lock;
+    private static void recordWait(final long waitNanos) {
+        final SlowRequestLog.Record slowRequestRecord = SlowRequestLog.current();
+        if (slowRequestRecord != null) {
+            slowRequestRecord.addLockWait(waitNanos);
+        }
     }
 
-    private synchronized int getCount() {
-        return count;
+    private void recordContention(final String path) {
+        AtomicLong count = contendedPaths.get(path);
+        if (count == null) {
+            if (contendedPaths.size() >= MAX_TRACKED_CONTENDED_PATHS) {
+                evictLeastContendedPath();
+            }
+            final AtomicLong newCount = new AtomicLong();
+            count = contendedPaths.putIfAbsent(path, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
     }
 
-    private synchronized void inc() {
-        count++;
+    private void evictLeastContendedPath() {
+        String leastContendedPath = null;
+        long leastCount = Long.MAX_VALUE;
+        for (final Map.Entry<String, AtomicLong> entry : contendedPaths.entrySet()) {
+            final long count = entry.getValue().get();
+            if (count < leastCount) {
+                leastCount = count;
+                leastContendedPath = entry.getKey();
+            }
+        }
+        if (leastContendedPath != null) {
+            contendedPaths.remove(leastContendedPath);
+        }
     }
 
-    private synchronized void dec() {
-        count--;
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
     }
 
-    static class PathLockMonitor {
-        private final String path;
+    private static final class Entry {
+        final String path;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // number of threads holding or waiting for the lock; 0 means the entry is discarded
+        private final AtomicInteger references = new AtomicInteger(1);
 
-        public PathLockMonitor(final String path) {
-            super();
+        Entry(final String path) {
             this.path = path;
         }
 
-        public String getPath() {
-            return path;
+        Lock getLock(final Mode mode) {
+            return mode == Mode.READ ? lock.readLock() : lock.writeLock();
         }
 
+        boolean retain() {
+            while (true) {
+                final int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return <code>true</code> if the last reference was released
+         */
+        boolean release() {
+            return references.decrementAndGet() == 0;
+        }
     }
 
+    /**
+     * A lock held on a path.
+     */
+    static final class PathLockMonitor {
+        private final Entry entry;
+        private final Lock lock;
+        private final long acquiredAt = System.nanoTime();
+
+        PathLockMonitor(final Entry entry, final Lock lock) {
+            this.entry = entry;
+            this.lock = lock;
+        }
+
+        public String getPath() {
+            return entry.path;
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of the statistics of a {@link PathLock} registry. All times are in nanoseconds.
+ */
+public final class PathLockStatistics {
+
+    private final long acquisitions;
+    private final long contendedAcquisitions;
+    private final long timeouts;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long totalHoldNanos;
+    private final long maxHoldNanos;
+    private final int lockedPaths;
+    private final Map<String, Long> topContendedPaths;
+
+    PathLockStatistics(final long acquisitions, final long contendedAcquisitions, final long timeouts,
+            final long totalWaitNanos, final long maxWaitNanos, final long totalHoldNanos, final long maxHoldNanos,
+            final int lockedPaths, final Map<String, Long> topContendedPaths) {
+        this.acquisitions = acquisitions;
+        this.contendedAcquisitions = contendedAcquisitions;
+        this.timeouts = timeouts;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.totalHoldNanos = totalHoldNanos;
+        this.maxHoldNanos = maxHoldNanos;
+        this.lockedPaths = lockedPaths;
+        this.topContendedPaths = Collections.unmodifiableMap(topContendedPaths);
+    }
+
+    /**
+     * @return the number of acquired locks
+     */
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * @return the number of acquired locks for which the thread had to wait
+     */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions;
+    }
+
+    /**
+     * @return the number of locks which could not be acquired within their timeout
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    public long getTotalHoldNanos() {
+        return totalHoldNanos;
+    }
+
+    public long getMaxHoldNanos() {
+        return maxHoldNanos;
+    }
+
+    /**
+     * @return the number of paths which are currently locked or waited for
+     */
+    public int getLockedPaths() {
+        return lockedPaths;
+    }
+
+    /**
+     * @return the paths for which threads had to wait most often, with the number of contended
+     *         acquisitions, in descending order
+     */
+    public Map<String, Long> getTopContendedPaths() {
+        return topContendedPaths;
+    }
+}
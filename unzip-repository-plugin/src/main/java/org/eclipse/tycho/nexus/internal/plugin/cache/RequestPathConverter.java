@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,21 +10,14 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import org.apache.maven.artifact.versioning.VersionRange;
+import org.eclipse.tycho.nexus.internal.plugin.RequestParameters;
 import org.sonatype.nexus.proxy.IllegalRequestException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.repository.Repository;
 
 public class RequestPathConverter {
-    private static final Pattern SNAPSHOT_PATTERN = Pattern
-            .compile("^(.*/(?:\\d*\\.?)+(?:-\\w+)*-SNAPSHOT/)([^/]*-)SNAPSHOT[^/]");
-    private static final Pattern LATESTVERSION_PATTERN = Pattern.compile("/SNAPSHOT/([^/]*)-SNAPSHOT[^/]");
-    private static final Pattern RELEASE_PATTERN = Pattern.compile("/RELEASE/([^/]*)-RELEASE[^/]");
 
     /**
      * Converts the path to an artifact. The following requests are possible:
@@ -36,6 +29,11 @@ public class RequestPathConverter {
      * <code>x.y.z-SNAPSHOT</code></li>
      * </ul>
      * Returns an unchanged path in case the provided path does not match the request structure.
+     * <p>
+     * Only for tests: the virtual version is resolved without cache and with a lock registry of
+     * its own, so reads of the same <code>maven-metadata.xml</code> by other callers are not
+     * excluded (see NEXUS-3622). The unzip repository uses
+     * {@link #convert(Repository, ResourceStoreRequest, boolean, ConversionResultCache)}.
      * 
      * @param repository
      *            A <code>Repository</code>, where the requested artifact is searched for.
@@ -50,50 +48,168 @@ public class RequestPathConverter {
      *             if the range parameter of the request url cannot be parsed according Maven
      *             version range spec
      */
-    public static ConversionResult convert(final Repository repository, final ResourceStoreRequest request,
+    static ConversionResult convert(final Repository repository, final ResourceStoreRequest request,
             final boolean useVirtualVersions) throws LocalStorageException, IllegalRequestException {
-        final ParsedRequest parsedRequest = parseRequest(request, useVirtualVersions);
-        return parsedRequest.resolve(repository);
+        final ClassifiedPath classifiedPath = PathClassifier.classify(request.getRequestPath());
+        if (!useVirtualVersions || classifiedPath.getKind() == ClassifiedPath.Kind.UNCHANGED) {
+            return new ConversionResult(request.getRequestPath());
+        }
+        return parseRequest(request, classifiedPath, classifiedPath.getArtifactNameEnd(), parseVersionRange(request))
+                .resolve(repository, new PathLock());
+    }
+
+    /**
+     * Same as {@link #convert(Repository, ResourceStoreRequest, boolean)}, but takes the resolution
+     * of the virtual version from the given cache, if possible. If the request URL has the query
+     * parameter {@link SessionPins#SESSION_PARAMETER}, the resolution is pinned for the session.
+     * 
+     * @param repository
+     *            A <code>Repository</code>, where the requested artifact is searched for.
+     * @param request
+     *            The request to be resolved to an specific artifact.
+     * @param useVirtualVersions
+     *            whether the keywords SNAPSHOT or RELEASE shall be evaluated
+     * @param cache
+     *            the cache for resolved virtual versions of the unzip repository, whose path lock
+     *            serializes the reads of <code>maven-metadata.xml</code>
+     * @return The result object of a dynamic version conversion.
+     * 
+     * @throws LocalStorageException
+     * @throws IllegalRequestException
+     *             if the range parameter of the request url cannot be parsed according Maven
+     *             version range spec
+     */
+    public static ConversionResult convert(final Repository repository, final ResourceStoreRequest request,
+            final boolean useVirtualVersions, final ConversionResultCache cache) throws LocalStorageException,
+            IllegalRequestException {
+        if (!useVirtualVersions) {
+            return new ConversionResult(request.getRequestPath());
+        }
+        return convert(repository, request, PathClassifier.classify(request.getRequestPath()), cache);
     }
 
-    private static ParsedRequest parseRequest(final ResourceStoreRequest request, final boolean useVirtualVersions) {
+    /**
+     * Same as {@link #convert(Repository, ResourceStoreRequest, boolean, ConversionResultCache)}
+     * with virtual versions, for a request path which is already classified.
+     * 
+     * @param repository
+     *            A <code>Repository</code>, where the requested artifact is searched for.
+     * @param request
+     *            The request to be resolved to an specific artifact.
+     * @param classifiedPath
+     *            the classification of the path of <code>request</code>
+     * @param cache
+     *            the cache for resolved virtual versions of the unzip repository, whose path lock
+     *            serializes the reads of <code>maven-metadata.xml</code>
+     * @return The result object of a dynamic version conversion.
+     * 
+     * @throws LocalStorageException
+     * @throws IllegalRequestException
+     *             if the range parameter of the request url cannot be parsed according Maven
+     *             version range spec
+     */
+    public static ConversionResult convert(final Repository repository, final ResourceStoreRequest request,
+            final ClassifiedPath classifiedPath, final ConversionResultCache cache) throws LocalStorageException,
+            IllegalRequestException {
         final String requestPath = request.getRequestPath();
+        if (classifiedPath.getKind() == ClassifiedPath.Kind.UNCHANGED) {
+            return new ConversionResult(requestPath);
+        }
 
-        if (useVirtualVersions) {
-            final Matcher snapshotVersionMatcher = SNAPSHOT_PATTERN.matcher(requestPath);
-            if (snapshotVersionMatcher.find()) {
-                final MatchResult versionFolderMatchResult = snapshotVersionMatcher.toMatchResult();
-                final String pathToSnapshotArtifact = versionFolderMatchResult.group(1);
-                final String pathUpToVersion = pathToSnapshotArtifact + versionFolderMatchResult.group(2);
-                final String artifactNameEnd = requestPath.substring(versionFolderMatchResult.end() - 1);
-                return new SnapshotRequest(requestPath, pathUpToVersion, pathToSnapshotArtifact, artifactNameEnd);
-            }
-            final Matcher latestVersionMatcher = LATESTVERSION_PATTERN.matcher(requestPath);
-            if (latestVersionMatcher.find()) {
+        final VersionRange versionRange = parseVersionRange(request);
+        final String artifactNameEnd = classifiedPath.getArtifactNameEnd();
 
-                final MatchResult matchResult = latestVersionMatcher.toMatchResult();
-                final String groupArtifactPath = requestPath.substring(0, matchResult.start());
-                final String artifactNameStart = matchResult.group(1);
-                final String artifactNameEnd = requestPath.substring(matchResult.end() - 1);
+        // the resolution only depends on the path up to the virtual version in the artifact name
+        final String virtualPathPrefix = requestPath.substring(0, requestPath.length() - artifactNameEnd.length());
+        final ParsedRequest prefixRequest = parseRequest(new ResourceStoreRequest(virtualPathPrefix),
+                classifiedPath, "", versionRange);
+        final String session = RequestParameters.of(request).get(SessionPins.SESSION_PARAMETER);
+        return cache.get(repository, virtualPathPrefix, versionRange, prefixRequest, session).appendPath(
+                requestPath, artifactNameEnd);
+    }
 
-                final VersionRange versionRange = parseVersionRange(request);
+    /**
+     * Resolves the latest version of an artifact within the given version range, as if the virtual
+     * version <code>SNAPSHOT</code> or <code>RELEASE</code> was requested in a path of the
+     * artifact. The conversion result contains the selected version and the converted path
+     * <code>/group/artifact/version/artifact-version</code>, i.e. the path of the artifact files
+     * without classifier and extension.
+     * 
+     * @param repository
+     *            A <code>Repository</code>, where the requested artifact is searched for.
+     * @param groupId
+     *            the group id of the artifact
+     * @param artifactId
+     *            the artifact id
+     * @param versionRange
+     *            the range of versions to select from, may be <code>null</code>
+     * @param includeSnapshots
+     *            whether the latest version including SNAPSHOTs (<code>true</code>) or the latest
+     *            release (<code>false</code>) shall be resolved
+     * @param cache
+     *            the cache for resolved virtual versions of the unzip repository, whose path lock
+     *            serializes the reads of <code>maven-metadata.xml</code>
+     * @return The result object of the virtual version conversion, which is not converted if the
+     *         artifact has no version within the range.
+     * @throws LocalStorageException
+     */
+    public static ConversionResult resolveLatestVersion(final Repository repository, final String groupId,
+            final String artifactId, final VersionRange versionRange, final boolean includeSnapshots,
+            final ConversionResultCache cache) throws LocalStorageException {
+        final String virtualPath = getLatestVersionPath(groupId, artifactId, includeSnapshots);
+        return cache.get(repository, virtualPath, versionRange,
+                parseLatestVersionRequest(virtualPath, groupId, artifactId, versionRange, includeSnapshots));
+    }
+
+    /**
+     * Same as
+     * {@link #resolveLatestVersion(Repository, String, String, VersionRange, boolean, ConversionResultCache)}
+     * without cache and with a lock registry of its own, so only for tests.
+     */
+    static ConversionResult resolveLatestVersion(final Repository repository, final String groupId,
+            final String artifactId, final VersionRange versionRange, final boolean includeSnapshots)
+            throws LocalStorageException {
+        final String virtualPath = getLatestVersionPath(groupId, artifactId, includeSnapshots);
+        return parseLatestVersionRequest(virtualPath, groupId, artifactId, versionRange, includeSnapshots).resolve(
+                repository, new PathLock());
+    }
 
-                return new LatestVersionRequest(request, groupArtifactPath, artifactNameStart, artifactNameEnd,
-                        versionRange);
-            }
+    private static String getLatestVersionPath(final String groupId, final String artifactId,
+            final boolean includeSnapshots) {
+        final String keyword = includeSnapshots ? "SNAPSHOT" : "RELEASE";
+        // same path prefix as for requests of files of the artifact, so that the cached results are shared
+        return getGroupArtifactPath(groupId, artifactId) + "/" + keyword + "/" + artifactId + "-" + keyword;
+    }
+
+    private static ParsedRequest parseLatestVersionRequest(final String virtualPath, final String groupId,
+            final String artifactId, final VersionRange versionRange, final boolean includeSnapshots) {
+        final ResourceStoreRequest request = new ResourceStoreRequest(virtualPath);
+        final String groupArtifactPath = getGroupArtifactPath(groupId, artifactId);
+        if (includeSnapshots) {
+            return new LatestVersionRequest(request, groupArtifactPath, artifactId, "", versionRange);
+        }
+        return new LatestReleaseRequest(request, groupArtifactPath, artifactId, "", versionRange);
+    }
+
+    private static String getGroupArtifactPath(final String groupId, final String artifactId) {
+        return "/" + groupId.replace('.', '/') + "/" + artifactId;
+    }
 
-            final Matcher releaseVersionMatcher = RELEASE_PATTERN.matcher(requestPath);
-            if (releaseVersionMatcher.find()) {
-                final MatchResult matchResult = releaseVersionMatcher.toMatchResult();
-                final String groupArtifactPath = requestPath.substring(0, matchResult.start());
-                final String artifactNameStart = matchResult.group(1);
-                final String artifactNameEnd = requestPath.substring(matchResult.end() - 1);
-                final VersionRange versionRange = parseVersionRange(request);
-                return new LatestReleaseRequest(request, groupArtifactPath, artifactNameStart, artifactNameEnd,
-                        versionRange);
-            }
+    private static ParsedRequest parseRequest(final ResourceStoreRequest request,
+            final ClassifiedPath classifiedPath, final String artifactNameEnd, final VersionRange versionRange) {
+        switch (classifiedPath.getKind()) {
+        case SNAPSHOT:
+            return new SnapshotRequest(request.getRequestPath(), classifiedPath.getPathUpToVersion(),
+                    classifiedPath.getVersionFolderPath(), artifactNameEnd);
+        case LATEST_VERSION:
+            return new LatestVersionRequest(request, classifiedPath.getGroupArtifactPath(),
+                    classifiedPath.getArtifactNameStart(), artifactNameEnd, versionRange);
+        case LATEST_RELEASE:
+            return new LatestReleaseRequest(request, classifiedPath.getGroupArtifactPath(),
+                    classifiedPath.getArtifactNameStart(), artifactNameEnd, versionRange);
+        default:
+            return new UnchangedRequest(request.getRequestPath());
         }
-        return new UnchangedRequest(requestPath);
     }
 
     private static VersionRange parseVersionRange(final ResourceStoreRequest request) {
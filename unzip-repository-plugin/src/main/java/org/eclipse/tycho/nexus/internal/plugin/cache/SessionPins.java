@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resolutions of virtual versions pinned by build sessions. A build passes the same session
+ * token with all its requests, e.g.
+ * <code>.../SNAPSHOT/artifact-SNAPSHOT-assembly.zip-unzip/content.jar?session=4711</code>, and
+ * each virtual version is resolved only by the first request of the session. All later requests
+ * of the session get the same result, even if a newer snapshot was deployed in the meantime, so
+ * that the build sees consistent versions.
+ * <p>
+ * The cached archives of pinned versions are not removed by the clean up of outdated snapshots.
+ * For this check, the number of pins of each converted path is counted, so that it does not depend
+ * on the number of sessions. A session and its pins are dropped when the session was not used for
+ * the idle timeout, at the latest with the next pin or check one idle timeout later.
+ */
+public class SessionPins {
+
+    /**
+     * The query parameter with the session token.
+     */
+    public static final String SESSION_PARAMETER = "session";
+
+    /**
+     * The default idle timeout of sessions in milliseconds.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * The default maximum number of sessions. Requests of further sessions are not pinned until
+     * sessions expire.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default maximum number of pinned results of a session. Further virtual versions
+     * requested by the session are resolved for each request.
+     */
+    public static final int DEFAULT_RESULTS_PER_SESSION = 256;
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    // the number of pins of the converted paths without leading slash
+    private final ConcurrentMap<String, Integer> pinnedPaths = new ConcurrentHashMap<String, Integer>();
+    private final int capacity;
+    private final int resultsPerSession;
+    private volatile long idleTimeoutNanos;
+    private volatile long lastPurge = System.nanoTime();
+
+    /**
+     * @param idleTimeout
+     *            the time in milliseconds after which unused sessions expire, <code>0</code>
+     *            disables the pinning
+     * @param capacity
+     *            the maximum number of sessions
+     */
+    public SessionPins(final long idleTimeout, final int capacity) {
+        this(idleTimeout, capacity, DEFAULT_RESULTS_PER_SESSION);
+    }
+
+    /**
+     * @param idleTimeout
+     *            the time in milliseconds after which unused sessions expire, <code>0</code>
+     *            disables the pinning
+     * @param capacity
+     *            the maximum number of sessions
+     * @param resultsPerSession
+     *            the maximum number of pinned results of a session
+     */
+    public SessionPins(final long idleTimeout, final int capacity, final int resultsPerSession) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (resultsPerSession <= 0) {
+            throw new IllegalArgumentException("Results per session must be positive: " + resultsPerSession);
+        }
+        this.capacity = capacity;
+        this.resultsPerSession = resultsPerSession;
+        setIdleTimeout(idleTimeout);
+    }
+
+    /**
+     * @param idleTimeout
+     *            the time in milliseconds after which unused sessions expire, <code>0</code>
+     *            disables the pinning
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("Negative idle timeout: " + idleTimeout);
+        }
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        if (idleTimeout == 0) {
+            for (final Iterator<Session> iterator = sessions.values().iterator(); iterator.hasNext();) {
+                drop(iterator.next());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the time in milliseconds after which unused sessions expire
+     */
+    public long getIdleTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos);
+    }
+
+    /**
+     * @return the pinned result of the session for the key, or <code>null</code> if the session
+     *         has not resolved the key yet
+     */
+    ConversionResult get(final String session, final Object key) {
+        final long timeout = idleTimeoutNanos;
+        if (timeout == 0) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        final Session pins = sessions.get(session);
+        if (pins == null || pins.isExpired(now, timeout)) {
+            return null;
+        }
+        pins.lastAccess = now;
+        return pins.results.get(key);
+    }
+
+    /**
+     * Pins the result of the first resolution of the key in the session.
+     *
+     * @return the given result, or the result pinned by a concurrent request of the same session.
+     *         The given result is not pinned if the session has pinned the maximum number of
+     *         results.
+     */
+    ConversionResult pin(final String session, final Object key, final ConversionResult result) {
+        final long timeout = idleTimeoutNanos;
+        if (timeout == 0) {
+            return result;
+        }
+        final long now = System.nanoTime();
+        Session pins = sessions.get(session);
+        if (pins == null || pins.isExpired(now, timeout)) {
+            purgeExpired(now, timeout);
+            if (sessions.size() >= capacity) {
+                return result;
+            }
+            final Session newPins = new Session(now);
+            if (pins == null ? sessions.putIfAbsent(session, newPins) != null : !sessions.replace(session, pins,
+                    newPins)) {
+                // started concurrently by another request of the session
+                return pin(session, key, result);
+            }
+            if (pins != null) {
+                drop(pins);
+            }
+            pins = newPins;
+        }
+        pins.lastAccess = now;
+        synchronized (pins) {
+            if (pins.dropped) {
+                // expired and replaced concurrently
+                return pin(session, key, result);
+            }
+            final ConversionResult pinned = pins.results.get(key);
+            if (pinned != null) {
+                return pinned;
+            }
+            if (pins.results.size() >= resultsPerSession) {
+                return result;
+            }
+            pins.results.put(key, result.asPinned());
+            if (result.isPathConverted()) {
+                increment(stripLeadingSlash(result.getConvertedPath()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param cachedPath
+     *            the path of an item in the cache of the unzip repository
+     * @return <code>true</code> if the item belongs to a version which is pinned by a session
+     */
+    public boolean isPinned(final String cachedPath) {
+        final long timeout = idleTimeoutNanos;
+        if (timeout == 0) {
+            return false;
+        }
+        final long now = System.nanoTime();
+        if (now - lastPurge >= timeout) {
+            purgeExpired(now, timeout);
+        }
+        if (pinnedPaths.isEmpty()) {
+            return false;
+        }
+        final String path = stripLeadingSlash(cachedPath);
+        if (pinnedPaths.containsKey(path)) {
+            return true;
+        }
+        // the converted path of a pin ends with the resolved version in the artifact name, which is
+        // followed by the classifier or the extension in the names of the cached items
+        for (int i = path.lastIndexOf('/') + 1; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if ((c == '-' || c == '.') && pinnedPaths.containsKey(path.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    int getPinnedPathCount() {
+        return pinnedPaths.size();
+    }
+
+    private static String stripLeadingSlash(final String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private void purgeExpired(final long now, final long timeout) {
+        if (now - lastPurge < timeout && sessions.size() < capacity) {
+            return;
+        }
+        lastPurge = now;
+        for (final Iterator<Session> iterator = sessions.values().iterator(); iterator.hasNext();) {
+            final Session pins = iterator.next();
+            if (pins.isExpired(now, timeout)) {
+                iterator.remove();
+                drop(pins);
+            }
+        }
+    }
+
+    /**
+     * Releases the pins of a session which was removed from the sessions.
+     */
+    private void drop(final Session pins) {
+        synchronized (pins) {
+            if (pins.dropped) {
+                return;
+            }
+            pins.dropped = true;
+            for (final ConversionResult result : pins.results.values()) {
+                if (result.isPathConverted()) {
+                    decrement(stripLeadingSlash(result.getConvertedPath()));
+                }
+            }
+        }
+    }
+
+    private void increment(final String path) {
+        while (true) {
+            final Integer count = pinnedPaths.get(path);
+            if (count == null ? pinnedPaths.putIfAbsent(path, 1) == null : pinnedPaths.replace(path, count,
+                    count + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(final String path) {
+        while (true) {
+            final Integer count = pinnedPaths.get(path);
+            if (count == null) {
+                return;
+            }
+            if (count == 1 ? pinnedPaths.remove(path, count) : pinnedPaths.replace(path, count, count - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The pinned results of a session. Pins are added and released with the lock of the session.
+     */
+    private static final class Session {
+        final ConcurrentMap<Object, ConversionResult> results = new ConcurrentHashMap<Object, ConversionResult>();
+        volatile long lastAccess;
+        boolean dropped;
+
+        Session(final long now) {
+            this.lastAccess = now;
+        }
+
+        boolean isExpired(final long now, final long timeout) {
+            return now - lastAccess >= timeout;
+        }
+    }
+}
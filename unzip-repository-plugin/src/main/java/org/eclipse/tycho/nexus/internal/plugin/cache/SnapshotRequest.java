@@ -31,11 +31,11 @@ public class SnapshotRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final PathLock pathLock) throws LocalStorageException {
         String latestSnapshotVersion;
 
         try {
-            latestSnapshotVersion = getLatestSnapshotVersion(repository);
+            latestSnapshotVersion = getLatestSnapshotVersion(repository, pathLock);
         } catch (final ItemNotFoundException e) {
             return new ConversionResult(requestPath, pathUpToVersion, false);
         }
@@ -48,10 +48,10 @@ public class SnapshotRequest extends ParsedRequest {
         }
     }
 
-    private String getLatestSnapshotVersion(final Repository repository) throws LocalStorageException,
-            ItemNotFoundException {
+    private String getLatestSnapshotVersion(final Repository repository, final PathLock pathLock)
+            throws LocalStorageException, ItemNotFoundException {
         final String mdPath = metadataPath(pathToSnapshotArtifact);
-        final Versioning mdVersioning = getVersioning(repository, mdPath);
+        final Versioning mdVersioning = getVersioning(repository, pathLock, mdPath);
         if (mdVersioning != null) {
             final Snapshot current = mdVersioning.getSnapshot();
             if (current != null) {
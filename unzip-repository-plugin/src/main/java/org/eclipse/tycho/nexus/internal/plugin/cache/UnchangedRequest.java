@@ -21,7 +21,7 @@ public class UnchangedRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final PathLock pathLock) throws LocalStorageException {
         return new ConversionResult(requestPath);
     }
 }
@@ -13,15 +13,23 @@ package org.eclipse.tycho.nexus.internal.plugin.cache;
 import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
 import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock.PathLockMonitor;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents.Type;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.RequestTimings;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog.Layer;
 import org.slf4j.Logger;
 import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.local.LocalRepositoryStorage;
@@ -30,6 +38,19 @@ import org.sonatype.nexus.util.ItemPathUtils;
 
 public class UnzipCache {
 
+    /**
+     * Time in milliseconds to wait for the lock of a folder before its clean up is skipped.
+     */
+    static final long CLEANUP_LOCK_TIMEOUT = 1000;
+
+    /**
+     * Request passed to {@link DefaultFSLocalRepositoryStorage#getBaseDir}, which does not depend on
+     * the request. It is shared so that looking up a cached archive does not create a request.
+     */
+    private static final ResourceStoreRequest BASE_DIR_REQUEST = new ResourceStoreRequest(
+            RepositoryItemUid.PATH_ROOT);
+
+    private final PathLock pathLock;
     private final DefaultUnzipRepository repository;
     private final LocalRepositoryStorage localStorage;
     private final Logger logger;
@@ -38,6 +59,7 @@ public class UnzipCache {
         this.logger = logger;
         this.repository = repository;
         localStorage = this.repository.getLocalStorage();
+        pathLock = this.repository.getPathLock();
     }
 
     /**
@@ -55,26 +77,97 @@ public class UnzipCache {
      * 
      */
     public File getArchive(final String zipItemPath) throws ItemNotFoundException, LocalStorageException {
-        final PathLockMonitor folderLock = PathLock.getLock(getRequestPathParent(zipItemPath));
+        final long start = RequestTimings.start();
+        final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.ARCHIVE_FETCH, repository.getId(),
+                zipItemPath);
+        try {
+            final File archive = getOrFetchArchive(zipItemPath, event);
+            repository.getHotItems().recordArchive(zipItemPath);
+            if (event != null) {
+                event.set("bytes", archive.length());
+            }
+            final SlowRequestLog.Record slowRequestRecord = SlowRequestLog.current();
+            if (slowRequestRecord != null) {
+                slowRequestRecord.setArchiveSize(archive.length());
+            }
+            return archive;
+        } finally {
+            repository.getRequestTimings().record(Phase.ARCHIVE_CACHE, start);
+            if (event != null) {
+                event.commit();
+            }
+        }
+    }
+
+    private File getOrFetchArchive(final String zipItemPath, final FlightRecorderEvents.Event event)
+            throws ItemNotFoundException, LocalStorageException {
+        final String folder = getRequestPathParent(zipItemPath);
+        final File cachedFile = getCachedFile(zipItemPath);
         try {
-            synchronized (folderLock) {
-                final ResourceStoreRequest request = new ResourceStoreRequest(zipItemPath);
-                if (!localStorage.containsItem(repository, request)) {
-                    logger.debug("Caching zip file from master repository: " + zipItemPath);
-                    final StorageItem storageItem = retrieveItemFromMaster(request);
+            // most requests find the archive already cached and only need to read it
+            PathLockMonitor folderLock = pathLock.lock(folder, PathLock.Mode.READ);
+            try {
+                if (cachedFile.exists()) {
+                    setSource(event, "cache");
+                    logger.debug("Accessed cached zip file: {}", zipItemPath);
+                    return cachedFile;
+                }
+            } finally {
+                pathLock.unlock(folderLock);
+            }
+
+            folderLock = pathLock.lock(folder, PathLock.Mode.WRITE);
+            try {
+                if (!cachedFile.exists()) {
+                    logger.debug("Caching zip file from master repository: {}", zipItemPath);
+                    setSource(event, "master");
+                    final StorageItem storageItem = retrieveItemFromMaster(new ResourceStoreRequest(zipItemPath));
                     localStorage.storeItem(repository, storageItem);
+                    // before the archive becomes visible, so that the ETags of its entries never change
+                    repository.getChecksumStore().computeAll(cachedFile);
+                    repository.getP2ArtifactIndexStore().indexInBackground(cachedFile);
+                } else {
+                    // cached concurrently by another request
+                    setSource(event, "cache");
                 }
-                final File file = ((DefaultFSLocalRepositoryStorage) localStorage).getFileFromBase(repository, request);
-                logger.debug("Accessed cached zip file: " + zipItemPath);
-                return file;
+                return cachedFile;
+            } finally {
+                pathLock.unlock(folderLock);
             }
         } catch (final UnsupportedStorageOperationException e) {
             throw new LocalStorageException(e);
-        } finally {
-            PathLock.releaseLock(folderLock);
+        }
+    }
+
+    private static void setSource(final FlightRecorderEvents.Event event, final String source) {
+        final SlowRequestLog.Record slowRequestRecord = SlowRequestLog.current();
+        if (slowRequestRecord != null) {
+            slowRequestRecord.setCacheHit(Layer.ARCHIVE, "cache".equals(source));
+        }
+        if (event != null) {
+            event.set("source", source);
         }
     }
 
+    /**
+     * Returns the file of an archive or folder in the local storage, whether it exists or not.
+     * Paths which may contain relative segments are resolved by the local storage, which rejects
+     * paths outside of its base directory.
+     * 
+     * @param zipItemPath
+     *            the path of the archive or folder in the master repository
+     * @return the file in the local storage
+     * @throws LocalStorageException
+     *             if the path is outside of the local storage
+     */
+    public File getCachedFile(final String zipItemPath) throws LocalStorageException {
+        final DefaultFSLocalRepositoryStorage fsStorage = (DefaultFSLocalRepositoryStorage) localStorage;
+        if (zipItemPath.indexOf("/.") >= 0) {
+            return fsStorage.getFileFromBase(repository, new ResourceStoreRequest(zipItemPath));
+        }
+        return new File(fsStorage.getBaseDir(repository, BASE_DIR_REQUEST), zipItemPath);
+    }
+
     /**
      * Depending on the conversion result out-dated snapshots are removed from the storage, if
      * possible.
@@ -83,56 +176,100 @@ public class UnzipCache {
      * @param conversionResult
      *            if a snapshot conversion took place, old snapshot artifacts are removed from the
      *            cache. If no snapshot has been found, all snapshot artifacts are removed from the
-     *            cache
+     *            cache. Nothing is removed for results pinned by a build session, which may be
+     *            outdated themselves, and artifacts of pinned versions are never removed.
      * 
      * @throws ItemNotFoundException
      *             thrown if the artifact cannot be found in the repository
      */
     public void cleanSnapshots(final ConversionResult conversionResult) throws ItemNotFoundException {
+        if (conversionResult.isPinned()) {
+            return;
+        }
         if (conversionResult.isPathConverted() || !conversionResult.isASnapshotAvailable()) {
-
-            logger.debug("Looking for outdated cached snapshots artifacts to clean up");
-
-            final String requestPathParent = getRequestPathParent(conversionResult.getPathUpToVersion());
-            final ResourceStoreRequest parentPathRequest = new ResourceStoreRequest(requestPathParent);
-            final PathLockMonitor folderLock = PathLock.getLock(requestPathParent);
+            final long start = RequestTimings.start();
+            final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.SNAPSHOT_CLEANUP,
+                    repository.getId(), getRequestPathParent(conversionResult.getPathUpToVersion()));
             try {
-                synchronized (folderLock) {
-                    final List<String> toBeDeleted = new LinkedList<String>();
-                    for (final StorageItem item : localStorage.listItems(repository, parentPathRequest)) {
-                        final String itemPath = item.getPath();
-                        if (!conversionResult.isASnapshotAvailable()) {
-                            toBeDeleted.add(itemPath);
-                        } else if (itemPath.startsWith(conversionResult.getPathUpToVersion())
-                                && !itemPath.contains(conversionResult.getLatestVersion())) {
-                            toBeDeleted.add(itemPath);
-                        }
-                    }
-                    //use list of Strings instead of items, cause file handles will prevent deletion in many cases
-                    for (final String itemPath : toBeDeleted) {
-                        localStorage.shredItem(repository, new ResourceStoreRequest(itemPath));
-                        logger.debug("Deleted outdated cached snapshot artifact: " + itemPath);
-                    }
-                    if (toBeDeleted.size() == 0) {
-                        logger.debug("No outdated cached snapshots artifacts found");
-                    }
+                final int deleted = cleanSnapshotFolder(conversionResult);
+                if (event != null) {
+                    event.set("deleted", Math.max(deleted, 0)).set("skipped", deleted < 0);
                 }
-            } catch (final UnsupportedStorageOperationException e) {
-                logger.warn(this.getClass().getName() + ": Unable to delete cached item", e);
-            } catch (@SuppressWarnings("deprecation") final org.sonatype.nexus.proxy.StorageException e) {
-                // do nothing, as we accept if the file cannot be deleted
-            } catch (final ItemNotFoundException e) {
-                // do nothing, as we accept that files might be deleted on OS level
-                // e,g localStorage.listItems(repository, parentPathRequest) throws this exception in case 
-                // the parent folder was removed from the file system
             } finally {
-                PathLock.releaseLock(folderLock);
+                repository.getRequestTimings().record(Phase.SNAPSHOT_CLEANUP, start);
+                if (event != null) {
+                    event.commit();
+                }
             }
         }
     }
 
+    /**
+     * @return the number of deleted items, or <code>-1</code> if the clean up was skipped
+     */
+    private int cleanSnapshotFolder(final ConversionResult conversionResult) {
+        logger.debug("Looking for outdated cached snapshots artifacts to clean up");
+
+        final String requestPathParent = getRequestPathParent(conversionResult.getPathUpToVersion());
+        final ResourceStoreRequest parentPathRequest = new ResourceStoreRequest(requestPathParent);
+        final PathLockMonitor folderLock;
+        try {
+            folderLock = pathLock.tryLock(requestPathParent, PathLock.Mode.WRITE, CLEANUP_LOCK_TIMEOUT,
+                    TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        if (folderLock == null) {
+            // the clean up is repeated with the next request, so don't keep this one waiting
+            logger.debug("Skipped clean up of outdated cached snapshots artifacts in busy folder "
+                    + requestPathParent);
+            return -1;
+        }
+        int deleted = 0;
+        try {
+            final List<String> toBeDeleted = new LinkedList<String>();
+            final SessionPins sessionPins = repository.getConversionResultCache().getSessionPins();
+            for (final StorageItem item : localStorage.listItems(repository, parentPathRequest)) {
+                final String itemPath = item.getPath();
+                if (sessionPins.isPinned(itemPath)) {
+                    // still used by a build
+                    continue;
+                } else if (!conversionResult.isASnapshotAvailable()) {
+                    toBeDeleted.add(itemPath);
+                } else if (itemPath.startsWith(conversionResult.getPathUpToVersion())
+                        && !itemPath.contains(conversionResult.getLatestVersion())) {
+                    toBeDeleted.add(itemPath);
+                }
+            }
+            //use list of Strings instead of items, cause file handles will prevent deletion in many cases
+            for (final String itemPath : toBeDeleted) {
+                localStorage.shredItem(repository, new ResourceStoreRequest(itemPath));
+                deleted++;
+                logger.debug("Deleted outdated cached snapshot artifact: " + itemPath);
+            }
+            if (toBeDeleted.size() == 0) {
+                logger.debug("No outdated cached snapshots artifacts found");
+            }
+        } catch (final UnsupportedStorageOperationException e) {
+            logger.warn(this.getClass().getName() + ": Unable to delete cached item", e);
+        } catch (@SuppressWarnings("deprecation") final org.sonatype.nexus.proxy.StorageException e) {
+            // do nothing, as we accept if the file cannot be deleted
+        } catch (final ItemNotFoundException e) {
+            // do nothing, as we accept that files might be deleted on OS level
+            // e,g localStorage.listItems(repository, parentPathRequest) throws this exception in case 
+            // the parent folder was removed from the file system
+        } finally {
+            pathLock.unlock(folderLock);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the path up to and including the last slash
+     */
     private static String getRequestPathParent(final String path) {
-        return ItemPathUtils.getParentPath(path) + ItemPathUtils.PATH_SEPARATOR;
+        return path.substring(0, path.lastIndexOf(ItemPathUtils.PATH_SEPARATOR) + 1);
     }
 
     private StorageItem retrieveItemFromMaster(final ResourceStoreRequest masterRepositoryRequest)
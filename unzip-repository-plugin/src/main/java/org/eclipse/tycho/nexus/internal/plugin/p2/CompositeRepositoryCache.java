@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the virtual composite p2 repositories of artifact folders, see
+ * {@link CompositeRepositoryResource}. A composite repository is only generated again after the
+ * <code>maven-metadata.xml</code> of its artifact folder changed in the master repository. The
+ * number of cached composite repositories is bounded, the least recently used ones are dropped
+ * first.
+ */
+public class CompositeRepositoryCache {
+
+    /**
+     * The default maximum number of cached composite repositories.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The generated files of the composite repository of one artifact folder.
+     */
+    static final class Composite {
+
+        private final long modified;
+        private final String compositeContent;
+        private final String compositeArtifacts;
+
+        /**
+         * @param modified
+         *            the modification time of the <code>maven-metadata.xml</code> from which the
+         *            composite repository was generated
+         */
+        Composite(final long modified, final String compositeContent, final String compositeArtifacts) {
+            this.modified = modified;
+            this.compositeContent = compositeContent;
+            this.compositeArtifacts = compositeArtifacts;
+        }
+
+        long getModified() {
+            return modified;
+        }
+
+        String getCompositeContent() {
+            return compositeContent;
+        }
+
+        String getCompositeArtifacts() {
+            return compositeArtifacts;
+        }
+    }
+
+    private final Map<String, Composite> composites;
+    // counts the invalidations, so that composites generated from outdated metadata are not cached
+    private long invalidations = 0;
+
+    /**
+     * @param capacity
+     *            the maximum number of cached composite repositories, <code>0</code> disables the
+     *            cache
+     */
+    public CompositeRepositoryCache(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        this.composites = new LinkedHashMap<String, Composite>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Composite> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    synchronized Composite get(final String artifactFolder) {
+        return composites.get(artifactFolder);
+    }
+
+    /**
+     * @return the current number of invalidations, to be passed to {@link #put} after the
+     *         composite repository was generated
+     */
+    synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Caches a composite repository, unless a <code>maven-metadata.xml</code> changed since its
+     * generation started.
+     */
+    synchronized void put(final String artifactFolder, final Composite composite, final long invalidationsBefore) {
+        if (invalidations == invalidationsBefore) {
+            composites.put(artifactFolder, composite);
+        }
+    }
+
+    /**
+     * Removes the composite repository which is generated from the given
+     * <code>maven-metadata.xml</code>.
+     *
+     * @param metadataPath
+     *            the path of the changed <code>maven-metadata.xml</code>
+     */
+    public synchronized void invalidate(final String metadataPath) {
+        invalidations++;
+        composites.remove(metadataPath.substring(0, metadataPath.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * Removes all cached composite repositories.
+     */
+    public synchronized void clear() {
+        invalidations++;
+        composites.clear();
+    }
+
+    synchronized int size() {
+        return composites.size();
+    }
+}
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * A virtual composite p2 repository of all released versions of an artifact, e.g.
+ * <code>/org/example/site/ALL-unzip/</code> for the archives
+ * <code>/org/example/site/&lt;version&gt;/site-&lt;version&gt;.zip</code>. It consists of a
+ * generated <code>compositeContent.xml</code>, <code>compositeArtifacts.xml</code> and
+ * <code>p2.index</code>, whose children are the <code>-unzip</code> locations of the archives of
+ * the versions listed in the <code>maven-metadata.xml</code> of the artifact folder. The versions
+ * are read in the same way as virtual versions are resolved, see
+ * {@link org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResultCache#getVersioning}.
+ * Children which cannot be loaded, e.g. versions without archive, are skipped by p2 clients.
+ * <p>
+ * The composite repositories are kept in the {@link CompositeRepositoryCache} of the repository
+ * until the <code>maven-metadata.xml</code> changes.
+ */
+public final class CompositeRepositoryResource {
+
+    /**
+     * The name of the virtual folder in an artifact folder containing the composite repository.
+     */
+    public static final String COMPOSITE_FOLDER = "ALL" + Util.UNZIP_TYPE_EXTENSION;
+
+    static final String COMPOSITE_CONTENT_XML = "compositeContent.xml";
+    static final String COMPOSITE_ARTIFACTS_XML = "compositeArtifacts.xml";
+    static final String P2_INDEX = "p2.index";
+
+    static final String P2_INDEX_CONTENT = "version=1\n"
+            + "metadata.repository.factory.order=compositeContent.xml,!\n"
+            + "artifact.repository.factory.order=compositeArtifacts.xml,!\n";
+
+    private static final String XML_MIME_TYPE = "application/xml";
+    private static final String INDEX_MIME_TYPE = "text/plain";
+    private static final String ARCHIVE_EXTENSION = ".zip";
+    private static final String SNAPSHOT_SUFFIX = "-SNAPSHOT";
+    private static final String FOLDER_SEGMENT = "/" + COMPOSITE_FOLDER + "/";
+    // the format of the lastUpdated element of maven-metadata.xml files
+    private static final String LAST_UPDATED_FORMAT = "yyyyMMddHHmmss";
+
+    private CompositeRepositoryResource() {
+    }
+
+    /**
+     * @param requestPath
+     *            a request path of the unzip repository
+     * @return <code>true</code> if the path addresses a file of a composite repository
+     */
+    public static boolean isCompositePath(final String requestPath) {
+        return getArtifactFolder(requestPath) != null;
+    }
+
+    /**
+     * @return the artifact folder with leading and trailing slash, or <code>null</code> if the path
+     *         does not address a file of a composite repository
+     */
+    static String getArtifactFolder(final String requestPath) {
+        final int folderStart = requestPath.lastIndexOf(FOLDER_SEGMENT);
+        if (folderStart < 0) {
+            return null;
+        }
+        final String name = requestPath.substring(folderStart + FOLDER_SEGMENT.length());
+        if (!COMPOSITE_CONTENT_XML.equals(name) && !COMPOSITE_ARTIFACTS_XML.equals(name) && !P2_INDEX.equals(name)) {
+            return null;
+        }
+        final String artifactFolder = requestPath.startsWith("/") ? requestPath.substring(0, folderStart + 1) : "/"
+                + requestPath.substring(0, folderStart + 1);
+        // at least groupId and artifactId
+        if (artifactFolder.indexOf('/', 1) == artifactFolder.length() - 1) {
+            return null;
+        }
+        return artifactFolder;
+    }
+
+    /**
+     * Creates the requested file of the composite repository of an artifact folder.
+     *
+     * @param repository
+     *            the unzip repository
+     * @param request
+     *            the request for a file of the composite repository
+     * @return the item containing the requested file
+     * @throws ItemNotFoundException
+     *             if the artifact folder has no <code>maven-metadata.xml</code> or if the master
+     *             repository is not available yet
+     * @throws LocalStorageException
+     *             if the <code>maven-metadata.xml</code> cannot be read
+     */
+    public static StorageFileItem createItem(final DefaultUnzipRepository repository,
+            final ResourceStoreRequest request) throws ItemNotFoundException, LocalStorageException {
+        final String requestPath = request.getRequestPath();
+        final String artifactFolder = getArtifactFolder(requestPath);
+        final CompositeRepositoryCache cache = repository.getCompositeRepositoryCache();
+        CompositeRepositoryCache.Composite composite = cache.get(artifactFolder);
+        if (composite == null) {
+            final long invalidations = cache.getInvalidations();
+            composite = generate(repository, request, artifactFolder);
+            cache.put(artifactFolder, composite, invalidations);
+        }
+
+        final DefaultStorageFileItem item;
+        if (requestPath.endsWith(COMPOSITE_CONTENT_XML)) {
+            item = new DefaultStorageFileItem(repository, request, true, false, new StringContentLocator(
+                    composite.getCompositeContent(), XML_MIME_TYPE));
+        } else if (requestPath.endsWith(COMPOSITE_ARTIFACTS_XML)) {
+            item = new DefaultStorageFileItem(repository, request, true, false, new StringContentLocator(
+                    composite.getCompositeArtifacts(), XML_MIME_TYPE));
+        } else {
+            item = new DefaultStorageFileItem(repository, request, true, false, new StringContentLocator(
+                    P2_INDEX_CONTENT, INDEX_MIME_TYPE));
+        }
+        item.setModified(composite.getModified());
+        return item;
+    }
+
+    private static CompositeRepositoryCache.Composite generate(final DefaultUnzipRepository repository,
+            final ResourceStoreRequest request, final String artifactFolder) throws ItemNotFoundException,
+            LocalStorageException {
+        final Repository masterRepository = repository.getMasterRepository();
+        if (masterRepository == null) {
+            throw new ItemNotFoundException(ItemNotFoundException.reasonFor(request,
+                    "Master repository of %s is not available", repository.getId()));
+        }
+        final Versioning versioning = repository.getConversionResultCache().getVersioning(masterRepository,
+                artifactFolder);
+        final long modified = getLastUpdated(versioning);
+
+        final String artifactId = artifactFolder.substring(
+                artifactFolder.lastIndexOf('/', artifactFolder.length() - 2) + 1, artifactFolder.length() - 1);
+        final List<String> children = new ArrayList<String>();
+        if (versioning != null) {
+            for (final String version : versioning.getVersions()) {
+                if (!version.trim().endsWith(SNAPSHOT_SUFFIX)) {
+                    // relative to the composite repository, so that it works behind any base URL
+                    children.add("../" + version.trim() + "/" + artifactId + "-" + version.trim() + ARCHIVE_EXTENSION
+                            + Util.UNZIP_TYPE_EXTENSION);
+                }
+            }
+        }
+        final String name = artifactFolder.substring(1, artifactFolder.length() - 1) + " (all versions)";
+        return new CompositeRepositoryCache.Composite(modified, toXml("compositeMetadataRepository",
+                "org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository", name, modified,
+                children), toXml("compositeArtifactRepository",
+                "org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository", name, modified,
+                children));
+    }
+
+    /**
+     * @return the time of the last update of the versions, or the current time if it is unknown
+     */
+    private static long getLastUpdated(final Versioning versioning) {
+        if (versioning != null && versioning.getLastUpdated() != null) {
+            final SimpleDateFormat format = new SimpleDateFormat(LAST_UPDATED_FORMAT);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            try {
+                return format.parse(versioning.getLastUpdated().trim()).getTime();
+            } catch (final ParseException e) {
+                // fall through
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    private static String toXml(final String processingInstruction, final String type, final String name,
+            final long timestamp, final List<String> children) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        xml.append("<?").append(processingInstruction).append(" version='1.0.0'?>\n");
+        xml.append("<repository name='").append(escape(name)).append("' type='").append(type)
+                .append("' version='1.0.0'>\n");
+        xml.append("  <properties size='2'>\n");
+        xml.append("    <property name='p2.timestamp' value='").append(timestamp).append("'/>\n");
+        // versions without archive must not fail the whole composite repository
+        xml.append("    <property name='p2.atomic.composite.loading' value='false'/>\n");
+        xml.append("  </properties>\n");
+        xml.append("  <children size='").append(children.size()).append("'>\n");
+        for (final String child : children) {
+            xml.append("    <child location='").append(escape(child)).append("'/>\n");
+        }
+        xml.append("  </children>\n");
+        xml.append("</repository>\n");
+        return xml.toString();
+    }
+
+    private static String escape(final String value) {
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                escaped.append("&amp;");
+                break;
+            case '<':
+                escaped.append("&lt;");
+                break;
+            case '>':
+                escaped.append("&gt;");
+                break;
+            case '\'':
+                escaped.append("&apos;");
+                break;
+            case '"':
+                escaped.append("&quot;");
+                break;
+            default:
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
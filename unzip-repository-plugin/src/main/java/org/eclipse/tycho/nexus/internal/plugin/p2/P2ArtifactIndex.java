@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.slf4j.Logger;
+
+/**
+ * The index of the p2 artifacts of one cached archive, from the artifact key (classifier, id and
+ * version) to the entry of the archive which contains the artifact. The index is built by reading
+ * the <code>artifacts.xml</code> or <code>artifacts.jar</code> in the root of the archive and
+ * applying its mapping rules, and it is stored in a file next to the cached archive, so that each
+ * archive is only read once. Archives which are no p2 repositories have an empty index. The
+ * {@link P2CompressedMetadata} generated for the archive belong to its index.
+ */
+final class P2ArtifactIndex {
+
+    /**
+     * An artifact of the p2 repository in the archive.
+     */
+    static final class Entry {
+        private final String classifier;
+        private final String id;
+        private final String version;
+        private final String entryName;
+
+        Entry(final String classifier, final String id, final String version, final String entryName) {
+            this.classifier = classifier;
+            this.id = id;
+            this.version = version;
+            this.entryName = entryName;
+        }
+
+        String getClassifier() {
+            return classifier;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the name of the archive entry containing the artifact
+         */
+        String getEntryName() {
+            return entryName;
+        }
+    }
+
+    static final String FILE_SUFFIX = ".artifactkeys";
+
+    static final String ARTIFACTS_XML = "artifacts.xml";
+    static final String ARTIFACTS_JAR = "artifacts.jar";
+
+    private static final String HEADER = "# unzip p2 artifact keys, format 1: classifier id version entry";
+    private static final String STAMP_PREFIX = "archive";
+    private static final char SEPARATOR = '\t';
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String REPO_URL = "${repoUrl}/";
+    // the conditions of mapping rule filters like (& (classifier=osgi.bundle) (format=packed))
+    private static final Pattern FILTER_CONDITION = Pattern.compile("\\(\\s*([\\w.]+)\\s*=\\s*([^()]*?)\\s*\\)");
+    // used by p2 for repositories without mapping rules
+    private static final String[][] DEFAULT_RULES = {
+            { "(& (classifier=osgi.bundle))", REPO_URL + "plugins/${id}_${version}.jar" },
+            { "(& (classifier=binary))", REPO_URL + "binary/${id}_${version}" },
+            { "(& (classifier=org.eclipse.update.feature))", REPO_URL + "features/${id}_${version}.jar" } };
+
+    private final File archive;
+    private final File file;
+    private final long archiveLength;
+    private final long archiveModified;
+    private final Logger logger;
+    private final P2CompressedMetadata compressedMetadata;
+    private List<Entry> entries;
+
+    P2ArtifactIndex(final File archive, final Logger logger) {
+        this.archive = archive;
+        this.file = new File(archive.getPath() + FILE_SUFFIX);
+        this.archiveLength = archive.length();
+        this.archiveModified = archive.lastModified();
+        this.logger = logger;
+        this.compressedMetadata = new P2CompressedMetadata(archive, archiveLength, archiveModified, logger);
+    }
+
+    /**
+     * @return <code>false</code> if the archive was replaced or deleted since this index was
+     *         created
+     */
+    boolean isCurrent() {
+        return archive.length() == archiveLength && archive.lastModified() == archiveModified;
+    }
+
+    /**
+     * @return the compressed metadata generated for the archive
+     */
+    P2CompressedMetadata getCompressedMetadata() {
+        return compressedMetadata;
+    }
+
+    /**
+     * Returns the artifacts of the archive, which are read from the archive if the index was not
+     * stored yet.
+     *
+     * @return the artifacts in the order of the artifact repository, empty if the archive is no p2
+     *         repository
+     */
+    synchronized List<Entry> getEntries() {
+        if (entries == null) {
+            entries = load();
+            if (entries == null) {
+                final List<Entry> built = build();
+                if (built == null) {
+                    // built again with the next request
+                    return Collections.emptyList();
+                }
+                entries = built;
+                store();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param version
+     *            the version of the artifact, or <code>null</code> for all versions
+     * @return the artifacts with the given key
+     */
+    List<Entry> find(final String classifier, final String id, final String version) {
+        final List<Entry> result = new ArrayList<Entry>();
+        for (final Entry entry : getEntries()) {
+            if (entry.classifier.equals(classifier) && entry.id.equals(id)
+                    && (version == null || entry.version.equals(version))) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the stored index, or <code>null</code> if there is none for the current archive
+     */
+    private List<Entry> load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            try {
+                if (!HEADER.equals(reader.readLine()) || !getStamp().equals(reader.readLine())) {
+                    // written by another version or for a replaced archive
+                    return null;
+                }
+                final List<Entry> result = new ArrayList<Entry>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split(String.valueOf(SEPARATOR), 4);
+                    if (fields.length == 4) {
+                        result.add(new Entry(fields[0], fields[1], fields[2], fields[3]));
+                    }
+                }
+                return result;
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            logger.warn("Unable to read the p2 artifact index of " + archive, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the artifacts read from the archive, or <code>null</code> if the archive cannot be
+     *         read
+     */
+    private List<Entry> build() {
+        try {
+            final ZipFile zipFile = new ZipFile(archive);
+            try {
+                return read(zipFile);
+            } finally {
+                zipFile.close();
+            }
+        } catch (final IOException e) {
+            // e.g. deleted by the clean up of outdated snapshots in the meantime
+            logger.debug("Unable to read the p2 artifacts of " + archive, e);
+            return null;
+        } catch (final XmlPullParserException e) {
+            logger.warn("Unable to parse the p2 artifacts of " + archive + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    static List<Entry> read(final ZipFile zipFile) throws IOException, XmlPullParserException {
+        final ZipEntry xmlEntry = zipFile.getEntry(ARTIFACTS_XML);
+        if (xmlEntry != null) {
+            final InputStream stream = zipFile.getInputStream(xmlEntry);
+            try {
+                return parse(stream, zipFile);
+            } finally {
+                stream.close();
+            }
+        }
+        final ZipEntry jarEntry = zipFile.getEntry(ARTIFACTS_JAR);
+        if (jarEntry != null) {
+            final ZipInputStream jar = new ZipInputStream(zipFile.getInputStream(jarEntry));
+            try {
+                ZipEntry entry;
+                while ((entry = jar.getNextEntry()) != null) {
+                    if (ARTIFACTS_XML.equals(entry.getName())) {
+                        return parse(jar, zipFile);
+                    }
+                }
+            } finally {
+                jar.close();
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Parses the artifact repository and maps the artifacts to the entries of the archive. Artifacts
+     * which are not contained in the archive are left out, e.g. those mapped to other locations.
+     */
+    private static List<Entry> parse(final InputStream artifactsXml, final ZipFile zipFile) throws IOException,
+            XmlPullParserException {
+        final XmlPullParser parser = new MXParser();
+        parser.setInput(artifactsXml, null);
+        final List<String[]> rules = new ArrayList<String[]>();
+        final List<Entry> result = new ArrayList<Entry>();
+        Map<String, String> artifact = null;
+        int artifactDepth = 0;
+        boolean mappings = false;
+        for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+            if (event == XmlPullParser.START_TAG) {
+                final String name = parser.getName();
+                if ("mappings".equals(name)) {
+                    mappings = true;
+                } else if ("rule".equals(name) && artifact == null) {
+                    rules.add(new String[] { parser.getAttributeValue(null, "filter"),
+                            parser.getAttributeValue(null, "output") });
+                } else if ("artifact".equals(name)) {
+                    artifact = new HashMap<String, String>();
+                    artifact.put("classifier", parser.getAttributeValue(null, "classifier"));
+                    artifact.put("id", parser.getAttributeValue(null, "id"));
+                    artifact.put("version", parser.getAttributeValue(null, "version"));
+                    artifactDepth = parser.getDepth();
+                } else if ("property".equals(name) && artifact != null && parser.getDepth() == artifactDepth + 2) {
+                    // only the properties of the artifact, not the repository properties
+                    artifact.put(parser.getAttributeValue(null, "name"), parser.getAttributeValue(null, "value"));
+                }
+            } else if (event == XmlPullParser.END_TAG && "artifact".equals(parser.getName()) && artifact != null) {
+                final String entryName = map(mappings ? rules : Arrays.asList(DEFAULT_RULES), artifact);
+                if (entryName != null && zipFile.getEntry(entryName) != null) {
+                    result.add(new Entry(artifact.get("classifier"), artifact.get("id"), artifact.get("version"),
+                            entryName));
+                }
+                artifact = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the entry name of the artifact according to the first matching rule, or
+     *         <code>null</code> if no rule maps the artifact into the repository
+     */
+    private static String map(final List<String[]> rules, final Map<String, String> artifact) {
+        if (artifact.get("classifier") == null || artifact.get("id") == null || artifact.get("version") == null) {
+            return null;
+        }
+        for (final String[] rule : rules) {
+            if (rule[0] == null || rule[1] == null || !matches(rule[0], artifact)) {
+                continue;
+            }
+            if (!rule[1].startsWith(REPO_URL)) {
+                return null;
+            }
+            return rule[1].substring(REPO_URL.length()).replace("${classifier}", artifact.get("classifier"))
+                    .replace("${id}", artifact.get("id")).replace("${version}", artifact.get("version"));
+        }
+        return null;
+    }
+
+    private static boolean matches(final String filter, final Map<String, String> artifact) {
+        final Matcher condition = FILTER_CONDITION.matcher(filter);
+        while (condition.find()) {
+            if (!condition.group(2).equals(artifact.get(condition.group(1)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the index in a temporary file which replaces the index file once it is completely
+     * written, so that an interrupted write is never loaded as a shorter index.
+     */
+    private void store() {
+        final File temporaryFile = new File(file.getPath() + TEMP_SUFFIX);
+        try {
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8);
+            try {
+                writer.write(HEADER);
+                writer.write('\n');
+                writer.write(getStamp());
+                writer.write('\n');
+                for (final Entry entry : entries) {
+                    writer.write(entry.classifier);
+                    writer.write(SEPARATOR);
+                    writer.write(entry.id);
+                    writer.write(SEPARATOR);
+                    writer.write(entry.version);
+                    writer.write(SEPARATOR);
+                    writer.write(entry.entryName);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            // the index is built again after a restart
+            logger.warn("Unable to store the p2 artifact index of " + archive, e);
+            temporaryFile.delete();
+        }
+    }
+
+    private String getStamp() {
+        return STAMP_PREFIX + SEPARATOR + archiveLength + SEPARATOR + archiveModified;
+    }
+}
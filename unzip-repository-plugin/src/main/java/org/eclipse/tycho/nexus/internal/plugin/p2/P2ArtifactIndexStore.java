@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+
+/**
+ * The p2 artifact indexes of the cached archives of an unzip repository. The index of an archive
+ * is built in the background as soon as the archive is cached, or on demand if it is needed
+ * before. The compressed p2 metadata of an archive is only generated in the background, after its
+ * index was built. The indexes of the most recently used archives are kept in memory, the others
+ * are read again from the file next to the cached archive when they are needed.
+ */
+public class P2ArtifactIndexStore {
+
+    /**
+     * The default maximum number of archives whose indexes are kept in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<String, P2ArtifactIndex> archives;
+    private final Executor executor;
+    private final Logger logger;
+
+    /**
+     * @param capacity
+     *            the maximum number of archives whose indexes are kept in memory
+     * @param executor
+     *            the executor which builds the indexes of newly cached archives
+     * @param logger
+     *            the logger for problems with the archives and the files of the indexes
+     */
+    public P2ArtifactIndexStore(final int capacity, final Executor executor, final Logger logger) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.executor = executor;
+        this.logger = logger;
+        this.archives = new LinkedHashMap<String, P2ArtifactIndex>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, P2ArtifactIndex> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Builds the index of a newly cached archive and generates its compressed p2 metadata in the
+     * background. The archive is skipped if the executor is busy, its index is then built when it
+     * is needed for the first time, and its metadata when it is requested for the first time.
+     *
+     * @param archive
+     *            the cached archive
+     */
+    public void indexInBackground(final File archive) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final P2ArtifactIndex index = get(archive);
+                    index.getEntries();
+                    index.getCompressedMetadata().generate();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            logger.debug("Skipped indexing the p2 artifacts of {} in the background", archive);
+        }
+    }
+
+    /**
+     * Returns the file of an entry generated for the p2 repository in an archive, see
+     * {@link P2CompressedMetadata}. If the entry was not generated yet, the generation is started
+     * in the background.
+     *
+     * @param archive
+     *            the cached archive
+     * @param pathInZip
+     *            the path of the requested entry relative to the archive, which is not contained in
+     *            the archive
+     * @return the file of the generated entry, or <code>null</code> if there is none (yet)
+     */
+    public File getGeneratedMetadata(final File archive, final String pathInZip) {
+        if (!P2CompressedMetadata.isGeneratedPath(pathInZip)) {
+            return null;
+        }
+        final File generated = get(archive).getCompressedMetadata().getFile(pathInZip);
+        if (generated == null) {
+            indexInBackground(archive);
+        }
+        return generated;
+    }
+
+    /**
+     * @param archive
+     *            the cached archive
+     * @return the index of the p2 artifacts of the archive
+     */
+    synchronized P2ArtifactIndex get(final File archive) {
+        P2ArtifactIndex index = archives.get(archive.getPath());
+        if (index == null || !index.isCurrent()) {
+            index = new P2ArtifactIndex(archive, logger);
+            archives.put(archive.getPath(), index);
+        }
+        return index;
+    }
+}
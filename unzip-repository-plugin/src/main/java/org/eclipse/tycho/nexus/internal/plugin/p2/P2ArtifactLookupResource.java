@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.RequestParameters;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.JsonWriter;
+import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+import org.sonatype.nexus.proxy.IllegalRequestException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+
+/**
+ * Finds the archives and entries which contain a p2 artifact, without downloading and parsing the
+ * metadata of the p2 repositories. The artifact is passed as query parameters of
+ * {@link #LOOKUP_PATH}:
+ * <ul>
+ * <li><code>artifact=groupId:artifactId</code>: the Maven artifact whose cached archives are
+ * searched</li>
+ * <li><code>id=...</code>: the id of the p2 artifact</li>
+ * <li><code>version=...</code>: the version of the p2 artifact, optional</li>
+ * <li><code>classifier=...</code>: the classifier of the p2 artifact, <code>osgi.bundle</code> by
+ * default</li>
+ * </ul>
+ * Only the archives of the Maven artifact which are already cached are searched, using the
+ * {@link P2ArtifactIndexStore} of the repository. The matches are returned as JSON document
+ * <code>{"artifact":...,"classifier":...,"id":...,"version":...,"matches":[...]}</code> with the
+ * members <code>archive</code>, <code>entry</code>, <code>version</code> and <code>path</code>
+ * per match, where <code>path</code> is the request path of the entry in the unzip repository.
+ */
+public final class P2ArtifactLookupResource {
+
+    /**
+     * The path of the lookup document within the unzip repository.
+     */
+    public static final String LOOKUP_PATH = "/.meta/unzip/p2-artifacts.json";
+
+    static final String MIME_TYPE = "application/json";
+    static final String ARTIFACT_PARAMETER = "artifact";
+    static final String ID_PARAMETER = "id";
+    static final String VERSION_PARAMETER = "version";
+    static final String CLASSIFIER_PARAMETER = "classifier";
+    static final String DEFAULT_CLASSIFIER = "osgi.bundle";
+
+    private static final Pattern GROUP_ID = Pattern.compile("[\\w-]+(\\.[\\w-]+)*");
+    private static final Pattern ARTIFACT_ID = Pattern.compile("[\\w-][\\w.-]*");
+
+    private P2ArtifactLookupResource() {
+    }
+
+    /**
+     * @param requestPath
+     *            a request path of the unzip repository
+     * @return <code>true</code> if the path addresses the lookup document
+     */
+    public static boolean isLookupPath(final String requestPath) {
+        // also without leading slash, compared in place to keep the check free of allocations
+        return LOOKUP_PATH.equals(requestPath)
+                || (requestPath.length() == LOOKUP_PATH.length() - 1 && LOOKUP_PATH.startsWith(requestPath, 1));
+    }
+
+    /**
+     * Searches the cached archives of the requested Maven artifact and creates the lookup
+     * document.
+     *
+     * @param repository
+     *            the unzip repository
+     * @param request
+     *            the request for the lookup document
+     * @return the item containing the lookup document
+     * @throws IllegalRequestException
+     *             if the request does not specify a Maven artifact and the id of a p2 artifact
+     * @throws LocalStorageException
+     *             if the cached archives cannot be accessed
+     */
+    public static StorageFileItem createItem(final DefaultUnzipRepository repository,
+            final ResourceStoreRequest request) throws IllegalRequestException, LocalStorageException {
+        final RequestParameters parameters = RequestParameters.of(request);
+        final String artifact = parameters.get(ARTIFACT_PARAMETER);
+        final String id = parameters.get(ID_PARAMETER);
+        final String version = parameters.get(VERSION_PARAMETER);
+        final String classifier = parameters.get(CLASSIFIER_PARAMETER) == null ? DEFAULT_CLASSIFIER : parameters
+                .get(CLASSIFIER_PARAMETER);
+        if (artifact == null || id == null) {
+            throw new IllegalRequestException(request, "Use the parameters " + ARTIFACT_PARAMETER + " and "
+                    + ID_PARAMETER + ", and optionally " + VERSION_PARAMETER + " and " + CLASSIFIER_PARAMETER);
+        }
+        final String[] segments = artifact.split(":", -1);
+        if (segments.length != 2 || !GROUP_ID.matcher(segments[0]).matches()
+                || !ARTIFACT_ID.matcher(segments[1]).matches()) {
+            throw new IllegalRequestException(request, "Expected groupId:artifactId, but was " + artifact);
+        }
+        final String artifactPath = "/" + segments[0].replace('.', '/') + "/" + segments[1];
+
+        final JsonWriter json = new JsonWriter().beginObject();
+        json.name("artifact").value(artifact);
+        json.name("classifier").value(classifier);
+        json.name("id").value(id);
+        json.name("version").value(version);
+        json.name("matches").beginArray();
+        final File artifactFolder = repository.getCache().getCachedFile(artifactPath);
+        for (final File versionFolder : listSorted(artifactFolder)) {
+            for (final File archive : listSorted(versionFolder)) {
+                if (!archive.isFile() || !Util.isZipPath(archive.getName())) {
+                    continue;
+                }
+                final String unzipPath = artifactPath + "/" + versionFolder.getName() + "/" + archive.getName()
+                        + Util.UNZIP_TYPE_EXTENSION;
+                for (final P2ArtifactIndex.Entry entry : repository.getP2ArtifactIndexStore().get(archive)
+                        .find(classifier, id, version)) {
+                    json.beginObject();
+                    json.name("archive").value(unzipPath);
+                    json.name("entry").value(entry.getEntryName());
+                    json.name("version").value(entry.getVersion());
+                    json.name("path").value(unzipPath + "/" + entry.getEntryName());
+                    json.endObject();
+                }
+            }
+        }
+        json.endArray().endObject();
+
+        final DefaultStorageFileItem item = new DefaultStorageFileItem(repository, request, true, false,
+                new StringContentLocator(json.toString(), MIME_TYPE));
+        item.setModified(System.currentTimeMillis());
+        return item;
+    }
+
+    private static File[] listSorted(final File folder) {
+        final File[] files = folder.listFiles();
+        if (files == null) {
+            // not cached or deleted concurrently
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+}
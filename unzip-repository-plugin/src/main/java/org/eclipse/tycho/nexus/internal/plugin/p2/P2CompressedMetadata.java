@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.slf4j.Logger;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * The XZ-compressed metadata and the <code>p2.index</code> which are generated for the p2
+ * repository in the root of one cached archive, if the archive does not contain them. Modern p2
+ * clients prefer <code>content.xml.xz</code> and <code>artifacts.xml.xz</code>, which are smaller
+ * and faster to parse than the jar-compressed metadata. They are compressed from the
+ * <code>content.jar</code>/<code>content.xml</code> and <code>artifacts.jar</code>/
+ * <code>artifacts.xml</code> of the archive and stored in files next to the cached archive. A
+ * <code>p2.index</code> pointing to the XZ-compressed metadata is only generated if both of them
+ * are available, so that the generated files are either served all together or not at all.
+ */
+final class P2CompressedMetadata {
+
+    static final String FILE_SUFFIX = ".p2metadata";
+
+    static final String CONTENT_XML_XZ = "content.xml.xz";
+    static final String ARTIFACTS_XML_XZ = "artifacts.xml.xz";
+    static final String P2_INDEX = "p2.index";
+
+    static final String P2_INDEX_CONTENT = "version=1\n"
+            + "metadata.repository.factory.order=content.xml.xz,content.xml,!\n"
+            + "artifact.repository.factory.order=artifacts.xml.xz,artifacts.xml,!\n";
+
+    private static final String HEADER = "# unzip generated p2 metadata, format 1: entry";
+    private static final String STAMP_PREFIX = "archive";
+    private static final char SEPARATOR = '\t';
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File archive;
+    private final File file;
+    private final long archiveLength;
+    private final long archiveModified;
+    private final Logger logger;
+    private Set<String> generated;
+    private boolean generationAttempted = false;
+
+    P2CompressedMetadata(final File archive, final long archiveLength, final long archiveModified,
+            final Logger logger) {
+        this.archive = archive;
+        this.file = new File(archive.getPath() + FILE_SUFFIX);
+        this.archiveLength = archiveLength;
+        this.archiveModified = archiveModified;
+        this.logger = logger;
+    }
+
+    /**
+     * @param pathInZip
+     *            the path of an entry relative to the archive
+     * @return <code>true</code> if the entry may be generated
+     */
+    static boolean isGeneratedPath(final String pathInZip) {
+        return CONTENT_XML_XZ.equals(pathInZip) || ARTIFACTS_XML_XZ.equals(pathInZip) || P2_INDEX.equals(pathInZip);
+    }
+
+    /**
+     * @param pathInZip
+     *            the path of the entry relative to the archive
+     * @return the file of the generated entry, or <code>null</code> if the entry was not generated
+     *         (yet)
+     */
+    synchronized File getFile(final String pathInZip) {
+        if (generated == null) {
+            generated = load();
+        }
+        if (generated == null || !generated.contains(pathInZip)) {
+            return null;
+        }
+        return getGeneratedFile(pathInZip);
+    }
+
+    /**
+     * Generates the missing metadata of the archive, unless this was already done or attempted.
+     */
+    synchronized void generate() {
+        if (generated == null) {
+            generated = load();
+        }
+        if (generated != null || generationAttempted) {
+            return;
+        }
+        generationAttempted = true;
+        try {
+            final ZipFile zipFile = new ZipFile(archive);
+            try {
+                generated = generate(zipFile);
+            } finally {
+                zipFile.close();
+            }
+            store();
+        } catch (final IOException e) {
+            // e.g. deleted by the clean up of outdated snapshots in the meantime
+            logger.debug("Unable to generate the compressed p2 metadata of " + archive, e);
+            file.delete();
+            for (final String name : new String[] { CONTENT_XML_XZ, ARTIFACTS_XML_XZ, P2_INDEX }) {
+                getGeneratedFile(name).delete();
+                getTempFile(name).delete();
+            }
+            generated = null;
+        }
+    }
+
+    private Set<String> generate(final ZipFile zipFile) throws IOException {
+        final Set<String> result = new LinkedHashSet<String>();
+        final boolean content = compress(zipFile, "content", result);
+        final boolean artifacts = compress(zipFile, "artifacts", result);
+        if (content && artifacts && zipFile.getEntry(P2_INDEX) == null) {
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(getTempFile(P2_INDEX)), UTF_8);
+            try {
+                writer.write(P2_INDEX_CONTENT);
+            } finally {
+                writer.close();
+            }
+            rename(P2_INDEX);
+            result.add(P2_INDEX);
+        }
+        return result;
+    }
+
+    /**
+     * Compresses the <code>&lt;name&gt;.xml</code> of the repository, if the archive does not
+     * contain <code>&lt;name&gt;.xml.xz</code> yet.
+     *
+     * @return <code>true</code> if <code>&lt;name&gt;.xml.xz</code> is available
+     */
+    private boolean compress(final ZipFile zipFile, final String name, final Set<String> result)
+            throws IOException {
+        final String xzName = name + ".xml.xz";
+        if (zipFile.getEntry(xzName) != null) {
+            return true;
+        }
+        final InputStream xml = openXml(zipFile, name);
+        if (xml == null) {
+            return false;
+        }
+        try {
+            final OutputStream xz = new XZOutputStream(new FileOutputStream(getTempFile(xzName)), new LZMA2Options());
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = xml.read(buffer)) >= 0) {
+                    xz.write(buffer, 0, read);
+                }
+            } finally {
+                xz.close();
+            }
+        } finally {
+            xml.close();
+        }
+        rename(xzName);
+        result.add(xzName);
+        return true;
+    }
+
+    /**
+     * @return the stream of <code>&lt;name&gt;.xml</code> in the root of the archive or in
+     *         <code>&lt;name&gt;.jar</code>, or <code>null</code> if there is none
+     */
+    private static InputStream openXml(final ZipFile zipFile, final String name) throws IOException {
+        final ZipEntry xmlEntry = zipFile.getEntry(name + ".xml");
+        if (xmlEntry != null) {
+            return zipFile.getInputStream(xmlEntry);
+        }
+        final ZipEntry jarEntry = zipFile.getEntry(name + ".jar");
+        if (jarEntry == null) {
+            return null;
+        }
+        final ZipInputStream jar = new ZipInputStream(zipFile.getInputStream(jarEntry));
+        ZipEntry entry;
+        while ((entry = jar.getNextEntry()) != null) {
+            if ((name + ".xml").equals(entry.getName())) {
+                return jar;
+            }
+        }
+        jar.close();
+        return null;
+    }
+
+    private void rename(final String name) throws IOException {
+        final File target = getGeneratedFile(name);
+        target.delete();
+        if (!getTempFile(name).renameTo(target)) {
+            throw new IOException("Unable to rename " + getTempFile(name) + " to " + target);
+        }
+    }
+
+    /**
+     * @return the names of the generated entries, or <code>null</code> if there are none for the
+     *         current archive
+     */
+    private Set<String> load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            try {
+                if (!HEADER.equals(reader.readLine()) || !getStamp().equals(reader.readLine())) {
+                    // written by another version or for a replaced archive
+                    return null;
+                }
+                final Set<String> result = new LinkedHashSet<String>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!isGeneratedPath(line) || !getGeneratedFile(line).isFile()) {
+                        // generated again, so that the p2.index never points to missing files
+                        return null;
+                    }
+                    result.add(line);
+                }
+                return Collections.unmodifiableSet(result);
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            logger.warn("Unable to read the generated p2 metadata of " + archive, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the names of the generated entries, after all of them were written completely.
+     */
+    private void store() throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            writer.write(HEADER);
+            writer.write('\n');
+            writer.write(getStamp());
+            writer.write('\n');
+            for (final String name : generated) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private File getGeneratedFile(final String name) {
+        return new File(archive.getPath() + "." + name);
+    }
+
+    private File getTempFile(final String name) {
+        return new File(archive.getPath() + "." + name + TEMP_SUFFIX);
+    }
+
+    private String getStamp() {
+        return STAMP_PREFIX + SEPARATOR + archiveLength + SEPARATOR + archiveModified;
+    }
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.resolve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.RequestParameters;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResult;
+import org.eclipse.tycho.nexus.internal.plugin.cache.RequestPathConverter;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.JsonWriter;
+import org.sonatype.nexus.proxy.IllegalRequestException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+
+/**
+ * Resolves many virtual versions with one request, e.g. all repository locations of a target
+ * platform. The virtual versions are passed as query parameters of {@link #RESOLVE_PATH}:
+ * <ul>
+ * <li><code>path=...</code>: a request path of the unzip repository, e.g.
+ * <code>/group/artifact/SNAPSHOT/artifact-SNAPSHOT-assembly.zip-unzip/</code></li>
+ * <li><code>artifact=groupId:artifactId[:range]</code>: the latest version (including SNAPSHOTs) of
+ * an artifact within the optional Maven version range</li>
+ * <li><code>release=groupId:artifactId[:range]</code>: the latest release of an artifact within the
+ * optional Maven version range</li>
+ * </ul>
+ * All parameters may be repeated. The virtual versions are resolved in parallel, using the cache
+ * for resolved virtual versions of the repository, and returned as JSON document in the order of
+ * the parameters.
+ */
+public final class BatchResolveResource {
+
+    /**
+     * The path of the resolution document within the unzip repository.
+     */
+    public static final String RESOLVE_PATH = "/.meta/unzip/resolve.json";
+
+    /**
+     * The maximum number of virtual versions resolved with one request.
+     */
+    public static final int MAX_BATCH_SIZE = 200;
+
+    static final String MIME_TYPE = "application/json";
+    static final String PATH_PARAMETER = "path";
+    static final String ARTIFACT_PARAMETER = "artifact";
+    static final String RELEASE_PARAMETER = "release";
+    static final long TIMEOUT_SECONDS = 60;
+
+    private BatchResolveResource() {
+    }
+
+    /**
+     * @param requestPath
+     *            a request path of the unzip repository
+     * @return <code>true</code> if the path addresses the resolution document
+     */
+    public static boolean isResolvePath(final String requestPath) {
+        // also without leading slash, compared in place to keep the check free of allocations
+        return RESOLVE_PATH.equals(requestPath)
+                || (requestPath.length() == RESOLVE_PATH.length() - 1 && RESOLVE_PATH.startsWith(requestPath, 1));
+    }
+
+    /**
+     * Resolves the virtual versions of the request and creates the resolution document.
+     *
+     * @param repository
+     *            the unzip repository
+     * @param request
+     *            the request for the resolution document
+     * @param executor
+     *            the executor which resolves the virtual versions
+     * @return the item containing the resolution document
+     * @throws IllegalRequestException
+     *             if the request contains no or too many virtual versions
+     * @throws LocalStorageException
+     *             if the resolution is interrupted
+     */
+    public static StorageFileItem createItem(final DefaultUnzipRepository repository,
+            final ResourceStoreRequest request, final ExecutorService executor) throws IllegalRequestException,
+            LocalStorageException {
+        final List<Resolution> resolutions = parseResolutions(repository, RequestParameters.of(request));
+        if (resolutions.isEmpty()) {
+            throw new IllegalRequestException(request, "No virtual versions to resolve, use the parameters "
+                    + PATH_PARAMETER + ", " + ARTIFACT_PARAMETER + " or " + RELEASE_PARAMETER);
+        }
+        if (resolutions.size() > MAX_BATCH_SIZE) {
+            throw new IllegalRequestException(request, "Cannot resolve more than " + MAX_BATCH_SIZE
+                    + " virtual versions with one request");
+        }
+
+        final List<Future<ConversionResult>> results;
+        try {
+            results = executor.invokeAll(resolutions, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LocalStorageException(e);
+        }
+
+        final JsonWriter json = new JsonWriter().beginObject();
+        json.name("repository").value(repository.getId());
+        json.name("results").beginArray();
+        for (int i = 0; i < resolutions.size(); i++) {
+            resolutions.get(i).write(json, results.get(i));
+        }
+        json.endArray();
+        json.endObject();
+
+        final DefaultStorageFileItem item = new DefaultStorageFileItem(repository, request, true, false,
+                new StringContentLocator(json.toString(), MIME_TYPE));
+        item.setModified(System.currentTimeMillis());
+        return item;
+    }
+
+    private static List<Resolution> parseResolutions(final DefaultUnzipRepository repository,
+            final RequestParameters parameters) {
+        final List<Resolution> resolutions = new ArrayList<Resolution>();
+        for (final String path : parameters.getAll(PATH_PARAMETER)) {
+            resolutions.add(new PathResolution(repository, path));
+        }
+        for (final String artifact : parameters.getAll(ARTIFACT_PARAMETER)) {
+            resolutions.add(new ArtifactResolution(repository, ARTIFACT_PARAMETER, artifact, true));
+        }
+        for (final String artifact : parameters.getAll(RELEASE_PARAMETER)) {
+            resolutions.add(new ArtifactResolution(repository, RELEASE_PARAMETER, artifact, false));
+        }
+        return resolutions;
+    }
+
+    private abstract static class Resolution implements Callable<ConversionResult> {
+        final DefaultUnzipRepository repository;
+        private final String name;
+        private final String value;
+
+        Resolution(final DefaultUnzipRepository repository, final String name, final String value) {
+            this.repository = repository;
+            this.name = name;
+            this.value = value;
+        }
+
+        void write(final JsonWriter json, final Future<ConversionResult> future) {
+            json.beginObject();
+            json.name(name).value(value);
+            try {
+                final ConversionResult result = future.get();
+                json.name("resolved").value(result.isPathConverted());
+                json.name("resolvedPath").value(result.getConvertedPath());
+                json.name("version").value(result.getLatestVersion());
+            } catch (final CancellationException e) {
+                json.name("error").value("Resolution timed out");
+            } catch (final InterruptedException e) {
+                // cannot happen, as invokeAll only returns completed or cancelled futures
+                Thread.currentThread().interrupt();
+                json.name("error").value("Resolution interrupted");
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                json.name("error").value(cause.getMessage() != null ? cause.getMessage() : cause.toString());
+            }
+            json.endObject();
+        }
+    }
+
+    private static final class PathResolution extends Resolution {
+        private final String path;
+
+        PathResolution(final DefaultUnzipRepository repository, final String path) {
+            super(repository, PATH_PARAMETER, path);
+            this.path = path;
+        }
+
+        @Override
+        public ConversionResult call() throws Exception {
+            return RequestPathConverter.convert(repository.getMasterRepository(), new ResourceStoreRequest(path),
+                    repository.isUseVirtualVersion(), repository.getConversionResultCache());
+        }
+    }
+
+    private static final class ArtifactResolution extends Resolution {
+        private final String artifact;
+        private final boolean includeSnapshots;
+
+        ArtifactResolution(final DefaultUnzipRepository repository, final String name, final String artifact,
+                final boolean includeSnapshots) {
+            super(repository, name, artifact);
+            this.artifact = artifact;
+            this.includeSnapshots = includeSnapshots;
+        }
+
+        @Override
+        public ConversionResult call() throws Exception {
+            final String[] segments = artifact.split(":", 3);
+            if (segments.length < 2 || segments[0].length() == 0 || segments[1].length() == 0) {
+                throw new IllegalArgumentException("Expected groupId:artifactId[:range], but was " + artifact);
+            }
+            final VersionRange versionRange;
+            try {
+                versionRange = segments.length < 3 || segments[2].length() == 0 ? null : VersionRange
+                        .createFromVersionSpec(segments[2]);
+            } catch (final InvalidVersionSpecificationException e) {
+                throw new IllegalArgumentException("Invalid version range " + segments[2] + ": " + e.getMessage());
+            }
+            return RequestPathConverter.resolveLatestVersion(repository.getMasterRepository(), segments[0],
+                    segments[1], versionRange, includeSnapshots, repository.getConversionResultCache());
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Custom Java Flight Recorder events for the work of unzip repositories, so that archive access,
+ * lock waits and snapshot clean ups can be correlated with GC and I/O in one recording.
+ * <p>
+ * The plugin is compiled for Java 7, so the events are defined at runtime with the
+ * <code>jdk.jfr.EventFactory</code> of the JVM, if there is one. The flight recorder notifies the
+ * plugin when recordings start and stop; while nothing is recorded, {@link #begin(Type, String,
+ * String)} only reads a volatile flag and returns <code>null</code>, so instrumented code does not
+ * allocate anything:
+ *
+ * <pre>
+ * final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.ARCHIVE_OPEN, repositoryId, path);
+ * ...
+ * if (event != null) {
+ *     event.set(&quot;bytes&quot;, file.length()).commit();
+ * }
+ * </pre>
+ *
+ * Every event has the fields <code>repositoryId</code> and <code>path</code> and a duration from
+ * {@link #begin(Type, String, String)} until {@link Event#commit()}.
+ */
+public final class FlightRecorderEvents {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecorderEvents.class);
+
+    static final String EVENT_NAME_PREFIX = "org.eclipse.tycho.nexus.unzip.";
+    private static final String[] CATEGORY = { "Nexus", "Unzip Repository" };
+    private static final String BYTES = "BYTES";
+
+    /**
+     * The types of events, with their additional fields.
+     */
+    public enum Type {
+
+        /**
+         * Looking up an archive in the local storage, including fetching it from the master
+         * repository. Fields: <code>bytes</code> (size of the archive), <code>source</code>
+         * (<code>cache</code> or <code>master</code>).
+         */
+        ARCHIVE_FETCH("ArchiveFetch", "Archive Cache Fetch", field(long.class, "bytes", "Archive Size", BYTES),
+                field(String.class, "source", "Source", null)),
+
+        /**
+         * Opening an archive file. Fields: <code>bytes</code> (size of the archive).
+         */
+        ARCHIVE_OPEN("ArchiveOpen", "Archive Open", field(long.class, "bytes", "Archive Size", BYTES)),
+
+        /**
+         * Looking up an entry in an opened archive. Fields: <code>entry</code>, <code>hit</code>
+         * (whether the entry exists), <code>method</code> (<code>index</code> or <code>scan</code>).
+         */
+        ENTRY_LOOKUP("EntryLookup", "Entry Lookup", field(String.class, "entry", "Entry", null), field(
+                boolean.class, "hit", "Hit", null), field(String.class, "method", "Lookup Method", null)),
+
+        /**
+         * Streaming an archive entry, from opening until closing the stream. Fields:
+         * <code>entry</code>, <code>bytes</code> (bytes read by the client), <code>method</code>
+         * (compression method of the entry).
+         */
+        ENTRY_STREAM("EntryStream", "Entry Stream", field(String.class, "entry", "Entry", null), field(long.class,
+                "bytes", "Bytes Read", BYTES), field(String.class, "method", "Compression Method", null)),
+
+        /**
+         * Resolving a virtual version from the <code>maven-metadata.xml</code> files. The path is
+         * the requested path up to the virtual version. Fields: <code>resolvedPath</code>.
+         */
+        METADATA_RESOLUTION("MetadataResolution", "Metadata Resolution", field(String.class, "resolvedPath",
+                "Resolved Path", null)),
+
+        /**
+         * Waiting for a contended path lock. Fields: <code>mode</code> (<code>READ</code> or
+         * <code>WRITE</code>), <code>acquired</code> (<code>false</code> after a timeout).
+         */
+        LOCK_WAIT("LockWait", "Path Lock Wait", field(String.class, "mode", "Lock Mode", null), field(
+                boolean.class, "acquired", "Acquired", null)),
+
+        /**
+         * Cleaning up outdated snapshot archives in a folder. Fields: <code>deleted</code> (number of
+         * deleted archives), <code>skipped</code> (whether the folder lock was not available).
+         */
+        SNAPSHOT_CLEANUP("SnapshotCleanup", "Snapshot Cleanup", field(int.class, "deleted", "Deleted Archives",
+                null), field(boolean.class, "skipped", "Skipped", null));
+
+        private final String name;
+        private final String label;
+        private final List<Field> fields;
+        private Object factory;
+
+        private Type(final String name, final String label, final Field... fields) {
+            this.name = EVENT_NAME_PREFIX + name;
+            this.label = label;
+            final List<Field> allFields = new ArrayList<Field>();
+            allFields.add(field(String.class, "repositoryId", "Repository", null));
+            allFields.add(field(String.class, "path", "Path", null));
+            allFields.addAll(Arrays.asList(fields));
+            this.fields = Collections.unmodifiableList(allFields);
+        }
+
+        /**
+         * @return the name of the event type in recordings
+         */
+        public String getEventName() {
+            return name;
+        }
+
+        int indexOf(final String fieldName) {
+            for (int i = 0; i < fields.size(); i++) {
+                if (fields.get(i).name.equals(fieldName)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Event " + name + " has no field " + fieldName);
+        }
+
+        // defined here, so that initializing the types does not initialize the enclosing class
+        private static Field field(final Class<?> type, final String name, final String label,
+                final String dataAmount) {
+            return new Field(type, name, label, dataAmount);
+        }
+    }
+
+    private static final class Field {
+        final Class<?> type;
+        final String name;
+        final String label;
+        final String dataAmount;
+
+        Field(final Class<?> type, final String name, final String label, final String dataAmount) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+            this.dataAmount = dataAmount;
+        }
+    }
+
+    /**
+     * An event which has begun and is committed to the running recordings.
+     */
+    public static final class Event {
+        private final Type type;
+        private final Object jfrEvent;
+
+        Event(final Type type, final Object jfrEvent) {
+            this.type = type;
+            this.jfrEvent = jfrEvent;
+        }
+
+        /**
+         * Sets a field of the event.
+         *
+         * @throws IllegalArgumentException
+         *             if the event type has no field with the given name
+         */
+        public Event set(final String field, final Object value) {
+            invoke(jfr.set, jfrEvent, type.indexOf(field), value);
+            return this;
+        }
+
+        /**
+         * Ends the event and writes it to the running recordings, if they record events of its
+         * type and the duration exceeds their threshold.
+         */
+        public void commit() {
+            invoke(jfr.end, jfrEvent);
+            if (Boolean.TRUE.equals(invoke(jfr.shouldCommit, jfrEvent))) {
+                invoke(jfr.commit, jfrEvent);
+            }
+        }
+    }
+
+    private static final Jfr jfr = Jfr.load();
+    private static volatile boolean recording = false;
+
+    static {
+        if (jfr != null) {
+            jfr.listen();
+        }
+    }
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * @return <code>true</code> if the JVM supports custom flight recorder events
+     */
+    public static boolean isAvailable() {
+        return jfr != null;
+    }
+
+    /**
+     * @return <code>true</code> if a flight recording is running, i.e. if events are created
+     */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Begins an event, if a flight recording is running.
+     *
+     * @param type
+     *            the type of the event
+     * @param repositoryId
+     *            the id of the unzip repository
+     * @param path
+     *            the path the event is about
+     * @return the event, to be committed at its end, or <code>null</code> if nothing is recorded
+     */
+    public static Event begin(final Type type, final String repositoryId, final String path) {
+        if (!recording) {
+            return null;
+        }
+        final Object jfrEvent = invoke(jfr.newEvent, type.factory);
+        if (jfrEvent == null) {
+            return null;
+        }
+        final Event event = new Event(type, jfrEvent);
+        event.set("repositoryId", repositoryId);
+        event.set("path", path);
+        invoke(jfr.begin, jfrEvent);
+        return event;
+    }
+
+    private static Object invoke(final Method method, final Object target, final Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void updateRecording() {
+        try {
+            recording = jfr.isRecording();
+        } catch (final RuntimeException e) {
+            LOG.debug("Unable to determine the state of the flight recorder", e);
+        }
+    }
+
+    /**
+     * The reflective access to the flight recorder API of the JVM.
+     */
+    private static final class Jfr {
+        private final Class<?> flightRecorder;
+        private final Class<?> listenerType;
+        private final Method isInitialized;
+        private final Method getFlightRecorder;
+        private final Method getRecordings;
+        private final Method getState;
+        private final Method addListener;
+        final Method newEvent;
+        final Method begin;
+        final Method end;
+        final Method shouldCommit;
+        final Method set;
+        final Method commit;
+
+        private Jfr(final ClassLoader loader) throws ReflectiveOperationException {
+            flightRecorder = Class.forName("jdk.jfr.FlightRecorder", false, loader);
+            listenerType = Class.forName("jdk.jfr.FlightRecorderListener", false, loader);
+            isInitialized = flightRecorder.getMethod("isInitialized");
+            getFlightRecorder = flightRecorder.getMethod("getFlightRecorder");
+            getRecordings = flightRecorder.getMethod("getRecordings");
+            getState = Class.forName("jdk.jfr.Recording", false, loader).getMethod("getState");
+            addListener = flightRecorder.getMethod("addListener", listenerType);
+            final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory", false, loader);
+            newEvent = eventFactory.getMethod("newEvent");
+            final Class<?> event = Class.forName("jdk.jfr.Event", false, loader);
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            shouldCommit = event.getMethod("shouldCommit");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+
+            final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement", false, loader);
+            final Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+            final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", false, loader);
+            final Constructor<?> newValue = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+            final Method create = eventFactory.getMethod("create", List.class, List.class);
+            final Class<?> name = Class.forName("jdk.jfr.Name", false, loader);
+            final Class<?> label = Class.forName("jdk.jfr.Label", false, loader);
+            final Class<?> category = Class.forName("jdk.jfr.Category", false, loader);
+            final Class<?> stackTrace = Class.forName("jdk.jfr.StackTrace", false, loader);
+            final Class<?> dataAmount = Class.forName("jdk.jfr.DataAmount", false, loader);
+
+            for (final Type type : Type.values()) {
+                final List<Object> annotations = new ArrayList<Object>();
+                annotations.add(newAnnotation.newInstance(name, type.name));
+                annotations.add(newAnnotation.newInstance(label, type.label));
+                annotations.add(newAnnotation.newInstance(category, CATEGORY));
+                // stack traces would dominate the cost of the events
+                annotations.add(newAnnotation.newInstance(stackTrace, Boolean.FALSE));
+                final List<Object> fields = new ArrayList<Object>();
+                for (final Field field : type.fields) {
+                    final List<Object> fieldAnnotations = new ArrayList<Object>();
+                    fieldAnnotations.add(newAnnotation.newInstance(label, field.label));
+                    if (field.dataAmount != null) {
+                        fieldAnnotations.add(newAnnotation.newInstance(dataAmount, field.dataAmount));
+                    }
+                    fields.add(newValue.newInstance(field.type, field.name, fieldAnnotations));
+                }
+                type.factory = create.invoke(null, annotations, fields);
+            }
+        }
+
+        static Jfr load() {
+            try {
+                return new Jfr(FlightRecorderEvents.class.getClassLoader());
+            } catch (final ClassNotFoundException e) {
+                // JVM without flight recorder API
+                return null;
+            } catch (final ReflectiveOperationException e) {
+                LOG.debug("Flight recorder events are not available", e);
+                return null;
+            } catch (final RuntimeException e) {
+                LOG.debug("Flight recorder events are not available", e);
+                return null;
+            }
+        }
+
+        /**
+         * Registers a listener which tracks whether a recording is running.
+         */
+        void listen() {
+            final Object listener = Proxy.newProxyInstance(FlightRecorderEvents.class.getClassLoader(),
+                    new Class<?>[] { listenerType }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                            if (method.getDeclaringClass() == Object.class) {
+                                return invokeObjectMethod(proxy, method, args);
+                            }
+                            // recorderInitialized or recordingStateChanged
+                            updateRecording();
+                            return null;
+                        }
+                    });
+            FlightRecorderEvents.invoke(addListener, null, listener);
+            updateRecording();
+        }
+
+        boolean isRecording() {
+            // don't initialize the flight recorder if it is not used
+            if (!Boolean.TRUE.equals(FlightRecorderEvents.invoke(isInitialized, null))) {
+                return false;
+            }
+            final Object recorder = FlightRecorderEvents.invoke(getFlightRecorder, null);
+            for (final Object recording : (List<?>) FlightRecorderEvents.invoke(getRecordings, recorder)) {
+                if ("RUNNING".equals(String.valueOf(FlightRecorderEvents.invoke(getState, recording)))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Object invokeObjectMethod(final Object proxy, final Method method, final Object[] args) {
+            if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+            return FlightRecorderEvents.class.getName() + "$Listener";
+        }
+    }
+}
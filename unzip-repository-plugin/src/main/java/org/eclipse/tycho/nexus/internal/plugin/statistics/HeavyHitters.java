@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded tracker of the most frequently requested keys, implemented with the space-saving
+ * algorithm: at most <code>capacity</code> keys are counted, and a key which is not counted yet
+ * replaces the key with the lowest count, taking over that count as its possible overestimation.
+ * Every key which was requested more often than <code>1 / capacity</code> of all requests is
+ * guaranteed to be tracked.
+ * <p>
+ * The counters are kept in a stream summary, i.e. in a list of buckets of counters with the same
+ * count, ordered by count. Counting a tracked key moves its counter to the next bucket and
+ * replacing the key with the lowest count takes a counter of the first bucket, so both are done in
+ * constant time. Large trackers are split into stripes by the hash of the keys, each with its own
+ * stream summary and lock, so that threads counting different keys rarely wait for each other.
+ * As the requests spread evenly over the stripes, the guarantee above holds approximately.
+ * <p>
+ * Besides the number of requests, the bytes served for a key are summed up while the key is
+ * tracked. Adding bytes does not lock.
+ */
+public final class HeavyHitters {
+
+    /**
+     * The counts of a tracked key.
+     */
+    public static final class Entry {
+
+        private final String key;
+        private final long count;
+        private final long error;
+        private final long bytes;
+
+        Entry(final String key, final long count, final long error, final long bytes) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.bytes = bytes;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the number of requests, which may be overestimated by up to {@link #getError()}
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the maximum overestimation of {@link #getCount()}
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * @return the bytes served since the key is tracked
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    // stripes are only used if each of them can track at least this number of keys
+    static final int MIN_STRIPE_CAPACITY = 16;
+    static final int MAX_STRIPES = 16;
+
+    private static final Comparator<Entry> BY_COUNT_DESCENDING = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry e1, final Entry e2) {
+            if (e1.count != e2.count) {
+                return e1.count > e2.count ? -1 : 1;
+            }
+            return e1.key.compareTo(e2.key);
+        }
+    };
+
+    private final int capacity;
+    private final Stripe[] stripes;
+
+    /**
+     * @param capacity
+     *            the maximum number of tracked keys
+     */
+    public HeavyHitters(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        int stripeCount = 1;
+        while (stripeCount * 2 <= MAX_STRIPES && stripeCount * 2 * MIN_STRIPE_CAPACITY <= capacity) {
+            stripeCount *= 2;
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Counts a request of the given key.
+     */
+    public void record(final String key) {
+        final Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.record(key);
+        }
+    }
+
+    /**
+     * Adds served bytes to the given key, if it is tracked.
+     */
+    public void addBytes(final String key, final long bytes) {
+        final Counter counter = stripeOf(key).counters.get(key);
+        if (counter != null) {
+            counter.bytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Restores the counts of a key, e.g. from a previous run. Keys which are already tracked or
+     * which don't fit into the capacity are ignored.
+     */
+    public void restore(final String key, final long count, final long error, final long bytes) {
+        final Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.restore(key, count, error, bytes);
+        }
+    }
+
+    /**
+     * @param limit
+     *            the maximum number of returned entries
+     * @return copies of the entries with the highest counts, in descending order
+     */
+    public List<Entry> top(final int limit) {
+        final List<Entry> sorted = new ArrayList<Entry>();
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.copyEntries(sorted);
+            }
+        }
+        Collections.sort(sorted, BY_COUNT_DESCENDING);
+        return sorted.size() > limit ? new ArrayList<Entry>(sorted.subList(0, limit)) : sorted;
+    }
+
+    public void clear() {
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private Stripe stripeOf(final String key) {
+        final int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * The counter of a tracked key, linked with the other counters of its bucket. Counters are
+     * not reused for other keys, so that bytes added concurrently to a replaced key get lost
+     * instead of being added to the new key.
+     */
+    private static final class Counter {
+        final String key;
+        final long error;
+        final AtomicLong bytes;
+        Bucket bucket;
+        Counter previous;
+        Counter next;
+
+        Counter(final String key, final long error, final long bytes) {
+            this.key = key;
+            this.error = error;
+            this.bytes = new AtomicLong(bytes);
+        }
+    }
+
+    /**
+     * The counters with the same count.
+     */
+    private static final class Bucket {
+        final long count;
+        Bucket previous;
+        Bucket next;
+        Counter first;
+
+        Bucket(final long count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * The stream summary of the keys of one stripe. The counters are looked up in a concurrent map,
+     * so that bytes can be added without the lock of the stripe, while all other methods must be
+     * called with the lock of the stripe.
+     */
+    private static final class Stripe {
+
+        final ConcurrentMap<String, Counter> counters;
+        private final int capacity;
+        // the bucket with the lowest count
+        private Bucket minimum;
+
+        Stripe(final int capacity) {
+            this.capacity = capacity;
+            this.counters = new ConcurrentHashMap<String, Counter>(capacity * 4 / 3 + 1);
+        }
+
+        void record(final String key) {
+            final Counter counter = counters.get(key);
+            if (counter != null) {
+                increment(counter);
+            } else if (counters.size() < capacity) {
+                add(new Counter(key, 0, 0), 1);
+            } else {
+                final Counter replaced = minimum.first;
+                final long count = minimum.count;
+                remove(replaced);
+                counters.remove(replaced.key);
+                add(new Counter(key, count, 0), count + 1);
+            }
+        }
+
+        void restore(final String key, final long count, final long error, final long bytes) {
+            if (!counters.containsKey(key) && counters.size() < capacity) {
+                add(new Counter(key, error, bytes), count);
+            }
+        }
+
+        void copyEntries(final List<Entry> entries) {
+            for (Bucket bucket = minimum; bucket != null; bucket = bucket.next) {
+                for (Counter counter = bucket.first; counter != null; counter = counter.next) {
+                    entries.add(new Entry(counter.key, bucket.count, counter.error, counter.bytes.get()));
+                }
+            }
+        }
+
+        void clear() {
+            counters.clear();
+            minimum = null;
+        }
+
+        private void increment(final Counter counter) {
+            final Bucket bucket = counter.bucket;
+            final long count = bucket.count + 1;
+            Bucket target = bucket.next;
+            if (target == null || target.count != count) {
+                target = new Bucket(count);
+                insertAfter(bucket, target);
+            }
+            remove(counter);
+            link(counter, target);
+        }
+
+        private void add(final Counter counter, final long count) {
+            // only restored counters may have to skip buckets, new keys start in the first bucket
+            Bucket previous = null;
+            Bucket bucket = minimum;
+            while (bucket != null && bucket.count < count) {
+                previous = bucket;
+                bucket = bucket.next;
+            }
+            if (bucket == null || bucket.count != count) {
+                bucket = new Bucket(count);
+                insertAfter(previous, bucket);
+            }
+            link(counter, bucket);
+            counters.put(counter.key, counter);
+        }
+
+        private void insertAfter(final Bucket previous, final Bucket bucket) {
+            final Bucket next = previous == null ? minimum : previous.next;
+            bucket.previous = previous;
+            bucket.next = next;
+            if (next != null) {
+                next.previous = bucket;
+            }
+            if (previous == null) {
+                minimum = bucket;
+            } else {
+                previous.next = bucket;
+            }
+        }
+
+        private static void link(final Counter counter, final Bucket bucket) {
+            counter.bucket = bucket;
+            counter.previous = null;
+            counter.next = bucket.first;
+            if (bucket.first != null) {
+                bucket.first.previous = counter;
+            }
+            bucket.first = counter;
+        }
+
+        // unlinks the counter from its bucket and drops the bucket if it becomes empty
+        private void remove(final Counter counter) {
+            final Bucket bucket = counter.bucket;
+            if (counter.previous != null) {
+                counter.previous.next = counter.next;
+            } else {
+                bucket.first = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.previous = counter.previous;
+            }
+            counter.bucket = null;
+            counter.previous = null;
+            counter.next = null;
+            if (bucket.first == null) {
+                if (bucket.previous != null) {
+                    bucket.previous.next = bucket.next;
+                } else {
+                    minimum = bucket.next;
+                }
+                if (bucket.next != null) {
+                    bucket.next.previous = bucket.previous;
+                }
+            }
+        }
+    }
+}
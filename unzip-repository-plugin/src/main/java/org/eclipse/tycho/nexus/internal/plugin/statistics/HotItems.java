@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The most frequently accessed archives and entries of an unzip repository, with the bytes served
+ * from them, and the most frequently resolved virtual versions. Each kind is tracked by a bounded
+ * {@link HeavyHitters} instance, so that the memory used does not depend on the number of
+ * archives.
+ * <p>
+ * The tracked items can be stored in a file and loaded again after a restart. The restored counts
+ * are halved, so that items which are no longer requested fade out over restarts. Threads which
+ * replay the restored items switch off the recording for themselves, so that the replay does not
+ * count as requests.
+ */
+public final class HotItems {
+
+    /**
+     * The default number of tracked items of each kind.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The kinds of tracked items, also used as identifiers in the stored file.
+     */
+    public enum Kind {
+        /** archives, identified by their path in the master repository */
+        ARCHIVE("archive"),
+        /** files within archives, identified by their path in the unzip repository */
+        ENTRY("entry"),
+        /**
+         * requested paths with a virtual version, for archives the path of the archive in the
+         * unzip repository
+         */
+        VIRTUAL_VERSION("virtualVersion");
+
+        private final String id;
+
+        private Kind(final String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        static Kind forId(final String id) {
+            for (final Kind kind : values()) {
+                if (kind.id.equals(id)) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final String HEADER = "# unzip hot items, format 1: kind count error bytes path";
+    private static final char SEPARATOR = '\t';
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ThreadLocal<Boolean> recordingOff = new ThreadLocal<Boolean>();
+    private final HeavyHitters archives;
+    private final HeavyHitters entries;
+    private final HeavyHitters virtualVersions;
+
+    public HotItems() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the maximum number of tracked items of each kind
+     */
+    public HotItems(final int capacity) {
+        archives = new HeavyHitters(capacity);
+        entries = new HeavyHitters(capacity);
+        virtualVersions = new HeavyHitters(capacity);
+    }
+
+    public HeavyHitters get(final Kind kind) {
+        switch (kind) {
+        case ARCHIVE:
+            return archives;
+        case ENTRY:
+            return entries;
+        default:
+            return virtualVersions;
+        }
+    }
+
+    /**
+     * Counts an access of an archive.
+     *
+     * @param archivePath
+     *            the path of the archive in the master repository
+     */
+    public void recordArchive(final String archivePath) {
+        if (isRecording()) {
+            archives.record(archivePath);
+        }
+    }
+
+    /**
+     * Counts a request for the content of an entry.
+     *
+     * @param entryPath
+     *            the path of the entry in the unzip repository
+     */
+    public void recordEntry(final String entryPath) {
+        if (isRecording()) {
+            entries.record(entryPath);
+        }
+    }
+
+    /**
+     * Counts a request whose virtual version was resolved.
+     *
+     * @param virtualPath
+     *            the requested path with the virtual version
+     */
+    public void recordVirtualVersion(final String virtualPath) {
+        if (isRecording()) {
+            virtualVersions.record(virtualPath);
+        }
+    }
+
+    /**
+     * Adds the bytes served from an entry to the entry and its archive.
+     */
+    public void addBytes(final String archivePath, final String entryPath, final long bytes) {
+        if (isRecording()) {
+            archives.addBytes(archivePath, bytes);
+            entries.addBytes(entryPath, bytes);
+        }
+    }
+
+    /**
+     * Switches the recording of the current thread on or off, e.g. off while hot items are
+     * replayed.
+     */
+    public void setRecording(final boolean recording) {
+        if (recording) {
+            recordingOff.remove();
+        } else {
+            recordingOff.set(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the recording is switched off for the current thread
+     */
+    public boolean isRecording() {
+        return recordingOff.get() == null;
+    }
+
+    /**
+     * Stores the tracked items in the given file. The file is replaced once it is completely
+     * written, so that readers never see a partial file. Concurrent calls are serialized.
+     */
+    public synchronized void store(final File file) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create folder " + parent);
+        }
+        final File temporaryFile = new File(parent, file.getName() + ".tmp");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8);
+        try {
+            write(writer);
+        } finally {
+            writer.close();
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Restores the items stored in the given file, if it exists. Lines which cannot be parsed are
+     * skipped.
+     */
+    public void load(final File file) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        final Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    void write(final Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        for (final Kind kind : Kind.values()) {
+            final HeavyHitters hitters = get(kind);
+            for (final HeavyHitters.Entry entry : hitters.top(hitters.getCapacity())) {
+                writer.write(kind.getId());
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(entry.getCount()));
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(entry.getError()));
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(entry.getBytes()));
+                writer.write(SEPARATOR);
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+        }
+    }
+
+    void read(final Reader reader) throws IOException {
+        final BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            final String[] fields = line.split(String.valueOf(SEPARATOR), 5);
+            if (fields.length != 5 || Kind.forId(fields[0]) == null || fields[4].length() == 0) {
+                continue;
+            }
+            try {
+                final long count = Long.parseLong(fields[1]);
+                final long error = Long.parseLong(fields[2]);
+                final long bytes = Long.parseLong(fields[3]);
+                get(Kind.forId(fields[0])).restore(fields[4], Math.max(count / 2, 1), Math.min(error, count / 2),
+                        bytes);
+            } catch (final NumberFormatException e) {
+                // skipped like other malformed lines
+            }
+        }
+    }
+}
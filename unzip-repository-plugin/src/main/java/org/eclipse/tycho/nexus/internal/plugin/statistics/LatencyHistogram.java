@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, similar to an HdrHistogram. Every power of two
+ * is divided into {@link #SUB_BUCKETS} linear buckets, so that recorded values are exact below
+ * {@link #SUB_BUCKETS} and have a relative error of less than <code>1/SUB_BUCKETS</code> above.
+ * <p>
+ * Recording a value only increments two counters and never blocks, so the histogram can be used
+ * on the hot path of every request. Snapshots taken while values are recorded may miss the latest
+ * values, but are consistent in themselves.
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values are positive longs, so the highest bit is bit 62
+    private static final int ROWS = 63 - SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(ROWS * SUB_BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *            the latency in nanoseconds, negative values are recorded as <code>0</code>
+     */
+    public void record(final long nanos) {
+        final long value = nanos < 0 ? 0 : nanos;
+        counts.incrementAndGet(indexOf(value));
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Removes all recorded values. Values recorded concurrently may or may not be removed.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+        sum.set(0);
+    }
+
+    /**
+     * @return a snapshot of the recorded values
+     */
+    public Snapshot snapshot() {
+        final long[] snapshotCounts = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshotCounts.length; i++) {
+            snapshotCounts[i] = counts.get(i);
+            total += snapshotCounts[i];
+        }
+        return new Snapshot(snapshotCounts, total, max.get(), sum.get());
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        // the sub bucket is the value's top SUB_BUCKET_BITS + 1 bits, i.e. in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        final int subBucket = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest value which is recorded in the bucket with the given index
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable snapshot of a {@link LatencyHistogram}.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+        private final long sum;
+
+        Snapshot(final long[] counts, final long count, final long max, final long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.max = max;
+            this.sum = sum;
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the highest recorded value in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean of the recorded values in nanoseconds, <code>0</code> if no value was
+         *         recorded
+         */
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * Returns the value below or at which the given percentage of the recorded values are. The
+         * result is the highest value of the bucket containing the percentile, but at most the
+         * highest recorded value.
+         *
+         * @param percentile
+         *            the percentile, between <code>0</code> and <code>100</code>
+         * @return the percentile in nanoseconds, <code>0</code> if no value was recorded
+         */
+        public long getPercentile(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
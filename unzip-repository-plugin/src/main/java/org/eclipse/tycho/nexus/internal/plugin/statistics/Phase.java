@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+/**
+ * The phases of a request to an unzip repository, for which the latency is recorded.
+ */
+public enum Phase {
+
+    /**
+     * The whole request, from the start of the retrieval until the item is returned.
+     */
+    REQUEST("request"),
+
+    /**
+     * The conversion of virtual versions in the request path, including cached conversions.
+     */
+    CONVERSION("conversion"),
+
+    /**
+     * The resolution of a virtual version from the <code>maven-metadata.xml</code> files, i.e. a
+     * conversion which was not cached.
+     */
+    METADATA_RETRIEVAL("metadataRetrieval"),
+
+    /**
+     * The removal of outdated snapshot archives from the local storage.
+     */
+    SNAPSHOT_CLEANUP("snapshotCleanup"),
+
+    /**
+     * The lookup of an archive in the local storage, including fetching it from the master
+     * repository if it is not cached yet.
+     */
+    ARCHIVE_CACHE("archiveCache"),
+
+    /**
+     * Opening an archive file.
+     */
+    ARCHIVE_OPEN("archiveOpen"),
+
+    /**
+     * The lookup of an entry within an opened archive.
+     */
+    ENTRY_LOOKUP("entryLookup"),
+
+    /**
+     * Streaming the content of an archive entry, from opening until closing the stream.
+     */
+    STREAMING("streaming");
+
+    private final String id;
+
+    private Phase(final String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the name of the phase in the statistics
+     */
+    public String getId() {
+        return id;
+    }
+}
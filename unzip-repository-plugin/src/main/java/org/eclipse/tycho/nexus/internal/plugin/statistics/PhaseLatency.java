@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The latency percentiles of a request {@link Phase}, as exposed via JMX. All times are in
+ * nanoseconds.
+ */
+public final class PhaseLatency {
+
+    private final String phase;
+    private final long count;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+    private final long max;
+
+    @ConstructorProperties({ "phase", "count", "p50", "p95", "p99", "max" })
+    public PhaseLatency(final String phase, final long count, final long p50, final long p95, final long p99,
+            final long max) {
+        this.phase = phase;
+        this.count = count;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    static PhaseLatency of(final Phase phase, final LatencyHistogram.Snapshot snapshot) {
+        return new PhaseLatency(phase.getId(), snapshot.getCount(), snapshot.getPercentile(50),
+                snapshot.getPercentile(95), snapshot.getPercentile(99), snapshot.getMax());
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getMax() {
+        return max;
+    }
+}
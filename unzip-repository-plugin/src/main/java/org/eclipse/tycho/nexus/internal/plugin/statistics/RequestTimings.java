@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+
+/**
+ * Latency histograms of the request phases of an unzip repository. The latencies are measured with
+ * {@link System#nanoTime()} and can be read via JMX and the statistics document of the repository.
+ */
+public final class RequestTimings implements RequestTimingsMXBean {
+
+    static final String OBJECT_NAME_PREFIX = "org.eclipse.tycho.nexus:type=UnzipRepository,name=";
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+    private volatile String repositoryId;
+    private ObjectName registeredName;
+
+    public RequestTimings() {
+        for (final Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @return the current time, to be passed to {@link #record(Phase, long)} at the end of the
+     *         phase
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the latency of a phase which started at the given time. The latency is also added to
+     * the {@link SlowRequestLog.Record} of the current thread, if there is one.
+     *
+     * @param phase
+     *            the phase
+     * @param startNanos
+     *            the result of {@link #start()} at the beginning of the phase
+     */
+    public void record(final Phase phase, final long startNanos) {
+        final long nanos = System.nanoTime() - startNanos;
+        histograms.get(phase).record(nanos);
+        final SlowRequestLog.Record slowRequestRecord = SlowRequestLog.current();
+        if (slowRequestRecord != null) {
+            slowRequestRecord.addPhase(phase, nanos);
+        }
+    }
+
+    /**
+     * @return a snapshot of the latencies of the given phase
+     */
+    public LatencyHistogram.Snapshot snapshot(final Phase phase) {
+        return histograms.get(phase).snapshot();
+    }
+
+    @Override
+    public String getRepositoryId() {
+        return repositoryId;
+    }
+
+    @Override
+    public PhaseLatency[] getPhaseLatencies() {
+        final Phase[] phases = Phase.values();
+        final PhaseLatency[] latencies = new PhaseLatency[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            latencies[i] = PhaseLatency.of(phases[i], snapshot(phases[i]));
+        }
+        return latencies;
+    }
+
+    @Override
+    public void reset() {
+        for (final LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Registers the timings in the platform MBean server, replacing the timings of a previous
+     * repository instance with the same id.
+     *
+     * @param id
+     *            the id of the unzip repository
+     * @param logger
+     *            the logger for registration failures
+     */
+    public synchronized void registerMBean(final String id, final Logger logger) {
+        unregisterMBean(logger);
+        this.repositoryId = id;
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName(id);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (final JMException e) {
+            logger.warn("Unable to register request timings of repository " + id + " in JMX", e);
+        }
+    }
+
+    /**
+     * Removes the timings from the platform MBean server, if they are registered.
+     *
+     * @param logger
+     *            the logger for failures
+     */
+    public synchronized void unregisterMBean(final Logger logger) {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (final JMException e) {
+            logger.debug("Unable to unregister " + registeredName + " from JMX", e);
+        }
+        registeredName = null;
+    }
+
+    static ObjectName getObjectName(final String repositoryId) throws JMException {
+        return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(repositoryId));
+    }
+}
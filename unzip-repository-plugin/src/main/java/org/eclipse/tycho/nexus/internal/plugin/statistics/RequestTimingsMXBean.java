@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+/**
+ * JMX view of the {@link RequestTimings} of an unzip repository.
+ */
+public interface RequestTimingsMXBean {
+
+    /**
+     * @return the id of the unzip repository
+     */
+    String getRepositoryId();
+
+    /**
+     * @return the latency percentiles of all request phases
+     */
+    PhaseLatency[] getPhaseLatencies();
+
+    /**
+     * Removes all recorded latencies.
+     */
+    void reset();
+}
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log of individual slow requests of an unzip repository, which explains the outliers of the
+ * aggregated {@link RequestTimings}. While a request is traced, the components serving it add their
+ * details to the {@link Record} of the current thread. Requests which take at least the configured
+ * threshold are sampled with the configured rate and written as one JSON line to the logger
+ * {@value #LOGGER_NAME}.
+ * <p>
+ * The records are formatted and written by the given executor, so that logging never adds latency
+ * to a request. Records are dropped if the executor does not accept them.
+ */
+public final class SlowRequestLog {
+
+    public static final String LOGGER_NAME = "org.eclipse.tycho.nexus.unzip.slowrequests";
+
+    /**
+     * The cache layers for which hits and misses are recorded.
+     */
+    public enum Layer {
+        /** the cache of resolved virtual versions */
+        CONVERSION("conversion"),
+        /** the archives cached in the local storage of the unzip repository */
+        ARCHIVE("archive");
+
+        private final String id;
+
+        private Layer(final String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    private static final ThreadLocal<Record> CURRENT = new ThreadLocal<Record>();
+
+    // number of logs with a threshold, so that the thread local is not read while all logs are disabled
+    private static final AtomicInteger ENABLED_LOGS = new AtomicInteger();
+
+    private final Executor executor;
+    private final Logger logger;
+    private final AtomicLong dropped = new AtomicLong();
+    private long thresholdMillis;
+    private volatile long thresholdNanos;
+    private volatile int samplePercentage = 100;
+
+    /**
+     * @param executor
+     *            the executor writing the records
+     */
+    public SlowRequestLog(final Executor executor) {
+        this(executor, LoggerFactory.getLogger(LOGGER_NAME));
+    }
+
+    SlowRequestLog(final Executor executor, final Logger logger) {
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    /**
+     * @param thresholdMillis
+     *            the minimum duration of a logged request in milliseconds, <code>0</code> disables
+     *            the log
+     */
+    public synchronized void setThreshold(final long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("Negative threshold " + thresholdMillis);
+        }
+        if (this.thresholdMillis == 0 && thresholdMillis > 0) {
+            ENABLED_LOGS.incrementAndGet();
+        } else if (this.thresholdMillis > 0 && thresholdMillis == 0) {
+            ENABLED_LOGS.decrementAndGet();
+        }
+        this.thresholdMillis = thresholdMillis;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    public synchronized long getThreshold() {
+        return thresholdMillis;
+    }
+
+    /**
+     * @param samplePercentage
+     *            the percentage of the slow requests which are logged, between <code>0</code> and
+     *            <code>100</code>
+     */
+    public void setSamplePercentage(final int samplePercentage) {
+        if (samplePercentage < 0 || samplePercentage > 100) {
+            throw new IllegalArgumentException("Sample percentage not in [0, 100]: " + samplePercentage);
+        }
+        this.samplePercentage = samplePercentage;
+    }
+
+    public int getSamplePercentage() {
+        return samplePercentage;
+    }
+
+    /**
+     * @return the number of slow requests which were not logged because the executor rejected them
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Starts to trace a request in the current thread.
+     *
+     * @param originalPath
+     *            the requested path
+     * @return the record of the request, or <code>null</code> if the log is disabled
+     */
+    public Record begin(final String originalPath) {
+        if (thresholdNanos == 0) {
+            return null;
+        }
+        final Record record = new Record(originalPath, CURRENT.get());
+        CURRENT.set(record);
+        return record;
+    }
+
+    /**
+     * Stops to trace the request of the given record and logs it, if it is slow and sampled.
+     *
+     * @param record
+     *            the result of {@link #begin(String)}
+     * @param requestNanos
+     *            the duration of the request
+     */
+    public void finish(final Record record, final long requestNanos) {
+        if (record.enclosing == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(record.enclosing);
+        }
+        final long threshold = thresholdNanos;
+        if (threshold == 0 || requestNanos < threshold || !isSampled()) {
+            return;
+        }
+        record.requestNanos = requestNanos;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    logger.info(record.toJson());
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private boolean isSampled() {
+        final int percentage = samplePercentage;
+        return percentage == 100 || ThreadLocalRandom.current().nextInt(100) < percentage;
+    }
+
+    /**
+     * @return the record of the request traced in the current thread, or <code>null</code> if no
+     *         request is traced
+     */
+    public static Record current() {
+        if (ENABLED_LOGS.get() == 0) {
+            return null;
+        }
+        return CURRENT.get();
+    }
+
+    /**
+     * The details of a traced request. A record is only modified by the thread serving the request
+     * and handed over to the writing thread after the request is finished.
+     */
+    public static final class Record {
+
+        private final String originalPath;
+        // the record of a request which is served by retrieving this one, restored when this one finishes
+        private final Record enclosing;
+        private final Map<Phase, Long> phaseNanos = new EnumMap<Phase, Long>(Phase.class);
+        private final Map<Layer, Boolean> cacheHits = new EnumMap<Layer, Boolean>(Layer.class);
+        private String convertedPath;
+        private long archiveSize = -1;
+        private long entrySize = -1;
+        private String compressionMethod;
+        private long lockWaitNanos;
+        private long requestNanos;
+
+        Record(final String originalPath, final Record enclosing) {
+            this.originalPath = originalPath;
+            this.enclosing = enclosing;
+        }
+
+        public void setConvertedPath(final String convertedPath) {
+            this.convertedPath = convertedPath;
+        }
+
+        public void setArchiveSize(final long archiveSize) {
+            this.archiveSize = archiveSize;
+        }
+
+        /**
+         * @param entrySize
+         *            the uncompressed size of the requested entry, <code>-1</code> if unknown
+         * @param compressionMethod
+         *            the compression method of the entry, e.g. "DEFLATED"
+         */
+        public void setEntry(final long entrySize, final String compressionMethod) {
+            this.entrySize = entrySize;
+            this.compressionMethod = compressionMethod;
+        }
+
+        /**
+         * Records a hit or miss of a cache layer. The last lookup of a layer wins.
+         */
+        public void setCacheHit(final Layer layer, final boolean hit) {
+            cacheHits.put(layer, hit);
+        }
+
+        public void addLockWait(final long waitNanos) {
+            lockWaitNanos += waitNanos;
+        }
+
+        void addPhase(final Phase phase, final long nanos) {
+            final Long previous = phaseNanos.get(phase);
+            phaseNanos.put(phase, previous == null ? nanos : previous + nanos);
+        }
+
+        String toJson() {
+            final JsonWriter json = new JsonWriter().beginObject();
+            json.name("durationMillis").value(toMillis(requestNanos));
+            json.name("originalPath").value(originalPath);
+            json.name("convertedPath").value(convertedPath);
+            json.name("archiveSize").value(archiveSize);
+            json.name("entrySize").value(entrySize);
+            json.name("compressionMethod").value(compressionMethod);
+            json.name("cache").beginObject();
+            for (final Map.Entry<Layer, Boolean> hit : cacheHits.entrySet()) {
+                json.name(hit.getKey().getId()).value(hit.getValue() ? "hit" : "miss");
+            }
+            json.endObject();
+            json.name("lockWaitMillis").value(toMillis(lockWaitNanos));
+            json.name("phases").beginObject();
+            for (final Map.Entry<Phase, Long> phase : phaseNanos.entrySet()) {
+                json.name(phase.getKey().getId()).value(toMillis(phase.getValue()));
+            }
+            return json.endObject().endObject().toString();
+        }
+
+        private static double toMillis(final long nanos) {
+            return nanos / 1000 / 1000.0;
+        }
+    }
+}
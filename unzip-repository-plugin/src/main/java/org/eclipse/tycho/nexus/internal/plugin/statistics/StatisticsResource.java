@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.util.Map;
+
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathLockStatistics;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Runtime statistics of an unzip repository, served as JSON document under
+ * {@link #STATISTICS_PATH} of the repository.
+ */
+public final class StatisticsResource {
+
+    /**
+     * The path of the statistics document within the unzip repository.
+     */
+    public static final String STATISTICS_PATH = "/.meta/unzip/statistics.json";
+
+    static final String MIME_TYPE = "application/json";
+
+    /**
+     * The number of most contended lock paths listed in the statistics.
+     */
+    public static final int TOP_CONTENDED_PATHS = 20;
+
+    /**
+     * The number of most accessed archives and entries listed in the statistics.
+     */
+    public static final int TOP_HOT_ITEMS = 20;
+
+    private StatisticsResource() {
+    }
+
+    /**
+     * @param requestPath
+     *            a request path of the unzip repository
+     * @return <code>true</code> if the path addresses the statistics document
+     */
+    public static boolean isStatisticsPath(final String requestPath) {
+        // also without leading slash, compared in place to keep the check free of allocations
+        return STATISTICS_PATH.equals(requestPath)
+                || (requestPath.length() == STATISTICS_PATH.length() - 1 && STATISTICS_PATH.startsWith(requestPath, 1));
+    }
+
+    /**
+     * Creates the statistics document.
+     *
+     * @param repository
+     *            the unzip repository
+     * @param request
+     *            the request for the statistics document
+     * @param lockStatistics
+     *            the statistics of the path locks used by the repository
+     * @param requestTimings
+     *            the latencies of the request phases of the repository
+     * @param hotItems
+     *            the most accessed archives, entries and virtual versions of the repository
+     * @return the item containing the statistics document
+     */
+    public static StorageFileItem createItem(final Repository repository, final ResourceStoreRequest request,
+            final PathLockStatistics lockStatistics, final RequestTimings requestTimings, final HotItems hotItems) {
+        final JsonWriter json = new JsonWriter().beginObject();
+        json.name("repository").value(repository.getId());
+        json.name("timestamp").value(System.currentTimeMillis());
+        writeLockStatistics(json.name("locks"), lockStatistics);
+        writePhaseLatencies(json.name("phases"), requestTimings);
+        writeHotItems(json.name("hotArchives"), hotItems.get(HotItems.Kind.ARCHIVE));
+        writeHotItems(json.name("hotEntries"), hotItems.get(HotItems.Kind.ENTRY));
+        writeHotItems(json.name("hotVirtualVersions"), hotItems.get(HotItems.Kind.VIRTUAL_VERSION));
+        json.endObject();
+
+        final DefaultStorageFileItem item = new DefaultStorageFileItem(repository, request, true, false,
+                new StringContentLocator(json.toString(), MIME_TYPE));
+        item.setModified(System.currentTimeMillis());
+        return item;
+    }
+
+    static void writePhaseLatencies(final JsonWriter json, final RequestTimings requestTimings) {
+        json.beginObject();
+        for (final Phase phase : Phase.values()) {
+            final LatencyHistogram.Snapshot snapshot = requestTimings.snapshot(phase);
+            json.name(phase.getId()).beginObject();
+            json.name("count").value(snapshot.getCount());
+            json.name("meanNanos").value(snapshot.getMean());
+            json.name("p50Nanos").value(snapshot.getPercentile(50));
+            json.name("p95Nanos").value(snapshot.getPercentile(95));
+            json.name("p99Nanos").value(snapshot.getPercentile(99));
+            json.name("maxNanos").value(snapshot.getMax());
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    static void writeHotItems(final JsonWriter json, final HeavyHitters hotItems) {
+        json.beginArray();
+        for (final HeavyHitters.Entry entry : hotItems.top(TOP_HOT_ITEMS)) {
+            json.beginObject();
+            json.name("path").value(entry.getKey());
+            json.name("requests").value(entry.getCount());
+            json.name("maxOverestimation").value(entry.getError());
+            json.name("bytes").value(entry.getBytes());
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    static void writeLockStatistics(final JsonWriter json, final PathLockStatistics statistics) {
+        json.beginObject();
+        json.name("acquisitions").value(statistics.getAcquisitions());
+        json.name("contendedAcquisitions").value(statistics.getContendedAcquisitions());
+        json.name("timeouts").value(statistics.getTimeouts());
+        json.name("lockedPaths").value(statistics.getLockedPaths());
+        json.name("totalWaitNanos").value(statistics.getTotalWaitNanos());
+        json.name("maxWaitNanos").value(statistics.getMaxWaitNanos());
+        json.name("totalHoldNanos").value(statistics.getTotalHoldNanos());
+        json.name("maxHoldNanos").value(statistics.getMaxHoldNanos());
+        json.name("topContendedPaths").beginArray();
+        for (final Map.Entry<String, Long> entry : statistics.getTopContendedPaths().entrySet()) {
+            json.beginObject();
+            json.name("path").value(entry.getKey());
+            json.name("contendedAcquisitions").value(entry.getValue());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+}
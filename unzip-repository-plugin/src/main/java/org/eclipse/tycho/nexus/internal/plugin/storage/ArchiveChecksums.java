@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+/**
+ * The checksums of the entries of one cached archive. The checksums of all entries are computed
+ * when the archive is cached. The checksums of archives which were cached before are computed when
+ * they are requested for the first time or while the entry is read completely for the first time.
+ * The checksums are appended to a file next to the cached archive, so that they survive restarts. The
+ * file is deleted together with the archive, e.g. by the clean up of outdated snapshots, and it is
+ * ignored if the archive was replaced in the meantime.
+ * <p>
+ * Once the file is loaded, the checksums are read without a lock. Loading the file and adding
+ * checksums lock only this archive.
+ */
+final class ArchiveChecksums {
+
+    /**
+     * The supported checksums, in the order in which they are stored.
+     */
+    enum Algorithm {
+        SHA1("SHA-1", ".sha1", StorageFileItem.DIGEST_SHA1_KEY), //
+        MD5("MD5", ".md5", StorageFileItem.DIGEST_MD5_KEY), //
+        SHA256("SHA-256", ".sha256", "digest.sha256");
+
+        private final String digestName;
+        private final String extension;
+        private final String attributeKey;
+
+        private Algorithm(final String digestName, final String extension, final String attributeKey) {
+            this.digestName = digestName;
+            this.extension = extension;
+            this.attributeKey = attributeKey;
+        }
+
+        /**
+         * @return the key of the item attribute with the checksum, the same which Nexus uses for
+         *         the checksums of stored items
+         */
+        String getAttributeKey() {
+            return attributeKey;
+        }
+
+        /**
+         * @return the path of the file whose checksum is addressed by the given path
+         */
+        String getChecksummedPath(final String checksumPath) {
+            return checksumPath.substring(0, checksumPath.length() - extension.length());
+        }
+
+        /**
+         * @return the algorithm of the checksum file addressed by the given path, or
+         *         <code>null</code> if the path does not end with the extension of a checksum file
+         */
+        static Algorithm forChecksumPath(final String path) {
+            for (final Algorithm algorithm : values()) {
+                if (path.endsWith(algorithm.extension) && path.length() > algorithm.extension.length()) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final String FILE_SUFFIX = ".checksums";
+
+    private static final String HEADER = "# unzip entry checksums, format 1: sha1 md5 sha256 entry";
+    private static final String STAMP_PREFIX = "archive";
+    private static final char SEPARATOR = '\t';
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File archive;
+    private final File file;
+    private final long archiveLength;
+    private final long archiveModified;
+    private final Logger logger;
+    // null until the file is loaded
+    private volatile ConcurrentMap<String, String[]> checksums;
+    // whether the file contains the header for the current archive and can be appended to
+    private boolean fileCurrent = false;
+    private volatile long lastUsed;
+
+    ArchiveChecksums(final File archive, final Logger logger) {
+        this.archive = archive;
+        this.file = new File(archive.getPath() + FILE_SUFFIX);
+        this.archiveLength = archive.length();
+        this.archiveModified = archive.lastModified();
+        this.logger = logger;
+    }
+
+    /**
+     * @return <code>false</code> if the archive was replaced or deleted since these checksums were
+     *         created
+     */
+    boolean isCurrent() {
+        return archive.length() == archiveLength && archive.lastModified() == archiveModified;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void setLastUsed(final long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+
+    /**
+     * @return the known checksums of the entry, indexed by the ordinal of the {@link Algorithm},
+     *         or <code>null</code> if they were not computed yet
+     */
+    String[] get(final String entryName) {
+        return loaded().get(entryName);
+    }
+
+    /**
+     * Returns the checksums of the entry, which are computed by reading the entry if they are not
+     * known yet.
+     *
+     * @return the checksums of the entry, indexed by the ordinal of the {@link Algorithm}
+     */
+    String[] getOrCompute(final ZipFile zipFile, final ZipEntry entry) throws IOException {
+        final String[] known = get(entry.getName());
+        if (known != null) {
+            return known;
+        }
+        // computed without holding the lock, the checksums of other entries stay available
+        return put(entry.getName(), digest(zipFile, entry, new byte[BUFFER_SIZE]));
+    }
+
+    /**
+     * Computes the checksums of all entries which are not known yet and stores them at once.
+     */
+    void computeAll() throws IOException {
+        final ConcurrentMap<String, String[]> known = loaded();
+        final Map<String, String[]> computed = new LinkedHashMap<String, String[]>();
+        final ZipFile zipFile = new ZipFile(archive);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                final ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && !known.containsKey(entry.getName())) {
+                    computed.put(entry.getName(), toHex(digest(zipFile, entry, buffer)));
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        putAll(computed);
+    }
+
+    /**
+     * Adds the checksums of an entry which were computed while its content was read.
+     *
+     * @param digests
+     *            the digests created by {@link #newDigests()}, updated with the complete content of
+     *            the entry
+     * @return the checksums of the entry, which are the already known ones if the checksums were
+     *         added concurrently
+     */
+    synchronized String[] put(final String entryName, final MessageDigest[] digests) {
+        final ConcurrentMap<String, String[]> loaded = loaded();
+        final String[] known = loaded.get(entryName);
+        if (known != null) {
+            return known;
+        }
+        final String[] computed = toHex(digests);
+        loaded.put(entryName, computed);
+        store(loaded, Collections.singletonMap(entryName, computed));
+        return computed;
+    }
+
+    private synchronized void putAll(final Map<String, String[]> computed) {
+        final ConcurrentMap<String, String[]> loaded = loaded();
+        final Map<String, String[]> added = new LinkedHashMap<String, String[]>();
+        for (final Map.Entry<String, String[]> entry : computed.entrySet()) {
+            if (loaded.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                added.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!added.isEmpty()) {
+            store(loaded, added);
+        }
+    }
+
+    /**
+     * @return new digests for all {@link Algorithm}s, indexed by their ordinal
+     */
+    static MessageDigest[] newDigests() {
+        final Algorithm[] algorithms = Algorithm.values();
+        final MessageDigest[] digests = new MessageDigest[algorithms.length];
+        try {
+            for (int i = 0; i < algorithms.length; i++) {
+                digests[i] = MessageDigest.getInstance(algorithms[i].digestName);
+            }
+        } catch (final NoSuchAlgorithmException e) {
+            // all of them are required to be supported by every Java platform
+            throw new IllegalStateException(e);
+        }
+        return digests;
+    }
+
+    static void update(final MessageDigest[] digests, final byte[] bytes, final int offset, final int length) {
+        for (final MessageDigest digest : digests) {
+            digest.update(bytes, offset, length);
+        }
+    }
+
+    private static MessageDigest[] digest(final ZipFile zipFile, final ZipEntry entry, final byte[] buffer)
+            throws IOException {
+        final MessageDigest[] digests = newDigests();
+        final InputStream stream = zipFile.getInputStream(entry);
+        try {
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                update(digests, buffer, 0, read);
+            }
+        } finally {
+            stream.close();
+        }
+        return digests;
+    }
+
+    private static String[] toHex(final MessageDigest[] digests) {
+        final String[] checksums = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            checksums[i] = toHex(digests[i].digest());
+        }
+        return checksums;
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private ConcurrentMap<String, String[]> loaded() {
+        ConcurrentMap<String, String[]> loaded = checksums;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = checksums;
+                if (loaded == null) {
+                    loaded = load();
+                    checksums = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private ConcurrentMap<String, String[]> load() {
+        final ConcurrentMap<String, String[]> loaded = new ConcurrentHashMap<String, String[]>();
+        if (!file.isFile()) {
+            return loaded;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            try {
+                read(reader, loaded);
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            logger.warn("Unable to read the checksums of " + archive, e);
+        }
+        return loaded;
+    }
+
+    private void read(final BufferedReader reader, final Map<String, String[]> checksums) throws IOException {
+        String line = reader.readLine();
+        if (!HEADER.equals(line)) {
+            return;
+        }
+        line = reader.readLine();
+        if (!getStamp().equals(line)) {
+            // written for a replaced archive
+            return;
+        }
+        fileCurrent = true;
+        final int algorithms = Algorithm.values().length;
+        while ((line = reader.readLine()) != null) {
+            final String[] fields = line.split(String.valueOf(SEPARATOR), algorithms + 1);
+            // e.g. the last line may be incomplete after a crash
+            if (fields.length == algorithms + 1 && fields[algorithms].length() > 0) {
+                checksums.put(fields[algorithms], copyOfChecksums(fields));
+            }
+        }
+    }
+
+    private static String[] copyOfChecksums(final String[] fields) {
+        final String[] result = new String[Algorithm.values().length];
+        System.arraycopy(fields, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Appends the added checksums to the file, or replaces the file with all checksums if it
+     * belongs to a previous archive.
+     */
+    private void store(final Map<String, String[]> checksums, final Map<String, String[]> added) {
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, fileCurrent),
+                    UTF_8));
+            try {
+                if (fileCurrent) {
+                    for (final Map.Entry<String, String[]> entry : added.entrySet()) {
+                        writeLine(writer, entry.getKey(), entry.getValue());
+                    }
+                } else {
+                    // replaces the file of a previous archive
+                    writer.write(HEADER);
+                    writer.write('\n');
+                    writer.write(getStamp());
+                    writer.write('\n');
+                    for (final Map.Entry<String, String[]> entry : checksums.entrySet()) {
+                        writeLine(writer, entry.getKey(), entry.getValue());
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            fileCurrent = true;
+        } catch (final IOException e) {
+            // the checksums are computed again after a restart
+            logger.warn("Unable to store the checksums of " + archive, e);
+        }
+    }
+
+    private static void writeLine(final Writer writer, final String entryName, final String[] entryChecksums)
+            throws IOException {
+        for (final String checksum : entryChecksums) {
+            writer.write(checksum);
+            writer.write(SEPARATOR);
+        }
+        writer.write(entryName);
+        writer.write('\n');
+    }
+
+    private String getStamp() {
+        return STAMP_PREFIX + SEPARATOR + archiveLength + SEPARATOR + archiveModified;
+    }
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.RequestParameters;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ClassifiedPath;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResult;
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathClassifier;
+import org.eclipse.tycho.nexus.internal.plugin.cache.RequestPathConverter;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.JsonWriter;
+import org.sonatype.nexus.proxy.IllegalRequestException;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractContentLocator;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+/**
+ * Lists the complete tree of an archive with one request, instead of one request per folder. The
+ * archive is passed as query parameter <code>path</code> of {@link #TREE_PATH}, with its path in
+ * the unzip repository, e.g. <code>/group/artifact/SNAPSHOT/artifact-SNAPSHOT-assembly.zip-unzip/</code>.
+ * <p>
+ * The tree is returned as JSON document <code>{"archive":...,"entries":[...]}</code> with one
+ * object per entry in the order of the central directory of the archive. Each entry has the
+ * members <code>name</code> (with trailing slash for folders), <code>size</code>,
+ * <code>compressedSize</code>, <code>method</code>, <code>crc32</code> (hexadecimal) and
+ * <code>lastModified</code>; unknown sizes are <code>-1</code>. The document is generated from
+ * the central directory while it is sent, so that it never has to be kept in memory as a whole.
+ */
+public final class ArchiveTreeResource {
+
+    /**
+     * The path of the tree document within the unzip repository.
+     */
+    public static final String TREE_PATH = "/.meta/unzip/tree.json";
+
+    static final String MIME_TYPE = "application/json";
+    static final String PATH_PARAMETER = "path";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // number of entries written into the buffer of the stream at once
+    private static final int ENTRIES_PER_CHUNK = 64;
+
+    private ArchiveTreeResource() {
+    }
+
+    /**
+     * @param requestPath
+     *            a request path of the unzip repository
+     * @return <code>true</code> if the path addresses the tree document
+     */
+    public static boolean isTreePath(final String requestPath) {
+        // also without leading slash, compared in place to keep the check free of allocations
+        return TREE_PATH.equals(requestPath)
+                || (requestPath.length() == TREE_PATH.length() - 1 && TREE_PATH.startsWith(requestPath, 1));
+    }
+
+    /**
+     * Resolves the archive of the request and creates the item for its tree document.
+     *
+     * @param repository
+     *            the unzip repository
+     * @param request
+     *            the request for the tree document
+     * @return the item containing the tree document
+     * @throws IllegalRequestException
+     *             if the request does not address an archive in the unzip repository
+     * @throws ItemNotFoundException
+     *             if the archive does not exist
+     * @throws LocalStorageException
+     *             if the archive cannot be retrieved
+     */
+    public static StorageFileItem createItem(final DefaultUnzipRepository repository,
+            final ResourceStoreRequest request) throws IllegalRequestException, ItemNotFoundException,
+            LocalStorageException {
+        final String path = RequestParameters.of(request).get(PATH_PARAMETER);
+        if (path == null) {
+            throw new IllegalRequestException(request, "No archive, use the parameter " + PATH_PARAMETER);
+        }
+        final ConversionResult conversionResult = RequestPathConverter.convert(repository.getMasterRepository(),
+                new ResourceStoreRequest(path), repository.isUseVirtualVersion(),
+                repository.getConversionResultCache());
+        final ClassifiedPath classifiedPath = PathClassifier.classify(conversionResult.getConvertedPath());
+        if (!classifiedPath.isArchivePath()) {
+            throw new IllegalRequestException(request, "Not the path of an archive in the unzip repository: "
+                    + path);
+        }
+        final String archivePath = classifiedPath.getArchivePath();
+        final File archive = repository.getCache().getArchive(archivePath);
+
+        final DefaultStorageFileItem item = new DefaultStorageFileItem(repository, request, true, false,
+                new TreeContentLocator(archive, archivePath + Util.UNZIP_TYPE_EXTENSION));
+        item.setModified(archive.lastModified());
+        return item;
+    }
+
+    private static final class TreeContentLocator extends AbstractContentLocator {
+        private final File archive;
+        private final String unzipPath;
+
+        TreeContentLocator(final File archive, final String unzipPath) {
+            super(MIME_TYPE, true, ContentLocator.UNKNOWN_LENGTH);
+            this.archive = archive;
+            this.unzipPath = unzipPath;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new TreeStream(new ZipFile(archive), unzipPath);
+        }
+    }
+
+    /**
+     * Writes the tree document chunk by chunk while it is read, and closes the archive with the
+     * stream.
+     */
+    private static final class TreeStream extends InputStream {
+        private final ZipFile zipFile;
+        private final Enumeration<? extends ZipEntry> entries;
+        private byte[] buffer;
+        private int position = 0;
+        private boolean first = true;
+        private boolean finished = false;
+
+        TreeStream(final ZipFile zipFile, final String unzipPath) {
+            this.zipFile = zipFile;
+            this.entries = zipFile.entries();
+            final JsonWriter json = new JsonWriter().beginObject();
+            json.name("archive").value(unzipPath);
+            json.name("entries");
+            this.buffer = (json.toString() + "[").getBytes(UTF_8);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * @return <code>false</code> if the document is completely read
+         */
+        private boolean fill() {
+            while (position == buffer.length) {
+                if (finished) {
+                    return false;
+                }
+                final StringBuilder chunk = new StringBuilder();
+                for (int i = 0; i < ENTRIES_PER_CHUNK && entries.hasMoreElements(); i++) {
+                    if (!first) {
+                        chunk.append(',');
+                    }
+                    first = false;
+                    chunk.append(toJson(entries.nextElement()));
+                }
+                if (!entries.hasMoreElements()) {
+                    chunk.append("]}");
+                    finished = true;
+                }
+                buffer = chunk.toString().getBytes(UTF_8);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zipFile.close();
+        }
+    }
+
+    private static String toJson(final ZipEntry entry) {
+        final JsonWriter json = new JsonWriter().beginObject();
+        json.name("name").value(entry.getName());
+        json.name("size").value(entry.getSize());
+        json.name("compressedSize").value(entry.getCompressedSize());
+        json.name("method").value(entry.getMethod() == ZipEntry.STORED ? "STORED" : "DEFLATED");
+        json.name("crc32").value(entry.getCrc() < 0 ? null : String.format("%08x", entry.getCrc()));
+        json.name("lastModified").value(entry.getTime());
+        return json.endObject().toString();
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * The checksums of the entries of the cached archives of an unzip repository. Checksum files like
+ * <code>.../archive.zip-unzip/plugins/bundle.jar.sha1</code> are served from these checksums, and
+ * the known checksums of an entry are set as attributes of its {@link ZippedStorageFileItem}.
+ * <p>
+ * The checksums of the most recently used archives are kept in memory, the others are read again
+ * from the file next to the cached archive when they are needed. The archives are looked up in a
+ * {@link ConcurrentHashMap} without a lock, so that lookups in different archives never wait for
+ * each other; only loading the checksums of an archive locks that archive.
+ */
+public class ChecksumStore {
+
+    /**
+     * The default maximum number of archives whose checksums are kept in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+    private final ConcurrentMap<String, ArchiveChecksums> archives;
+    // orders the lookups, to drop the least recently used archive
+    private final AtomicLong clock = new AtomicLong();
+    private final Logger logger;
+
+    /**
+     * @param capacity
+     *            the maximum number of archives whose checksums are kept in memory
+     * @param logger
+     *            the logger for problems with the files of the checksums
+     */
+    public ChecksumStore(final int capacity, final Logger logger) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.logger = logger;
+        this.archives = new ConcurrentHashMap<String, ArchiveChecksums>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * @param archive
+     *            the cached archive
+     * @return the checksums of the entries of the archive
+     */
+    ArchiveChecksums get(final File archive) {
+        final String key = archive.getPath();
+        ArchiveChecksums checksums = archives.get(key);
+        while (checksums == null || !checksums.isCurrent()) {
+            final ArchiveChecksums created = new ArchiveChecksums(archive, logger);
+            created.setLastUsed(clock.incrementAndGet());
+            final boolean added = checksums == null ? archives.putIfAbsent(key, created) == null : archives.replace(
+                    key, checksums, created);
+            if (added) {
+                checksums = created;
+                if (archives.size() > capacity) {
+                    evictLeastRecentlyUsed();
+                }
+            } else {
+                // added or replaced concurrently
+                checksums = archives.get(key);
+            }
+        }
+        checksums.setLastUsed(clock.incrementAndGet());
+        return checksums;
+    }
+
+    /**
+     * Computes the checksums of all entries of a newly cached archive, so that already the first
+     * lookup of an entry carries its checksums. If this fails, the checksums of an entry are
+     * computed when they are needed.
+     *
+     * @param archive
+     *            the cached archive
+     */
+    public void computeAll(final File archive) {
+        try {
+            get(archive).computeAll();
+        } catch (final IOException e) {
+            logger.warn("Unable to compute the checksums of " + archive, e);
+        }
+    }
+
+    int size() {
+        return archives.size();
+    }
+
+    // only called when an archive is added, and bounded by the capacity
+    private void evictLeastRecentlyUsed() {
+        while (archives.size() > capacity) {
+            String eldestKey = null;
+            ArchiveChecksums eldest = null;
+            for (final Map.Entry<String, ArchiveChecksums> entry : archives.entrySet()) {
+                if (eldest == null || entry.getValue().getLastUsed() < eldest.getLastUsed()) {
+                    eldestKey = entry.getKey();
+                    eldest = entry.getValue();
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            archives.remove(eldestKey, eldest);
+        }
+    }
+}
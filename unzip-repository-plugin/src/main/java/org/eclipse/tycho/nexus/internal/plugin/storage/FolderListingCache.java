@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoizes the listings of master folders which are browsed through the unzip repository, see
+ * {@link ZipAwareStorageCollectionItem}. A listing only contains the paths and modification times
+ * of the displayed members, and it is valid as long as the modification time of the master folder,
+ * which changes whenever a member is added, removed or replaced, is the same.
+ * <p>
+ * Listings are also removed as soon as an item in the folder or in one of its sub-folders changes
+ * in the master repository, e.g. the <code>maven-metadata.xml</code> of a snapshot version which
+ * determines the displayed snapshot archives. The number of listings is bounded, the least
+ * recently used ones are dropped first.
+ */
+public class FolderListingCache {
+
+    /**
+     * The default maximum number of memoized listings.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The displayed members of a master folder, i.e. its sub-folders and its archives.
+     */
+    static final class Listing {
+
+        private final long stamp;
+        private final boolean useVirtualVersion;
+        private String[] paths = new String[16];
+        private long[] modified = new long[16];
+        private boolean[] archives = new boolean[16];
+        private int size = 0;
+
+        /**
+         * @param stamp
+         *            the modification time of the listed master folder
+         * @param useVirtualVersion
+         *            whether the snapshot archives are displayed with their virtual version
+         */
+        Listing(final long stamp, final boolean useVirtualVersion) {
+            this.stamp = stamp;
+            this.useVirtualVersion = useVirtualVersion;
+        }
+
+        void addFolder(final String path, final long lastModified) {
+            add(path, lastModified, false);
+        }
+
+        void addArchive(final String path, final long lastModified) {
+            add(path, lastModified, true);
+        }
+
+        private void add(final String path, final long lastModified, final boolean archive) {
+            if (size == paths.length) {
+                paths = Arrays.copyOf(paths, size * 2);
+                modified = Arrays.copyOf(modified, size * 2);
+                archives = Arrays.copyOf(archives, size * 2);
+            }
+            paths[size] = path;
+            modified[size] = lastModified;
+            archives[size] = archive;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        String getPath(final int index) {
+            return paths[index];
+        }
+
+        long getModified(final int index) {
+            return modified[index];
+        }
+
+        boolean isArchive(final int index) {
+            return archives[index];
+        }
+    }
+
+    private final Map<String, Listing> listings;
+
+    /**
+     * @param capacity
+     *            the maximum number of memoized listings, <code>0</code> disables the cache
+     */
+    public FolderListingCache(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        this.listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Listing> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the memoized listing of the folder, or <code>null</code> if there is none for the
+     *         given modification time of the folder and handling of virtual versions
+     */
+    synchronized Listing get(final String folderPath, final long stamp, final boolean useVirtualVersion) {
+        final Listing listing = listings.get(folderPath);
+        if (listing == null || listing.stamp != stamp || listing.useVirtualVersion != useVirtualVersion) {
+            return null;
+        }
+        return listing;
+    }
+
+    /**
+     * Memoizes a listing, which must not be changed afterwards.
+     */
+    synchronized void put(final String folderPath, final Listing listing) {
+        listings.put(folderPath, listing);
+    }
+
+    /**
+     * Removes the listings which may be affected by a change of the given item, i.e. the listings
+     * of its folder and of all folders above, up to the root folder.
+     *
+     * @param itemPath
+     *            the path of the changed item in the master repository
+     */
+    public synchronized void invalidate(final String itemPath) {
+        String folder = itemPath;
+        do {
+            folder = getParentFolder(folder);
+            listings.remove(folder);
+        } while (!"/".equals(folder));
+    }
+
+    /**
+     * Removes all memoized listings.
+     */
+    public synchronized void clear() {
+        listings.clear();
+    }
+
+    synchronized int size() {
+        return listings.size();
+    }
+
+    private static String getParentFolder(final String path) {
+        // item paths have no trailing slash, except for the root folder
+        final int slash = path.lastIndexOf('/', path.length() - 2);
+        return slash <= 0 ? "/" : path.substring(0, slash);
+    }
+}
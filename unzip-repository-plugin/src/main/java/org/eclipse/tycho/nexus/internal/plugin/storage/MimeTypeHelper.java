@@ -26,6 +26,8 @@ public class MimeTypeHelper {
         result.put("css", "text/css");
         result.put("less", "text/css");
         result.put("jar", "application/zip");
+        result.put("xz", "application/x-xz");
+        result.put("index", "text/plain");
         return result;
     }
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,4 +32,19 @@ public class Util {
         }
         return false;
     }
+
+    /**
+     * Checks whether the given path is the path of a zip file, based on the file extensions which
+     * Nexus maps to the mime types of zip files. This is equivalent to {@link #checkIfZip(StorageItem)}
+     * for file items, but does not need to resolve the content locator of the item.
+     *
+     * @param path
+     *            the path of a file
+     * @return <code>true</code> if the path ends with <code>.zip</code> or <code>.jar</code>,
+     *         otherwise <code>false</code>
+     */
+    public static boolean isZipPath(final String path) {
+        return path.regionMatches(true, path.length() - 4, ".zip", 0, 4)
+                || path.regionMatches(true, path.length() - 4, ".jar", 0, 4);
+    }
 }
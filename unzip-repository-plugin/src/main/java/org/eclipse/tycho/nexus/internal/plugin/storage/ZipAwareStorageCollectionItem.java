@@ -10,8 +10,9 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.storage;
 
+import java.util.AbstractList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.RandomAccess;
 
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
 import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResult;
@@ -31,6 +32,9 @@ import org.sonatype.nexus.proxy.item.StorageItem;
  * This class implements a collection storage item that returns for contained zip files instances of
  * {@link ZipStorageCollectionItem} when its content is listed. By this a link to browse the zip
  * file is displayed when this collection is browsed in the web.
+ * <p>
+ * The listings are memoized in the {@link FolderListingCache} of the repository, so that browsing
+ * an unchanged folder again neither lists the master folder nor resolves its snapshot version.
  */
 public class ZipAwareStorageCollectionItem extends DefaultStorageCollectionItem {
 
@@ -57,11 +61,27 @@ public class ZipAwareStorageCollectionItem extends DefaultStorageCollectionItem
     @Override
     public Collection<StorageItem> list() throws AccessDeniedException, NoSuchResourceStoreException,
             IllegalOperationException, ItemNotFoundException, LocalStorageException {
-        final Collection<StorageItem> membersToDisplay = new LinkedList<StorageItem>();
+        final FolderListingCache listingCache = repository.getFolderListingCache();
+        final String folderPath = collectionStorageItem.getPath();
+        final long stamp = collectionStorageItem.getModified();
+        final boolean useVirtualVersion = repository.isUseVirtualVersion();
+        FolderListingCache.Listing listing = listingCache.get(folderPath, stamp, useVirtualVersion);
+        if (listing == null) {
+            listing = createListing(stamp, useVirtualVersion);
+            listingCache.put(folderPath, listing);
+        }
+        // the members are created on demand and never access the zip files
+        return new ListedMembers(listing);
+    }
+
+    private FolderListingCache.Listing createListing(final long stamp, final boolean useVirtualVersion)
+            throws IllegalOperationException, ItemNotFoundException, LocalStorageException,
+            AccessDeniedException, NoSuchResourceStoreException {
         final ResourceStoreRequest request = new ResourceStoreRequest(collectionStorageItem.getPath()
                 + "/artifact-1-SNAPSHOT.xml");
+        // only resolved for snapshot version folders, shared with other listings via the cache
         final ConversionResult snapshotConversionResult = RequestPathConverter.convert(
-                repository.getMasterRepository(), request, repository.isUseVirtualVersion());
+                repository.getMasterRepository(), request, useVirtualVersion, repository.getConversionResultCache());
 
         Collection<StorageItem> members;
         try {
@@ -69,28 +89,58 @@ public class ZipAwareStorageCollectionItem extends DefaultStorageCollectionItem
         } catch (@SuppressWarnings("deprecation") final org.sonatype.nexus.proxy.StorageException e) {
             throw new LocalStorageException(e);
         }
+        final FolderListingCache.Listing listing = new FolderListingCache.Listing(stamp, useVirtualVersion);
         for (final StorageItem member : members) {
             if (member instanceof StorageCollectionItem) {
-                membersToDisplay.add(member);
-            } else if (Util.checkIfZip(member)) {
+                listing.addFolder(member.getPath(), member.getModified());
+            } else if (Util.isZipPath(member.getPath())) {
                 if (snapshotConversionResult.isPathConverted()) {
                     if (member.getPath().contains(snapshotConversionResult.getLatestVersion())) {
                         String virtualSnapshotArtifactPath = member.getPath().replace(
                                 snapshotConversionResult.getLatestVersion(), "SNAPSHOT");
-                        membersToDisplay.add(createStorageItemForRootOfZipFile(member, virtualSnapshotArtifactPath));
+                        listing.addArchive(virtualSnapshotArtifactPath, member.getModified());
                     }
                 } else {
-                    membersToDisplay.add(createStorageItemForRootOfZipFile(member, member.getPath()));
+                    listing.addArchive(member.getPath(), member.getModified());
                 }
             }
         }
-
-        return membersToDisplay;
+        return listing;
     }
 
-    private ZippedStorageCollectionItem createStorageItemForRootOfZipFile(final StorageItem member, String path)
-            throws ItemNotFoundException, LocalStorageException {
-        return new ZippedStorageCollectionItem(ZippedItem.newZippedChildItem(repository,
-                collectionStorageItem.getItemContext(), path, "", member.getModified(), logger));
+    /**
+     * The members of a memoized listing, created for the current request when they are accessed.
+     */
+    private class ListedMembers extends AbstractList<StorageItem> implements RandomAccess {
+
+        private final FolderListingCache.Listing listing;
+
+        ListedMembers(final FolderListingCache.Listing listing) {
+            this.listing = listing;
+        }
+
+        @Override
+        public StorageItem get(final int index) {
+            if (index < 0 || index >= listing.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + listing.size());
+            }
+            final String path = listing.getPath(index);
+            final long modified = listing.getModified(index);
+            if (listing.isArchive(index)) {
+                return ZippedItem.newArchiveRootItem(repository, collectionStorageItem.getItemContext(), path,
+                        modified, logger);
+            }
+            final ResourceStoreRequest request = new ResourceStoreRequest(path);
+            request.getRequestContext().setParentContext(collectionStorageItem.getItemContext());
+            final DefaultStorageCollectionItem folder = new DefaultStorageCollectionItem(repository, request, true,
+                    false);
+            folder.setModified(modified);
+            return folder;
+        }
+
+        @Override
+        public int size() {
+            return listing.size();
+        }
     }
 }
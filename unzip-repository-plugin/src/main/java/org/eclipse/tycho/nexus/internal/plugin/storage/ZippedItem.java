@@ -13,21 +13,33 @@ package org.eclipse.tycho.nexus.internal.plugin.storage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents.Type;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.RequestTimings;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog;
 import org.slf4j.Logger;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.RequestContext;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.FileContentLocator;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
 import org.sonatype.nexus.util.WrappingInputStream;
 
 /**
@@ -37,25 +49,111 @@ import org.sonatype.nexus.util.WrappingInputStream;
 public class ZippedItem {
 
     /**
-     * Simple utility class used to close a dedicated ZipFile on closing a provided InputStream.
+     * Simple utility class used to close a dedicated ZipFile on closing a provided InputStream. The
+     * time from opening until closing the stream is recorded as {@link Phase#STREAMING}. The bytes
+     * read are added to the hot items of the repository and to the {@link Type#ENTRY_STREAM} event.
+     * If the checksums of the entry are not known yet, they are computed while the entry is read,
+     * and added to the checksums of the archive once the entry was read completely.
      */
     private class ZipClosingEntryStream extends WrappingInputStream {
 
         private final ZipFile zipFile;
-
-        public ZipClosingEntryStream(final InputStream inputStream, final ZipFile zipFile) {
+        private final ZipEntry entry;
+        private final long start = RequestTimings.start();
+        private final FlightRecorderEvents.Event event;
+        private final ArchiveChecksums checksums;
+        private final byte[] singleByte = new byte[1];
+        private MessageDigest[] digests;
+        private long bytesRead = 0;
+        private boolean closed = false;
+
+        public ZipClosingEntryStream(final InputStream inputStream, final ZipFile zipFile, final ZipEntry entry,
+                final ArchiveChecksums checksums) {
             super(inputStream);
             this.zipFile = zipFile;
+            this.entry = entry;
+            this.checksums = checksums;
+            if (checksums != null) {
+                digests = ArchiveChecksums.newDigests();
+            }
+            this.event = FlightRecorderEvents.begin(Type.ENTRY_STREAM, repository.getId(), zipItemPath);
+            if (event != null) {
+                event.set("entry", pathInZip).set("method", getMethodName(entry));
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read != -1) {
+                bytesRead++;
+                if (digests != null) {
+                    singleByte[0] = (byte) read;
+                    ArchiveChecksums.update(digests, singleByte, 0, 1);
+                }
+            } else {
+                addChecksums();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                bytesRead += read;
+                if (digests != null) {
+                    ArchiveChecksums.update(digests, b, off, read);
+                }
+            } else if (read == -1) {
+                addChecksums();
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // e.g. for range requests, the checksums need the complete content
+            digests = null;
+            final long skipped = super.skip(n);
+            bytesRead += skipped;
+            return skipped;
+        }
+
+        private void addChecksums() {
+            if (digests != null && bytesRead == entry.getSize()) {
+                checksums.put(entry.getName(), digests);
+            }
+            digests = null;
+        }
+
+        @Override
+        public int read(final byte[] b) throws IOException {
+            return read(b, 0, b.length);
         }
 
         @Override
         public void close() throws IOException {
-            super.close();
-            zipFile.close();
+            try {
+                super.close();
+                zipFile.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    repository.getRequestTimings().record(Phase.STREAMING, start);
+                    repository.getHotItems().addBytes(zipItemPath, getPath(), bytesRead);
+                    if (event != null) {
+                        event.set("bytes", bytesRead).commit();
+                    }
+                }
+            }
         }
 
     }
 
+    private static final String CHECKSUM_MIME_TYPE = "text/plain";
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
     private final DefaultUnzipRepository repository;
     private StorageItem zippedStorageItem;
     private final String pathInZip;
@@ -119,24 +217,44 @@ public class ZippedItem {
     }
 
     /**
-     * This constructor is used to create ZippedItem objects for folders and files while browsing
-     * inside a zip file.
+     * Creates the storage item of the root folder of a zip file which is listed as member of a
+     * master folder. Unlike {@link #newZippedChildItem}, this never needs to access the zip file.
+     *
+     * @param parentContext
+     *            the context of the request to the master folder being listed
+     * @param zipItemPath
+     *            the path to the zip file
+     * @param lastModified
+     *            the modification timestamp of the zip file
+     */
+    static StorageCollectionItem newArchiveRootItem(final DefaultUnzipRepository repository,
+            final RequestContext parentContext, final String zipItemPath, final long lastModified,
+            final Logger logger) {
+        final ResourceStoreRequest requestForRoot = createRequestForChild(parentContext, zipItemPath, "");
+        final ZippedItem root = new ZippedItem(repository, requestForRoot, zipItemPath, "", lastModified, logger);
+        final ZippedStorageCollectionItem rootItem = new ZippedStorageCollectionItem(root);
+        root.zippedStorageItem = rootItem;
+        return rootItem;
+    }
+
+    /**
+     * Creates the storage item of a member of a folder while browsing inside a zip file.
      * 
-     * @param parentItem
-     *            the parent ZippedItem
-     * @param entry
-     *            the zip entry representing the zipped file in the zip file
-     * @throws ItemNotFoundException
+     * @param name
+     *            the name of the zip entry of the member, with trailing slash for folders
+     * @param size
+     *            the uncompressed size of the zip entry
      */
-    public static ZippedItem newZippedChildItem(final ZippedItem parentItem, final ZipEntry entry, final Logger logger)
-            throws ItemNotFoundException {
-        ResourceStoreRequest requestForChild = createRequestForChild(parentItem.getRequest().getRequestContext(),
-                parentItem.zipItemPath, entry.getName());
-
-        ZippedItem result = new ZippedItem(parentItem.getRepository(), requestForChild, parentItem.zipItemPath,
-                entry.getName(), parentItem.getLastModified(), logger);
-        result.initZippedStorageItem(entry);
-        return result;
+    private StorageItem newMemberItem(final String name, final long size) {
+        final ResourceStoreRequest requestForChild = createRequestForChild(request.getRequestContext(), zipItemPath,
+                name);
+        final ZippedItem member = new ZippedItem(repository, requestForChild, zipItemPath, name, lastModified, logger);
+        if (name.endsWith("/")) {
+            member.zippedStorageItem = new ZippedStorageCollectionItem(member);
+        } else {
+            member.zippedStorageItem = new ZippedStorageFileItem(member, size);
+        }
+        return member.zippedStorageItem;
     }
 
     private static ResourceStoreRequest createRequestForChild(RequestContext parentContext, String zipItemPath,
@@ -189,11 +307,10 @@ public class ZippedItem {
     }
 
     private static String getPath(String zipItemPath, String pathInZip) {
-        final String unzippedPath = zipItemPath + Util.UNZIP_TYPE_EXTENSION;
         if (pathInZip != null && !"".equals(pathInZip)) {
-            return unzippedPath + "/" + pathInZip;
+            return zipItemPath + Util.UNZIP_TYPE_EXTENSION + "/" + pathInZip;
         } else {
-            return unzippedPath;
+            return zipItemPath + Util.UNZIP_TYPE_EXTENSION;
         }
     }
 
@@ -238,6 +355,40 @@ public class ZippedItem {
         }
     }
 
+    /**
+     * Sets the checksums of the entry as attributes of the storage item, so that Nexus does not
+     * need to read the entry to compute them. Nexus also derives the ETag of the item from the
+     * SHA-1 attribute, and answers conditional requests with a matching ETag before the content is
+     * opened. The checksums are computed when the archive is cached, so they are only missing for
+     * archives which were cached before, until the entry was read completely for the first time.
+     * 
+     * @param checksums
+     *            the known checksums of the entry, may be <code>null</code>
+     */
+    private void setChecksumAttributes(final String[] checksums) {
+        if (checksums == null) {
+            return;
+        }
+        for (final ArchiveChecksums.Algorithm algorithm : ArchiveChecksums.Algorithm.values()) {
+            zippedStorageItem.getRepositoryItemAttributes().put(algorithm.getAttributeKey(),
+                    checksums[algorithm.ordinal()]);
+        }
+    }
+
+    private void initChecksumItem(final String checksum) {
+        final DefaultStorageFileItem checksumItem = new DefaultStorageFileItem(repository, request, true, false,
+                new StringContentLocator(checksum, CHECKSUM_MIME_TYPE));
+        checksumItem.setModified(lastModified);
+        zippedStorageItem = checksumItem;
+    }
+
+    private void initGeneratedItem(final File generated) {
+        final DefaultStorageFileItem generatedItem = new DefaultStorageFileItem(repository, request, true, false,
+                new FileContentLocator(generated, getMimeType() != null ? getMimeType() : DEFAULT_MIME_TYPE));
+        generatedItem.setModified(lastModified);
+        zippedStorageItem = generatedItem;
+    }
+
     /**
      * Creates a storage item that represents the file or folder in the zip file. If this zipped
      * item represents the zip file itself, a collection storage item for the zip file is returned.
@@ -260,18 +411,33 @@ public class ZippedItem {
         ZipFile zipFile = null;
         try {
             final File file = repository.getCache().getArchive(zipItemPath);
-            zipFile = new ZipFile(file);
-
-            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            zipFile = openZipFile(file);
 
-            while (entries.hasMoreElements()) {
-                final ZipEntry entry = entries.nextElement();
-                final String entryName = removeTrailingSlash(entry.getName());
-                if (pathInZip.equals(entryName)) {
-                    initZippedStorageItem(entry);
+            final ZipEntry entry = getEntry(zipFile);
+            if (entry != null) {
+                initZippedStorageItem(entry);
+                if (!entry.isDirectory()) {
+                    setChecksumAttributes(repository.getChecksumStore().get(file).get(entry.getName()));
+                }
+                return;
+            }
+            // checksum files are served for all files in the zip file
+            final ArchiveChecksums.Algorithm algorithm = ArchiveChecksums.Algorithm.forChecksumPath(pathInZip);
+            if (algorithm != null) {
+                final ZipEntry checksummedEntry = zipFile.getEntry(algorithm.getChecksummedPath(pathInZip));
+                if (checksummedEntry != null && !checksummedEntry.isDirectory()) {
+                    final String[] checksums = repository.getChecksumStore().get(file)
+                            .getOrCompute(zipFile, checksummedEntry);
+                    initChecksumItem(checksums[algorithm.ordinal()]);
                     return;
                 }
             }
+            // compressed p2 metadata is generated for p2 repositories which don't contain it
+            final File generated = repository.getP2ArtifactIndexStore().getGeneratedMetadata(file, pathInZip);
+            if (generated != null) {
+                initGeneratedItem(generated);
+                return;
+            }
         } catch (final ItemNotFoundException e) {
             throw new LocalStorageException(e);
         } catch (final IOException e) {
@@ -300,19 +466,27 @@ public class ZippedItem {
         return zippedStorageItem;
     }
 
-    private boolean isDirectMember(String otherPathInZip) {
-        if (otherPathInZip.endsWith("/")) {
-            // cut of trailing slash
-            otherPathInZip = otherPathInZip.substring(0, otherPathInZip.length() - 1);
+    private boolean isDirectMember(final String otherPathInZip) {
+        // the trailing slash of folders is ignored
+        int end = otherPathInZip.length();
+        if (end > 0 && otherPathInZip.charAt(end - 1) == '/') {
+            end--;
         }
+        final int nameStart;
         if (pathInZip.length() == 0) {
             // this ZippedItem represents the zip file itself
-            return !otherPathInZip.contains("/");
+            nameStart = 0;
         } else {
             // this ZippedItem represents a folder within a zip file
-            return otherPathInZip.startsWith(pathInZip.toString() + "/") &&
-            /* limit to direct members: */otherPathInZip.indexOf("/", (pathInZip.toString() + "/").length()) == -1;
+            if (end <= pathInZip.length() || !otherPathInZip.startsWith(pathInZip)
+                    || otherPathInZip.charAt(pathInZip.length()) != '/') {
+                return false;
+            }
+            nameStart = pathInZip.length() + 1;
         }
+        // limit to direct members
+        final int slash = otherPathInZip.indexOf('/', nameStart);
+        return slash < 0 || slash >= end;
     }
 
     /**
@@ -334,33 +508,54 @@ public class ZippedItem {
      * @throws ItemNotFoundException
      */
     public StorageItem[] listMembers() throws LocalStorageException, ItemNotFoundException {
+        final List<StorageItem> members = listMembers(0, Integer.MAX_VALUE);
+        return members.toArray(new StorageItem[members.size()]);
+    }
+
+    /**
+     * Returns a page of the direct members of this zipped item, in the order of the archive. Only
+     * the names and sizes of the members on the page are read from the central directory of the
+     * archive. Their storage items are created on each access of the returned list, so that the
+     * members of huge folders can be iterated without holding all of their storage items at once.
+     * 
+     * @param offset
+     *            the number of members to skip
+     * @param limit
+     *            the maximum number of returned members
+     * @return the unmodifiable list of members on the page
+     * @throws LocalStorageException
+     *             is thrown in case of IO errors or if it's tried to list members of a file
+     * @throws ItemNotFoundException
+     */
+    public List<StorageItem> listMembers(final int offset, final int limit) throws LocalStorageException,
+            ItemNotFoundException {
         if (!isDirectory()) {
             throw new LocalStorageException("members cannot be listed for a file");
         }
-
-        final List<StorageItem> members = new LinkedList<StorageItem>();
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Negative offset " + offset + " or limit " + limit);
+        }
 
         final File file = repository.getCache().getArchive(zipItemPath);
         if (file.isDirectory()) {
             throw new LocalStorageException("ZipFile cannot work on directory.");
         }
 
+        final MemberList members = new MemberList();
         ZipFile zipFile = null;
         try {
-            zipFile = new ZipFile(file);
+            zipFile = openZipFile(file);
             final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-
-            while (entries.hasMoreElements()) {
+            // the end of the page, without overflow for unlimited pages
+            final long end = (long) offset + limit;
+            long index = 0;
+            while (entries.hasMoreElements() && index < end) {
                 final ZipEntry entry = entries.nextElement();
                 if (isDirectMember(entry.getName())) {
-                    StorageItem zipEntryItem;
-                    final ZippedItem zippedItem = newZippedChildItem(this, entry, logger);
-                    if (entry.isDirectory()) {
-                        zipEntryItem = new ZippedStorageCollectionItem(zippedItem);
-                    } else {
-                        zipEntryItem = new ZippedStorageFileItem(zippedItem, entry.getSize());
+                    if (index >= offset) {
+                        members.add(entry.getName(), entry.getSize());
                     }
-                    members.add(zipEntryItem);
+                    index++;
                 }
             }
         } catch (final IOException e) {
@@ -375,38 +570,93 @@ public class ZippedItem {
             }
 
         }
+        return members;
+    }
 
-        return members.toArray(new StorageItem[members.size()]);
+    /**
+     * The members of a folder, of which only the names and sizes are kept.
+     */
+    private final class MemberList extends AbstractList<StorageItem> implements RandomAccess {
+
+        private final List<String> names = new ArrayList<String>();
+        private long[] sizes = new long[16];
+
+        void add(final String name, final long size) {
+            if (names.size() == sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+            }
+            sizes[names.size()] = size;
+            names.add(name);
+        }
+
+        @Override
+        public StorageItem get(final int index) {
+            return newMemberItem(names.get(index), sizes[index]);
+        }
+
+        @Override
+        public int size() {
+            return names.size();
+        }
     }
 
     InputStream getStreamOfZippedFile() throws IOException {
 
         try {
             final File file = repository.getCache().getArchive(zipItemPath);
-            ZipFile zipFile;
-
-            zipFile = new ZipFile(file);
-
-            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            final InputStream inputStream = zipFile.getInputStream(getEntry(entries));
-            final ZipClosingEntryStream zipClosingEntryStream = new ZipClosingEntryStream(inputStream, zipFile);
+            final ZipFile zipFile = openZipFile(file);
+
+            final ZipEntry entry = getEntry(zipFile);
+            final InputStream inputStream = zipFile.getInputStream(entry);
+            repository.getHotItems().recordEntry(getPath());
+            // computes the missing checksums of archives cached before while the entry is served for the first time
+            final ArchiveChecksums checksums = repository.getChecksumStore().get(file);
+            final ZipClosingEntryStream zipClosingEntryStream = new ZipClosingEntryStream(inputStream, zipFile,
+                    entry, checksums.get(entry.getName()) == null ? checksums : null);
             return zipClosingEntryStream;
         } catch (final ItemNotFoundException e) {
             throw new IOException(e.getMessage(), e);
         }
     }
 
-    private ZipEntry getEntry(final Enumeration<? extends ZipEntry> entries) {
+    private ZipFile openZipFile(final File file) throws IOException {
+        final long start = RequestTimings.start();
+        final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.ARCHIVE_OPEN, repository.getId(),
+                zipItemPath);
+        try {
+            return new ZipFile(file);
+        } finally {
+            repository.getRequestTimings().record(Phase.ARCHIVE_OPEN, start);
+            if (event != null) {
+                event.set("bytes", file.length()).commit();
+            }
+        }
+    }
 
-        while (entries.hasMoreElements()) {
-            final ZipEntry entry = entries.nextElement();
-            final String entryName = removeTrailingSlash(entry.getName());
-            if (pathInZip.equals(entryName)) {
-                return entry;
+    private ZipEntry getEntry(final ZipFile zipFile) {
+        final long start = RequestTimings.start();
+        final FlightRecorderEvents.Event event = FlightRecorderEvents.begin(Type.ENTRY_LOOKUP, repository.getId(),
+                zipItemPath);
+        ZipEntry entry = null;
+        try {
+            // looked up in the hash table of the central directory instead of creating an entry object for
+            // every entry of the archive; folders are also found without their trailing slash
+            entry = zipFile.getEntry(pathInZip);
+            final SlowRequestLog.Record slowRequestRecord = SlowRequestLog.current();
+            if (slowRequestRecord != null && entry != null) {
+                slowRequestRecord.setEntry(entry.getSize(), getMethodName(entry));
+            }
+            return entry;
+        } finally {
+            repository.getRequestTimings().record(Phase.ENTRY_LOOKUP, start);
+            if (event != null) {
+                event.set("entry", pathInZip).set("hit", entry != null).set("method", "index").commit();
             }
         }
+    }
 
-        return null;
+    private static String getMethodName(final ZipEntry entry) {
+        return entry.getMethod() == ZipEntry.STORED ? "STORED" : "DEFLATED";
     }
 
     public long getLastModified() {
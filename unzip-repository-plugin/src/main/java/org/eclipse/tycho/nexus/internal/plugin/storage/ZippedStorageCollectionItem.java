@@ -10,11 +10,12 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.storage;
 
-import java.util.Arrays;
 import java.util.Collection;
 
+import org.eclipse.tycho.nexus.internal.plugin.RequestParameters;
 import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
+import org.sonatype.nexus.proxy.IllegalRequestException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.NoSuchResourceStoreException;
@@ -23,10 +24,22 @@ import org.sonatype.nexus.proxy.item.StorageItem;
 
 /**
  * This class implements a collection storage item for the root folder or a sub-folder inside a zip
- * file that allows to list the direct members of the folder.
+ * file that allows to list the direct members of the folder. The listing can be paged with the
+ * query parameters {@value #OFFSET_PARAMETER} and {@value #LIMIT_PARAMETER} of the request, e.g.
+ * <code>.../archive.zip-unzip/plugins/?offset=1000&amp;limit=500</code>.
  */
 public class ZippedStorageCollectionItem extends DefaultStorageCollectionItem {
 
+    /**
+     * The query parameter for the number of members skipped by the listing.
+     */
+    public static final String OFFSET_PARAMETER = "offset";
+
+    /**
+     * The query parameter for the maximum number of members listed.
+     */
+    public static final String LIMIT_PARAMETER = "limit";
+
     private final ZippedItem zippedItem;
 
     /**
@@ -46,6 +59,28 @@ public class ZippedStorageCollectionItem extends DefaultStorageCollectionItem {
     @Override
     public Collection<StorageItem> list() throws AccessDeniedException, NoSuchResourceStoreException,
             IllegalOperationException, ItemNotFoundException, LocalStorageException {
-        return Arrays.asList(zippedItem.listMembers());
+        final RequestParameters parameters = RequestParameters.of(zippedItem.getRequest());
+        final int offset = getParameter(parameters, OFFSET_PARAMETER, 0);
+        final int limit = getParameter(parameters, LIMIT_PARAMETER, Integer.MAX_VALUE);
+        // the members are created on demand, see ZippedItem#listMembers(int, int)
+        return zippedItem.listMembers(offset, limit);
+    }
+
+    private int getParameter(final RequestParameters parameters, final String name, final int defaultValue)
+            throws IllegalRequestException {
+        final String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (final NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalRequestException(zippedItem.getRequest(), "The parameter " + name
+                + " must be a non-negative number: " + value);
     }
 }
@@ -11,8 +11,14 @@
 package org.eclipse.tycho.nexus.internal.plugin;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.tycho.nexus.internal.plugin.resolve.BatchResolveResource;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.HotItems;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.StatisticsResource;
 import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
 import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedStorageCollectionItem;
 import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedStorageFileItem;
@@ -22,6 +28,7 @@ import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.slf4j.LoggerFactory;
 import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
@@ -74,6 +81,80 @@ public abstract class DefaultUnzipRepositoryTest extends UnzipPluginTestSupport
         unzipRepo.doRetrieveItem(new ResourceStoreRequest("/x.txt"));
     }
 
+    @Test
+    public void testRetrieveStatistics() throws Exception {
+        // access an archive first, so that some locks were acquired
+        unzipRepo.doRetrieveItem(new ResourceStoreRequest("/dir/subdir/archive.zip" + Util.UNZIP_TYPE_EXTENSION));
+        final StorageItem item = unzipRepo.doRetrieveItem(new ResourceStoreRequest(
+                StatisticsResource.STATISTICS_PATH));
+        Assert.assertTrue(item instanceof DefaultStorageFileItem);
+        final DefaultStorageFileItem fileItem = (DefaultStorageFileItem) item;
+        Assert.assertEquals("application/json", fileItem.getMimeType());
+        final String json = IOUtil.toString(fileItem.getInputStream(), "UTF-8");
+        Assert.assertTrue(json, json.startsWith("{\"repository\":\"" + unzipRepo.getId() + "\""));
+        Assert.assertTrue(json, json.contains("\"locks\":{\"acquisitions\":"));
+        Assert.assertFalse(json, json.contains("\"acquisitions\":0,"));
+        Assert.assertTrue(json, json.contains("\"phases\":{\"request\":{\"count\":1,"));
+        Assert.assertTrue(json, json.contains("\"archiveOpen\":{\"count\":"));
+        Assert.assertTrue(json, json.contains("\"p99Nanos\":"));
+    }
+
+    @Test
+    public void testRetrieveStatisticsWithHotItems() throws Exception {
+        final String filePath = "/dir/subdir/archive.zip" + Util.UNZIP_TYPE_EXTENSION + "/test.txt";
+        for (int i = 0; i < 2; i++) {
+            // the bytes are counted when the stream is closed
+            final InputStream stream = ((DefaultStorageFileItem) unzipRepo.doRetrieveItem(new ResourceStoreRequest(
+                    filePath))).getInputStream();
+            try {
+                Assert.assertEquals("some content", IOUtil.toString(stream, "UTF-8"));
+            } finally {
+                stream.close();
+            }
+        }
+        final StorageItem item = unzipRepo.doRetrieveItem(new ResourceStoreRequest(
+                StatisticsResource.STATISTICS_PATH));
+        final String json = IOUtil.toString(((DefaultStorageFileItem) item).getInputStream(), "UTF-8");
+        Assert.assertTrue(json, json.contains("\"hotArchives\":[{\"path\":\"/dir/subdir/archive.zip\",\"requests\":"));
+        Assert.assertTrue(json, json.contains("\"hotEntries\":[{\"path\":\"" + filePath
+                + "\",\"requests\":2,\"maxOverestimation\":0,\"bytes\":24}]"));
+    }
+
+    @Test
+    public void testWarmUpReplaysHotItems() throws Exception {
+        final String filePath = "/dir/subdir/archive.zip" + Util.UNZIP_TYPE_EXTENSION + "/test.txt";
+        unzipRepo.getHotItems().recordArchive("/dir/subdir/archive.zip");
+        unzipRepo.getHotItems().recordEntry(filePath);
+        unzipRepo.getHotItems().recordEntry("/dir/subdir/missing.zip" + Util.UNZIP_TYPE_EXTENSION + "/test.txt");
+
+        new HotItemsWarmUp(unzipRepo, 0, LoggerFactory.getLogger(getClass())).run();
+
+        // both entries were requested, the missing one did not stop the warm-up
+        Assert.assertEquals(2, unzipRepo.getRequestTimings().snapshot(Phase.REQUEST).getCount());
+        // the replay is not counted
+        Assert.assertEquals(1, unzipRepo.getHotItems().get(HotItems.Kind.ARCHIVE).top(1).get(0).getCount());
+        Assert.assertEquals(1, unzipRepo.getHotItems().get(HotItems.Kind.ENTRY).top(1).get(0).getCount());
+        Assert.assertEquals(0, unzipRepo.getHotItems().get(HotItems.Kind.ENTRY).top(1).get(0).getBytes());
+        Assert.assertTrue(unzipRepo.getHotItems().isRecording());
+        // the existing entry was streamed
+        Assert.assertEquals(1, unzipRepo.getRequestTimings().snapshot(Phase.STREAMING).getCount());
+    }
+
+    @Test
+    public void testRetrieveBatchResolution() throws Exception {
+        final ResourceStoreRequest request = new ResourceStoreRequest(BatchResolveResource.RESOLVE_PATH);
+        request.setRequestUrl("http://localhost/nexus/content/repositories/unzip" + BatchResolveResource.RESOLVE_PATH
+                + "?path=/dir/a.txt");
+        try {
+            final StorageItem item = unzipRepo.doRetrieveItem(request);
+            Assert.assertTrue(item instanceof DefaultStorageFileItem);
+            final String json = IOUtil.toString(((DefaultStorageFileItem) item).getInputStream(), "UTF-8");
+            Assert.assertTrue(json, json.contains("{\"path\":\"/dir/a.txt\",\"resolved\":false,"));
+        } finally {
+            unzipRepo.shutdownExecutors();
+        }
+    }
+
     @Test
     public void testRetrieveArchiveAsFile() throws ItemNotFoundException, IllegalOperationException, IOException {
         final String archivePath = "/dir/subdir/archive.zip";
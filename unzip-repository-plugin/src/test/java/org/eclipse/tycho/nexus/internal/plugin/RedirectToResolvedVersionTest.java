@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.tycho.nexus.internal.plugin.statistics.HotItems;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedStorageFileItem;
+import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageLinkItem;
+
+public class RedirectToResolvedVersionTest extends UnzipPluginTestSupport {
+
+    private static final String VIRTUAL_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip-unzip/test.txt";
+    private static final String RESOLVED_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip-unzip/test.txt";
+
+    private DefaultUnzipRepository unzipRepo;
+
+    @Before
+    public void setUp() throws Exception {
+        unzipRepo = createUnzipRepo(createSnapshotRepo());
+    }
+
+    @Test
+    public void testVirtualVersionIsServedByDefault() throws Exception {
+        final StorageItem item = unzipRepo.doRetrieveItem(new ResourceStoreRequest(VIRTUAL_PATH));
+        assertTrue(item instanceof ZippedStorageFileItem);
+    }
+
+    @Test
+    public void testRedirectToResolvedVersion() throws Exception {
+        unzipRepo.setRedirectToResolvedVersion(true);
+        final StorageItem item = unzipRepo.doRetrieveItem(new ResourceStoreRequest(VIRTUAL_PATH));
+        assertTrue(item instanceof StorageLinkItem);
+        final StorageLinkItem link = (StorageLinkItem) item;
+        assertEquals(VIRTUAL_PATH, link.getPath());
+        assertSame(unzipRepo, link.getTarget().getRepository());
+        assertEquals(RESOLVED_PATH, link.getTarget().getPath());
+    }
+
+    @Test
+    public void testResolvedVersionIsServedInRedirectMode() throws Exception {
+        unzipRepo.setRedirectToResolvedVersion(true);
+        final StorageItem item = unzipRepo.doRetrieveItem(new ResourceStoreRequest(RESOLVED_PATH));
+        assertTrue(item instanceof ZippedStorageFileItem);
+    }
+
+    @Test
+    public void testWarmUpResolvesVirtualVersionInRedirectMode() throws Exception {
+        unzipRepo.setRedirectToResolvedVersion(true);
+        unzipRepo.getHotItems().recordVirtualVersion(VIRTUAL_PATH);
+
+        new HotItemsWarmUp(unzipRepo, 0, LoggerFactory.getLogger(getClass())).run();
+        assertEquals(1L, unzipRepo.getRequestTimings().snapshot(Phase.METADATA_RETRIEVAL).getCount());
+        assertEquals(0L, unzipRepo.getRequestTimings().snapshot(Phase.REQUEST).getCount());
+        assertEquals(1L, unzipRepo.getHotItems().get(HotItems.Kind.VIRTUAL_VERSION).top(1).get(0).getCount());
+
+        // the first request of a client takes the warmed up resolution
+        unzipRepo.doRetrieveItem(new ResourceStoreRequest(VIRTUAL_PATH));
+        assertEquals(1L, unzipRepo.getRequestTimings().snapshot(Phase.METADATA_RETRIEVAL).getCount());
+    }
+
+    @AfterClass
+    public static void classTearDown() {
+        TestUtil.cleanUpTestFiles();
+    }
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+public class ConversionResultCacheTest {
+
+    private static final String ARTIFACT_FOLDER = "/org/example/artifact/";
+    private static final String LATEST_PREFIX = ARTIFACT_FOLDER + "SNAPSHOT/artifact-SNAPSHOT";
+    private static final String SNAPSHOT_PREFIX = ARTIFACT_FOLDER + "1.0.0-SNAPSHOT/artifact-1.0.0-SNAPSHOT";
+
+    private Repository repository;
+    private ConversionResultCache cache;
+
+    @Before
+    public void setUp() {
+        repository = EasyMock.createMock(Repository.class);
+        EasyMock.expect(repository.getId()).andStubReturn("snapshots");
+        EasyMock.replay(repository);
+        cache = new ConversionResultCache(ConversionResultCache.DEFAULT_TIME_TO_LIVE, new PathLock());
+    }
+
+    @Test
+    public void testResultIsCached() throws Exception {
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX);
+        final ConversionResult first = cache.get(repository, LATEST_PREFIX, null, request);
+        final ConversionResult second = cache.get(repository, LATEST_PREFIX, null, request);
+        assertSame(first, second);
+        assertEquals(1, request.resolveCount.get());
+    }
+
+    @Test
+    public void testKeyContainsRepositoryAndRange() throws Exception {
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX);
+        final Repository otherRepository = EasyMock.createMock(Repository.class);
+        EasyMock.expect(otherRepository.getId()).andStubReturn("releases");
+        EasyMock.replay(otherRepository);
+
+        cache.get(repository, LATEST_PREFIX, null, request);
+        cache.get(otherRepository, LATEST_PREFIX, null, request);
+        cache.get(repository, LATEST_PREFIX, VersionRange.createFromVersionSpec("[1.0,2.0)"), request);
+        cache.get(repository, LATEST_PREFIX, VersionRange.createFromVersionSpec("[1.0,2.0)"), request);
+        assertEquals(3, request.resolveCount.get());
+    }
+
+    @Test
+    public void testResultExpires() throws Exception {
+        cache.setTimeToLive(1);
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX);
+        cache.get(repository, LATEST_PREFIX, null, request);
+        Thread.sleep(10);
+        cache.get(repository, LATEST_PREFIX, null, request);
+        assertEquals(2, request.resolveCount.get());
+    }
+
+    @Test
+    public void testZeroTimeToLiveDisablesCache() throws Exception {
+        cache.setTimeToLive(0);
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX);
+        cache.get(repository, LATEST_PREFIX, null, request);
+        cache.get(repository, LATEST_PREFIX, null, request);
+        assertEquals(2, request.resolveCount.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidationByArtifactMetadata() throws Exception {
+        cache.get(repository, LATEST_PREFIX, null, new CountingRequest(LATEST_PREFIX));
+        cache.get(repository, SNAPSHOT_PREFIX, null, new CountingRequest(SNAPSHOT_PREFIX));
+        cache.get(repository, "/org/example/other/SNAPSHOT/other-SNAPSHOT", null, new CountingRequest(""));
+        assertEquals(3, cache.size());
+
+        cache.invalidate(ARTIFACT_FOLDER + "maven-metadata.xml");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidationBySnapshotMetadata() throws Exception {
+        // request paths may come without leading slash
+        cache.get(repository, LATEST_PREFIX.substring(1), null, new CountingRequest(LATEST_PREFIX));
+        cache.get(repository, "/org/example/other/SNAPSHOT/other-SNAPSHOT", null, new CountingRequest(""));
+
+        cache.invalidate(ARTIFACT_FOLDER + "1.0.0-SNAPSHOT/maven-metadata.xml");
+        assertEquals(1, cache.size());
+        cache.invalidate("/org/example/maven-metadata.xml");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSessionKeepsResultAcrossInvalidation() throws Exception {
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX);
+        cache.get(repository, LATEST_PREFIX, null, request, "build");
+        cache.invalidate(ARTIFACT_FOLDER + "maven-metadata.xml");
+
+        final ConversionResult pinned = cache.get(repository, LATEST_PREFIX, null, request, "build");
+        assertTrue(pinned.isPinned());
+        assertEquals(1, request.resolveCount.get());
+        // requests without the session resolve again
+        cache.get(repository, LATEST_PREFIX, null, request);
+        assertEquals(2, request.resolveCount.get());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws Exception {
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX) {
+            @Override
+            ConversionResult resolve(final Repository repository, final PathLock pathLock)
+                    throws LocalStorageException {
+                super.resolve(repository, pathLock);
+                throw new LocalStorageException("metadata broken");
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(repository, LATEST_PREFIX, null, request);
+                fail("LocalStorageException expected");
+            } catch (final LocalStorageException e) {
+                assertEquals("metadata broken", e.getMessage());
+            }
+        }
+        assertEquals(2, request.resolveCount.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testUncheckedFailuresAreNotCached() throws Exception {
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX) {
+            @Override
+            ConversionResult resolve(final Repository repository, final PathLock pathLock)
+                    throws LocalStorageException {
+                if (resolveCount.get() == 0) {
+                    super.resolve(repository, pathLock);
+                    throw new IllegalStateException("malformed metadata");
+                }
+                return super.resolve(repository, pathLock);
+            }
+        };
+        try {
+            cache.get(repository, LATEST_PREFIX, null, request);
+            fail("IllegalStateException expected");
+        } catch (final IllegalStateException e) {
+            assertEquals("malformed metadata", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+
+        assertEquals(LATEST_PREFIX, cache.get(repository, LATEST_PREFIX, null, request).getConvertedPath());
+        assertEquals(2, request.resolveCount.get());
+    }
+
+    @Test
+    public void testInterruptedWaiterKeepsEntry() throws Exception {
+        final CountDownLatch resolving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX) {
+            @Override
+            ConversionResult resolve(final Repository repository, final PathLock pathLock)
+                    throws LocalStorageException {
+                resolving.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new LocalStorageException(e);
+                }
+                return super.resolve(repository, pathLock);
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ConversionResult> resolver = executor.submit(new Callable<ConversionResult>() {
+                @Override
+                public ConversionResult call() throws Exception {
+                    return cache.get(repository, LATEST_PREFIX, null, request);
+                }
+            });
+            assertTrue(resolving.await(10, TimeUnit.SECONDS));
+            final Future<?> waiter = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Thread.currentThread().interrupt();
+                    try {
+                        cache.get(repository, LATEST_PREFIX, null, request);
+                        fail("LocalStorageException expected");
+                    } catch (final LocalStorageException e) {
+                        // expected
+                    }
+                    return null;
+                }
+            });
+            waiter.get(10, TimeUnit.SECONDS);
+            assertEquals(1, cache.size());
+
+            release.countDown();
+            assertSame(resolver.get(10, TimeUnit.SECONDS), cache.get(repository, LATEST_PREFIX, null, request));
+            assertEquals(1, request.resolveCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesAreCollapsed() throws Exception {
+        final int threads = 16;
+        final CountDownLatch resolving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingRequest request = new CountingRequest(LATEST_PREFIX) {
+            @Override
+            ConversionResult resolve(final Repository repository, final PathLock pathLock)
+                    throws LocalStorageException {
+                resolving.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new LocalStorageException(e);
+                }
+                return super.resolve(repository, pathLock);
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<ConversionResult>> results = new ArrayList<Future<ConversionResult>>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<ConversionResult>() {
+                    @Override
+                    public ConversionResult call() throws Exception {
+                        return cache.get(repository, LATEST_PREFIX, null, request);
+                    }
+                }));
+            }
+            assertTrue(resolving.await(10, TimeUnit.SECONDS));
+            // give the other threads the chance to queue up behind the first one
+            Thread.sleep(100);
+            release.countDown();
+
+            final ConversionResult expected = results.get(0).get(10, TimeUnit.SECONDS);
+            for (final Future<ConversionResult> result : results) {
+                assertSame(expected, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, request.resolveCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class CountingRequest extends ParsedRequest {
+        final AtomicInteger resolveCount = new AtomicInteger();
+        private final String path;
+
+        CountingRequest(final String path) {
+            this.path = path;
+        }
+
+        @Override
+        ConversionResult resolve(final Repository repository, final PathLock pathLock) throws LocalStorageException {
+            resolveCount.incrementAndGet();
+            return new ConversionResult(path);
+        }
+    }
+}
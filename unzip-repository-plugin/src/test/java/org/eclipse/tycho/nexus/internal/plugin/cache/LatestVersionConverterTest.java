@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -19,6 +20,7 @@ import java.io.InputStream;
 
 import junit.framework.AssertionFailedError;
 
+import org.apache.maven.artifact.versioning.VersionRange;
 import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
@@ -108,6 +110,36 @@ public class LatestVersionConverterTest {
 //            "[0.5.0,0.7.0)");
     }
 
+    @Test
+    public void testResolveLatestVersionWithinRange() throws Exception {
+        final ConversionResult result = RequestPathConverter.resolveLatestVersion(createAbsolutePathRepositoryMock(),
+                "org.eclipse.tycho.nexus", "org.eclipse.tycho.example.target",
+                VersionRange.createFromVersionSpec("[0.5.0,0.7.0-SNAPSHOT)"), true);
+        assertTrue(result.isPathConverted());
+        assertEquals("0.6.1-20110718.111322-2", result.getLatestVersion());
+        assertEquals("/org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.6.1-SNAPSHOT/"
+                + "org.eclipse.tycho.example.target-0.6.1-20110718.111322-2", result.getConvertedPath());
+    }
+
+    @Test
+    public void testResolveLatestReleaseWithinRange() throws Exception {
+        final ConversionResult result = RequestPathConverter.resolveLatestVersion(createAbsolutePathRepositoryMock(),
+                "org.eclipse.tycho.nexus", "org.eclipse.tycho.example.target",
+                VersionRange.createFromVersionSpec("[0.5.0,0.7.0)"), false);
+        assertTrue(result.isPathConverted());
+        assertEquals("0.6.0", result.getLatestVersion());
+        assertEquals("/org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.6.0/"
+                + "org.eclipse.tycho.example.target-0.6.0", result.getConvertedPath());
+    }
+
+    @Test
+    public void testResolveLatestVersionNoVersionWithinRange() throws Exception {
+        final ConversionResult result = RequestPathConverter.resolveLatestVersion(createAbsolutePathRepositoryMock(),
+                "org.eclipse.tycho.nexus", "org.eclipse.tycho.example.target",
+                VersionRange.createFromVersionSpec("[1.0.0,2.0.0)"), true);
+        assertFalse(result.isPathConverted());
+    }
+
     private void assertPathIsConvertedTo(final String requestPath, final String convertedPath) throws Exception {
         assertPathConvertion(new ResourceStoreRequest(requestPath), convertedPath, true);
     }
@@ -130,6 +162,12 @@ public class LatestVersionConverterTest {
         }
     }
 
+    private MavenRepository createAbsolutePathRepositoryMock() {
+        return createRepositoryMock("/org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/",
+                "/org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.7.1-SNAPSHOT/",
+                "/org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.6.1-SNAPSHOT/");
+    }
+
     @SuppressWarnings("unchecked")
     private MavenRepository createRepositoryMock(final String pathToOuterMetadata, final String pathToArtifact,
             final String pathToArtifact2) {
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.tycho.nexus.internal.plugin.cache.ClassifiedPath.Kind;
+import org.junit.Test;
+
+/**
+ * Differential tests of the {@link PathClassifier} against the regular expressions and the path
+ * splitting which were used before.
+ */
+@SuppressWarnings("nls")
+public class PathClassifierTest {
+
+    private static final Pattern SNAPSHOT_PATTERN = Pattern
+            .compile("^(.*/(?:\\d*\\.?)+(?:-\\w+)*-SNAPSHOT/)([^/]*-)SNAPSHOT[^/]");
+    private static final Pattern LATESTVERSION_PATTERN = Pattern.compile("/SNAPSHOT/([^/]*)-SNAPSHOT[^/]");
+    private static final Pattern RELEASE_PATTERN = Pattern.compile("/RELEASE/([^/]*)-RELEASE[^/]");
+
+    private static final String[] PATHS = {
+            "",
+            "/",
+            "/dir/a.txt",
+            "/dir/subdir/archive.zip",
+            "/dir/subdir/archive.zip-unzip",
+            "/dir/subdir/archive.zip-unzip/",
+            "/dir/subdir/archive.zip-unzip/dir/test.txt",
+            "dir/subdir/archive.zip-unzip/dir/",
+            "/dir//subdir/archive.zip-unzip//dir//test.txt/",
+            "//dir/archive.zip-unzip",
+            "/dir/-unzip/a",
+            "-unzip",
+            "/a-unzip/b-unzip/c",
+            "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-SNAPSHOT/org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT.zip-unzip",
+            "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-SNAPSHOT/org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT-x.y-z.zip-unzip/plugins/",
+            "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-BETA-1-SNAPSHOT/org.eclipse.tycho.example.updatesite-0.1.0-BETA-1-SNAPSHOT-assembly.zip-unzip/plugins/org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT.jar",
+            "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-MYSNAPSHOT/org.eclipse.tycho.example.updatesite-0.1.0-MYSNAPSHOT.zip",
+            "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-BETA/org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT.zip/plugins/org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT.jar",
+            "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-SNAPSHOT/org.eclipse.tycho.example.updatesite-0.1.0-20100505.zip/plugins/org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT.jar",
+            "/g/a/1.0-SNAPSHOT/a-1.0-SNAPSHOT.zip-unzip/x/2.0-SNAPSHOT/b-2.0-SNAPSHOT.jar",
+            "/g/a/1.0-SNAPSHOT/a-1.0-SNAPSHOT",
+            "/g/a/1.0-SNAPSHOT/a-1.0-SNAPSHOT/",
+            "/g/a/1.0-RC.1-SNAPSHOT/a-1.0-RC.1-SNAPSHOT.zip",
+            "/g/a/1.0--SNAPSHOT/a-1.0--SNAPSHOT.zip",
+            "/g/a/-SNAPSHOT/a--SNAPSHOT.zip",
+            "1.0-SNAPSHOT/a-1.0-SNAPSHOT.zip",
+            "/1.0-SNAPSHOT/a-1.0-SNAPSHOT.zip",
+            "/g/a/1.0-SNAPSHOT/a-SNAPSHOT-SNAPSHOT.zip",
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip",
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/RELEASE/org.eclipse.tycho.example.target-RELEASE.zip-unzip/content.jar",
+            "/g/a/SNAPSHOT/a-SNAPSHOT",
+            "/g/a/SNAPSHOT/a-SNAPSHOT/b-SNAPSHOT.zip",
+            "/g/a/SNAPSHOT/SNAPSHOT/a-SNAPSHOT.zip",
+            "/g/a/SNAPSHOT/x.zip/SNAPSHOT/a-SNAPSHOT.zip",
+            "/g/a/RELEASE/a-RELEASE-RELEASE.zip",
+            "/g/a/RELEASE/a-SNAPSHOT.zip/SNAPSHOT/b-SNAPSHOT.zip",
+            "SNAPSHOT/a-SNAPSHOT.zip",
+            "/g/a/SNAPSHOT/a-SNAPSHOT.zip-unzip/1.0-SNAPSHOT/b-1.0-SNAPSHOT.jar" };
+
+    private static final String[] TOKENS = { "/", "/", "/", "a", "1.0", ".", "-", "_", "SNAPSHOT", "-SNAPSHOT",
+            "RELEASE", "-RELEASE", "-unzip", ".zip", "x", "BETA", "2" };
+
+    @Test
+    public void testCorpusAgainstFormerImplementation() {
+        for (final String path : PATHS) {
+            assertSameClassification(path);
+        }
+    }
+
+    @Test
+    public void testRandomPathsAgainstFormerImplementation() {
+        final Random random = new Random(4711);
+        for (int i = 0; i < 50000; i++) {
+            final StringBuilder path = new StringBuilder();
+            final int tokens = random.nextInt(16);
+            for (int j = 0; j < tokens; j++) {
+                path.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            assertSameClassification(path.toString());
+        }
+    }
+
+    @Test
+    public void testSnapshotClassification() {
+        final ClassifiedPath classifiedPath = PathClassifier
+                .classify("/g/a/1.0.0-SNAPSHOT/a-1.0.0-SNAPSHOT-assembly.zip-unzip/plugins/x.jar");
+        assertEquals(Kind.SNAPSHOT, classifiedPath.getKind());
+        assertEquals("/g/a/1.0.0-SNAPSHOT/", classifiedPath.getVersionFolderPath());
+        assertEquals("/g/a/1.0.0-SNAPSHOT/a-1.0.0-", classifiedPath.getPathUpToVersion());
+        assertEquals("-assembly.zip-unzip/plugins/x.jar", classifiedPath.getArtifactNameEnd());
+        assertEquals("/g/a/1.0.0-SNAPSHOT/a-1.0.0-SNAPSHOT-assembly.zip", classifiedPath.getArchivePath());
+        assertEquals("plugins/x.jar", classifiedPath.getPathInArchive());
+    }
+
+    @Test
+    public void testLatestVersionClassification() {
+        final ClassifiedPath classifiedPath = PathClassifier.classify("/g/a/SNAPSHOT/a-SNAPSHOT.zip-unzip/");
+        assertEquals(Kind.LATEST_VERSION, classifiedPath.getKind());
+        assertEquals("/g/a", classifiedPath.getGroupArtifactPath());
+        assertEquals("a", classifiedPath.getArtifactNameStart());
+        assertEquals(".zip-unzip/", classifiedPath.getArtifactNameEnd());
+        assertEquals("", classifiedPath.getPathInArchive());
+    }
+
+    @Test
+    public void testLatestReleaseClassification() {
+        final ClassifiedPath classifiedPath = PathClassifier.classify("g/a/RELEASE/a-RELEASE-p2.zip");
+        assertEquals(Kind.LATEST_RELEASE, classifiedPath.getKind());
+        assertEquals("g/a", classifiedPath.getGroupArtifactPath());
+        assertEquals("a", classifiedPath.getArtifactNameStart());
+        assertEquals("-p2.zip", classifiedPath.getArtifactNameEnd());
+        assertFalse(classifiedPath.isArchivePath());
+        assertNull(classifiedPath.getArchivePath());
+    }
+
+    @Test
+    public void testLongPathWithoutMatch() {
+        final StringBuilder path = new StringBuilder("/");
+        for (int i = 0; i < 2000; i++) {
+            path.append("1.2.3.4.5.6.7.8.9.");
+        }
+        path.append("-SNAPSHOTx/");
+        assertEquals(Kind.UNCHANGED, PathClassifier.classify(path.toString()).getKind());
+    }
+
+    private static void assertSameClassification(final String path) {
+        final ClassifiedPath classifiedPath = PathClassifier.classify(path);
+        final String message = "path [" + path + "]";
+
+        final Matcher snapshotMatcher = SNAPSHOT_PATTERN.matcher(path);
+        final Matcher latestVersionMatcher = LATESTVERSION_PATTERN.matcher(path);
+        final Matcher releaseMatcher = RELEASE_PATTERN.matcher(path);
+        if (snapshotMatcher.find()) {
+            assertEquals(message, Kind.SNAPSHOT, classifiedPath.getKind());
+            assertEquals(message, snapshotMatcher.group(1), classifiedPath.getVersionFolderPath());
+            assertEquals(message, snapshotMatcher.group(1) + snapshotMatcher.group(2),
+                    classifiedPath.getPathUpToVersion());
+            assertEquals(message, path.substring(snapshotMatcher.end() - 1), classifiedPath.getArtifactNameEnd());
+        } else if (latestVersionMatcher.find()) {
+            assertLatestMatch(message, path, latestVersionMatcher, Kind.LATEST_VERSION, classifiedPath);
+        } else if (releaseMatcher.find()) {
+            assertLatestMatch(message, path, releaseMatcher, Kind.LATEST_RELEASE, classifiedPath);
+        } else {
+            assertEquals(message, Kind.UNCHANGED, classifiedPath.getKind());
+        }
+
+        final String[] formerArchive = splitArchivePath(path);
+        if (formerArchive == null) {
+            assertFalse(message, classifiedPath.isArchivePath());
+        } else {
+            assertTrue(message, classifiedPath.isArchivePath());
+            assertEquals(message, formerArchive[0], classifiedPath.getArchivePath());
+            assertEquals(message, formerArchive[1], classifiedPath.getPathInArchive());
+        }
+    }
+
+    private static void assertLatestMatch(final String message, final String path, final Matcher matcher,
+            final Kind expectedKind, final ClassifiedPath classifiedPath) {
+        assertEquals(message, expectedKind, classifiedPath.getKind());
+        assertEquals(message, path.substring(0, matcher.start()), classifiedPath.getGroupArtifactPath());
+        assertEquals(message, matcher.group(1), classifiedPath.getArtifactNameStart());
+        assertEquals(message, path.substring(matcher.end() - 1), classifiedPath.getArtifactNameEnd());
+    }
+
+    /**
+     * The former splitting of the converted path in DefaultUnzipRepository#getZippedItem.
+     */
+    private static String[] splitArchivePath(final String path) {
+        final StringBuilder pathInZip = new StringBuilder();
+        final String[] pathSegments = path.split("/");
+        String zipFilePath = "";
+        String zipItemPath = null;
+
+        for (final String pathSegment : pathSegments) {
+            if (zipItemPath == null) {
+                if (!zipFilePath.endsWith("/")) {
+                    zipFilePath = zipFilePath + "/";
+                }
+                zipFilePath = zipFilePath + pathSegment;
+                if (zipFilePath.endsWith("-unzip")) {
+                    zipItemPath = zipFilePath.substring(0, zipFilePath.length() - "-unzip".length());
+                }
+            } else {
+                if (pathInZip.length() > 0) {
+                    pathInZip.append("/");
+                }
+                pathInZip.append(pathSegment);
+            }
+        }
+        return zipItemPath == null ? null : new String[] { zipItemPath, pathInZip.toString() };
+    }
+}
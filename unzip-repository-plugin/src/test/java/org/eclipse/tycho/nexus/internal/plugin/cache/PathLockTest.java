@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,15 +12,28 @@ package org.eclipse.tycho.nexus.internal.plugin.cache;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock.Mode;
 import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock.PathLockMonitor;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.repository.Repository;
 
 public class PathLockTest {
 
@@ -29,9 +42,23 @@ public class PathLockTest {
     @SuppressWarnings("unused")
     private static String cString = "";
 
-    public static void buildStrings(final String path) {
-        final PathLockMonitor lock = PathLock.getLock(path);
-        synchronized (lock) {
+    private PathLock pathLock;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        pathLock = new PathLock();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public static void buildStrings(final PathLock pathLock, final String path) {
+        final PathLockMonitor lock = pathLock.lock(path, Mode.WRITE);
+        try {
             if (path.equals("a")) {
                 aString += "a";
                 cString += "y";
@@ -45,8 +72,9 @@ public class PathLockTest {
                 cString += "z";
                 bString += "d";
             }
+        } finally {
+            pathLock.unlock(lock);
         }
-        Assert.assertTrue(PathLock.releaseLock(lock));
     }
 
     @Test
@@ -54,7 +82,6 @@ public class PathLockTest {
         final CountDownLatch startSignal = new CountDownLatch(1);
         final CountDownLatch doneSignal = new CountDownLatch(400);
 
-        final ExecutorService executor = Executors.newCachedThreadPool();
         final List<Future<Void>> results = new LinkedList<Future<Void>>();
 
         for (int i = 0; i < 200; i++) {
@@ -68,12 +95,284 @@ public class PathLockTest {
 
         startSignal.countDown();
         doneSignal.await();
-        //In theory this test can fail, as it can not be ruled out that the threads are 
+        //In theory this test can fail, as it can not be ruled out that the threads are
         //executed in sequential order, but it is very probable therefore it might be interesting for manual testing
         //Assert.assertTrue(cString.contains("yy") || cString.contains("zz"));
         Assert.assertFalse(aString.contains("aa"));
         Assert.assertFalse(bString.contains("cc"));
-        executor.shutdown();
+        Assert.assertEquals(0, pathLock.getLockedPathCount());
+    }
+
+    @Test
+    public void testReadersShareLock() throws Exception {
+        final int readers = 8;
+        final CountDownLatch allReading = new CountDownLatch(readers);
+        final List<Future<Boolean>> results = new LinkedList<Future<Boolean>>();
+        for (int i = 0; i < readers; i++) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    final PathLockMonitor monitor = pathLock.lock("metadata", Mode.READ);
+                    try {
+                        allReading.countDown();
+                        // only returns true if all readers hold the lock at the same time
+                        return allReading.await(10, TimeUnit.SECONDS);
+                    } finally {
+                        pathLock.unlock(monitor);
+                    }
+                }
+            }));
+        }
+        for (final Future<Boolean> result : results) {
+            Assert.assertTrue(result.get(20, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(0, pathLock.getLockedPathCount());
+        Assert.assertEquals(readers, pathLock.getStatistics(10).getAcquisitions());
+    }
+
+    @Test
+    public void testWriterExcludesReaders() throws Exception {
+        final PathLockMonitor writer = pathLock.lock("folder", Mode.WRITE);
+        try {
+            final Future<PathLockMonitor> reader = executor.submit(new Callable<PathLockMonitor>() {
+                @Override
+                public PathLockMonitor call() throws Exception {
+                    return pathLock.tryLock("folder", Mode.READ, 50, TimeUnit.MILLISECONDS);
+                }
+            });
+            Assert.assertNull(reader.get(10, TimeUnit.SECONDS));
+        } finally {
+            pathLock.unlock(writer);
+        }
+        final PathLockStatistics statistics = pathLock.getStatistics(10);
+        Assert.assertEquals(1, statistics.getTimeouts());
+        Assert.assertEquals(1, statistics.getAcquisitions());
+        Assert.assertEquals(Long.valueOf(1), statistics.getTopContendedPaths().get("folder"));
+        Assert.assertEquals(0, pathLock.getLockedPathCount());
+    }
+
+    @Test
+    public void testMetadataIsReadExclusively() throws Exception {
+        final String mdPath = "/org/example/artifact/maven-metadata.xml";
+        final Repository repository = EasyMock.createMock(Repository.class);
+        EasyMock.expect(repository.retrieveItem(EasyMock.anyObject(ResourceStoreRequest.class))).andAnswer(
+                new IAnswer<StorageItem>() {
+                    @Override
+                    public StorageItem answer() throws Throwable {
+                        // NEXUS-3622: no other lookup may read the same metadata meanwhile
+                        final Future<PathLockMonitor> other = executor.submit(new Callable<PathLockMonitor>() {
+                            @Override
+                            public PathLockMonitor call() throws Exception {
+                                return pathLock.tryLock(mdPath, Mode.READ, 0, TimeUnit.MILLISECONDS);
+                            }
+                        });
+                        Assert.assertNull(other.get(10, TimeUnit.SECONDS));
+                        throw new ItemNotFoundException(new ResourceStoreRequest(mdPath));
+                    }
+                });
+        EasyMock.replay(repository);
+
+        try {
+            ParsedRequest.getVersioning(repository, pathLock, mdPath);
+            Assert.fail("ItemNotFoundException expected");
+        } catch (final ItemNotFoundException e) {
+            // expected
+        }
+        EasyMock.verify(repository);
+        Assert.assertEquals(0, pathLock.getLockedPathCount());
+    }
+
+    @Test
+    public void testTryLockWithoutContention() throws Exception {
+        final PathLockMonitor monitor = pathLock.tryLock("folder", Mode.WRITE, 0, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(monitor);
+        Assert.assertEquals("folder", monitor.getPath());
+        Assert.assertEquals(1, pathLock.getLockedPathCount());
+        pathLock.unlock(monitor);
+        Assert.assertEquals(0, pathLock.getLockedPathCount());
+        Assert.assertEquals(0, pathLock.getStatistics(10).getContendedAcquisitions());
+    }
+
+    @Test
+    public void testDifferentPathsDoNotBlock() throws Exception {
+        final PathLockMonitor a = pathLock.lock("a", Mode.WRITE);
+        try {
+            final PathLockMonitor b = pathLock.tryLock("b", Mode.WRITE, 0, TimeUnit.MILLISECONDS);
+            Assert.assertNotNull(b);
+            pathLock.unlock(b);
+        } finally {
+            pathLock.unlock(a);
+        }
+    }
+
+    @Test
+    public void testStatisticsRecordContention() throws Exception {
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final PathLockMonitor writer = pathLock.lock("hot", Mode.WRITE);
+        final Future<?> contender = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                waiting.countDown();
+                pathLock.unlock(pathLock.lock("hot", Mode.WRITE));
+            }
+        });
+        waiting.await();
+        Thread.sleep(50);
+        pathLock.unlock(writer);
+        contender.get(10, TimeUnit.SECONDS);
+
+        final PathLockStatistics statistics = pathLock.getStatistics(10);
+        Assert.assertEquals(2, statistics.getAcquisitions());
+        Assert.assertEquals(1, statistics.getContendedAcquisitions());
+        Assert.assertTrue(statistics.getMaxWaitNanos() > 0);
+        Assert.assertTrue(statistics.getMaxHoldNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assert.assertEquals(Long.valueOf(1), statistics.getTopContendedPaths().get("hot"));
+    }
+
+    @Test
+    public void testStressMixedModes() throws Exception {
+        final int threads = 32;
+        final int operations = 2000;
+        final int paths = 8;
+        final AtomicInteger[] readers = new AtomicInteger[paths];
+        final AtomicInteger[] writers = new AtomicInteger[paths];
+        for (int i = 0; i < paths; i++) {
+            readers[i] = new AtomicInteger();
+            writers[i] = new AtomicInteger();
+        }
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicInteger timeouts = new AtomicInteger();
+        final CountDownLatch startSignal = new CountDownLatch(1);
+
+        final List<Future<Void>> results = new LinkedList<Future<Void>>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final Random random = new Random(seed);
+                    startSignal.await();
+                    for (int i = 0; i < operations; i++) {
+                        final int path = random.nextInt(paths);
+                        final Mode mode = random.nextInt(4) == 0 ? Mode.WRITE : Mode.READ;
+                        final PathLockMonitor monitor;
+                        if (random.nextBoolean()) {
+                            monitor = pathLock.lock("path" + path, mode);
+                        } else {
+                            monitor = pathLock.tryLock("path" + path, mode, 1, TimeUnit.MILLISECONDS);
+                            if (monitor == null) {
+                                timeouts.incrementAndGet();
+                                continue;
+                            }
+                        }
+                        try {
+                            if (mode == Mode.WRITE) {
+                                if (writers[path].incrementAndGet() != 1 || readers[path].get() != 0) {
+                                    violations.incrementAndGet();
+                                }
+                                Thread.yield();
+                                writers[path].decrementAndGet();
+                            } else {
+                                readers[path].incrementAndGet();
+                                if (writers[path].get() != 0) {
+                                    violations.incrementAndGet();
+                                }
+                                Thread.yield();
+                                readers[path].decrementAndGet();
+                            }
+                        } finally {
+                            pathLock.unlock(monitor);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        startSignal.countDown();
+        for (final Future<Void> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(0, violations.get());
+        Assert.assertEquals(0, pathLock.getLockedPathCount());
+        final PathLockStatistics statistics = pathLock.getStatistics(paths);
+        Assert.assertEquals(threads * operations - timeouts.get(), statistics.getAcquisitions());
+        Assert.assertEquals(timeouts.get(), statistics.getTimeouts());
+        Assert.assertTrue(statistics.getTopContendedPaths().size() <= paths);
+    }
+
+    @Test
+    public void testUnlockRacingLock() throws Exception {
+        // the holder releases the last reference of the lock while the contenders retain it, so that
+        // the contenders race with the removal of the entry and with each other for a new entry
+        final int contenders = 3;
+        final int rounds = 2000;
+        final CyclicBarrier barrier = new CyclicBarrier(contenders + 1);
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicInteger acquired = new AtomicInteger();
+
+        final List<Future<Void>> results = new LinkedList<Future<Void>>();
+        for (int c = 0; c < contenders; c++) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int round = 0; round < rounds; round++) {
+                        barrier.await(10, TimeUnit.SECONDS);
+                        final PathLockMonitor monitor = pathLock.lock("raced", Mode.WRITE);
+                        try {
+                            if (holders.incrementAndGet() != 1) {
+                                violations.incrementAndGet();
+                            }
+                            acquired.incrementAndGet();
+                            holders.decrementAndGet();
+                        } finally {
+                            pathLock.unlock(monitor);
+                        }
+                        barrier.await(10, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (int round = 0; round < rounds; round++) {
+            final PathLockMonitor monitor = pathLock.lock("raced", Mode.WRITE);
+            holders.incrementAndGet();
+            barrier.await(10, TimeUnit.SECONDS);
+            holders.decrementAndGet();
+            pathLock.unlock(monitor);
+            // wait until all contenders had the lock
+            barrier.await(10, TimeUnit.SECONDS);
+            Assert.assertEquals("Lock entries leaked in round " + round, 0, pathLock.getLockedPathCount());
+        }
+        for (final Future<Void> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(0, violations.get());
+        Assert.assertEquals(contenders * rounds, acquired.get());
+        Assert.assertEquals((contenders + 1) * rounds, pathLock.getStatistics(1).getAcquisitions());
+    }
+
+    @Test
+    public void testContendedPathTrackingIsBounded() throws Exception {
+        for (int i = 0; i < PathLock.MAX_TRACKED_CONTENDED_PATHS + 50; i++) {
+            final String path = "path" + i;
+            final PathLockMonitor writer = pathLock.lock(path, Mode.WRITE);
+            try {
+                final Future<PathLockMonitor> contender = executor.submit(new Callable<PathLockMonitor>() {
+                    @Override
+                    public PathLockMonitor call() throws Exception {
+                        return pathLock.tryLock(path, Mode.READ, 0, TimeUnit.MILLISECONDS);
+                    }
+                });
+                Assert.assertNull(contender.get(10, TimeUnit.SECONDS));
+            } finally {
+                pathLock.unlock(writer);
+            }
+        }
+        Assert.assertEquals(PathLock.MAX_TRACKED_CONTENDED_PATHS,
+                pathLock.getStatistics(Integer.MAX_VALUE).getTopContendedPaths().size());
     }
 
     class CallableWorker implements Callable<Void> {
@@ -100,7 +399,7 @@ public class PathLockTest {
         }
 
         void doWork() {
-            buildStrings(path);
+            buildStrings(pathLock, path);
         }
     }
 
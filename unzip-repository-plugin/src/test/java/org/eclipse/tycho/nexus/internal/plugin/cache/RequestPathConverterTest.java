@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -223,6 +223,45 @@ public class RequestPathConverterTest {
         Assert.assertFalse(conversionResult.isASnapshotAvailable());
     }
 
+    @Test
+    public void testConversionWithCacheReadsMetadataOnce() throws Exception {
+        final String parentPath = "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-SNAPSHOT/";
+        final String snapshotPath = parentPath + "org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT.zip"
+                + Util.UNZIP_TYPE_EXTENSION;
+        final String latestSnapshotPath = snapshotPath.replace("0.1.0-SNAPSHOT.zip", "0.1.0-"
+                + VALID_VERSION_QUALIFIER_OF_TESTRESOURCE + ".zip");
+        // the mock allows to retrieve the maven-metadata.xml only once
+        final MavenRepository repository = createRepositoryMock(parentPath, PATH_TO_CORRECT_MAVEN_METADATA_XML);
+        final ConversionResultCache cache = new ConversionResultCache(ConversionResultCache.DEFAULT_TIME_TO_LIVE,
+                new PathLock());
+
+        for (final String pathInZip : new String[] { "", "/", "/plugins", "/plugins/a-0.1.0-SNAPSHOT.jar" }) {
+            final ConversionResult conversionResult = RequestPathConverter.convert(repository,
+                    new ResourceStoreRequest(snapshotPath + pathInZip), true, cache);
+            Assert.assertTrue(conversionResult.isPathConverted());
+            Assert.assertEquals(snapshotPath + pathInZip, conversionResult.getOriginalPath());
+            Assert.assertEquals(latestSnapshotPath + pathInZip, conversionResult.getConvertedPath());
+            Assert.assertEquals(VALID_VERSION_QUALIFIER_OF_TESTRESOURCE, conversionResult.getLatestVersion());
+        }
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testNoMetaDataFoundWithCache() throws Exception {
+        final String path = "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-SNAPSHOT/org.eclipse.tycho.example.updatesite-0.1.0-SNAPSHOT.zip";
+        final MavenRepository repository = createRepositoryMockNotFindingMetaData("org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-SNAPSHOT/");
+        final ConversionResultCache cache = new ConversionResultCache(ConversionResultCache.DEFAULT_TIME_TO_LIVE,
+                new PathLock());
+        final ConversionResult conversionResult = RequestPathConverter.convert(repository, new ResourceStoreRequest(
+                path), true, cache);
+        Assert.assertFalse(conversionResult.isASnapshotAvailable());
+        Assert.assertFalse(conversionResult.isPathConverted());
+        Assert.assertEquals(path, conversionResult.getConvertedPath());
+        Assert.assertEquals(
+                "org/eclipse/tycho/example/org.eclipse.tycho.example.updatesite/0.1.0-SNAPSHOT/org.eclipse.tycho.example.updatesite-0.1.0-",
+                conversionResult.getPathUpToVersion());
+    }
+
     /**
      * 
      * @param snapshotVersion
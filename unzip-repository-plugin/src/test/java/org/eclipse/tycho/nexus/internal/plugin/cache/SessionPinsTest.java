@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SessionPinsTest {
+
+    private static final String PREFIX = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT";
+    private static final ConversionResult FIRST = new ConversionResult(PREFIX,
+            "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101012-1", "1.0.0-20101012-1", "/ga/1.0.0-SNAPSHOT/archive-");
+    private static final ConversionResult SECOND = new ConversionResult(PREFIX,
+            "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2", "1.0.0-20101013-2", "/ga/1.0.0-SNAPSHOT/archive-");
+
+    private final SessionPins pins = new SessionPins(SessionPins.DEFAULT_IDLE_TIMEOUT, 2);
+
+    @Test
+    public void testFirstResultIsPinned() {
+        assertNull(pins.get("build", PREFIX));
+        assertSame(FIRST, pins.pin("build", PREFIX, FIRST));
+
+        final ConversionResult pinned = pins.get("build", PREFIX);
+        assertTrue(pinned.isPinned());
+        assertEquals(FIRST.getConvertedPath(), pinned.getConvertedPath());
+        // a concurrent request of the session resolved the newer version
+        assertSame(pinned, pins.pin("build", PREFIX, SECOND));
+        assertFalse(FIRST.isPinned());
+    }
+
+    @Test
+    public void testSessionsAreIndependent() {
+        pins.pin("build1", PREFIX, FIRST);
+        pins.pin("build2", PREFIX, SECOND);
+        assertEquals(FIRST.getConvertedPath(), pins.get("build1", PREFIX).getConvertedPath());
+        assertEquals(SECOND.getConvertedPath(), pins.get("build2", PREFIX).getConvertedPath());
+    }
+
+    @Test
+    public void testIdleSessionExpires() throws Exception {
+        pins.setIdleTimeout(1);
+        pins.pin("build", PREFIX, FIRST);
+        Thread.sleep(10);
+        assertNull(pins.get("build", PREFIX));
+        assertFalse(pins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101012-1.zip"));
+    }
+
+    @Test
+    public void testZeroIdleTimeoutDisablesPinning() {
+        pins.pin("build", PREFIX, FIRST);
+        pins.setIdleTimeout(0);
+        assertEquals(0, pins.size());
+        assertSame(SECOND, pins.pin("build", PREFIX, SECOND));
+        assertNull(pins.get("build", PREFIX));
+    }
+
+    @Test
+    public void testNoNewSessionsBeyondCapacity() {
+        pins.pin("build1", PREFIX, FIRST);
+        pins.pin("build2", PREFIX, FIRST);
+        assertSame(SECOND, pins.pin("build3", PREFIX, SECOND));
+        assertNull(pins.get("build3", PREFIX));
+        assertEquals(2, pins.size());
+    }
+
+    @Test
+    public void testArchivesOfPinnedVersionsArePinned() {
+        pins.pin("build", PREFIX, FIRST);
+        assertTrue(pins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101012-1.zip"));
+        assertTrue(pins.isPinned("ga/1.0.0-SNAPSHOT/archive-1.0.0-20101012-1-juhu.zip"));
+        assertFalse(pins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip"));
+        // a later build number with the same prefix
+        assertFalse(pins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101012-12.zip"));
+    }
+
+    @Test
+    public void testPinsAreCountedPerConvertedPath() throws Exception {
+        pins.pin("build1", PREFIX, FIRST);
+        pins.pin("build2", PREFIX, FIRST);
+        assertEquals(1, pins.getPinnedPathCount());
+
+        pins.setIdleTimeout(200);
+        Thread.sleep(250);
+        // the expired session is replaced and the other expired session is purged
+        pins.pin("build1", PREFIX, SECOND);
+        assertEquals(1, pins.getPinnedPathCount());
+        assertTrue(pins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip"));
+        assertFalse(pins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101012-1.zip"));
+    }
+
+    @Test
+    public void testExpiredPinsAreReleased() throws Exception {
+        pins.pin("build1", PREFIX, FIRST);
+        pins.pin("build2", PREFIX, SECOND);
+        pins.setIdleTimeout(1);
+        Thread.sleep(10);
+        assertFalse(pins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101012-1.zip"));
+        assertEquals(0, pins.getPinnedPathCount());
+        assertEquals(0, pins.size());
+    }
+
+    @Test
+    public void testNoNewResultsBeyondSessionCapacity() {
+        final SessionPins limitedPins = new SessionPins(SessionPins.DEFAULT_IDLE_TIMEOUT, 2, 1);
+        limitedPins.pin("build", PREFIX, FIRST);
+        assertSame(SECOND, limitedPins.pin("build", "other", SECOND));
+        assertNull(limitedPins.get("build", "other"));
+        assertFalse(limitedPins.isPinned("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip"));
+        assertTrue(limitedPins.get("build", PREFIX).isPinned());
+    }
+}
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.Phase;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedItem;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidFactory;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
+
+/**
+ * Stress tests for the races between caching archives, streaming entries of cached archives and
+ * cleaning up outdated SNAPSHOT builds. The interleavings of the threads are controlled with
+ * barriers, so that every test run covers the race; the randomized test additionally runs a mix
+ * of all operations. Its length and seed can be set with the system properties
+ * <code>unzip.stress.iterations</code> and <code>unzip.stress.seed</code> for long runs.
+ */
+public class UnzipCacheConcurrencyTest extends UnzipPluginTestSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnzipCacheConcurrencyTest.class);
+
+    private static final String VERSION_FOLDER = "/ga/1.0.0-SNAPSHOT/";
+    private static final String PATH_UP_TO_VERSION = VERSION_FOLDER + "archive-1.0.0-";
+    private static final String SNAPSHOT_REQUEST_PATH = VERSION_FOLDER + "archive-1.0.0-SNAPSHOT.zip-unzip";
+    private static final String TIMESTAMP = "20140101.120000";
+    private static final int BUILDS = 3;
+
+    private static final String LARGE_ENTRY = "plugins/large.jar";
+    private static final int LARGE_ENTRY_SIZE = 1024 * 1024;
+    private static final String SMALL_ENTRY = "p2.index";
+    private static final int THREADS = 8;
+
+    private static final int ITERATIONS = Integer.getInteger("unzip.stress.iterations", 100);
+    private static final long SEED = Long.getLong("unzip.stress.seed", 4711);
+
+    private static final byte[] LARGE_CONTENT = randomContent(LARGE_ENTRY_SIZE);
+    private static final long LARGE_CHECKSUM = checksum(LARGE_CONTENT);
+
+    private File masterDir;
+    private RepositoryMock masterRepo;
+    private DefaultUnzipRepository unzipRepo;
+    private UnzipCache cache;
+    private ExecutorService executor;
+
+    @Before
+    public void setUpRepositories() throws Exception {
+        masterDir = FileUtils.createTempFile("nexus-unzip" + File.separator, "stress-master", null);
+        for (int build = 1; build <= BUILDS; build++) {
+            writeArchive(new File(masterDir, getArchivePath(build)));
+        }
+        masterRepo = RepositoryMock.createRepo("stressRepo", masterDir, lookup(RepositoryItemUidFactory.class),
+                lookup(RepositoryItemUidAttributeManager.class));
+        unzipRepo = createUnzipRepo(masterRepo);
+        cache = unzipRepo.getCache();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDownRepositories() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        FileUtils.deleteDirectory(masterDir);
+    }
+
+    @AfterClass
+    public static void classTearDown() {
+        TestUtil.cleanUpTestFiles();
+    }
+
+    @Test
+    public void testConcurrentGetArchiveFetchesArchiveOnce() throws Exception {
+        final int rounds = 20;
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        final List<Future<List<File>>> results = new ArrayList<Future<List<File>>>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(new Callable<List<File>>() {
+                @Override
+                public List<File> call() throws Exception {
+                    final List<File> archives = new ArrayList<File>();
+                    for (int round = 0; round < rounds; round++) {
+                        // all threads request the uncached archive at the same time
+                        barrier.await(10, TimeUnit.SECONDS);
+                        final File archive = cache.getArchive(getArchivePath(1));
+                        // no thread may see a partially stored archive
+                        assertLargeEntryComplete(archive);
+                        archives.add(archive);
+                        if (barrier.await(10, TimeUnit.SECONDS) == 0) {
+                            // exactly one thread removes the cached archive for the next round
+                            cache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_UP_TO_VERSION,
+                                    false));
+                        }
+                    }
+                    return archives;
+                }
+            }));
+        }
+        File expected = null;
+        for (final Future<List<File>> result : results) {
+            for (final File archive : result.get(60, TimeUnit.SECONDS)) {
+                if (expected == null) {
+                    expected = archive;
+                }
+                Assert.assertEquals(expected, archive);
+            }
+        }
+        Assert.assertEquals(rounds, masterRepo.getRetrievalCount());
+        Assert.assertEquals(0, unzipRepo.getPathLock().getLockedPathCount());
+    }
+
+    @Test
+    public void testCleanupWhileStreaming() throws Exception {
+        final File outdatedArchive = cache.getArchive(getArchivePath(1));
+        final CyclicBarrier halfRead = new CyclicBarrier(2);
+        final CyclicBarrier cleanedUp = new CyclicBarrier(2);
+
+        final Future<Long> streamer = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                final InputStream stream = openEntry(getArchivePath(1), LARGE_ENTRY);
+                try {
+                    final CRC32 crc = new CRC32();
+                    final long firstHalf = read(stream, crc, LARGE_ENTRY_SIZE / 2);
+                    halfRead.await(10, TimeUnit.SECONDS);
+                    // the archive is shredded while the stream is open
+                    cleanedUp.await(10, TimeUnit.SECONDS);
+                    final long secondHalf = read(stream, crc, Long.MAX_VALUE);
+                    Assert.assertEquals(LARGE_ENTRY_SIZE, firstHalf + secondHalf);
+                    return crc.getValue();
+                } finally {
+                    stream.close();
+                }
+            }
+        });
+
+        halfRead.await(10, TimeUnit.SECONDS);
+        cache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, getArchivePath(2), getVersion(2),
+                PATH_UP_TO_VERSION));
+        cleanedUp.await(10, TimeUnit.SECONDS);
+
+        // the open stream still delivers the complete entry of the deleted archive
+        Assert.assertEquals(LARGE_CHECKSUM, streamer.get(10, TimeUnit.SECONDS).longValue());
+        if (!isWindows()) {
+            // open files cannot be deleted on Windows; the clean up is repeated with the next request
+            Assert.assertFalse(outdatedArchive.exists());
+        }
+        Assert.assertEquals(1, unzipRepo.getRequestTimings().snapshot(Phase.STREAMING).getCount());
+        Assert.assertEquals(0, unzipRepo.getPathLock().getLockedPathCount());
+
+        // the archive is fetched again if the outdated build is still requested
+        assertLargeEntryComplete(cache.getArchive(getArchivePath(1)));
+    }
+
+    @Test
+    public void testRandomizedCacheStreamingAndCleanup() throws Exception {
+        LOG.info("Randomized stress test with " + ITERATIONS + " iterations and seed " + SEED);
+        final AtomicInteger cleanedUpBeforeOpen = new AtomicInteger();
+        final CyclicBarrier startSignal = new CyclicBarrier(THREADS);
+        final List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = SEED + t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final Random random = new Random(seed);
+                    startSignal.await(10, TimeUnit.SECONDS);
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        final int build = 1 + random.nextInt(BUILDS);
+                        final int operation = random.nextInt(10);
+                        try {
+                            if (operation < 4) {
+                                Assert.assertEquals(SMALL_ENTRY.length(), readEntry(build, SMALL_ENTRY, null));
+                            } else if (operation < 7) {
+                                final CRC32 crc = new CRC32();
+                                Assert.assertEquals(LARGE_ENTRY_SIZE, readEntry(build, LARGE_ENTRY, crc));
+                                Assert.assertEquals("Corrupted entry in build " + build + " (seed " + seed + ")",
+                                        LARGE_CHECKSUM, crc.getValue());
+                            } else if (operation < 9) {
+                                cache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH,
+                                        getArchivePath(build), getVersion(build), PATH_UP_TO_VERSION));
+                            } else {
+                                cache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_UP_TO_VERSION,
+                                        false));
+                            }
+                        } catch (final ArchiveCleanedUpException e) {
+                            // the archive was cleaned up between its lookup and opening it, which the
+                            // client sees as a failed request; once opened, an entry must be complete
+                            cleanedUpBeforeOpen.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (final Future<Void> result : results) {
+            result.get(10, TimeUnit.MINUTES);
+        }
+        LOG.info("Archives cleaned up before they were opened: " + cleanedUpBeforeOpen.get());
+        Assert.assertEquals(0, unzipRepo.getPathLock().getLockedPathCount());
+    }
+
+    /**
+     * Reads an entry completely.
+     *
+     * @return the number of bytes read
+     */
+    private long readEntry(final int build, final String entry, final CRC32 crc) throws Exception {
+        final InputStream stream;
+        try {
+            stream = openEntry(getArchivePath(build), entry);
+        } catch (final IOException e) {
+            throw new ArchiveCleanedUpException(e);
+        }
+        try {
+            return read(stream, crc == null ? new CRC32() : crc, Long.MAX_VALUE);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private InputStream openEntry(final String archivePath, final String entry) throws Exception {
+        final ZippedItem zippedItem = ZippedItem.newZippedItem(unzipRepo, new ResourceStoreRequest(archivePath
+                + "-unzip/" + entry), archivePath, entry, 0, LOG);
+        return ((StorageFileItem) zippedItem.getZippedStorageItem()).getInputStream();
+    }
+
+    private static long read(final InputStream stream, final CRC32 crc, final long limit) throws IOException {
+        final byte[] buffer = new byte[8192];
+        long total = 0;
+        while (total < limit) {
+            final int read = stream.read(buffer, 0, (int) Math.min(buffer.length, limit - total));
+            if (read == -1) {
+                break;
+            }
+            crc.update(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private static void assertLargeEntryComplete(final File archive) throws IOException {
+        final ZipFile zipFile = new ZipFile(archive);
+        try {
+            final InputStream stream = zipFile.getInputStream(zipFile.getEntry(LARGE_ENTRY));
+            final CRC32 crc = new CRC32();
+            Assert.assertEquals(LARGE_ENTRY_SIZE, read(stream, crc, Long.MAX_VALUE));
+            Assert.assertEquals(LARGE_CHECKSUM, crc.getValue());
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static String getVersion(final int build) {
+        return TIMESTAMP + "-" + build;
+    }
+
+    private static String getArchivePath(final int build) {
+        return PATH_UP_TO_VERSION + getVersion(build) + ".zip";
+    }
+
+    private static void writeArchive(final File archive) throws IOException {
+        archive.getParentFile().mkdirs();
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            out.putNextEntry(new ZipEntry(SMALL_ENTRY));
+            out.write(SMALL_ENTRY.getBytes("UTF-8"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry(LARGE_ENTRY));
+            out.write(LARGE_CONTENT);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] randomContent(final int size) {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static long checksum(final byte[] content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().startsWith("windows");
+    }
+
+    private static class ArchiveCleanedUpException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        ArchiveCleanedUpException(final Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,7 +20,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock.PathLockMonitor;
 import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
 import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
 import org.junit.AfterClass;
@@ -185,6 +188,27 @@ public class UnzipCacheTest extends UnzipPluginTestSupport {
         executor.shutdown();
     }
 
+    @Test
+    public void testRepositoriesDoNotShareLocks() throws Exception {
+        final DefaultUnzipRepository otherUnzipRepo = createUnzipRepo(createSnapshotRepo());
+        final PathLock otherPathLock = otherUnzipRepo.getPathLock();
+        final PathLockMonitor folderLock = otherPathLock.lock("/ga/1.0.0-SNAPSHOT/", PathLock.Mode.WRITE);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<File> archive = executor.submit(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    return snapshotRepoUnzipCache.getArchive(PATH_TO_OLD_ZIP);
+                }
+            });
+            // would time out if the folder lock of the other repository was shared
+            assertEquals(oldZip, archive.get(10, TimeUnit.SECONDS));
+        } finally {
+            otherPathLock.unlock(folderLock);
+            executor.shutdownNow();
+        }
+    }
+
     class CacheStressWorker implements Callable<Void> {
         private final CountDownLatch startSignal;
         private final String archivePath;
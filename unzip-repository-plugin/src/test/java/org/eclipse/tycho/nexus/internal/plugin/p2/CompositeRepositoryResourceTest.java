@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidFactory;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
+
+public class CompositeRepositoryResourceTest extends UnzipPluginTestSupport {
+
+    private static final String ARTIFACT_FOLDER = "/org/example/site/";
+    private static final String COMPOSITE_PATH = ARTIFACT_FOLDER + "ALL-unzip/";
+
+    private File masterDir;
+    private DefaultUnzipRepository unzipRepo;
+
+    @Before
+    public void setUpRepositories() throws Exception {
+        masterDir = FileUtils.createTempFile("nexus-unzip" + File.separator, "composite-master", null);
+        writeMetadata("1.0.0", "1.1.0", "2.0.0-SNAPSHOT");
+        unzipRepo = createUnzipRepo(RepositoryMock.createRepo("compositeRepo", masterDir,
+                lookup(RepositoryItemUidFactory.class), lookup(RepositoryItemUidAttributeManager.class)));
+    }
+
+    @After
+    public void tearDownRepositories() throws IOException {
+        FileUtils.deleteDirectory(masterDir);
+    }
+
+    @AfterClass
+    public static void classTearDown() {
+        TestUtil.cleanUpTestFiles();
+    }
+
+    @Test
+    public void testIsCompositePath() {
+        assertTrue(CompositeRepositoryResource.isCompositePath(COMPOSITE_PATH + "compositeContent.xml"));
+        assertTrue(CompositeRepositoryResource.isCompositePath("org/example/site/ALL-unzip/p2.index"));
+        assertEquals(ARTIFACT_FOLDER,
+                CompositeRepositoryResource.getArtifactFolder("org/example/site/ALL-unzip/p2.index"));
+        assertFalse(CompositeRepositoryResource.isCompositePath(COMPOSITE_PATH));
+        assertFalse(CompositeRepositoryResource.isCompositePath(COMPOSITE_PATH + "content.xml"));
+        assertFalse(CompositeRepositoryResource.isCompositePath("/site/ALL-unzip/compositeContent.xml"));
+    }
+
+    @Test
+    public void testCompositeContent() throws Exception {
+        final String xml = read(COMPOSITE_PATH + "compositeContent.xml");
+        assertTrue(xml, xml.contains("<?compositeMetadataRepository version='1.0.0'?>"));
+        assertTrue(xml, xml.contains("type='org.eclipse.equinox.internal.p2.metadata.repository."
+                + "CompositeMetadataRepository'"));
+        assertTrue(xml, xml.contains("<property name='p2.atomic.composite.loading' value='false'/>"));
+        assertTrue(xml, xml.contains("<children size='2'>\n" + "    <child location='../1.0.0/site-1.0.0.zip-unzip'/>\n"
+                + "    <child location='../1.1.0/site-1.1.0.zip-unzip'/>\n" + "  </children>"));
+    }
+
+    @Test
+    public void testCompositeArtifactsAndIndex() throws Exception {
+        final String xml = read(COMPOSITE_PATH + "compositeArtifacts.xml");
+        assertTrue(xml, xml.contains("<?compositeArtifactRepository version='1.0.0'?>"));
+        assertTrue(xml, xml.contains("<child location='../1.1.0/site-1.1.0.zip-unzip'/>"));
+        assertEquals(CompositeRepositoryResource.P2_INDEX_CONTENT, read(COMPOSITE_PATH + "p2.index"));
+    }
+
+    @Test
+    public void testRegeneratedOnlyAfterMetadataChange() throws Exception {
+        read(COMPOSITE_PATH + "compositeContent.xml");
+        writeMetadata("1.0.0", "1.1.0", "1.2.0");
+        assertFalse(read(COMPOSITE_PATH + "compositeContent.xml").contains("1.2.0"));
+
+        unzipRepo.getCompositeRepositoryCache().invalidate(ARTIFACT_FOLDER + "maven-metadata.xml");
+        assertTrue(read(COMPOSITE_PATH + "compositeContent.xml").contains("../1.2.0/site-1.2.0.zip-unzip"));
+    }
+
+    @Test
+    public void testOutdatedCompositeIsNotCached() {
+        final CompositeRepositoryCache cache = new CompositeRepositoryCache(CompositeRepositoryCache.DEFAULT_CAPACITY);
+        final long invalidations = cache.getInvalidations();
+        // the metadata changes while the composite repository is generated
+        cache.invalidate(ARTIFACT_FOLDER + "maven-metadata.xml");
+        cache.put(ARTIFACT_FOLDER, new CompositeRepositoryCache.Composite(0, "", ""), invalidations);
+        assertNull(cache.get(ARTIFACT_FOLDER));
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testArtifactWithoutMetadata() throws Exception {
+        read("/org/example/other/ALL-unzip/compositeContent.xml");
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testMasterNotAvailable() throws Exception {
+        unzipRepo = createUnzipRepo(null);
+        read(COMPOSITE_PATH + "compositeContent.xml");
+    }
+
+    @Test
+    public void testTimestampIsLastUpdateOfVersions() throws Exception {
+        FileUtils.fileWrite(new File(masterDir, ARTIFACT_FOLDER + "maven-metadata.xml").getPath(), "UTF-8",
+                "<metadata><versioning><versions><version>1.0.0</version></versions>"
+                        + "<lastUpdated>20140102030405</lastUpdated></versioning></metadata>");
+        final StorageFileItem item = CompositeRepositoryResource.createItem(unzipRepo, new ResourceStoreRequest(
+                COMPOSITE_PATH + "compositeContent.xml"));
+        // 2014-01-02T03:04:05Z
+        assertEquals(1388631845000L, item.getModified());
+        assertTrue(read(COMPOSITE_PATH + "compositeArtifacts.xml").contains(
+                "<property name='p2.timestamp' value='1388631845000'/>"));
+    }
+
+    private void writeMetadata(final String... versions) throws IOException {
+        final StringBuilder metadata = new StringBuilder();
+        metadata.append("<metadata><groupId>org.example</groupId><artifactId>site</artifactId><versioning>");
+        metadata.append("<versions>");
+        for (final String version : versions) {
+            metadata.append("<version>").append(version).append("</version>");
+        }
+        metadata.append("</versions></versioning></metadata>");
+        final File file = new File(masterDir, ARTIFACT_FOLDER + "maven-metadata.xml");
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite(file.getPath(), "UTF-8", metadata.toString());
+    }
+
+    private String read(final String path) throws Exception {
+        final StorageFileItem item = CompositeRepositoryResource.createItem(unzipRepo, new ResourceStoreRequest(path));
+        final InputStream stream = item.getInputStream();
+        try {
+            return IOUtil.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class P2ArtifactIndexTest {
+
+    static final String ARTIFACTS_XML = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<?artifactRepository version='1.1.0'?>\n"
+            + "<repository name='test' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n"
+            + "  <properties size='1'><property name='p2.compressed' value='true'/></properties>\n"
+            + "  <mappings size='3'>\n"
+            + "    <rule filter='(&amp; (classifier=osgi.bundle) (format=packed))' output='${repoUrl}/plugins/${id}_${version}.jar.pack.gz'/>\n"
+            + "    <rule filter='(&amp; (classifier=osgi.bundle))' output='${repoUrl}/plugins/${id}_${version}.jar'/>\n"
+            + "    <rule filter='(&amp; (classifier=org.eclipse.update.feature))' output='${repoUrl}/features/${id}_${version}.jar'/>\n"
+            + "  </mappings>\n"
+            + "  <artifacts size='4'>\n"
+            + "    <artifact classifier='osgi.bundle' id='org.example.bundle' version='1.0.0.v1'>\n"
+            + "      <properties size='1'><property name='artifact.size' value='4'/></properties>\n"
+            + "    </artifact>\n"
+            + "    <artifact classifier='osgi.bundle' id='org.example.bundle' version='1.0.0.v1'>\n"
+            + "      <processing size='1'><step id='org.eclipse.equinox.p2.processing.Pack200Unpacker' required='true'/></processing>\n"
+            + "      <properties size='1'><property name='format' value='packed'/></properties>\n"
+            + "    </artifact>\n"
+            + "    <artifact classifier='org.eclipse.update.feature' id='org.example.feature' version='1.0.0'/>\n"
+            + "    <artifact classifier='osgi.bundle' id='org.example.missing' version='1.0.0'/>\n"
+            + "  </artifacts>\n" + "</repository>\n";
+
+    static final String CONTENT_XML = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<?metadataRepository version='1.1.0'?>\n"
+            + "<repository name='test'"
+            + " type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n"
+            + "  <units size='0'/>\n" + "</repository>\n";
+
+    private File folder;
+
+    @Before
+    public void setUp() {
+        folder = FileUtils.createTempFile("nexus-unzip" + File.separator, "p2-index", null);
+        folder.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void testArtifactsAreMappedToEntries() throws Exception {
+        final File archive = writeP2Archive(new File(folder, "repo.zip"), false);
+        final List<P2ArtifactIndex.Entry> entries = new P2ArtifactIndex(archive, LoggerFactory.getLogger(getClass()))
+                .getEntries();
+
+        // the missing bundle is not contained in the archive
+        assertEquals(3, entries.size());
+        assertEntry("osgi.bundle", "org.example.bundle", "1.0.0.v1", "plugins/org.example.bundle_1.0.0.v1.jar",
+                entries.get(0));
+        assertEquals("plugins/org.example.bundle_1.0.0.v1.jar.pack.gz", entries.get(1).getEntryName());
+        assertEquals("features/org.example.feature_1.0.0.jar", entries.get(2).getEntryName());
+    }
+
+    @Test
+    public void testArtifactsJar() throws Exception {
+        final File archive = writeP2Archive(new File(folder, "repo.zip"), true);
+        final P2ArtifactIndex index = new P2ArtifactIndex(archive, LoggerFactory.getLogger(getClass()));
+        assertEquals(2, index.find("osgi.bundle", "org.example.bundle", null).size());
+        assertEquals(0, index.find("osgi.bundle", "org.example.bundle", "2.0.0").size());
+    }
+
+    @Test
+    public void testIndexIsStoredNextToArchive() throws Exception {
+        final File archive = writeP2Archive(new File(folder, "repo.zip"), false);
+        new P2ArtifactIndex(archive, LoggerFactory.getLogger(getClass())).getEntries();
+        assertTrue(new File(archive.getPath() + P2ArtifactIndex.FILE_SUFFIX).isFile());
+        // written to a temporary file which replaces the index file
+        assertFalse(new File(archive.getPath() + P2ArtifactIndex.FILE_SUFFIX + ".tmp").exists());
+
+        // the stored index is used, even though the archive content cannot be read anymore
+        final long length = archive.length();
+        final long modified = archive.lastModified();
+        final byte[] garbage = new byte[(int) length];
+        FileUtils.fileWrite(archive.getPath(), new String(garbage, "ISO-8859-1"));
+        archive.setLastModified(modified);
+        assertEquals(length, archive.length());
+        assertEquals(3, new P2ArtifactIndex(archive, LoggerFactory.getLogger(getClass())).getEntries().size());
+    }
+
+    @Test
+    public void testArchiveWithoutP2Repository() throws Exception {
+        final File archive = new File(folder, "other.zip");
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            addEntry(zip, "readme.txt", "no p2".getBytes("UTF-8"));
+        } finally {
+            zip.close();
+        }
+        assertEquals(0, new P2ArtifactIndex(archive, LoggerFactory.getLogger(getClass())).getEntries().size());
+    }
+
+    static File writeP2Archive(final File archive, final boolean artifactsJar) throws IOException {
+        archive.getParentFile().mkdirs();
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            if (artifactsJar) {
+                addEntry(zip, P2ArtifactIndex.ARTIFACTS_JAR, jar(P2ArtifactIndex.ARTIFACTS_XML, ARTIFACTS_XML));
+            } else {
+                addEntry(zip, P2ArtifactIndex.ARTIFACTS_XML, ARTIFACTS_XML.getBytes("UTF-8"));
+            }
+            addEntry(zip, "content.jar", jar("content.xml", CONTENT_XML));
+            addEntry(zip, "plugins/org.example.bundle_1.0.0.v1.jar", new byte[4]);
+            addEntry(zip, "plugins/org.example.bundle_1.0.0.v1.jar.pack.gz", new byte[2]);
+            addEntry(zip, "features/org.example.feature_1.0.0.jar", new byte[3]);
+        } finally {
+            zip.close();
+        }
+        return archive;
+    }
+
+    static byte[] jar(final String name, final String content) throws IOException {
+        final ByteArrayOutputStream jarContent = new ByteArrayOutputStream();
+        final ZipOutputStream jar = new ZipOutputStream(jarContent);
+        addEntry(jar, name, content.getBytes("UTF-8"));
+        jar.close();
+        return jarContent.toByteArray();
+    }
+
+    static void addEntry(final ZipOutputStream zip, final String name, final byte[] content)
+            throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static void assertEntry(final String classifier, final String id, final String version,
+            final String entryName, final P2ArtifactIndex.Entry entry) {
+        assertEquals(classifier, entry.getClassifier());
+        assertEquals(id, entry.getId());
+        assertEquals(version, entry.getVersion());
+        assertEquals(entryName, entry.getEntryName());
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.IllegalRequestException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidFactory;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
+
+public class P2ArtifactLookupResourceTest extends UnzipPluginTestSupport {
+
+    private static final String ARCHIVE_PATH = "/org/example/site/1.0.0/site-1.0.0.zip";
+
+    private File masterDir;
+    private DefaultUnzipRepository unzipRepo;
+
+    @Before
+    public void setUpRepositories() throws Exception {
+        masterDir = FileUtils.createTempFile("nexus-unzip" + File.separator, "p2-master", null);
+        P2ArtifactIndexTest.writeP2Archive(new File(masterDir, ARCHIVE_PATH), false);
+        unzipRepo = createUnzipRepo(RepositoryMock.createRepo("p2Repo", masterDir,
+                lookup(RepositoryItemUidFactory.class), lookup(RepositoryItemUidAttributeManager.class)));
+    }
+
+    @After
+    public void tearDownRepositories() throws IOException {
+        FileUtils.deleteDirectory(masterDir);
+    }
+
+    @AfterClass
+    public static void classTearDown() {
+        TestUtil.cleanUpTestFiles();
+    }
+
+    @Test
+    public void testIsLookupPath() {
+        assertTrue(P2ArtifactLookupResource.isLookupPath("/.meta/unzip/p2-artifacts.json"));
+        assertTrue(P2ArtifactLookupResource.isLookupPath(".meta/unzip/p2-artifacts.json"));
+    }
+
+    @Test
+    public void testLookupInCachedArchive() throws Exception {
+        unzipRepo.getCache().getArchive(ARCHIVE_PATH);
+
+        final String json = find("artifact=org.example:site&id=org.example.bundle&version=1.0.0.v1");
+        assertEquals("{\"artifact\":\"org.example:site\",\"classifier\":\"osgi.bundle\","
+                + "\"id\":\"org.example.bundle\",\"version\":\"1.0.0.v1\",\"matches\":[{\"archive\":\""
+                + ARCHIVE_PATH + "-unzip\",\"entry\":\"plugins/org.example.bundle_1.0.0.v1.jar\","
+                + "\"version\":\"1.0.0.v1\",\"path\":\"" + ARCHIVE_PATH
+                + "-unzip/plugins/org.example.bundle_1.0.0.v1.jar\"},{\"archive\":\"" + ARCHIVE_PATH
+                + "-unzip\",\"entry\":\"plugins/org.example.bundle_1.0.0.v1.jar.pack.gz\","
+                + "\"version\":\"1.0.0.v1\",\"path\":\"" + ARCHIVE_PATH
+                + "-unzip/plugins/org.example.bundle_1.0.0.v1.jar.pack.gz\"}]}", json);
+    }
+
+    @Test
+    public void testLookupByClassifier() throws Exception {
+        unzipRepo.getCache().getArchive(ARCHIVE_PATH);
+
+        final String json = find("artifact=org.example:site&id=org.example.feature"
+                + "&classifier=org.eclipse.update.feature");
+        assertTrue(json, json.contains("\"entry\":\"features/org.example.feature_1.0.0.jar\""));
+        assertTrue(json, json.contains("\"version\":null,\"matches\":[{"));
+    }
+
+    @Test
+    public void testArchivesWhichAreNotCachedAreNotSearched() throws Exception {
+        final String json = find("artifact=org.example:site&id=org.example.bundle");
+        assertTrue(json, json.endsWith("\"matches\":[]}"));
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void testMissingId() throws Exception {
+        find("artifact=org.example:site");
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void testInvalidArtifact() throws Exception {
+        find("artifact=../site&id=org.example.bundle");
+    }
+
+    private String find(final String query) throws Exception {
+        final ResourceStoreRequest request = new ResourceStoreRequest(P2ArtifactLookupResource.LOOKUP_PATH);
+        request.setRequestUrl("http://localhost/nexus/content/repositories/unzip"
+                + P2ArtifactLookupResource.LOOKUP_PATH + "?" + query);
+        final StorageFileItem item = P2ArtifactLookupResource.createItem(unzipRepo, request);
+        assertEquals("application/json", item.getMimeType());
+        final InputStream stream = item.getInputStream();
+        try {
+            return IOUtil.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+}
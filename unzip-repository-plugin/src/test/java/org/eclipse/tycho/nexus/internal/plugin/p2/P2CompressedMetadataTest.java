@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.p2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedItem;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidFactory;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
+import org.tukaani.xz.XZInputStream;
+
+public class P2CompressedMetadataTest extends UnzipPluginTestSupport {
+
+    private static final String ARCHIVE_PATH = "/org/example/site/1.0.0/site-1.0.0.zip";
+    private static final Logger LOGGER = LoggerFactory.getLogger(P2CompressedMetadataTest.class);
+
+    private File folder;
+
+    @Before
+    public void setUpFolder() {
+        folder = FileUtils.createTempFile("nexus-unzip" + File.separator, "p2-metadata", null);
+        folder.mkdirs();
+    }
+
+    @After
+    public void tearDownFolder() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @AfterClass
+    public static void classTearDown() {
+        TestUtil.cleanUpTestFiles();
+    }
+
+    @Test
+    public void testMetadataIsCompressed() throws Exception {
+        final File archive = P2ArtifactIndexTest.writeP2Archive(new File(folder, "repo.zip"), true);
+        final P2CompressedMetadata metadata = create(archive);
+        assertNull(metadata.getFile(P2CompressedMetadata.CONTENT_XML_XZ));
+
+        metadata.generate();
+        assertEquals(P2ArtifactIndexTest.CONTENT_XML,
+                decompress(metadata.getFile(P2CompressedMetadata.CONTENT_XML_XZ)));
+        assertEquals(P2ArtifactIndexTest.ARTIFACTS_XML,
+                decompress(metadata.getFile(P2CompressedMetadata.ARTIFACTS_XML_XZ)));
+        assertEquals(P2CompressedMetadata.P2_INDEX_CONTENT,
+                FileUtils.fileRead(metadata.getFile(P2CompressedMetadata.P2_INDEX), "UTF-8"));
+    }
+
+    @Test
+    public void testGeneratedMetadataIsStoredNextToArchive() throws Exception {
+        final File archive = P2ArtifactIndexTest.writeP2Archive(new File(folder, "repo.zip"), false);
+        create(archive).generate();
+        assertTrue(new File(archive.getPath() + P2CompressedMetadata.FILE_SUFFIX).isFile());
+
+        // generated files are found without generating them again
+        assertNotNull(create(archive).getFile(P2CompressedMetadata.P2_INDEX));
+        // but not for a replaced archive
+        assertNull(new P2CompressedMetadata(archive, archive.length(), archive.lastModified() + 1000, LOGGER)
+                .getFile(P2CompressedMetadata.P2_INDEX));
+    }
+
+    @Test
+    public void testExistingMetadataIsNotGenerated() throws Exception {
+        final File archive = new File(folder, "repo.zip");
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            P2ArtifactIndexTest.addEntry(zip, "content.xml.xz", new byte[1]);
+            P2ArtifactIndexTest.addEntry(zip, "p2.index", new byte[1]);
+            P2ArtifactIndexTest.addEntry(zip, "artifacts.xml", P2ArtifactIndexTest.ARTIFACTS_XML.getBytes("UTF-8"));
+        } finally {
+            zip.close();
+        }
+        final P2CompressedMetadata metadata = create(archive);
+        metadata.generate();
+        assertNull(metadata.getFile(P2CompressedMetadata.CONTENT_XML_XZ));
+        assertNull(metadata.getFile(P2CompressedMetadata.P2_INDEX));
+        assertEquals(P2ArtifactIndexTest.ARTIFACTS_XML,
+                decompress(metadata.getFile(P2CompressedMetadata.ARTIFACTS_XML_XZ)));
+    }
+
+    @Test
+    public void testNoIndexWithoutArtifacts() throws Exception {
+        final File archive = new File(folder, "repo.zip");
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            P2ArtifactIndexTest.addEntry(zip, "content.xml", P2ArtifactIndexTest.CONTENT_XML.getBytes("UTF-8"));
+        } finally {
+            zip.close();
+        }
+        final P2CompressedMetadata metadata = create(archive);
+        metadata.generate();
+        assertNotNull(metadata.getFile(P2CompressedMetadata.CONTENT_XML_XZ));
+        assertNull(metadata.getFile(P2CompressedMetadata.P2_INDEX));
+    }
+
+    @Test
+    public void testGeneratedMetadataIsServedInArchive() throws Exception {
+        P2ArtifactIndexTest.writeP2Archive(new File(folder, ARCHIVE_PATH), false);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(RepositoryMock.createRepo("p2Repo", folder,
+                lookup(RepositoryItemUidFactory.class), lookup(RepositoryItemUidAttributeManager.class)));
+        final File archive = unzipRepo.getCache().getArchive(ARCHIVE_PATH);
+        // as done in the background after caching the archive
+        unzipRepo.getP2ArtifactIndexStore().get(archive).getCompressedMetadata().generate();
+
+        final StorageFileItem item = (StorageFileItem) ZippedItem.newZippedItem(unzipRepo,
+                new ResourceStoreRequest(ARCHIVE_PATH + "-unzip/p2.index"), ARCHIVE_PATH, "p2.index",
+                archive.lastModified(), LOGGER).getZippedStorageItem();
+        final InputStream stream = item.getInputStream();
+        try {
+            assertEquals(P2CompressedMetadata.P2_INDEX_CONTENT, IOUtil.toString(stream, "UTF-8"));
+        } finally {
+            stream.close();
+        }
+        assertEquals(archive.lastModified(), item.getModified());
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testOnlyMetadataInRootIsGenerated() throws Exception {
+        P2ArtifactIndexTest.writeP2Archive(new File(folder, ARCHIVE_PATH), false);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(RepositoryMock.createRepo("p2Repo", folder,
+                lookup(RepositoryItemUidFactory.class), lookup(RepositoryItemUidAttributeManager.class)));
+        final File archive = unzipRepo.getCache().getArchive(ARCHIVE_PATH);
+        unzipRepo.getP2ArtifactIndexStore().get(archive).getCompressedMetadata().generate();
+
+        ZippedItem.newZippedItem(unzipRepo, new ResourceStoreRequest(ARCHIVE_PATH + "-unzip/plugins/p2.index"),
+                ARCHIVE_PATH, "plugins/p2.index", archive.lastModified(), LOGGER);
+    }
+
+    private static P2CompressedMetadata create(final File archive) {
+        return new P2CompressedMetadata(archive, archive.length(), archive.lastModified(), LOGGER);
+    }
+
+    private static String decompress(final File file) throws IOException {
+        final InputStream stream = new XZInputStream(new FileInputStream(file));
+        try {
+            return IOUtil.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+}
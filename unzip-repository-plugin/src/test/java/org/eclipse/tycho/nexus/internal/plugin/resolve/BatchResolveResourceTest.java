@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.resolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URLEncoder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.IllegalRequestException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+public class BatchResolveResourceTest extends UnzipPluginTestSupport {
+
+    private static final String SNAPSHOT_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip-unzip/";
+    private static final String RESOLVED_SNAPSHOT_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip-unzip/";
+
+    private DefaultUnzipRepository unzipRepo;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        unzipRepo = createUnzipRepo(createSnapshotRepo());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testIsResolvePath() {
+        assertTrue(BatchResolveResource.isResolvePath("/.meta/unzip/resolve.json"));
+        assertTrue(BatchResolveResource.isResolvePath(".meta/unzip/resolve.json"));
+    }
+
+    @Test
+    public void testResolveBatch() throws Exception {
+        final String json = resolve("path=" + encode(SNAPSHOT_PATH) + "&path=" + encode("/dir/a.txt")
+                + "&artifact=g:missing&release=" + encode("g:a:[1.0,2.0)") + "&artifact=" + encode("g:a:[2.0,1.0]")
+                + "&release=invalid");
+
+        assertTrue(json, json.startsWith("{\"repository\":\"" + unzipRepo.getId() + "\",\"results\":["));
+        assertTrue(json, json.contains("{\"path\":\"" + SNAPSHOT_PATH + "\",\"resolved\":true,\"resolvedPath\":\""
+                + RESOLVED_SNAPSHOT_PATH + "\",\"version\":\"20101013-2\"}"));
+        assertTrue(json, json.contains("{\"path\":\"/dir/a.txt\",\"resolved\":false,"
+                + "\"resolvedPath\":\"/dir/a.txt\",\"version\":null}"));
+        // no maven-metadata.xml for the artifact
+        assertTrue(json, json.contains("{\"artifact\":\"g:missing\",\"resolved\":false,"));
+        assertTrue(json, json.contains("{\"release\":\"g:a:[1.0,2.0)\",\"resolved\":false,"));
+        assertTrue(json, json.contains("{\"artifact\":\"g:a:[2.0,1.0]\",\"error\":\"Invalid version range"));
+        assertTrue(json, json.contains("{\"release\":\"invalid\",\"error\":\"Expected groupId:artifactId[:range]"));
+        // results are in the order of the parameters
+        assertTrue(json, json.indexOf(SNAPSHOT_PATH) < json.indexOf("/dir/a.txt"));
+        assertTrue(json, json.indexOf("g:missing") < json.indexOf("g:a:[2.0,1.0]"));
+    }
+
+    @Test
+    public void testResolveBatchWithCachedResolution() throws Exception {
+        resolve("path=" + encode(SNAPSHOT_PATH));
+        // resolved from the cache, as the path only differs after the virtual version
+        final String json = resolve("path=" + encode(SNAPSHOT_PATH + "plugins/"));
+        assertTrue(json, json.contains("\"resolvedPath\":\"" + RESOLVED_SNAPSHOT_PATH + "plugins/\""));
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void testEmptyBatch() throws Exception {
+        resolve("other=value");
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void testBatchTooLarge() throws Exception {
+        final StringBuilder query = new StringBuilder();
+        for (int i = 0; i <= BatchResolveResource.MAX_BATCH_SIZE; i++) {
+            query.append("&artifact=g:a").append(i);
+        }
+        resolve(query.substring(1));
+    }
+
+    private String resolve(final String query) throws Exception {
+        final ResourceStoreRequest request = new ResourceStoreRequest(BatchResolveResource.RESOLVE_PATH);
+        request.setRequestUrl("http://localhost/nexus/content/repositories/unzip" + BatchResolveResource.RESOLVE_PATH
+                + "?" + query);
+        final StorageFileItem item = BatchResolveResource.createItem(unzipRepo, request, executor);
+        assertEquals("application/json", item.getMimeType());
+        return IOUtil.toString(item.getInputStream(), "UTF-8");
+    }
+
+    private static String encode(final String value) throws Exception {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.eclipse.tycho.nexus.internal.plugin.statistics.FlightRecorderEvents.Type;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The flight recorder API is accessed reflectively, because the tests are compiled for Java 7. The
+ * tests are skipped on JVMs without the API.
+ */
+public class FlightRecorderEventsTest {
+
+    private Object recording;
+    private File dump;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(FlightRecorderEvents.isAvailable());
+        dump = File.createTempFile("unzip-events", ".jfr");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (recording != null) {
+            call(recording, "close");
+        }
+        if (dump != null) {
+            dump.delete();
+        }
+    }
+
+    @Test
+    public void testNoEventsWithoutRecording() {
+        Assert.assertFalse(FlightRecorderEvents.isRecording());
+        Assert.assertNull(FlightRecorderEvents.begin(Type.ARCHIVE_OPEN, "repo", "/a/archive.zip"));
+    }
+
+    @Test
+    public void testEventsOfRunningRecording() throws Exception {
+        startRecording();
+        Assert.assertTrue(FlightRecorderEvents.isRecording());
+
+        FlightRecorderEvents.begin(Type.ARCHIVE_OPEN, "repo", "/a/archive.zip").set("bytes", 4711L).commit();
+        FlightRecorderEvents.begin(Type.ENTRY_LOOKUP, "repo", "/a/archive.zip").set("entry", "plugins/b.jar")
+                .set("hit", false).set("method", "scan").commit();
+
+        final List<?> events = stopRecording();
+        Assert.assertFalse(FlightRecorderEvents.isRecording());
+        final Object archiveOpen = findEvent(events, Type.ARCHIVE_OPEN);
+        Assert.assertEquals("repo", call(archiveOpen, "getString", "repositoryId"));
+        Assert.assertEquals("/a/archive.zip", call(archiveOpen, "getString", "path"));
+        Assert.assertEquals(4711L, call(archiveOpen, "getLong", "bytes"));
+        final Object entryLookup = findEvent(events, Type.ENTRY_LOOKUP);
+        Assert.assertEquals("plugins/b.jar", call(entryLookup, "getString", "entry"));
+        Assert.assertEquals(Boolean.FALSE, call(entryLookup, "getBoolean", "hit"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownField() throws Exception {
+        startRecording();
+        FlightRecorderEvents.begin(Type.ARCHIVE_OPEN, "repo", "/a/archive.zip").set("entry", "x");
+    }
+
+    private void startRecording() throws Exception {
+        recording = Class.forName("jdk.jfr.Recording").newInstance();
+        call(recording, "start");
+    }
+
+    private List<?> stopRecording() throws Exception {
+        call(recording, "stop");
+        final Method toPath = File.class.getMethod("toPath");
+        final Object path = toPath.invoke(dump);
+        final Class<?> pathType = toPath.getReturnType();
+        recording.getClass().getMethod("dump", pathType).invoke(recording, path);
+        return (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", pathType)
+                .invoke(null, path);
+    }
+
+    private static Object findEvent(final List<?> events, final Type type) throws Exception {
+        for (final Object event : events) {
+            final Object eventType = call(event, "getEventType");
+            if (type.getEventName().equals(call(eventType, "getName"))) {
+                return event;
+            }
+        }
+        Assert.fail("No event " + type.getEventName() + " in " + events.size() + " events");
+        return null;
+    }
+
+    private static Object call(final Object target, final String name, final Object... args) throws Exception {
+        for (final Method method : target.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == args.length) {
+                return method.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HeavyHittersTest {
+
+    @Test
+    public void testCountsWithinCapacity() {
+        final HeavyHitters hitters = new HeavyHitters(3);
+        record(hitters, "/a", 3);
+        record(hitters, "/b", 5);
+        hitters.addBytes("/b", 100);
+        hitters.addBytes("/untracked", 100);
+
+        final List<HeavyHitters.Entry> top = hitters.top(10);
+        assertEquals(2, top.size());
+        assertEntry(top.get(0), "/b", 5, 0, 100);
+        assertEntry(top.get(1), "/a", 3, 0, 0);
+    }
+
+    @Test
+    public void testMinimumIsReplaced() {
+        final HeavyHitters hitters = new HeavyHitters(2);
+        record(hitters, "/a", 10);
+        record(hitters, "/b", 2);
+        hitters.record("/c");
+
+        final List<HeavyHitters.Entry> top = hitters.top(10);
+        assertEquals(2, top.size());
+        assertEntry(top.get(0), "/a", 10, 0, 0);
+        // takes over the count of /b as possible overestimation
+        assertEntry(top.get(1), "/c", 3, 2, 0);
+    }
+
+    @Test
+    public void testFrequentKeyIsTrackedDespiteLongTail() {
+        final HeavyHitters hitters = new HeavyHitters(10);
+        for (int i = 0; i < 1000; i++) {
+            hitters.record("/hot");
+            hitters.record("/cold/" + i);
+        }
+        final HeavyHitters.Entry hottest = hitters.top(1).get(0);
+        assertEquals("/hot", hottest.getKey());
+        assertTrue(hottest.getCount() - hottest.getError() <= 1000);
+        assertTrue(hottest.getCount() >= 1000);
+    }
+
+    @Test
+    public void testTopIsLimited() {
+        final HeavyHitters hitters = new HeavyHitters(5);
+        for (int i = 0; i < 5; i++) {
+            record(hitters, "/" + i, i + 1);
+        }
+        final List<HeavyHitters.Entry> top = hitters.top(2);
+        assertEquals(2, top.size());
+        assertEquals("/4", top.get(0).getKey());
+        assertEquals("/3", top.get(1).getKey());
+    }
+
+    @Test
+    public void testStoredItemsAreRestoredWithHalvedCounts() throws Exception {
+        final HotItems hotItems = new HotItems(4);
+        record(hotItems.get(HotItems.Kind.ARCHIVE), "/a/archive.zip", 8);
+        record(hotItems.get(HotItems.Kind.ENTRY), "/a/archive.zip-unzip/plugins/b.jar", 4);
+        hotItems.addBytes("/a/archive.zip", "/a/archive.zip-unzip/plugins/b.jar", 42);
+        final StringWriter stored = new StringWriter();
+        hotItems.write(stored);
+
+        final HotItems restored = new HotItems(4);
+        restored.read(new StringReader(stored.toString() + "entry\tmalformed line\n"));
+        assertEntry(restored.get(HotItems.Kind.ARCHIVE).top(10).get(0), "/a/archive.zip", 4, 0, 42);
+        final List<HeavyHitters.Entry> entries = restored.get(HotItems.Kind.ENTRY).top(10);
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), "/a/archive.zip-unzip/plugins/b.jar", 2, 0, 42);
+    }
+
+    @Test
+    public void testConcurrentRecordingInStripes() throws Exception {
+        final HeavyHitters hitters = new HeavyHitters(HotItems.DEFAULT_CAPACITY);
+        assertEquals(HeavyHitters.MAX_STRIPES, hitters.getStripeCount());
+        assertEquals(1, new HeavyHitters(2 * HeavyHitters.MIN_STRIPE_CAPACITY - 1).getStripeCount());
+
+        final int threads = 8;
+        final int keys = 32;
+        final int times = 500;
+        final CyclicBarrier start = new CyclicBarrier(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < times; i++) {
+                            for (int k = 0; k < keys; k++) {
+                                hitters.record("/" + k);
+                                hitters.addBytes("/" + k, 1);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final List<HeavyHitters.Entry> top = hitters.top(HotItems.DEFAULT_CAPACITY);
+        assertEquals(keys, top.size());
+        for (final HeavyHitters.Entry entry : top) {
+            assertEntry(entry, entry.getKey(), threads * times, 0, threads * times);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new HeavyHitters(0);
+    }
+
+    private static void record(final HeavyHitters hitters, final String key, final int times) {
+        for (int i = 0; i < times; i++) {
+            hitters.record(key);
+        }
+    }
+
+    private static void assertEntry(final HeavyHitters.Entry entry, final String key, final long count,
+            final long error, final long bytes) {
+        assertEquals(key, entry.getKey());
+        assertEquals(count, entry.getCount());
+        assertEquals(error, entry.getError());
+        assertEquals(bytes, entry.getBytes());
+    }
+}
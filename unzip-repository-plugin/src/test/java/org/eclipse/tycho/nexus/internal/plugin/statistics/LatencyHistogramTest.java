@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getMean());
+        assertEquals(0, snapshot.getPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(20, snapshot.getCount());
+        assertEquals(10, snapshot.getPercentile(50));
+        assertEquals(19, snapshot.getPercentile(95));
+        assertEquals(20, snapshot.getPercentile(99));
+        assertEquals(20, snapshot.getMax());
+        assertEquals(10, snapshot.getMean());
+    }
+
+    @Test
+    public void testRelativeErrorOfLargeValues() {
+        for (long value = LatencyHistogram.SUB_BUCKETS; value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            final int index = LatencyHistogram.indexOf(value);
+            final long highest = LatencyHistogram.highestValueOf(index);
+            assertTrue(value + " > " + highest, value <= highest);
+            assertTrue(value + " vs " + highest, (highest - value) * LatencyHistogram.SUB_BUCKETS <= value);
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            assertEquals(index + 1, LatencyHistogram.indexOf(highest + 1));
+        }
+        assertEquals(LatencyHistogram.indexOf(Long.MAX_VALUE), LatencyHistogram.indexOf(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void testPercentilesOfMilliseconds() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertWithinError(TimeUnit.MILLISECONDS.toNanos(500), snapshot.getPercentile(50));
+        assertWithinError(TimeUnit.MILLISECONDS.toNanos(950), snapshot.getPercentile(95));
+        assertWithinError(TimeUnit.MILLISECONDS.toNanos(990), snapshot.getPercentile(99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), snapshot.getPercentile(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), snapshot.getMax());
+    }
+
+    @Test
+    public void testNegativeValuesAreRecordedAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public void testReset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 8;
+        final int values = 10000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 1; i <= values; i++) {
+                            histogram.record(i);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads * values, snapshot.getCount());
+        assertEquals(values, snapshot.getMax());
+    }
+
+    private static void assertWithinError(final long expected, final long actual) {
+        assertTrue(expected + " vs " + actual, actual >= expected);
+        assertTrue(expected + " vs " + actual, (actual - expected) * LatencyHistogram.SUB_BUCKETS <= expected);
+    }
+}
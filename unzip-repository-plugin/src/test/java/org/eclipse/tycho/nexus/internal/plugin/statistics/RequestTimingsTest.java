@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class RequestTimingsTest {
+
+    @Test
+    public void testRecord() {
+        final RequestTimings timings = new RequestTimings();
+        timings.record(Phase.CONVERSION, RequestTimings.start());
+        assertEquals(1, timings.snapshot(Phase.CONVERSION).getCount());
+        assertEquals(0, timings.snapshot(Phase.STREAMING).getCount());
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        final RequestTimings timings = new RequestTimings();
+        timings.record(Phase.REQUEST, RequestTimings.start() - 5000);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = RequestTimings.getObjectName("unzip:test");
+
+        timings.registerMBean("unzip:test", LoggerFactory.getLogger(getClass()));
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals("unzip:test", server.getAttribute(name, "RepositoryId"));
+            final CompositeData[] latencies = (CompositeData[]) server.getAttribute(name, "PhaseLatencies");
+            assertEquals(Phase.values().length, latencies.length);
+            assertEquals("request", latencies[0].get("phase"));
+            assertEquals(1L, latencies[0].get("count"));
+            assertTrue((Long) latencies[0].get("max") >= 5000);
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0, timings.snapshot(Phase.REQUEST).getCount());
+        } finally {
+            timings.unregisterMBean(LoggerFactory.getLogger(getClass()));
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testRegistrationReplacesPreviousInstance() throws Exception {
+        final RequestTimings first = new RequestTimings();
+        final RequestTimings second = new RequestTimings();
+        first.registerMBean("unzip", LoggerFactory.getLogger(getClass()));
+        second.registerMBean("unzip", LoggerFactory.getLogger(getClass()));
+        try {
+            second.record(Phase.REQUEST, RequestTimings.start());
+            final CompositeData[] latencies = (CompositeData[]) ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(RequestTimings.getObjectName("unzip"), "PhaseLatencies");
+            assertEquals(1L, latencies[0].get("count"));
+        } finally {
+            second.unregisterMBean(LoggerFactory.getLogger(getClass()));
+            first.unregisterMBean(LoggerFactory.getLogger(getClass()));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.eclipse.tycho.nexus.internal.plugin.statistics.SlowRequestLog.Layer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+public class SlowRequestLogTest {
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final List<Runnable> pendingWrites = new ArrayList<Runnable>();
+    private final Capture<String> lines = new Capture<String>(CaptureType.ALL);
+    private SlowRequestLog log;
+
+    @Before
+    public void setUp() {
+        final Logger logger = EasyMock.createNiceMock(Logger.class);
+        logger.info(EasyMock.capture(lines));
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay(logger);
+        log = new SlowRequestLog(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                pendingWrites.add(command);
+            }
+        }, logger);
+    }
+
+    @After
+    public void tearDown() {
+        log.setThreshold(0);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertNull(log.begin("/a/archive.zip-unzip/plugins/b.jar"));
+        assertNull(SlowRequestLog.current());
+    }
+
+    @Test
+    public void testSlowRequestRecord() {
+        log.setThreshold(10);
+        final SlowRequestLog.Record record = log.begin("/a/1.0.0-SNAPSHOT/archive-SNAPSHOT.zip-unzip/plugins/b.jar");
+        assertSame(record, SlowRequestLog.current());
+        record.setConvertedPath("/a/1.0.0-SNAPSHOT/archive-1.0.0-20140101.120000-1.zip-unzip/plugins/b.jar");
+        record.setCacheHit(Layer.CONVERSION, true);
+        record.setCacheHit(Layer.ARCHIVE, false);
+        record.setArchiveSize(4711);
+        record.setEntry(42, "DEFLATED");
+        record.addLockWait(TimeUnit.MILLISECONDS.toNanos(3));
+        new RequestTimings().record(Phase.ARCHIVE_CACHE, RequestTimings.start() - TimeUnit.MILLISECONDS.toNanos(20));
+
+        log.finish(record, SLOW);
+        assertNull(SlowRequestLog.current());
+        // written asynchronously
+        assertTrue(lines.getValues().isEmpty());
+        writePending();
+
+        assertEquals(1, lines.getValues().size());
+        final String line = lines.getValue();
+        assertTrue(line, line.startsWith("{\"durationMillis\":50.0,"));
+        assertTrue(line, line.contains("\"originalPath\":\"/a/1.0.0-SNAPSHOT/archive-SNAPSHOT.zip-unzip/plugins/"));
+        assertTrue(line, line.contains("\"convertedPath\":\"/a/1.0.0-SNAPSHOT/archive-1.0.0-20140101.120000-1.zip"));
+        assertTrue(line, line.contains("\"archiveSize\":4711,\"entrySize\":42,\"compressionMethod\":\"DEFLATED\""));
+        assertTrue(line, line.contains("\"cache\":{\"conversion\":\"hit\",\"archive\":\"miss\"}"));
+        assertTrue(line, line.contains("\"lockWaitMillis\":3.0"));
+        assertTrue(line, line.contains("\"phases\":{\"archiveCache\":"));
+    }
+
+    @Test
+    public void testFastRequestNotLogged() {
+        log.setThreshold(100);
+        log.finish(log.begin("/a/archive.zip-unzip/"), SLOW);
+        writePending();
+        assertTrue(lines.getValues().isEmpty());
+    }
+
+    @Test
+    public void testSampling() {
+        log.setThreshold(10);
+        log.setSamplePercentage(0);
+        for (int i = 0; i < 100; i++) {
+            log.finish(log.begin("/a/archive.zip-unzip/"), SLOW);
+        }
+        writePending();
+        assertTrue(lines.getValues().isEmpty());
+    }
+
+    @Test
+    public void testNestedRequest() {
+        log.setThreshold(10);
+        final SlowRequestLog.Record outer = log.begin("/a/archive.zip-unzip/");
+        final SlowRequestLog.Record inner = log.begin("/a/archive.zip-unzip/b/");
+        assertSame(inner, SlowRequestLog.current());
+        log.finish(inner, 0);
+        assertSame(outer, SlowRequestLog.current());
+        log.finish(outer, 0);
+        assertNull(SlowRequestLog.current());
+    }
+
+    @Test
+    public void testRejectedRecordsAreDropped() {
+        final SlowRequestLog rejectingLog = new SlowRequestLog(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        rejectingLog.setThreshold(10);
+        try {
+            rejectingLog.finish(rejectingLog.begin("/a/archive.zip-unzip/"), SLOW);
+            assertEquals(1, rejectingLog.getDroppedCount());
+        } finally {
+            rejectingLog.setThreshold(0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSamplePercentage() {
+        log.setSamplePercentage(101);
+    }
+
+    private void writePending() {
+        for (final Runnable write : pendingWrites) {
+            write.run();
+        }
+        pendingWrites.clear();
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.URLEncoder;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.IllegalRequestException;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+public class ArchiveTreeResourceTest extends UnzipPluginTestSupport {
+
+    @Test
+    public void testIsTreePath() {
+        assertTrue(ArchiveTreeResource.isTreePath("/.meta/unzip/tree.json"));
+        assertTrue(ArchiveTreeResource.isTreePath(".meta/unzip/tree.json"));
+    }
+
+    @Test
+    public void testTreeOfArchive() throws Exception {
+        final String json = tree(createUnzipRepo(createMasterRepo()), "/dir/subdir/archive.zip-unzip/");
+
+        assertTrue(json, json.startsWith("{\"archive\":\"/dir/subdir/archive.zip-unzip\",\"entries\":[{"));
+        assertTrue(json, json.endsWith("}]}"));
+        assertTrue(json, json.contains("{\"name\":\"dir/subdir/\",\"size\":0,\"compressedSize\":0,"
+                + "\"method\":\"STORED\",\"crc32\":\"00000000\",\"lastModified\":"));
+        assertTrue(json, json.contains("{\"name\":\"dir/subdir/a.txt\",\"size\":17,\"compressedSize\":17,"
+                + "\"method\":\"STORED\",\"crc32\":\"471c007e\",\"lastModified\":"));
+        assertTrue(json, json.contains("{\"name\":\"test.txt\",\"size\":12,"));
+        assertEquals(5, json.split("\"name\"").length - 1);
+    }
+
+    @Test
+    public void testTreeOfSnapshotArchive() throws Exception {
+        final String json = tree(createUnzipRepo(createSnapshotRepo()),
+                "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip-unzip/");
+        assertTrue(json, json.startsWith("{\"archive\":\"/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip-unzip\","));
+    }
+
+    @Test
+    public void testTreeIsReadInSmallChunks() throws Exception {
+        final StorageFileItem item = createItem(createUnzipRepo(createMasterRepo()),
+                "path=" + encode("/dir/subdir/archive.zip-unzip"));
+        final InputStream stream = item.getInputStream();
+        final StringBuilder json = new StringBuilder();
+        try {
+            int b;
+            while ((b = stream.read()) >= 0) {
+                json.append((char) b);
+            }
+        } finally {
+            stream.close();
+        }
+        assertEquals(tree(createUnzipRepo(createMasterRepo()), "/dir/subdir/archive.zip-unzip"), json.toString());
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void testMissingPath() throws Exception {
+        createItem(createUnzipRepo(createMasterRepo()), "other=value");
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void testPathOutsideOfArchive() throws Exception {
+        tree(createUnzipRepo(createMasterRepo()), "/dir/a.txt");
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testMissingArchive() throws Exception {
+        tree(createUnzipRepo(createMasterRepo()), "/dir/missing.zip-unzip/");
+    }
+
+    @AfterClass
+    public static void classTearDown() {
+        TestUtil.cleanUpTestFiles();
+    }
+
+    private String tree(final DefaultUnzipRepository unzipRepo, final String archivePath) throws Exception {
+        final StorageFileItem item = createItem(unzipRepo, "path=" + encode(archivePath));
+        assertEquals("application/json", item.getMimeType());
+        final InputStream stream = item.getInputStream();
+        try {
+            return IOUtil.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static StorageFileItem createItem(final DefaultUnzipRepository unzipRepo, final String query)
+            throws Exception {
+        final ResourceStoreRequest request = new ResourceStoreRequest(ArchiveTreeResource.TREE_PATH);
+        request.setRequestUrl("http://localhost/nexus/content/repositories/unzip" + ArchiveTreeResource.TREE_PATH
+                + "?" + query);
+        return ArchiveTreeResource.createItem(unzipRepo, request);
+    }
+
+    private static String encode(final String value) throws Exception {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
@@ -30,6 +30,8 @@ public class MimeTypeHelperTest {
         assertEquals("text/plain", MimeTypeHelper.guessMimeType("test/foo.properties"));
         assertEquals("application/json", MimeTypeHelper.guessMimeType("test/test.json"));
         assertEquals("application/zip", MimeTypeHelper.guessMimeType("test/test.jar"));
+        assertEquals("application/x-xz", MimeTypeHelper.guessMimeType("test/content.xml.xz"));
+        assertEquals("text/plain", MimeTypeHelper.guessMimeType("test/p2.index"));
     }
 
     @Test
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -99,6 +99,45 @@ public class ZipAwareStorageCollectionItemTest extends UnzipPluginTestSupport {
         TestUtil.assertMembers(new String[] { "/dir/subdir" }, new String[0], zipAwareStorageCollectionItem.list());
     }
 
+    @Test
+    public void testListingIsMemoized() throws Exception {
+        final StorageCollectionItem collectionStorageItem = (StorageCollectionItem) masterRepository
+                .createStorageItem("/dir/subdir");
+        final ZipAwareStorageCollectionItem zipAwareStorageCollectionItem = new ZipAwareStorageCollectionItem(
+                unzipRepositoryMock, collectionStorageItem, testLogger);
+        final String[] expectedArchives = new String[] { "/dir/subdir/archive.zip" + Util.UNZIP_TYPE_EXTENSION,
+                "/dir/subdir/archive2.zip" + Util.UNZIP_TYPE_EXTENSION };
+        TestUtil.assertMembers(expectedArchives, new String[0], zipAwareStorageCollectionItem.list());
+
+        // the mocked master folder can only be listed once
+        TestUtil.assertMembers(expectedArchives, new String[0], zipAwareStorageCollectionItem.list());
+        Assert.assertEquals(1, unzipRepositoryMock.getFolderListingCache().size());
+    }
+
+    @Test
+    public void testListingIsInvalidatedByChangedMember() throws Exception {
+        final StorageCollectionItem collectionStorageItem = (StorageCollectionItem) masterRepository
+                .createStorageItem("/dir/subdir");
+        new ZipAwareStorageCollectionItem(unzipRepositoryMock, collectionStorageItem, testLogger).list();
+        new ZipAwareStorageCollectionItem(unzipRepositoryMock,
+                (StorageCollectionItem) masterRepository.createStorageItem("/dir"), testLogger).list();
+        Assert.assertEquals(2, unzipRepositoryMock.getFolderListingCache().size());
+
+        unzipRepositoryMock.getFolderListingCache().invalidate("/dir/subdir/archive.zip");
+        Assert.assertEquals(0, unzipRepositoryMock.getFolderListingCache().size());
+    }
+
+    @Test
+    public void testListingIsInvalidatedByChangeInSubFolder() throws Exception {
+        new ZipAwareStorageCollectionItem(unzipRepositoryMock,
+                (StorageCollectionItem) masterRepository.createStorageItem("/"), testLogger).list();
+        Assert.assertEquals(1, unzipRepositoryMock.getFolderListingCache().size());
+
+        // two levels below the listed folder
+        unzipRepositoryMock.getFolderListingCache().invalidate("/dir/subdir/archive.zip");
+        Assert.assertEquals(0, unzipRepositoryMock.getFolderListingCache().size());
+    }
+
     @AfterClass
     public static void classTearDown() {
         TestUtil.cleanUpTestFiles();
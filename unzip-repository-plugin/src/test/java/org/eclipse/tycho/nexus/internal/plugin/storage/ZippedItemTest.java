@@ -10,8 +10,13 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.storage;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
 
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
 import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
 import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
@@ -24,8 +29,10 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.RequestContext;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.attributes.Attributes;
 import org.sonatype.nexus.proxy.item.DefaultStorageCollectionItem;
 import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.util.ItemPathUtils;
 
 @SuppressWarnings("nls")
@@ -176,6 +183,104 @@ public class ZippedItemTest extends UnzipPluginTestSupport {
         zippedItem.listMembers();
     }
 
+    @Test
+    public void testChecksumsOfEntry() throws Exception {
+        final byte[] content = "some content".getBytes("UTF-8");
+        assertChecksumItem(digest("SHA-1", content), createZippedItem("test.txt.sha1"));
+        assertChecksumItem(digest("MD5", content), createZippedItem("test.txt.md5"));
+        assertChecksumItem(digest("SHA-256", content), createZippedItem("test.txt.sha256"));
+    }
+
+    @Test
+    public void testChecksumsAreStoredAndSetAsAttributes() throws Exception {
+        createZippedItem("dir/test.txt.sha1");
+
+        final byte[] content = "some file content".getBytes("UTF-8");
+        final Attributes attributes = createZippedItem("dir/test.txt").getZippedStorageItem()
+                .getRepositoryItemAttributes();
+        Assert.assertEquals(digest("SHA-1", content), attributes.get(StorageFileItem.DIGEST_SHA1_KEY));
+        Assert.assertEquals(digest("MD5", content), attributes.get(StorageFileItem.DIGEST_MD5_KEY));
+        Assert.assertEquals(digest("SHA-256", content), attributes.get("digest.sha256"));
+
+        // read again from the file next to the cached archive, e.g. after a restart
+        final File archive = unzipReposMock.getCache().getArchive(pathToArchive);
+        final String[] storedChecksums = new ChecksumStore(1, LoggerFactory.getLogger(getClass())).get(archive).get(
+                "dir/test.txt");
+        Assert.assertEquals(digest("SHA-256", content), storedChecksums[ArchiveChecksums.Algorithm.SHA256.ordinal()]);
+    }
+
+    @Test
+    public void testChecksumStoreKeepsRecentlyUsedArchives() throws Exception {
+        final File folder = FileUtils.createTempFile("nexus-unzip" + File.separator, "checksum-store", null);
+        folder.mkdirs();
+        final File a = new File(folder, "a.zip");
+        final File b = new File(folder, "b.zip");
+        final File c = new File(folder, "c.zip");
+        for (final File archive : new File[] { a, b, c }) {
+            FileUtils.fileWrite(archive.getPath(), archive.getName());
+        }
+        final ChecksumStore store = new ChecksumStore(2, LoggerFactory.getLogger(getClass()));
+        final ArchiveChecksums checksumsOfA = store.get(a);
+        store.get(b);
+        Assert.assertSame(checksumsOfA, store.get(a));
+        store.get(c);
+        Assert.assertEquals(2, store.size());
+        // b was dropped as least recently used
+        Assert.assertSame(checksumsOfA, store.get(a));
+
+        // a replaced archive gets new checksums
+        a.setLastModified(a.lastModified() - 10000);
+        Assert.assertNotSame(checksumsOfA, store.get(a));
+        Assert.assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testChecksumsAreComputedWhenArchiveIsCached() throws Exception {
+        final String pathInZip = "dir/subdir/a.txt";
+        final DefaultStorageFileItem item = (DefaultStorageFileItem) createZippedItem(pathInZip)
+                .getZippedStorageItem();
+        // Nexus derives the ETag from the SHA-1 attribute, which is known before the entry was read
+        final String sha1 = item.getRepositoryItemAttributes().get(StorageFileItem.DIGEST_SHA1_KEY);
+
+        final InputStream stream = item.getInputStream();
+        final byte[] content;
+        try {
+            content = IOUtil.toByteArray(stream);
+        } finally {
+            stream.close();
+        }
+        Assert.assertEquals(digest("SHA-1", content), sha1);
+        Assert.assertEquals(sha1, createZippedItem(pathInZip).getZippedStorageItem().getRepositoryItemAttributes()
+                .get(StorageFileItem.DIGEST_SHA1_KEY));
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testChecksumOfFolder() throws ItemNotFoundException, IOException {
+        createZippedItem("dir.sha1");
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testChecksumOfMissingEntry() throws ItemNotFoundException, IOException {
+        createZippedItem("x.txt.md5");
+    }
+
+    private static void assertChecksumItem(final String expectedChecksum, final ZippedItem zippedItem)
+            throws IOException {
+        final DefaultStorageFileItem checksumItem = (DefaultStorageFileItem) zippedItem.getZippedStorageItem();
+        Assert.assertEquals("text/plain", checksumItem.getMimeType());
+        Assert.assertEquals(expectedChecksum.length(), checksumItem.getLength());
+        TestUtil.assertContent(expectedChecksum, checksumItem);
+    }
+
+    private static String digest(final String algorithm, final byte[] content) throws Exception {
+        final byte[] digest = MessageDigest.getInstance(algorithm).digest(content);
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
     private ZippedItem createZippedItem(final String pathInZip) throws LocalStorageException, ItemNotFoundException {
         return ZippedItem.newZippedChildItem(unzipReposMock, new RequestContext(), pathToArchive, pathInZip,
                 System.currentTimeMillis(), LoggerFactory.getLogger(getClass()));
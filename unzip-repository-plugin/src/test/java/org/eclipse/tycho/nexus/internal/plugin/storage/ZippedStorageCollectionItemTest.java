@@ -12,7 +12,9 @@ package org.eclipse.tycho.nexus.internal.plugin.storage;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
 import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
@@ -25,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
+import org.sonatype.nexus.proxy.IllegalRequestException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.NoSuchResourceStoreException;
@@ -62,6 +65,26 @@ public class ZippedStorageCollectionItemTest extends UnzipPluginTestSupport {
                 zippedStorageCollectionItem.list());
     }
 
+    @Test
+    public void testListPages() throws Exception {
+        final String rootPath = "/dir/subdir/archive.zip" + Util.UNZIP_TYPE_EXTENSION + "/";
+        final List<StorageItem> allMembers = new ArrayList<StorageItem>(listPage(rootPath, null));
+        Assert.assertEquals(2, allMembers.size());
+
+        final Collection<StorageItem> firstPage = listPage(rootPath, "?limit=1");
+        Assert.assertEquals(1, firstPage.size());
+        Assert.assertEquals(allMembers.get(0).getPath(), firstPage.iterator().next().getPath());
+        final Collection<StorageItem> secondPage = listPage(rootPath, "?offset=1&limit=5");
+        Assert.assertEquals(1, secondPage.size());
+        Assert.assertEquals(allMembers.get(1).getPath(), secondPage.iterator().next().getPath());
+        Assert.assertTrue(listPage(rootPath, "?offset=2").isEmpty());
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void testListPageWithInvalidLimit() throws Exception {
+        listPage("/dir/subdir/archive.zip" + Util.UNZIP_TYPE_EXTENSION + "/", "?limit=-1");
+    }
+
     @Test
     public void testModificationTimeInRoot() throws ItemNotFoundException, IOException, AccessDeniedException,
             NoSuchResourceStoreException, IllegalOperationException {
@@ -80,6 +103,16 @@ public class ZippedStorageCollectionItemTest extends UnzipPluginTestSupport {
         }
     }
 
+    private Collection<StorageItem> listPage(final String path, final String query) throws Exception {
+        final ResourceStoreRequest request = new ResourceStoreRequest(path);
+        if (query != null) {
+            request.setRequestUrl("http://localhost/nexus/content/repositories/unzip" + path + query);
+        }
+        final ZippedItem zippedItem = ZippedItem.newZippedItem(unzipRepositoryMock, request,
+                "/dir/subdir/archive.zip", "", 0L, testLogger);
+        return new ZippedStorageCollectionItem(zippedItem).list();
+    }
+
     private ZippedItem createZippedItem(String pathInZip, long lastModified) throws ItemNotFoundException,
             LocalStorageException {
         String pathToZip = "/dir/subdir/archive.zip";
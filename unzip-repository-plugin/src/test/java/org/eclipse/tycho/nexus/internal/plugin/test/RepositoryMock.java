@@ -17,6 +17,7 @@ import java.io.InputStream;
 import java.net.URLConnection;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
@@ -45,7 +46,9 @@ import org.sonatype.nexus.util.ItemPathUtils;
 public class RepositoryMock extends AbstractRepository {
 
     private final String repositoryId;
+    private final File baseDir;
     private boolean behaveAsProxy = false;
+    private final AtomicInteger retrievals = new AtomicInteger();
 
     private RepositoryItemUidFactory repositoryItemUidFactory;
     private RepositoryItemUidAttributeManager repositoryItemUidAttributeManager;
@@ -70,9 +73,28 @@ public class RepositoryMock extends AbstractRepository {
         return new RepositoryMock("masterRepo", repositoryItemUidFactory, repositoryItemUidAttributeManager);
     }
 
+    /**
+     * Creates a Repository with the content of the given directory, e.g. generated content
+     * 
+     * @return
+     */
+    public static RepositoryMock createRepo(final String repositoryId, final File baseDir,
+            RepositoryItemUidFactory repositoryItemUidFactory,
+            RepositoryItemUidAttributeManager repositoryItemUidAttributeManager) {
+        return new RepositoryMock(repositoryId, baseDir, repositoryItemUidFactory, repositoryItemUidAttributeManager);
+    }
+
     private RepositoryMock(final String repositoryId, RepositoryItemUidFactory repositoryItemUidFactory,
             RepositoryItemUidAttributeManager repositoryItemUidAttributeManager) {
+        this(repositoryId, new File("./src/test/resources/" + repositoryId), repositoryItemUidFactory,
+                repositoryItemUidAttributeManager);
+    }
+
+    private RepositoryMock(final String repositoryId, final File baseDir,
+            RepositoryItemUidFactory repositoryItemUidFactory,
+            RepositoryItemUidAttributeManager repositoryItemUidAttributeManager) {
         this.repositoryId = repositoryId;
+        this.baseDir = baseDir;
         this.repositoryItemUidFactory = repositoryItemUidFactory;
         this.repositoryItemUidAttributeManager = repositoryItemUidAttributeManager;
     }
@@ -104,6 +126,7 @@ public class RepositoryMock extends AbstractRepository {
         if (request.getRequestPath().equals("") || request.getRequestPath().equals("/")) {
             throw new ItemNotFoundException(request);
         }
+        retrievals.incrementAndGet();
         return doRetrieveItem(request);
     }
 
@@ -120,7 +143,7 @@ public class RepositoryMock extends AbstractRepository {
     public StorageItem createStorageItem(final String path) throws StorageException, ItemNotFoundException,
             IllegalOperationException {
         final String pathWithoutTrailingSlash = ItemPathUtils.cleanUpTrailingSlash(path);
-        final File file = new File("./src/test/resources/" + repositoryId + pathWithoutTrailingSlash);
+        final File file = new File(baseDir, pathWithoutTrailingSlash);
         if (!file.exists()) {
             throw new ItemNotFoundException(new ResourceStoreRequest(pathWithoutTrailingSlash));
         }
@@ -174,6 +197,7 @@ public class RepositoryMock extends AbstractRepository {
                             }
                         });
                 EasyMock.expect(collectionItem.getItemContext()).andStubReturn(new RequestContext());
+                EasyMock.expect(collectionItem.getModified()).andStubReturn(file.lastModified());
                 EasyMock.expect(collectionItem.list()).andAnswer(new IAnswer<Collection<StorageItem>>() {
 
                     @Override
@@ -196,6 +220,14 @@ public class RepositoryMock extends AbstractRepository {
         }
     }
 
+    /**
+     * @return the number of items retrieved from this repository, e.g. archives cached by an unzip
+     *         repository
+     */
+    public int getRetrievalCount() {
+        return retrievals.get();
+    }
+
     public void setBehaveAsProxy(final boolean behaveAsProxy) {
         this.behaveAsProxy = behaveAsProxy;
     }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,6 +24,7 @@ public class UnzipRepositoryMock extends DefaultUnzipRepository {
     private final Repository masterRepository;
     private final LocalRepositoryStorage localStorage;
     private final RepositoryItemUidFactory repositoryItemUidFactory;
+    private boolean redirectToResolvedVersion = false;
 
     public static DefaultUnzipRepository createUnzipRepository(final Repository masterRepo,
             LinkPersister linkPersister, RepositoryItemUidFactory repositoryItemUidFactory) {
@@ -48,6 +49,12 @@ public class UnzipRepositoryMock extends DefaultUnzipRepository {
         return UnzipRepositoryMock.class.getName();
     }
 
+    @Override
+    public String getName() {
+        // used in the messages of exceptions thrown by the local storage, e.g. for deleted folders
+        return getId();
+    }
+
     @Override
     public LocalRepositoryStorage getLocalStorage() {
         return localStorage;
@@ -73,4 +80,14 @@ public class UnzipRepositoryMock extends DefaultUnzipRepository {
         return true;
     }
 
+    @Override
+    public boolean isRedirectToResolvedVersion() {
+        return redirectToResolvedVersion;
+    }
+
+    @Override
+    public void setRedirectToResolvedVersion(final boolean val) {
+        redirectToResolvedVersion = val;
+    }
+
 }